@@ -8,6 +8,10 @@ import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
 import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+import com.afriserve.smsmanager.data.search.SearchIndex;
+import com.afriserve.smsmanager.data.search.SmsFtsIndexBuilder;
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
 import java.util.concurrent.Executors;
 
 /**
@@ -26,8 +30,10 @@ import java.util.concurrent.Executors;
         com.afriserve.smsmanager.data.entity.KpiEntity.class,
         com.afriserve.smsmanager.data.entity.DashboardStatsEntity.class,
         com.afriserve.smsmanager.data.entity.DashboardMetricsEntity.class,
-        com.afriserve.smsmanager.data.entity.SyncStatusEntity.class
-}, version = 8, exportSchema = true)
+        com.afriserve.smsmanager.data.entity.SyncStatusEntity.class,
+        com.afriserve.smsmanager.data.entity.SmsRollupEntity.class,
+        com.afriserve.smsmanager.data.entity.DeliveryIntentEntity.class
+}, version = 19, exportSchema = true)
 @TypeConverters({ AppDatabase.Converters.class })
 public abstract class AppDatabase extends RoomDatabase {
 
@@ -53,6 +59,8 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract com.afriserve.smsmanager.data.dao.SyncStatusDao syncStatusDao();
 
+    public abstract com.afriserve.smsmanager.data.dao.DeliveryIntentDao deliveryIntentDao();
+
     private static volatile AppDatabase INSTANCE;
     private static final String DB_NAME = "bulksms_database_v2";
 
@@ -106,6 +114,83 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    private static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_13_14 = new Migration(13, 14) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_14_15 = new Migration(14, 15) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_15_16 = new Migration(15, 16) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_16_17 = new Migration(16, 17) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_17_18 = new Migration(17, 18) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
+    private static final Migration MIGRATION_18_19 = new Migration(18, 19) {
+        @Override
+        public void migrate(SupportSQLiteDatabase db) {
+            migrateSchema(db);
+        }
+    };
+
     private static void migrateSchema(SupportSQLiteDatabase db) {
         createCampaignEntitiesTable(db);
         createSmsEntitiesTable(db);
@@ -119,9 +204,15 @@ public abstract class AppDatabase extends RoomDatabase {
         createDashboardStatsTable(db);
         createDashboardMetricsTable(db);
         createSyncStatusTable(db);
+        createDeliveryIntentsTable(db);
         createSmsFtsTable(db);
+        createSearchIndexTable(db);
+        createSmsRollupTable(db);
         createIndexes(db);
         dropLegacyIndexes(db);
+        backfillPhoneKeys(db, "sms_entities");
+        backfillPhoneKeys(db, "conversations");
+        backfillPhoneKeys(db, "opt_outs");
     }
 
     public static AppDatabase getInstance(Context context) {
@@ -142,7 +233,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 DB_NAME)
                 .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
                 .setQueryExecutor(Executors.newFixedThreadPool(4))
-                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13, MIGRATION_13_14, MIGRATION_14_15, MIGRATION_15_16, MIGRATION_16_17, MIGRATION_17_18, MIGRATION_18_19)
                 .addCallback(new DatabaseCallback())
                 .addCallback(new RoomDatabase.Callback() {
                     @Override
@@ -170,6 +261,7 @@ public abstract class AppDatabase extends RoomDatabase {
                         "`threadId` INTEGER, " +
                         "`isRead` INTEGER, " +
                         "`phoneNumber` TEXT, " +
+                        "`phoneKey` INTEGER NOT NULL DEFAULT -1, " +
                         "`message` TEXT, " +
                         "`isMms` INTEGER, " +
                         "`mediaUri` TEXT, " +
@@ -183,6 +275,7 @@ public abstract class AppDatabase extends RoomDatabase {
                         "`nextRetryAt` INTEGER, " +
                         "`errorCode` TEXT, " +
                         "`errorMessage` TEXT, " +
+                        "`dedupeKey` INTEGER, " +
                         "FOREIGN KEY(`campaignId`) REFERENCES `campaign_entities`(`id`) ON UPDATE CASCADE ON DELETE SET NULL" +
                         ")");
 
@@ -192,6 +285,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 { "threadId", "INTEGER" },
                 { "isRead", "INTEGER" },
                 { "phoneNumber", "TEXT" },
+                { "phoneKey", "INTEGER NOT NULL DEFAULT -1" },
                 { "message", "TEXT" },
                 { "isMms", "INTEGER" },
                 { "mediaUri", "TEXT" },
@@ -204,7 +298,8 @@ public abstract class AppDatabase extends RoomDatabase {
                 { "retryCount", "INTEGER NOT NULL DEFAULT 0" },
                 { "nextRetryAt", "INTEGER" },
                 { "errorCode", "TEXT" },
-                { "errorMessage", "TEXT" }
+                { "errorMessage", "TEXT" },
+                { "dedupeKey", "INTEGER" }
         });
     }
 
@@ -378,6 +473,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 "CREATE TABLE IF NOT EXISTS `opt_outs` (" +
                         "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                         "`phoneNumber` TEXT, " +
+                        "`phoneKey` INTEGER NOT NULL DEFAULT -1, " +
                         "`reason` TEXT, " +
                         "`optOutTime` INTEGER NOT NULL DEFAULT 0, " +
                         "`source` TEXT, " +
@@ -390,6 +486,7 @@ public abstract class AppDatabase extends RoomDatabase {
 
         ensureColumns(db, "opt_outs", new String[][] {
                 { "phoneNumber", "TEXT" },
+                { "phoneKey", "INTEGER NOT NULL DEFAULT -1" },
                 { "reason", "TEXT" },
                 { "optOutTime", "INTEGER NOT NULL DEFAULT 0" },
                 { "source", "TEXT" },
@@ -452,6 +549,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 "CREATE TABLE IF NOT EXISTS `conversations` (" +
                         "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                         "`phoneNumber` TEXT, " +
+                        "`phoneKey` INTEGER NOT NULL DEFAULT -1, " +
                         "`contactName` TEXT, " +
                         "`contactPhotoUri` TEXT, " +
                         "`threadId` INTEGER, " +
@@ -468,6 +566,7 @@ public abstract class AppDatabase extends RoomDatabase {
 
         ensureColumns(db, "conversations", new String[][] {
                 { "phoneNumber", "TEXT" },
+                { "phoneKey", "INTEGER NOT NULL DEFAULT -1" },
                 { "contactName", "TEXT" },
                 { "contactPhotoUri", "TEXT" },
                 { "threadId", "INTEGER" },
@@ -493,6 +592,7 @@ public abstract class AppDatabase extends RoomDatabase {
                         "`originalSmsId` INTEGER, " +
                         "`retryCount` INTEGER NOT NULL DEFAULT 0, " +
                         "`status` TEXT, " +
+                        "`priority` INTEGER NOT NULL DEFAULT 1, " +
                         "`createdAt` INTEGER NOT NULL DEFAULT 0, " +
                         "`nextRetryAt` INTEGER NOT NULL DEFAULT 0, " +
                         "`lastFailureAt` INTEGER, " +
@@ -507,6 +607,7 @@ public abstract class AppDatabase extends RoomDatabase {
                 { "originalSmsId", "INTEGER" },
                 { "retryCount", "INTEGER NOT NULL DEFAULT 0" },
                 { "status", "TEXT" },
+                { "priority", "INTEGER NOT NULL DEFAULT 1" },
                 { "createdAt", "INTEGER NOT NULL DEFAULT 0" },
                 { "nextRetryAt", "INTEGER NOT NULL DEFAULT 0" },
                 { "lastFailureAt", "INTEGER" },
@@ -707,40 +808,168 @@ public abstract class AppDatabase extends RoomDatabase {
         });
     }
 
+    private static void createDeliveryIntentsTable(SupportSQLiteDatabase db) {
+        db.execSQL(
+                "CREATE TABLE IF NOT EXISTS `delivery_intents` (" +
+                        "`requestCode` INTEGER NOT NULL, " +
+                        "`smsId` INTEGER NOT NULL, " +
+                        "`kind` TEXT NOT NULL, " +
+                        "`partIndex` INTEGER NOT NULL DEFAULT 0, " +
+                        "`partCount` INTEGER NOT NULL DEFAULT 1, " +
+                        "`createdAt` INTEGER NOT NULL, " +
+                        "PRIMARY KEY(`requestCode`))");
+
+        ensureColumns(db, "delivery_intents", new String[][] {
+                { "partIndex", "INTEGER NOT NULL DEFAULT 0" },
+                { "partCount", "INTEGER NOT NULL DEFAULT 1" }
+        });
+    }
+
     private static void createSmsFtsTable(SupportSQLiteDatabase db) {
-        db.execSQL("DROP TABLE IF EXISTS `sms_fts`");
-        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `sms_fts` USING FTS4(" +
-                "`phoneNumber` TEXT, " +
-                "`message` TEXT, " +
-                "content='sms_entities')");
+        // Earlier versions installed triggers using the FTS5-only 'delete' command, which
+        // FTS4 rejects; clear every sync trigger and install the current ones
+        SmsFtsIndexBuilder.dropContentSyncTriggers(db);
+        // Recreating empties the index, so keep a table whose definition is still current
+        if (!SmsFtsIndexBuilder.hasCurrentDefinition(db)) {
+            db.execSQL("DROP TABLE IF EXISTS `sms_fts`");
+            db.execSQL("CREATE VIRTUAL TABLE `sms_fts` USING " + SmsFtsIndexBuilder.FTS_DEFINITION);
+        }
+        SmsFtsIndexBuilder.createContentSyncTriggers(db);
+    }
 
-        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_ai` AFTER INSERT ON `sms_entities` " +
-                "BEGIN " +
-                "INSERT INTO `sms_fts`(rowid, `phoneNumber`, `message`) VALUES (new.`id`, new.`phoneNumber`, new.`message`);" +
-                "END");
+    /**
+     * Per-hour message counts by status, kept current by triggers on sms_entities.
+     * Buckets are UTC hours so a row never moves when the device's time zone or DST offset
+     * changes; readers sum the hours between two local midnights to get a day.
+     * SQLite before 3.24 (API < 30) has no UPSERT, so each bump is INSERT OR IGNORE + UPDATE.
+     */
+    private static void createSmsRollupTable(SupportSQLiteDatabase db) {
+        boolean populate = !tableExists(db, "sms_rollup");
+        db.execSQL("CREATE TABLE IF NOT EXISTS `sms_rollup` (" +
+                "`bucketType` TEXT NOT NULL, " +
+                "`bucketStart` INTEGER NOT NULL, " +
+                "`status` TEXT NOT NULL, " +
+                "`count` INTEGER NOT NULL, " +
+                "PRIMARY KEY(`bucketType`, `bucketStart`, `status`))");
+
+        // Earlier versions also kept day buckets cut at local midnight as of the write;
+        // replace their triggers and drop the rows. The hour buckets were UTC all along.
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_rollup_ai`");
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_rollup_ad`");
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_rollup_au`");
+        db.execSQL("DELETE FROM `sms_rollup` WHERE `bucketType` != 'HOUR'");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_rollup_ai` AFTER INSERT ON `sms_entities` " +
+                "BEGIN " + rollupDelta("NEW", "+") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_rollup_ad` AFTER DELETE ON `sms_entities` " +
+                "BEGIN " + rollupDelta("OLD", "-") + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_rollup_au` AFTER UPDATE OF `status`, `createdAt` " +
+                "ON `sms_entities` WHEN OLD.`status` IS NOT NEW.`status` OR OLD.`createdAt` != NEW.`createdAt` " +
+                "BEGIN " + rollupDelta("OLD", "-") + " " + rollupDelta("NEW", "+") + " END");
+
+        if (populate) {
+            db.execSQL("INSERT INTO `sms_rollup` (`bucketType`, `bucketStart`, `status`, `count`) " +
+                    "SELECT 'HOUR', " + rollupHourStart("m") + ", IFNULL(m.`status`, ''), COUNT(*) " +
+                    "FROM `sms_entities` m GROUP BY 2, 3");
+        }
+    }
 
-        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_ad` AFTER DELETE ON `sms_entities` " +
-                "BEGIN " +
-                "INSERT INTO `sms_fts`(`sms_fts`, rowid, `phoneNumber`, `message`) VALUES ('delete', old.`id`, old.`phoneNumber`, old.`message`);" +
-                "END");
+    private static String rollupDelta(String row, String sign) {
+        String bucketStart = rollupHourStart(row);
+        String status = "IFNULL(" + row + ".`status`, '')";
+        StringBuilder sql = new StringBuilder();
+        if ("+".equals(sign)) {
+            sql.append("INSERT OR IGNORE INTO `sms_rollup` (`bucketType`, `bucketStart`, `status`, `count`) ")
+                    .append("VALUES ('HOUR', ").append(bucketStart).append(", ")
+                    .append(status).append(", 0); ");
+        }
+        sql.append("UPDATE `sms_rollup` SET `count` = `count` ").append(sign).append(" 1 ")
+                .append("WHERE `bucketType` = 'HOUR' ")
+                .append("AND `bucketStart` = ").append(bucketStart).append(" ")
+                .append("AND `status` = ").append(status).append("; ");
+        return sql.toString();
+    }
 
-        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_au` AFTER UPDATE ON `sms_entities` " +
-                "BEGIN " +
-                "INSERT INTO `sms_fts`(`sms_fts`, rowid, `phoneNumber`, `message`) VALUES ('delete', old.`id`, old.`phoneNumber`, old.`message`);" +
-                "INSERT INTO `sms_fts`(rowid, `phoneNumber`, `message`) VALUES (new.`id`, new.`phoneNumber`, new.`message`);" +
-                "END");
+    private static String rollupHourStart(String row) {
+        return "(" + row + ".`createdAt` / 3600000) * 3600000";
+    }
+
+    /**
+     * Unified full-text index over conversations and campaigns, queried through SearchIndex.
+     * It is not a Room entity because Room has no FTS5 support and its query verifier would
+     * reject the table. FTS5 is used when the platform SQLite has it, else FTS4. Messages are
+     * searched through sms_fts, so sms_entities writes maintain one full-text index, not two.
+     */
+    private static void createSearchIndexTable(SupportSQLiteDatabase db) {
+        boolean created = false;
+        if (!tableExists(db, SearchIndex.TABLE)) {
+            try {
+                db.execSQL("CREATE VIRTUAL TABLE `search_index` USING fts5(" +
+                        "`title`, `body`, prefix='2 3', tokenize='unicode61')");
+            } catch (android.database.SQLException e) {
+                // Framework SQLite is usually built without FTS5
+                db.execSQL("CREATE VIRTUAL TABLE `search_index` USING fts4(" +
+                        "`title`, `body`, prefix=\"2,3\", tokenize=unicode61)");
+            }
+            created = true;
+        }
+
+        // Subscriber digits without country or trunk prefix, so "0712" finds "+254712..."
+        String conversationTitle = "COALESCE({row}.`contactName`, '') || ' ' || COALESCE({row}.`phoneNumber`, '') || ' ' || " +
+                "substr(replace(COALESCE({row}.`phoneNumber`, ''), '+', ''), -9)";
+
+        createSearchTriggers(db, "conversations", SearchIndex.KIND_CONVERSATION,
+                conversationTitle, "COALESCE({row}.`lastMessagePreview`, '')",
+                "`contactName`, `phoneNumber`, `lastMessagePreview`", created);
+        // Versions 10 to 17 also indexed messages here, duplicating sms_fts
+        if (triggerExists(db, "search_index_sms_entities_ai")) {
+            db.execSQL("DROP TRIGGER IF EXISTS `search_index_sms_entities_ai`");
+            db.execSQL("DROP TRIGGER IF EXISTS `search_index_sms_entities_au`");
+            db.execSQL("DROP TRIGGER IF EXISTS `search_index_sms_entities_ad`");
+            db.execSQL("DELETE FROM `search_index` WHERE rowid % " + SearchIndex.KIND_SPAN +
+                    " = " + SearchIndex.KIND_MESSAGE);
+        }
+        createSearchTriggers(db, "campaign_entities", SearchIndex.KIND_CAMPAIGN,
+                "COALESCE({row}.`name`, '')", "COALESCE({row}.`description`, '')",
+                "`name`, `description`", created);
+    }
+
+    private static void createSearchTriggers(SupportSQLiteDatabase db, String table, int kind,
+            String title, String body, String watchedColumns, boolean populate) {
+        String rowid = "{row}.`id` * " + SearchIndex.KIND_SPAN + " + " + kind;
+        String insertNew = "INSERT INTO `search_index`(rowid, `title`, `body`) VALUES (" +
+                (rowid + ", " + title + ", " + body).replace("{row}", "new") + ");";
+        String deleteOld = "DELETE FROM `search_index` WHERE rowid = " + rowid.replace("{row}", "old") + ";";
+        String deleteNew = "DELETE FROM `search_index` WHERE rowid = " + rowid.replace("{row}", "new") + ";";
+
+        // REPLACE conflicts do not fire delete triggers, so inserts clear any stale row first
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `search_index_" + table + "_ai` AFTER INSERT ON `" + table + "` " +
+                "BEGIN " + deleteNew + insertNew + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `search_index_" + table + "_au` AFTER UPDATE OF " +
+                watchedColumns + " ON `" + table + "` " +
+                "BEGIN " + deleteOld + insertNew + " END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `search_index_" + table + "_ad` AFTER DELETE ON `" + table + "` " +
+                "BEGIN " + deleteOld + " END");
+
+        if (populate) {
+            String alias = "`" + table + "`";
+            db.execSQL("INSERT INTO `search_index`(rowid, `title`, `body`) SELECT " +
+                    (rowid + ", " + title + ", " + body).replace("{row}", alias) + " FROM " + alias);
+        }
     }
 
     private static void createIndexes(SupportSQLiteDatabase db) {
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_status` ON `sms_entities` (`status`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_campaignId` ON `sms_entities` (`campaignId`)");
-        db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_phoneNumber` ON `sms_entities` (`phoneNumber`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_phoneNumber_createdAt_id` ON `sms_entities` (`phoneNumber`, `createdAt`, `id`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_createdAt` ON `sms_entities` (`createdAt`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_nextRetryAt` ON `sms_entities` (`nextRetryAt`)");
         db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_sms_entities_deviceSmsId` ON `sms_entities` (`deviceSmsId`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_boxType` ON `sms_entities` (`boxType`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_isRead` ON `sms_entities` (`isRead`)");
-        db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_threadId` ON `sms_entities` (`threadId`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_threadId_createdAt_id` ON `sms_entities` (`threadId`, `createdAt`, `id`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_entities_phoneKey_createdAt_id` ON `sms_entities` (`phoneKey`, `createdAt`, `id`)");
+        db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_sms_entities_dedupeKey` ON `sms_entities` (`dedupeKey`)");
 
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_campaign_entities_status` ON `campaign_entities` (`status`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_campaign_entities_createdAt` ON `campaign_entities` (`createdAt`)");
@@ -754,6 +983,7 @@ public abstract class AppDatabase extends RoomDatabase {
 
         db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_opt_outs_phoneNumber` ON `opt_outs` (`phoneNumber`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_opt_outs_optOutTime` ON `opt_outs` (`optOutTime`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_opt_outs_phoneKey` ON `opt_outs` (`phoneKey`)");
 
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_scheduled_campaigns_campaignId` ON `scheduled_campaigns` (`campaignId`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_scheduled_campaigns_scheduledTime` ON `scheduled_campaigns` (`scheduledTime`)");
@@ -763,6 +993,10 @@ public abstract class AppDatabase extends RoomDatabase {
         db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_conversations_phoneNumber` ON `conversations` (`phoneNumber`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_lastMessageTime` ON `conversations` (`lastMessageTime`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_threadId` ON `conversations` (`threadId`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_phoneKey` ON `conversations` (`phoneKey`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_isPinned_lastMessageTime_id` ON `conversations` (`isPinned`, `lastMessageTime`, `id`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_isArchived_isPinned_lastMessageTime_id` ON `conversations` (`isArchived`, `isPinned`, `lastMessageTime`, `id`)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_conversations_isArchived_lastMessageType_isPinned_lastMessageTime_id` ON `conversations` (`isArchived`, `lastMessageType`, `isPinned`, `lastMessageTime`, `id`)");
 
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_queue_status` ON `sms_queue` (`status`)");
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_queue_nextRetryAt` ON `sms_queue` (`nextRetryAt`)");
@@ -781,6 +1015,8 @@ public abstract class AppDatabase extends RoomDatabase {
         db.execSQL("CREATE INDEX IF NOT EXISTS `index_dashboard_metrics_createdAt` ON `dashboard_metrics` (`createdAt`)");
 
         db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_sync_status_entityType_entityId` ON `sync_status` (`entityType`, `entityId`)");
+
+        db.execSQL("CREATE INDEX IF NOT EXISTS `index_delivery_intents_smsId` ON `delivery_intents` (`smsId`)");
     }
 
     private static void dropLegacyIndexes(SupportSQLiteDatabase db) {
@@ -797,6 +1033,36 @@ public abstract class AppDatabase extends RoomDatabase {
         db.execSQL("DROP INDEX IF EXISTS `idx_template_category`");
         db.execSQL("DROP INDEX IF EXISTS `idx_template_favorite`");
         db.execSQL("DROP INDEX IF EXISTS `idx_template_usage`");
+        // Superseded by the (column, createdAt, id) keyset indexes
+        db.execSQL("DROP INDEX IF EXISTS `index_sms_entities_phoneNumber`");
+        db.execSQL("DROP INDEX IF EXISTS `index_sms_entities_threadId`");
+    }
+
+    /**
+     * Fill phoneKey for rows written before the column existed. Rows whose number cannot be
+     * canonicalized keep NO_KEY.
+     */
+    private static void backfillPhoneKeys(SupportSQLiteDatabase db, String table) {
+        SupportSQLiteStatement update = db.compileStatement(
+                "UPDATE `" + table + "` SET `phoneKey` = ? WHERE `id` = ?");
+        Cursor cursor = null;
+        try {
+            cursor = db.query("SELECT `id`, `phoneNumber` FROM `" + table + "` " +
+                    "WHERE `phoneKey` = " + PhoneCanonicalizer.NO_KEY + " AND `phoneNumber` IS NOT NULL");
+            while (cursor.moveToNext()) {
+                long key = PhoneCanonicalizer.canonicalKey(cursor.getString(1));
+                if (key == PhoneCanonicalizer.NO_KEY) {
+                    continue;
+                }
+                update.bindLong(1, key);
+                update.bindLong(2, cursor.getLong(0));
+                update.executeUpdateDelete();
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
     }
 
     private static void ensureColumns(SupportSQLiteDatabase db, String table, String[][] columns) {
@@ -833,6 +1099,20 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     }
 
+    private static boolean triggerExists(SupportSQLiteDatabase db, String trigger) {
+        Cursor cursor = null;
+        try {
+            cursor = db.query("SELECT name FROM sqlite_master WHERE type='trigger' AND name='" + trigger + "'");
+            return cursor.moveToFirst();
+        } catch (Exception e) {
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
     private static boolean tableExists(SupportSQLiteDatabase db, String table) {
         Cursor cursor = null;
         try {
@@ -854,12 +1134,14 @@ public abstract class AppDatabase extends RoomDatabase {
         @Override
         public void onCreate(SupportSQLiteDatabase db) {
             super.onCreate(db);
-            // Pre-population can be handled here if needed
+            createSearchIndexTable(db);
+            createSmsRollupTable(db);
         }
 
         @Override
         public void onOpen(SupportSQLiteDatabase db) {
             super.onOpen(db);
+            SmsFtsIndexBuilder.dropOrphanedShadowTriggers(db);
         }
     }
 
@@ -26,6 +26,7 @@ import com.afriserve.smsmanager.data.repository.ConversationRepository;
 import com.afriserve.smsmanager.data.sync.BidirectionalSmsSync;
 import com.afriserve.smsmanager.data.tracking.EnhancedDeliveryTracker;
 import com.afriserve.smsmanager.data.persistence.UploadPersistenceService;
+import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.SimLaneProgress;
 import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.UploadSession;
 import com.afriserve.smsmanager.data.parser.ExcelParser;
 import com.afriserve.smsmanager.data.parser.CsvParser;
@@ -33,6 +34,14 @@ import com.afriserve.smsmanager.data.parser.TransactionParser;
 import com.afriserve.smsmanager.data.parser.PhoneNormalizer;
 import com.afriserve.smsmanager.data.parser.DateParser;
 import com.afriserve.smsmanager.data.parser.RecordParser;
+import com.afriserve.smsmanager.data.pipeline.CampaignControl;
+import com.afriserve.smsmanager.data.pipeline.CampaignForecaster;
+import com.afriserve.smsmanager.data.pipeline.PreparedMessage;
+import com.afriserve.smsmanager.data.pipeline.SendPersistenceStage;
+import com.afriserve.smsmanager.data.pipeline.SendPreparationStage;
+import com.afriserve.smsmanager.data.pipeline.SimLanePlanner;
+import com.afriserve.smsmanager.data.templates.CompiledTemplate;
+import com.afriserve.smsmanager.data.utils.SmsSegmentCounter;
 import com.afriserve.smsmanager.billing.SubscriptionHelper;
 import dagger.hilt.android.qualifiers.ApplicationContext;
 import java.io.BufferedReader;
@@ -42,18 +51,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import android.app.PendingIntent;
 import android.provider.Telephony;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.observers.DisposableCompletableObserver;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 /**
@@ -68,10 +85,10 @@ public class BulkSmsService {
     public static final String RESULT_STOPPED = "STOPPED";
     public static final String RESULT_FAILED = "FAILED";
     private static final long SESSION_PERSIST_INTERVAL_MS = 1500L;
-    private static final long SESSION_FLAG_REFRESH_INTERVAL_MS = 1000L;
-    private static final long CONTROL_CHECK_INTERVAL_MS = 250L;
+    private static final int PIPELINE_CHUNK_SIZE = 50;
     private static final int CSV_FREE_LIMIT = 15;
     private final Context context;
+    private final AppDatabase database;
     private final SmsDao smsDao;
     private final CampaignDao campaignDao;
     private final RateLimitManager rateLimitManager;
@@ -80,12 +97,15 @@ public class BulkSmsService {
     private final UploadPersistenceService uploadPersistence;
     private final ConversationRepository conversationRepository;
     private final BidirectionalSmsSync bidirectionalSmsSync;
+    private final CampaignControl campaignControl;
     private final ExecutorService executorService;
     private final Handler mainHandler;
+    private final CompositeDisposable backgroundWrites = new CompositeDisposable();
 
     @Inject
     public BulkSmsService(
             @ApplicationContext @NonNull Context context,
+            @NonNull AppDatabase database,
             @NonNull SmsDao smsDao,
             @NonNull CampaignDao campaignDao,
             @NonNull RateLimitManager rateLimitManager,
@@ -93,8 +113,10 @@ public class BulkSmsService {
             @NonNull EnhancedDeliveryTracker deliveryTracker,
             @NonNull UploadPersistenceService uploadPersistence,
             @NonNull ConversationRepository conversationRepository,
-            @NonNull BidirectionalSmsSync bidirectionalSmsSync) {
+            @NonNull BidirectionalSmsSync bidirectionalSmsSync,
+            @NonNull CampaignControl campaignControl) {
         this.context = context;
+        this.database = database;
         this.smsDao = smsDao;
         this.campaignDao = campaignDao;
         this.rateLimitManager = rateLimitManager;
@@ -103,6 +125,7 @@ public class BulkSmsService {
         this.uploadPersistence = uploadPersistence;
         this.conversationRepository = conversationRepository;
         this.bidirectionalSmsSync = bidirectionalSmsSync;
+        this.campaignControl = campaignControl;
         this.executorService = Executors.newFixedThreadPool(4);
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
@@ -121,7 +144,9 @@ public class BulkSmsService {
     private void updateConversationSafe(@Nullable SmsEntity smsEntity) {
         if (smsEntity == null) return;
         try {
-            conversationRepository.updateConversationFromMessage(smsEntity).blockingAwait();
+            // Coalesced by the repository; don't hold the send loop for the flush window
+            runInBackground(conversationRepository.updateConversationFromMessage(smsEntity),
+                    "Failed to update conversation");
         } catch (Exception e) {
             Log.w(TAG, "Failed to update conversation", e);
         }
@@ -130,16 +155,35 @@ public class BulkSmsService {
     private void syncSentToContentProviderSafe(@Nullable Long smsId) {
         if (smsId == null || smsId <= 0) return;
         try {
-            bidirectionalSmsSync.syncSentMessageToContentProvider(smsId)
-                .subscribe(
-                    () -> {},
-                    error -> Log.w(TAG, "Failed to sync sent message to provider", error)
-                );
+            runInBackground(bidirectionalSmsSync.syncSentMessageToContentProvider(smsId),
+                    "Failed to sync sent message to provider");
         } catch (Exception e) {
             Log.w(TAG, "Failed to sync sent message to provider", e);
         }
     }
 
+    /**
+     * Fire-and-forget write. The subscription is tracked until it terminates so shutdown() can
+     * cancel it, and its error is handled here rather than left to RxJavaPlugins.
+     */
+    private void runInBackground(@NonNull Completable write, @NonNull String failureMessage) {
+        DisposableCompletableObserver observer = new DisposableCompletableObserver() {
+            @Override
+            public void onComplete() {
+                backgroundWrites.delete(this);
+            }
+
+            @Override
+            public void onError(@NonNull Throwable e) {
+                backgroundWrites.delete(this);
+                Log.w(TAG, failureMessage, e);
+            }
+        };
+        // Added before subscribing, so a write that finishes synchronously is still removed
+        backgroundWrites.add(observer);
+        write.subscribe(observer);
+    }
+
     /**
      * Get available SIM slots with their information
      * @return List of available SIM slot information
@@ -299,12 +343,12 @@ public class BulkSmsService {
                             updateConversationSafe(smsEntity);
                             Log.d(TAG, "Created SMS entity with ID: " + smsId);
                             
-                            // Create delivery tracking intents
+                            // Create delivery tracking intents, one pair per part
+                            ArrayList<String> parts = smsManager.divideMessage(message);
                             EnhancedDeliveryTracker.DeliveryIntents deliveryIntents = 
-                                deliveryTracker.createDeliveryIntents(String.valueOf(smsId));
+                                deliveryTracker.createDeliveryIntents(String.valueOf(smsId), parts.size());
                             
                             // Send SMS with delivery tracking
-                            ArrayList<String> parts = smsManager.divideMessage(message);
                             if (parts.size() == 1) {
                                 // Single part message
                                 smsManager.sendTextMessage(
@@ -315,27 +359,13 @@ public class BulkSmsService {
                                     deliveryIntents != null ? deliveryIntents.deliveredIntent : null
                                 );
                             } else {
-                                // Multipart message - create proper intent arrays
-                                ArrayList<PendingIntent> sentIntents = null;
-                                ArrayList<PendingIntent> deliveredIntents = null;
-                                
-                                if (deliveryIntents != null) {
-                                    sentIntents = new ArrayList<>(parts.size());
-                                    deliveredIntents = new ArrayList<>(parts.size());
-                                    
-                                    // Use the same intents for all parts (common pattern)
-                                    for (int j = 0; j < parts.size(); j++) {
-                                        sentIntents.add(deliveryIntents.sentIntent);
-                                        deliveredIntents.add(deliveryIntents.deliveredIntent);
-                                    }
-                                }
-                                
+                                // Multipart message - each part reports through its own intents
                                 smsManager.sendMultipartTextMessage(
                                     recipient.getPhone(), 
                                     null, 
                                     parts, 
-                                    sentIntents,
-                                    deliveredIntents
+                                    deliveryIntents != null ? deliveryIntents.sentIntents : null,
+                                    deliveryIntents != null ? deliveryIntents.deliveredIntents : null
                                 );
                             }
                             
@@ -468,6 +498,43 @@ public class BulkSmsService {
                         session.campaignId, session.lastProcessedIndex, reason);
             }
         }
+
+        // Persisted flags are read once here; from now on pause/stop arrive through the channel.
+        CampaignControl.Channel control = campaignControl.open(session.fileId,
+                session.isPaused, session.isStopped, session.sendSpeed);
+        try {
+            if (control.followedRun()) {
+                reloadProgress(session);
+            }
+            return runSession(session, template, control, progressCallback);
+        } finally {
+            campaignControl.close(session.fileId, control);
+        }
+    }
+
+    /**
+     * Take over the progress an earlier run of the session checkpointed after this run's copy
+     * of the session was loaded.
+     */
+    private void reloadProgress(@NonNull UploadSession session) {
+        UploadSession latest = uploadPersistence.loadSessionSync(session.fileId);
+        if (latest == null) {
+            return;
+        }
+        session.campaignId = latest.campaignId;
+        session.lastProcessedIndex = latest.lastProcessedIndex;
+        session.sentCount = latest.sentCount;
+        session.failedCount = latest.failedCount;
+        session.skippedCount = latest.skippedCount;
+        session.simLanes = latest.simLanes;
+    }
+
+    @NonNull
+    private BulkSendResult runSession(@NonNull UploadSession session, @NonNull String template,
+                                      @NonNull CampaignControl.Channel control,
+                                      @Nullable ProgressCallback progressCallback) {
+        List<Recipient> recipients = session.recipients;
+        int total = recipients.size();
         int startIndex = Math.min(Math.max(session.lastProcessedIndex, 0), total);
         int sent = Math.max(0, session.sentCount);
         int failed = Math.max(0, session.failedCount);
@@ -504,172 +571,127 @@ public class BulkSmsService {
         String campaignType = session.campaignType != null ? session.campaignType : "MARKETING";
         String resultStatus = RESULT_COMPLETED;
         long lastPersistAt = System.currentTimeMillis();
-        long lastFlagRefreshAt = 0L;
 
-        for (int i = startIndex; i < total; i++) {
-            long nowLoop = System.currentTimeMillis();
-            if (lastFlagRefreshAt == 0L || nowLoop - lastFlagRefreshAt >= SESSION_FLAG_REFRESH_INTERVAL_MS) {
-                session = refreshSessionFlags(session);
-                lastFlagRefreshAt = nowLoop;
-            }
-
-            if (session.isStopped) {
-                resultStatus = RESULT_STOPPED;
-                break;
-            }
-            if (session.isPaused) {
-                resultStatus = RESULT_PAUSED;
-                break;
-            }
+        try {
+            // One snapshot per campaign; opt-outs recorded mid-campaign are applied incrementally.
+            complianceManager.refreshSnapshot().blockingAwait();
+        } catch (Exception e) {
+            // Screening keeps the previous snapshot, or refuses every recipient without one
+            Log.w(TAG, "Failed to refresh compliance snapshot", e);
+        }
 
-            Recipient recipient = recipients.get(i);
-            String message = null;
-            Long smsId = null;
-            SmsEntity smsEntity = null;
+        SendPreparationStage preparation = new SendPreparationStage(complianceManager, smsDao,
+                recipient -> formatMessage(template, recipient), campaignId, campaignType);
+        // Results that cannot be recorded stay queued; stop sending until they can be.
+        SendPersistenceStage persistence = new SendPersistenceStage(database, smsDao, campaignDao,
+                campaignId, SendPersistenceStage.DEFAULT_BATCH_SIZE, this::onSendBatchPersisted,
+                error -> control.pause());
 
+        List<Integer> dispatchSims = resolveDispatchSims(session);
+        if (dispatchSims.size() > 1 || (session.simLanes != null && !session.simLanes.isEmpty())) {
             try {
-                ComplianceManager.ComplianceResult complianceResult =
-                        complianceManager.checkCompliance(recipient.getPhone(), campaignType).blockingGet();
-
-                if (!complianceResult.isCompliant()) {
-                    skipped++;
-                    updateProgressState(session, i + 1, sent, failed, skipped, progressCallback, total);
-                    continue;
-                }
-
-                long rateDelay = rateLimitManager.getDelayBeforeNextSend(recipient.getPhone());
-                long speedDelayMs = getSendSpeedDelayMs(session.sendSpeed);
-                long delay = Math.max(rateDelay, speedDelayMs);
-                if (delay > 0) {
-                    session = waitWithControl(session, delay);
-                    if (session.isStopped) {
-                        resultStatus = RESULT_STOPPED;
-                        break;
-                    }
-                    if (session.isPaused) {
-                        resultStatus = RESULT_PAUSED;
-                        break;
-                    }
-                }
-
-                message = formatMessage(template, recipient);
-
-                smsEntity = new SmsEntity();
-                smsEntity.phoneNumber = recipient.getPhone();
-                smsEntity.message = message;
-                smsEntity.status = "PENDING";
-                smsEntity.boxType = Telephony.Sms.MESSAGE_TYPE_SENT;
-                smsEntity.isRead = true;
-                smsEntity.campaignId = campaignId;
-                smsEntity.createdAt = System.currentTimeMillis();
-
-                smsId = smsDao.insertSms(smsEntity).blockingGet();
-                updateConversationSafe(smsEntity);
-
-                EnhancedDeliveryTracker.DeliveryIntents deliveryIntents =
-                        deliveryTracker.createDeliveryIntents(String.valueOf(smsId));
-
-                ArrayList<String> parts = smsManager.divideMessage(message);
-                if (parts.size() == 1) {
-                    smsManager.sendTextMessage(
-                            recipient.getPhone(),
-                            null,
-                            message,
-                            deliveryIntents != null ? deliveryIntents.sentIntent : null,
-                            deliveryIntents != null ? deliveryIntents.deliveredIntent : null
-                    );
-                } else {
-                    ArrayList<PendingIntent> sentIntents = null;
-                    ArrayList<PendingIntent> deliveredIntents = null;
-
-                    if (deliveryIntents != null) {
-                        sentIntents = new ArrayList<>(parts.size());
-                        deliveredIntents = new ArrayList<>(parts.size());
+                resultStatus = dispatchAcrossSims(session, recipients, startIndex, dispatchSims,
+                        preparation, persistence, control, progressCallback);
+            } finally {
+                persistence.close();
+            }
+            sent = session.sentCount;
+            failed = session.failedCount;
+            skipped = session.skippedCount;
+        } else {
+            int chunkStart = startIndex;
+            Future<List<PreparedMessage>> nextChunk = prepareChunkAsync(preparation, recipients, chunkStart, total);
 
-                        for (int j = 0; j < parts.size(); j++) {
-                            sentIntents.add(deliveryIntents.sentIntent);
-                            deliveredIntents.add(deliveryIntents.deliveredIntent);
+            try {
+                chunkLoop:
+                while (chunkStart < total) {
+                    List<PreparedMessage> chunk = awaitChunk(nextChunk, preparation, recipients, chunkStart, total);
+                    int chunkEnd = Math.min(total, chunkStart + PIPELINE_CHUNK_SIZE);
+                    // Prepare the following chunk while this one is being dispatched.
+                    nextChunk = chunkEnd < total ? prepareChunkAsync(preparation, recipients, chunkEnd, total) : null;
+                    RateLimitManager.Reservation slots = reserveSendSlots(-1, chunk);
+
+                    for (int c = 0; c < chunk.size(); c++) {
+                        PreparedMessage prepared = chunk.get(c);
+                        Recipient recipient = prepared.recipient;
+                        int i = prepared.index;
+
+                        String haltStatus = haltStatusOf(control);
+                        if (haltStatus != null) {
+                            resultStatus = haltStatus;
+                            slots.releaseFrom(c);
+                            persistence.release(chunk.subList(c, chunk.size()));
+                            break chunkLoop;
                         }
-                    }
-
-                    smsManager.sendMultipartTextMessage(
-                            recipient.getPhone(),
-                            null,
-                            parts,
-                            sentIntents,
-                            deliveredIntents
-                    );
-                }
 
-                rateLimitManager.recordSend(recipient.getPhone());
-
-                smsEntity.status = "SENT";
-                smsEntity.sentAt = System.currentTimeMillis();
-                smsDao.updateSms(smsEntity).blockingAwait();
-                syncSentToContentProviderSafe(smsId);
+                        if (prepared.isSkipped()) {
+                            skipped++;
+                            persistence.recordSkipped();
+                            updateProgressState(session, i + 1, sent, failed, skipped, progressCallback, total);
+                            continue;
+                        }
 
-                campaignDao.incrementSentCount(campaignId).blockingAwait();
+                        if (prepared.isReady()) {
+                            long speedDelayMs = getSendSpeedDelayMs(control.getSendSpeed());
+                            long delay = Math.max(slots.delayFor(c), speedDelayMs);
+                            if (delay > 0 && !waitWithControl(control, delay)) {
+                                resultStatus = haltStatusOf(control);
+                                slots.releaseFrom(c);
+                                persistence.release(chunk.subList(c, chunk.size()));
+                                break chunkLoop;
+                            }
+                        }
 
-                sent++;
+                        try {
+                            if (!prepared.isReady()) {
+                                throw new IllegalStateException(prepared.reason != null
+                                        ? prepared.reason : "Failed to prepare message");
+                            }
+                            dispatchPrepared(smsManager, prepared);
+                            persistence.recordSent(prepared.entity, System.currentTimeMillis());
+                            sent++;
+                        } catch (Exception e) {
+                            failed++;
+                            recordDispatchFailure(persistence, prepared, e, session.simSlot, campaignId);
+                        }
 
-            } catch (Exception e) {
-                failed++;
+                        updateProgressState(session, i + 1, sent, failed, skipped, progressCallback, total);
 
-                if (smsId != null && smsEntity != null) {
-                    smsEntity.status = "FAILED";
-                    smsEntity.errorMessage = e.getMessage();
-                    smsEntity.errorCode = "SEND_ERROR";
-                    smsEntity.sentAt = System.currentTimeMillis();
-                    try {
-                        smsDao.updateSms(smsEntity).blockingAwait();
-                    } catch (Exception updateError) {
-                        Log.e(TAG, "Failed to update failed SMS", updateError);
-                    }
-                } else if (message != null) {
-                    SmsEntity failedEntity = new SmsEntity();
-                    failedEntity.phoneNumber = recipient.getPhone();
-                    failedEntity.message = message;
-                    failedEntity.status = "FAILED";
-                    failedEntity.boxType = Telephony.Sms.MESSAGE_TYPE_SENT;
-                    failedEntity.isRead = true;
-                    failedEntity.errorMessage = e.getMessage();
-                    failedEntity.errorCode = "SEND_ERROR";
-                    failedEntity.campaignId = campaignId;
-                    failedEntity.createdAt = System.currentTimeMillis();
-                    failedEntity.sentAt = System.currentTimeMillis();
-                    try {
-                        smsDao.insertSms(failedEntity).blockingGet();
-                        updateConversationSafe(failedEntity);
-                    } catch (Exception insertError) {
-                        Log.e(TAG, "Failed to save failed SMS", insertError);
+                        long nowLoop = System.currentTimeMillis();
+                        if (nowLoop - lastPersistAt >= SESSION_PERSIST_INTERVAL_MS || i == total - 1) {
+                            // Rows must be at least as far along as the checkpoint that claims them.
+                            if (persistence.flush()) {
+                                persistSession(session);
+                                lastPersistAt = nowLoop;
+                            } else {
+                                // Keep the last checkpoint and halt until results can be recorded
+                                control.pause();
+                            }
+                        }
                     }
-                }
 
-                try {
-                    campaignDao.incrementFailedCount(campaignId).blockingAwait();
-                } catch (Exception updateError) {
-                    Log.e(TAG, "Failed to update campaign counts", updateError);
+                    chunkStart = chunkEnd;
                 }
-
-                if (message != null) {
-                    deliveryTracker.enqueueForRetryManual(recipient.getPhone(), message, session.simSlot, smsId, e.getMessage());
+            } finally {
+                if (nextChunk != null) {
+                    persistence.release(awaitChunk(nextChunk, null, recipients, 0, 0));
                 }
-
-                Log.e(TAG, "❌ Failed to send SMS to: " + recipient.getPhone(), e);
+                persistence.close();
             }
+        }
 
-            updateProgressState(session, i + 1, sent, failed, skipped, progressCallback, total);
-
-            nowLoop = System.currentTimeMillis();
-            if (nowLoop - lastPersistAt >= SESSION_PERSIST_INTERVAL_MS || i == total - 1) {
-                persistSession(session);
-                lastPersistAt = nowLoop;
-            }
+        boolean resultsRecorded = !persistence.isFailing();
+        if (!resultsRecorded && RESULT_COMPLETED.equals(resultStatus)) {
+            // Some outcomes never reached the database; don't close the campaign out
+            resultStatus = RESULT_PAUSED;
         }
 
         session.sentCount = sent;
         session.failedCount = failed;
         session.skippedCount = skipped;
+        if (control.getSendSpeed() > 0) {
+            session.sendSpeed = control.getSendSpeed();
+        }
 
         if (RESULT_COMPLETED.equals(resultStatus)) {
             session.isActive = false;
@@ -695,7 +717,8 @@ public class BulkSmsService {
             uploadPersistence.markUploadCompleted(session.fileId, sent, failed);
         } else if (RESULT_PAUSED.equals(resultStatus)) {
             session.processingStatus = "paused";
-            session.isPaused = true;
+            // A system stop leaves the session unpaused so the rescheduled run picks it up.
+            session.isPaused = !control.isSuspendedOnly();
             try {
                 campaignDao.pauseCampaign(campaignId).blockingAwait();
             } catch (Exception e) {
@@ -712,49 +735,424 @@ public class BulkSmsService {
             }
         }
 
-        persistSession(session);
+        if (resultsRecorded) {
+            persistSession(session);
+        } else {
+            Log.e(TAG, "Send results unrecorded, keeping the last session checkpoint");
+        }
 
         return new BulkSendResult(resultStatus, sent, failed, skipped, total, campaignId,
                 session.lastProcessedIndex, null);
     }
 
-    private UploadSession refreshSessionFlags(@NonNull UploadSession session) {
+    /**
+     * SIM slots a session should be dispatched on. Empty unless the session asked for
+     * multi-SIM dispatch or already has per-SIM lanes to resume.
+     */
+    @NonNull
+    private List<Integer> resolveDispatchSims(@NonNull UploadSession session) {
+        boolean hasLanes = session.simLanes != null && !session.simLanes.isEmpty();
+        if (!session.multiSimDispatch && !hasLanes) {
+            return Collections.emptyList();
+        }
+        List<Integer> slots = new ArrayList<>();
+        for (SimSlotInfo info : getAvailableSimSlots()) {
+            if (!slots.contains(info.getSlotIndex())) {
+                slots.add(info.getSlotIndex());
+            }
+        }
+        if (slots.isEmpty()) {
+            slots.add(session.simSlot);
+        }
+        return slots;
+    }
+
+    /**
+     * Multi-SIM dispatch: the session's remaining recipients are split into one lane per SIM,
+     * and every SIM works through its lanes on its own thread with its own rate budget.
+     * The calling thread watches the control flags and checkpoints per-SIM progress so a
+     * paused session resumes each lane where it stopped.
+     */
+    @NonNull
+    private String dispatchAcrossSims(@NonNull UploadSession session,
+                                      @NonNull List<Recipient> recipients,
+                                      int startIndex,
+                                      @NonNull List<Integer> simSlots,
+                                      @NonNull SendPreparationStage preparation,
+                                      @NonNull SendPersistenceStage persistence,
+                                      @NonNull CampaignControl.Channel control,
+                                      @Nullable ProgressCallback progressCallback) {
+        int total = recipients.size();
+        List<SimLaneProgress> lanes = new ArrayList<>();
+        if (session.simLanes != null && !session.simLanes.isEmpty()) {
+            for (SimLaneProgress lane : session.simLanes) {
+                lanes.add(lane.copy());
+            }
+        } else {
+            lanes = SimLanePlanner.split(startIndex, total, simSlots);
+        }
+        SimLanePlanner.reassign(lanes, simSlots);
+
+        MultiSimRun run = new MultiSimRun(session, lanes, total, control, progressCallback);
+        run.applyTo(session);
+        persistSession(session);
+
+        Map<Integer, List<SimLaneProgress>> work = SimLanePlanner.bySimSlot(lanes);
+        if (work.isEmpty()) {
+            return RESULT_COMPLETED;
+        }
+        Log.d(TAG, "Dispatching " + (total - SimLanePlanner.processedIndex(lanes))
+                + " recipients across SIM slots " + work.keySet());
+
+        ExecutorService workers = Executors.newFixedThreadPool(work.size());
+        CountDownLatch finished = new CountDownLatch(work.size());
+        for (Map.Entry<Integer, List<SimLaneProgress>> entry : work.entrySet()) {
+            int simSlot = entry.getKey();
+            List<SimLaneProgress> simLanes = entry.getValue();
+            workers.execute(() -> {
+                try {
+                    runSimWorker(run, simSlot, simLanes, recipients, preparation, persistence);
+                } catch (Exception e) {
+                    Log.e(TAG, "SIM slot " + simSlot + " worker failed", e);
+                    control.pause();
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+        workers.shutdown();
+
+        boolean interrupted = false;
         try {
-            if (session.fileId != null) {
-                UploadSession latest = uploadPersistence.loadSessionSync(session.fileId);
-                if (latest != null) {
-                    session.isPaused = latest.isPaused;
-                    session.isStopped = latest.isStopped;
-                    if (latest.sendSpeed > 0) {
-                        session.sendSpeed = latest.sendSpeed;
+            while (true) {
+                try {
+                    if (finished.await(SESSION_PERSIST_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                        break;
                     }
+                } catch (InterruptedException e) {
+                    // Workers must still hand back their prepared rows, so keep waiting for them.
+                    interrupted = true;
+                    control.stop();
+                    continue;
+                }
+
+                run.applyTo(session);
+                // Rows must be at least as far along as the checkpoint that claims them.
+                if (persistence.flush()) {
+                    persistSession(session);
+                } else {
+                    // Keep the last checkpoint and halt the workers until results can be recorded
+                    control.pause();
                 }
             }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to refresh session flags", e);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        run.applyTo(session);
+        String haltStatus = haltStatusOf(control);
+        if (haltStatus != null) {
+            return haltStatus;
         }
-        return session;
+        return run.isComplete() ? RESULT_COMPLETED : RESULT_PAUSED;
     }
 
-    private UploadSession waitWithControl(@NonNull UploadSession session, long delayMs) {
-        long remaining = delayMs;
-        while (remaining > 0) {
-            long chunk = Math.min(CONTROL_CHECK_INTERVAL_MS, remaining);
+    /**
+     * Work through one SIM's lanes in order, pacing sends with that SIM's rate budget.
+     */
+    private void runSimWorker(@NonNull MultiSimRun run,
+                              int simSlot,
+                              @NonNull List<SimLaneProgress> simLanes,
+                              @NonNull List<Recipient> recipients,
+                              @NonNull SendPreparationStage preparation,
+                              @NonNull SendPersistenceStage persistence) {
+        SmsManager smsManager = getSmsManagerForSlot(simSlot);
+        Log.d(TAG, "SIM slot " + simSlot + " worker started with " + simLanes.size() + " lane(s)");
+
+        for (SimLaneProgress lane : simLanes) {
+            int laneEnd = lane.endIndex;
+            int chunkStart = lane.nextIndex;
+            Future<List<PreparedMessage>> nextChunk = chunkStart < laneEnd
+                    ? prepareChunkAsync(preparation, recipients, chunkStart, laneEnd) : null;
             try {
-                Thread.sleep(chunk);
-            } catch (InterruptedException e) {
+                while (chunkStart < laneEnd) {
+                    List<PreparedMessage> chunk = awaitChunk(nextChunk, preparation, recipients, chunkStart, laneEnd);
+                    int chunkEnd = Math.min(laneEnd, chunkStart + PIPELINE_CHUNK_SIZE);
+                    nextChunk = chunkEnd < laneEnd ? prepareChunkAsync(preparation, recipients, chunkEnd, laneEnd) : null;
+                    RateLimitManager.Reservation slots = reserveSendSlots(simSlot, chunk);
+
+                    for (int c = 0; c < chunk.size(); c++) {
+                        PreparedMessage prepared = chunk.get(c);
+
+                        if (run.control.isHalted()) {
+                            slots.releaseFrom(c);
+                            persistence.release(chunk.subList(c, chunk.size()));
+                            return;
+                        }
+
+                        if (prepared.isSkipped()) {
+                            persistence.recordSkipped();
+                            run.onProcessed(lane, prepared.index, MultiSimRun.SKIPPED);
+                            continue;
+                        }
+
+                        if (prepared.isReady()) {
+                            long delay = Math.max(slots.delayFor(c), getSendSpeedDelayMs(run.control.getSendSpeed()));
+                            if (delay > 0 && !waitWithControl(run.control, delay)) {
+                                slots.releaseFrom(c);
+                                persistence.release(chunk.subList(c, chunk.size()));
+                                return;
+                            }
+                        }
+
+                        int outcome;
+                        try {
+                            if (!prepared.isReady()) {
+                                throw new IllegalStateException(prepared.reason != null
+                                        ? prepared.reason : "Failed to prepare message");
+                            }
+                            dispatchPrepared(smsManager, prepared);
+                            persistence.recordSent(prepared.entity, System.currentTimeMillis());
+                            outcome = MultiSimRun.SENT;
+                        } catch (Exception e) {
+                            recordDispatchFailure(persistence, prepared, e, simSlot, run.campaignId);
+                            outcome = MultiSimRun.FAILED;
+                        }
+                        run.onProcessed(lane, prepared.index, outcome);
+                    }
+
+                    chunkStart = chunkEnd;
+                }
+            } finally {
+                if (nextChunk != null) {
+                    persistence.release(awaitChunk(nextChunk, null, recipients, 0, 0));
+                }
+            }
+        }
+    }
+
+    private void recordDispatchFailure(@NonNull SendPersistenceStage persistence,
+                                       @NonNull PreparedMessage prepared,
+                                       @NonNull Exception error,
+                                       int simSlot,
+                                       long campaignId) {
+        String phone = prepared.recipient.getPhone();
+        if (prepared.message != null) {
+            SmsEntity failedEntity = prepared.entity != null
+                    ? prepared.entity
+                    : newOutgoingEntity(phone, prepared.message, campaignId);
+            persistence.recordFailed(failedEntity, error.getMessage(), System.currentTimeMillis());
+            Long smsId = prepared.getSmsId() > 0 ? prepared.getSmsId() : null;
+            deliveryTracker.enqueueForRetryManual(phone, prepared.message, simSlot, smsId, error.getMessage());
+        } else {
+            persistence.recordFailedWithoutMessage();
+        }
+        Log.e(TAG, "❌ Failed to send SMS to: " + phone, error);
+    }
+
+    /**
+     * Shared state of one multi-SIM run. Lane progress and counters only change under the
+     * run's lock, so checkpoints and progress callbacks always see a consistent view.
+     */
+    private static final class MultiSimRun {
+        static final int SENT = 0;
+        static final int FAILED = 1;
+        static final int SKIPPED = 2;
+
+        final long campaignId;
+        final CampaignControl.Channel control;
+        private final List<SimLaneProgress> lanes;
+        private final int total;
+        @Nullable
+        private final ProgressCallback callback;
+        private int sent;
+        private int failed;
+        private int skipped;
+
+        MultiSimRun(@NonNull UploadSession session, @NonNull List<SimLaneProgress> lanes, int total,
+                    @NonNull CampaignControl.Channel control, @Nullable ProgressCallback callback) {
+            this.campaignId = session.campaignId;
+            this.control = control;
+            this.lanes = lanes;
+            this.total = total;
+            this.callback = callback;
+            this.sent = Math.max(0, session.sentCount);
+            this.failed = Math.max(0, session.failedCount);
+            this.skipped = Math.max(0, session.skippedCount);
+        }
+
+        synchronized void onProcessed(@NonNull SimLaneProgress lane, int index, int outcome) {
+            lane.nextIndex = index + 1;
+            if (outcome == SENT) {
+                lane.sentCount++;
+                sent++;
+            } else if (outcome == FAILED) {
+                lane.failedCount++;
+                failed++;
+            } else {
+                lane.skippedCount++;
+                skipped++;
+            }
+            if (callback != null) {
+                callback.onProgress(SimLanePlanner.processedIndex(lanes), total);
+            }
+        }
+
+        synchronized boolean isComplete() {
+            for (SimLaneProgress lane : lanes) {
+                if (!lane.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Copy the current progress into the session for persisting.
+         */
+        synchronized void applyTo(@NonNull UploadSession session) {
+            List<SimLaneProgress> copies = new ArrayList<>(lanes.size());
+            for (SimLaneProgress lane : lanes) {
+                copies.add(lane.copy());
+            }
+            session.simLanes = copies;
+            session.lastProcessedIndex = SimLanePlanner.processedIndex(lanes);
+            session.sentCount = sent;
+            session.failedCount = failed;
+            session.skippedCount = skipped;
+            session.processingStatus = "sending";
+        }
+    }
+
+    private Future<List<PreparedMessage>> prepareChunkAsync(@NonNull SendPreparationStage preparation,
+                                                            @NonNull List<Recipient> recipients,
+                                                            int fromIndex, int total) {
+        int toIndex = Math.min(total, fromIndex + PIPELINE_CHUNK_SIZE);
+        try {
+            return executorService.submit(() -> preparation.prepare(recipients, fromIndex, toIndex));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(preparation.prepare(recipients, fromIndex, toIndex));
+        }
+    }
+
+    /**
+     * Wait for a prepared chunk. The wait is not interruptible so rows inserted by the
+     * preparation stage are always handed back to the caller and can be released.
+     */
+    @NonNull
+    private List<PreparedMessage> awaitChunk(@NonNull Future<List<PreparedMessage>> future,
+                                             @Nullable SendPreparationStage preparation,
+                                             @NonNull List<Recipient> recipients,
+                                             int fromIndex, int total) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Chunk preparation failed", e);
+                    if (preparation == null) {
+                        return Collections.emptyList();
+                    }
+                    return preparation.prepare(recipients, fromIndex,
+                            Math.min(total, fromIndex + PIPELINE_CHUNK_SIZE));
+                }
+            }
+        } finally {
+            if (interrupted) {
                 Thread.currentThread().interrupt();
-                session.isStopped = true;
-                break;
             }
-            remaining -= chunk;
+        }
+    }
 
-            session = refreshSessionFlags(session);
-            if (session.isStopped || session.isPaused) {
-                break;
+    /**
+     * Dispatch stage: hand a prepared message to SmsManager. No database work happens here.
+     */
+    private void dispatchPrepared(@NonNull SmsManager smsManager, @NonNull PreparedMessage prepared) {
+        String phone = prepared.recipient.getPhone();
+        String message = prepared.message;
+
+        ArrayList<String> parts = smsManager.divideMessage(message);
+        EnhancedDeliveryTracker.DeliveryIntents deliveryIntents =
+                deliveryTracker.createDeliveryIntents(String.valueOf(prepared.getSmsId()), parts.size());
+
+        if (parts.size() == 1) {
+            smsManager.sendTextMessage(
+                    phone,
+                    null,
+                    message,
+                    deliveryIntents != null ? deliveryIntents.sentIntent : null,
+                    deliveryIntents != null ? deliveryIntents.deliveredIntent : null
+            );
+            return;
+        }
+
+        smsManager.sendMultipartTextMessage(
+                phone,
+                null,
+                parts,
+                deliveryIntents != null ? deliveryIntents.sentIntents : null,
+                deliveryIntents != null ? deliveryIntents.deliveredIntents : null
+        );
+    }
+
+    /**
+     * Runs on the persistence writer thread once a batch of send outcomes is committed.
+     */
+    private void onSendBatchPersisted(@NonNull List<SmsEntity> written) {
+        List<SmsEntity> sentMessages = new ArrayList<>(written.size());
+        for (SmsEntity smsEntity : written) {
+            updateConversationSafe(smsEntity);
+            if ("SENT".equals(smsEntity.status)) {
+                sentMessages.add(smsEntity);
             }
         }
-        return session;
+        if (!sentMessages.isEmpty()) {
+            runInBackground(bidirectionalSmsSync.syncSentMessagesToContentProvider(sentMessages),
+                    "Failed to sync sent messages to provider");
+        }
+    }
+
+    @NonNull
+    private SmsEntity newOutgoingEntity(@NonNull String phone, @NonNull String message, long campaignId) {
+        SmsEntity smsEntity = new SmsEntity();
+        smsEntity.phoneNumber = phone;
+        smsEntity.message = message;
+        smsEntity.status = "PENDING";
+        smsEntity.boxType = Telephony.Sms.MESSAGE_TYPE_SENT;
+        smsEntity.isRead = true;
+        smsEntity.campaignId = campaignId;
+        smsEntity.createdAt = System.currentTimeMillis();
+        return smsEntity;
+    }
+
+    /**
+     * Result status for a halted run, or null while the run may continue.
+     */
+    @Nullable
+    private static String haltStatusOf(@NonNull CampaignControl.Channel control) {
+        if (!control.isHalted()) {
+            return null;
+        }
+        return control.isStopped() ? RESULT_STOPPED : RESULT_PAUSED;
+    }
+
+    /**
+     * Sleep for a send delay, waking early on pause/stop.
+     * @return true if sending may continue
+     */
+    private boolean waitWithControl(@NonNull CampaignControl.Channel control, long delayMs) {
+        try {
+            return control.await(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            control.stop();
+            return false;
+        }
     }
 
     private void updateProgressState(@NonNull UploadSession session, int processed, int sent,
@@ -773,11 +1171,8 @@ public class BulkSmsService {
 
     private void persistSession(@NonNull UploadSession session) {
         try {
-            if (uploadPersistence.isActiveSession(session.fileId)) {
-                uploadPersistence.saveCurrentUploadSync(session);
-            } else {
-                uploadPersistence.saveSessionSync(session);
-            }
+            // The send loop only moves counters and flags; the recipient list is never rewritten here.
+            uploadPersistence.checkpointSessionSync(session);
         } catch (Exception e) {
             Log.w(TAG, "Failed to persist session", e);
         }
@@ -826,31 +1221,62 @@ public class BulkSmsService {
         return 60000L / Math.max(1, sendSpeedPerMinute);
     }
 
+    /**
+     * Reserve carrier rate-limit slots for the ready messages of a chunk up front, so dispatch
+     * only waits for each slot instead of re-checking the limiter per message.
+     * simSlot is negative for the shared single-SIM trackers.
+     */
+    @NonNull
+    private RateLimitManager.Reservation reserveSendSlots(int simSlot, @NonNull List<PreparedMessage> chunk) {
+        List<String> phones = new ArrayList<>(chunk.size());
+        for (PreparedMessage prepared : chunk) {
+            phones.add(prepared.isReady() ? prepared.recipient.getPhone() : null);
+        }
+        return rateLimitManager.reserve(simSlot, phones);
+    }
+
     /**
      * Format message with recipient variables
      */
     @NonNull
     public String formatMessage(@NonNull String template, @NonNull Recipient recipient) {
-        String formatted = template;
+        return CompiledTemplate.placeholders(template).render(new RecipientResolver().bind(recipient));
+    }
 
-        // Replace placeholders
-        if (recipient.getName() != null) {
-            formatted = formatted.replace("{name}", recipient.getName());
-        }
-        formatted = formatted.replace("{phone}", recipient.getPhone());
+    /**
+     * Template values for {@link #formatMessage}; rebindable so a campaign-wide scan can reuse one
+     */
+    private static final class RecipientResolver implements CompiledTemplate.Resolver {
+        private Recipient recipient;
 
-        if (recipient.getAmount() != null) {
-            formatted = formatted.replace("{amount}", recipient.getAmount().toString());
+        RecipientResolver bind(Recipient recipient) {
+            this.recipient = recipient;
+            return this;
         }
 
-        // Replace custom fields
-        if (recipient.getFields() != null) {
-            for (Map.Entry<String, String> entry : recipient.getFields().entrySet()) {
-                formatted = formatted.replace("{" + entry.getKey() + "}", entry.getValue());
+        @Nullable
+        @Override
+        public String variable(@NonNull String key) {
+            switch (key) {
+                case "name":
+                    if (recipient.getName() != null) {
+                        return recipient.getName();
+                    }
+                    break;
+                case "phone":
+                    return recipient.getPhone();
+                case "amount":
+                    if (recipient.getAmount() != null) {
+                        return recipient.getAmount().toString();
+                    }
+                    break;
+                default:
+                    break;
             }
+            // Custom fields; unknown placeholders are left as written
+            Map<String, String> fields = recipient.getFields();
+            return fields != null ? fields.get(key) : null;
         }
-
-        return formatted;
     }
 
     /**
@@ -978,6 +1404,30 @@ public class BulkSmsService {
         }
     }
 
+    /**
+     * Stream an import file straight into the session store under {@code sessionId}.
+     * Rows are mapped, validated and de-duplicated as they are read; the returned result
+     * holds a memory-mapped view of the stored recipients rather than an in-memory list.
+     */
+    @NonNull
+    public ExcelParser.ParseResult importFileToSession(@NonNull Uri uri, @NonNull String fileName,
+                                                       @NonNull String sessionId) throws IOException {
+        // Spreadsheets need random access, so the content is still spooled to disk first
+        File tempFile = copyUriToTempFile(uri, fileName);
+
+        try (UploadPersistenceService.RecipientImport recipientImport =
+                     uploadPersistence.beginRecipientImport(sessionId)) {
+            ExcelParser.ImportSummary summary = ExcelParser.streamImportFile(
+                    tempFile.getAbsolutePath(), fileName, recipientImport::append);
+            List<Recipient> recipients = recipientImport.commit();
+            return new ExcelParser.ParseResult(recipients, summary.mapping, new ArrayList<>(), summary);
+        } finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
     /**
      * Parse SMS message to extract transaction information
      */
@@ -1041,43 +1491,56 @@ public class BulkSmsService {
     @NonNull
     public String formatMessageWithDynamicPlaceholders(@NonNull String template, @NonNull Recipient recipient) {
         try {
-            String result = template;
-            
-            // Built-in placeholders (backward compatible)
-            result = result.replace("{name}", recipient.getName() != null ? recipient.getName() : "");
-            result = result.replace("{phone}", recipient.getPhone() != null ? recipient.getPhone() : "");
-            result = result.replace("{amount}", recipient.getAmount() != null ? 
-                String.format("%,.2f", recipient.getAmount()) : "0.00");
-            
-            // Dynamic placeholders from recipient fields
-            if (recipient.getFields() != null) {
-                for (Map.Entry<String, String> entry : recipient.getFields().entrySet()) {
-                    String key = entry.getKey();
-                    String value = entry.getValue();
-                    
-                    if (value != null && !value.isEmpty()) {
-                        // Format numeric values
-                        try {
-                            double numValue = Double.parseDouble(value);
-                            value = String.format("%,.2f", numValue);
-                        } catch (NumberFormatException e) {
-                            // Keep as string if not numeric
-                        }
-                        
-                        result = result.replace("{" + key + "}", value);
-                    } else {
-                        result = result.replace("{" + key + "}", "");
-                    }
+            return CompiledTemplate.placeholders(template).render(key -> {
+                // Built-in placeholders (backward compatible)
+                switch (key) {
+                    case "name":
+                        return recipient.getName() != null ? recipient.getName() : "";
+                    case "phone":
+                        return recipient.getPhone() != null ? recipient.getPhone() : "";
+                    case "amount":
+                        return recipient.getAmount() != null
+                                ? String.format("%,.2f", recipient.getAmount()) : "0.00";
+                    default:
+                        break;
                 }
-            }
-            
-            return result;
+
+                // Dynamic placeholders from recipient fields
+                Map<String, String> fields = recipient.getFields();
+                if (fields == null || !fields.containsKey(key)) {
+                    return null;
+                }
+                String value = fields.get(key);
+                if (value == null || value.isEmpty()) {
+                    return "";
+                }
+                return looksNumeric(value) ? formatNumericField(value) : value;
+            });
         } catch (Exception e) {
             Log.e(TAG, "Error formatting message", e);
             return template;
         }
     }
 
+    /**
+     * Cheap pre-check so plain text fields skip the NumberFormatException path
+     */
+    private static boolean looksNumeric(@NonNull String value) {
+        char first = value.charAt(0);
+        return (first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.'
+                || first == 'N' || first == 'I' || Character.isWhitespace(first);
+    }
+
+    @NonNull
+    private static String formatNumericField(@NonNull String value) {
+        try {
+            return String.format("%,.2f", Double.parseDouble(value));
+        } catch (NumberFormatException e) {
+            // Keep as string if not numeric
+            return value;
+        }
+    }
+
     /**
      * Extract placeholders from template
      */
@@ -1225,7 +1688,7 @@ public class BulkSmsService {
         File tempFile = new File(tempDir, "temp_" + System.currentTimeMillis() + "_" + fileName);
         
         try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
-            byte[] buffer = new byte[4096];
+            byte[] buffer = new byte[64 * 1024];
             int bytesRead;
             while ((bytesRead = inputStream.read(buffer)) != -1) {
                 outputStream.write(buffer, 0, bytesRead);
@@ -1336,33 +1799,62 @@ public class BulkSmsService {
      */
     @NonNull
     public MessageAnalysis analyzeMessage(@NonNull String message) {
-        int originalLength = message.length();
-        boolean willConcatenate = originalLength > 160;
-        int estimatedParts = willConcatenate ? (int) Math.ceil(originalLength / 153.0) : 1;
-        
+        SmsSegmentCounter counter = new SmsSegmentCounter().append(message);
+        int estimatedParts = counter.getParts();
+        boolean willConcatenate = estimatedParts > 1;
+
         DeliveryRisk risk = DeliveryRisk.LOW;
         String suggestion = "";
-        
-        if (originalLength > 160) {
+
+        if (!counter.isGsm7()) {
+            char offending = (char) counter.getFirstNonGsmChar();
+            suggestion = (Character.isSurrogate(offending) ? "An emoji" : "'" + offending + "'")
+                    + " forces Unicode encoding (70 characters per SMS instead of 160)";
+        }
+
+        if (willConcatenate) {
             risk = DeliveryRisk.MEDIUM;
-            suggestion = "Consider shortening message to avoid concatenation";
+            if (counter.isGsm7()) {
+                suggestion = "Consider shortening message to avoid concatenation";
+            }
         }
-        
-        if (originalLength > 480) {
+
+        if (estimatedParts > 3) {
             risk = DeliveryRisk.HIGH;
             suggestion = "Message is very long, consider splitting into multiple messages";
         }
 
-        return new MessageAnalysis(originalLength, willConcatenate, estimatedParts, risk, suggestion);
+        return new MessageAnalysis(message.length(), willConcatenate, estimatedParts, risk, suggestion,
+                counter.getEncoding());
     }
 
     /**
-     * Estimate send time for bulk SMS
+     * Forecast parts, cost and duration of sending template to every recipient, without
+     * rendering any message. Duration accounts for the speed setting and each carrier's
+     * rate limit; the worstRows longest messages are reported by recipient index.
      */
-    public long estimateSendTime(int recipientCount, int sendSpeedPerMinute) {
-        // Base time + time per recipient
-        long delay = getSendSpeedDelayMs(sendSpeedPerMinute);
-        return 1000 + (recipientCount * delay);
+    @NonNull
+    public CampaignForecaster.Forecast forecastCampaign(@NonNull List<Recipient> recipients,
+                                                        @NonNull String template,
+                                                        int sendSpeedPerMinute,
+                                                        double costPerPart,
+                                                        int worstRows) {
+        RecipientResolver resolver = new RecipientResolver();
+        return CampaignForecaster.forecast(CompiledTemplate.placeholders(template), recipients,
+                resolver::bind,
+                new CampaignForecaster.Pacing() {
+                    @NonNull
+                    @Override
+                    public String carrierOf(String phone) {
+                        return rateLimitManager.getCarrier(phone);
+                    }
+
+                    @Override
+                    public long intervalMs(@NonNull String carrier) {
+                        return rateLimitManager.getSendIntervalMs(carrier);
+                    }
+                },
+                getSendSpeedDelayMs(sendSpeedPerMinute), costPerPart, worstRows);
     }
 
     /**
@@ -1371,6 +1863,7 @@ public class BulkSmsService {
      * Only call shutdown if explicitly needed
      */
     public void shutdown() {
+        backgroundWrites.clear();
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
@@ -1440,14 +1933,16 @@ public class BulkSmsService {
         private final int estimatedParts;
         private final DeliveryRisk deliveryRisk;
         private final String suggestedOptimization;
+        private final String encoding;
 
         public MessageAnalysis(int originalLength, boolean willConcatenate, int estimatedParts,
-                             DeliveryRisk deliveryRisk, String suggestedOptimization) {
+                             DeliveryRisk deliveryRisk, String suggestedOptimization, String encoding) {
             this.originalLength = originalLength;
             this.willConcatenate = willConcatenate;
             this.estimatedParts = estimatedParts;
             this.deliveryRisk = deliveryRisk;
             this.suggestedOptimization = suggestedOptimization;
+            this.encoding = encoding;
         }
 
         public int getOriginalLength() { return originalLength; }
@@ -1455,6 +1950,7 @@ public class BulkSmsService {
         public int getEstimatedParts() { return estimatedParts; }
         public DeliveryRisk getDeliveryRisk() { return deliveryRisk; }
         public String getSuggestedOptimization() { return suggestedOptimization; }
+        public String getEncoding() { return encoding; }
     }
 
     public enum DeliveryRisk {
@@ -17,9 +17,11 @@ import com.afriserve.smsmanager.data.entity.ScheduledCampaignEntity;
 import com.afriserve.smsmanager.data.compliance.RateLimitManager;
 import com.afriserve.smsmanager.data.compliance.ComplianceManager;
 import com.afriserve.smsmanager.data.tracking.EnhancedDeliveryTracker;
+import com.afriserve.smsmanager.data.persistence.RecipientOverlayList;
 import com.afriserve.smsmanager.data.persistence.UploadPersistenceService;
 import com.afriserve.smsmanager.data.queue.SmsQueueManager;
 import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.UploadSession;
+import com.afriserve.smsmanager.data.pipeline.CampaignControl;
 import com.afriserve.smsmanager.data.parser.ExcelParser;
 import com.afriserve.smsmanager.data.parser.TemplateVariableExtractor;
 import com.afriserve.smsmanager.data.templates.TemplateManager;
@@ -68,6 +70,7 @@ public class BulkSmsViewModel extends ViewModel {
     private final UploadPersistenceService uploadPersistence;
     private final SmsQueueManager queueManager;
     private final TemplateManager templateManager;
+    private final CampaignControl campaignControl;
     private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private final ScheduledExecutorService previewExecutor = Executors.newSingleThreadScheduledExecutor();
     private ScheduledFuture<?> deliveryTrackingFuture;
@@ -97,6 +100,7 @@ public class BulkSmsViewModel extends ViewModel {
     private final MutableLiveData<Boolean> isSendingLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<Integer> sendSpeedLiveData = new MutableLiveData<>(300);
     private final MutableLiveData<Integer> simSlotLiveData = new MutableLiveData<>(1);
+    private final MutableLiveData<Boolean> multiSimDispatchLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<UploadSession> activeSessionLiveData = new MutableLiveData<>();
     private final MutableLiveData<Boolean> resumePromptLiveData = new MutableLiveData<>(false);
     private final MutableLiveData<com.afriserve.smsmanager.data.compliance.RateLimitManager.RateLimitStats> rateLimitStatsLiveData = new MutableLiveData<>();
@@ -121,7 +125,8 @@ public class BulkSmsViewModel extends ViewModel {
         EnhancedDeliveryTracker deliveryTracker,
         UploadPersistenceService uploadPersistence,
         SmsQueueManager queueManager,
-        TemplateManager templateManager
+        TemplateManager templateManager,
+        CampaignControl campaignControl
     ) {
         this.application = application;
         this.bulkSmsService = bulkSmsService;
@@ -133,6 +138,7 @@ public class BulkSmsViewModel extends ViewModel {
         this.uploadPersistence = uploadPersistence;
         this.queueManager = queueManager;
         this.templateManager = templateManager;
+        this.campaignControl = campaignControl;
         
         // Initialize with empty data
         recipientsLiveData.postValue(new ArrayList<>());
@@ -206,6 +212,7 @@ public class BulkSmsViewModel extends ViewModel {
     public LiveData<Integer> getSendSpeed() { return sendSpeedLiveData; }
     public LiveData<Integer> getSimSlot() { return simSlotLiveData; }
     public LiveData<Integer> getSelectedSimSlot() { return simSlotLiveData; }
+    public LiveData<Boolean> getMultiSimDispatch() { return multiSimDispatchLiveData; }
     public LiveData<UploadSession> getActiveSession() { return activeSessionLiveData; }
     public LiveData<Boolean> getResumePrompt() { return resumePromptLiveData; }
     public LiveData<com.afriserve.smsmanager.data.compliance.RateLimitManager.RateLimitStats> getRateLimitStats() { return rateLimitStatsLiveData; }
@@ -217,12 +224,13 @@ public class BulkSmsViewModel extends ViewModel {
         isLoadingLiveData.postValue(true);
         errorLiveData.postValue(null);
         final String fileName = FileUtils.getFileNameFromUri(application, fileUri);
+        final String sessionId = UUID.randomUUID().toString();
 
         disposables.add(
             io.reactivex.rxjava3.core.Single.fromCallable(() -> {
                 try {
-                    // Use existing parseImportFile which returns an ExcelParser.ParseResult
-                    return bulkSmsService.parseImportFile(fileUri, fileName);
+                    // Rows stream straight into the session store; recipients come back memory-mapped
+                    return bulkSmsService.importFileToSession(fileUri, fileName, sessionId);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
@@ -238,7 +246,7 @@ public class BulkSmsViewModel extends ViewModel {
                     statusLiveData.postValue("File uploaded successfully: " + res.recipients.size() + " recipients");
                     detectedColumnsLiveData.postValue(res.mapping);
                     updateTemplateVariables();
-                    initSessionFromImport(fileName, res);
+                    initSessionFromImport(sessionId, fileName, res);
                 },
                 error -> {
                     isLoadingLiveData.postValue(false);
@@ -250,18 +258,21 @@ public class BulkSmsViewModel extends ViewModel {
         );
     }
 
-    private void initSessionFromImport(String fileName, ExcelParser.ParseResult res) {
+    private void initSessionFromImport(String sessionId, String fileName, ExcelParser.ParseResult res) {
         UploadSession session = new UploadSession();
-        session.fileId = UUID.randomUUID().toString();
+        session.fileId = sessionId;
         session.fileName = fileName;
         session.recipients = res.recipients;
         session.totalRecords = res.recipients != null ? res.recipients.size() : 0;
         session.validRecords = session.totalRecords;
-        session.invalidRecords = 0;
+        session.invalidRecords = res.summary != null
+            ? res.summary.invalidRows + res.summary.duplicateRows : 0;
+        session.headers = res.summary != null ? new ArrayList<>(res.summary.headers) : null;
         session.processingStatus = "ready";
         session.template = currentTemplate;
         session.sendSpeed = sendSpeedLiveData.getValue() != null ? sendSpeedLiveData.getValue() : 300;
         session.simSlot = simSlotLiveData.getValue() != null ? simSlotLiveData.getValue() : 0;
+        session.multiSimDispatch = Boolean.TRUE.equals(multiSimDispatchLiveData.getValue());
         session.campaignName = "Bulk Campaign";
         session.campaignType = "MARKETING";
 
@@ -433,7 +444,7 @@ public class BulkSmsViewModel extends ViewModel {
         disposables.add(
             Observable.fromIterable(currentData)
                 .flatMapSingle(recipient -> complianceManager.checkCompliance(recipient.getPhone(), "MARKETING")
-                    .onErrorReturnItem(new ComplianceManager.ComplianceResult()))
+                    .onErrorReturn(error -> uncheckedResult(error)))
                 .toList()
                 .subscribeOn(io.reactivex.rxjava3.schedulers.Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
@@ -459,6 +470,16 @@ public class BulkSmsViewModel extends ViewModel {
         );
     }
     
+    /**
+     * A number that could not be screened counts as non-compliant, never as cleared.
+     */
+    private static ComplianceManager.ComplianceResult uncheckedResult(Throwable error) {
+        ComplianceManager.ComplianceResult result = new ComplianceManager.ComplianceResult();
+        result.setCompliant(false);
+        result.setReason("Compliance check unavailable: " + error.getMessage());
+        return result;
+    }
+    
     // Sending operations
     public void startSending() {
         if (currentData == null || currentData.isEmpty()) {
@@ -591,12 +612,14 @@ public class BulkSmsViewModel extends ViewModel {
             session.fileName = "Bulk Campaign";
         }
 
-        session.recipients = new ArrayList<>(currentData);
+        // The mapped list (or its edit overlay) goes to the session as is; never copy it to the heap
+        session.recipients = currentData;
         session.totalRecords = currentData.size();
         session.validRecords = currentData.size();
         session.invalidRecords = 0;
         session.template = currentTemplate;
         session.simSlot = simSlotLiveData.getValue() != null ? simSlotLiveData.getValue() : 0;
+        session.multiSimDispatch = Boolean.TRUE.equals(multiSimDispatchLiveData.getValue());
         session.sendSpeed = sendSpeedLiveData.getValue() != null ? sendSpeedLiveData.getValue() : 300;
         session.campaignName = session.campaignName != null ? session.campaignName : "Bulk Campaign";
         session.campaignType = session.campaignType != null ? session.campaignType : "MARKETING";
@@ -729,6 +752,9 @@ public class BulkSmsViewModel extends ViewModel {
             currentSession.isPaused = true;
             currentSession.processingStatus = "paused";
             uploadPersistence.saveCurrentUploadSync(currentSession);
+            if (currentSession.fileId != null) {
+                campaignControl.pause(currentSession.fileId);
+            }
         }
         isPausedLiveData.postValue(true);
         isSendingLiveData.postValue(false);
@@ -748,6 +774,9 @@ public class BulkSmsViewModel extends ViewModel {
         session.processingStatus = "sending";
         currentSession = session;
         uploadPersistence.saveCurrentUploadSync(session);
+        if (session.fileId != null) {
+            campaignControl.resume(session.fileId);
+        }
         isPausedLiveData.postValue(false);
         isSendingLiveData.postValue(true);
         statusLiveData.postValue("Sending resumed");
@@ -764,6 +793,7 @@ public class BulkSmsViewModel extends ViewModel {
             currentSession.processingStatus = "stopped";
             uploadPersistence.saveCurrentUploadSync(currentSession);
             if (currentSession.fileId != null) {
+                campaignControl.stop(currentSession.fileId);
                 BulkSmsWorkManager.cancel(application, currentSession.fileId);
             }
         }
@@ -779,6 +809,9 @@ public class BulkSmsViewModel extends ViewModel {
         if (currentSession != null) {
             currentSession.sendSpeed = speed;
             uploadPersistence.saveCurrentUpload(currentSession);
+            if (currentSession.fileId != null) {
+                campaignControl.setSendSpeed(currentSession.fileId, speed);
+            }
         }
     }
 
@@ -803,6 +836,18 @@ public class BulkSmsViewModel extends ViewModel {
         }
     }
     
+    /**
+     * Spread sends across every active SIM instead of only the selected slot.
+     */
+    public void setMultiSimDispatch(boolean enabled) {
+        multiSimDispatchLiveData.postValue(enabled);
+        statusLiveData.postValue(enabled ? "Sending on all SIMs" : "Sending on SIM slot only");
+        if (currentSession != null) {
+            currentSession.multiSimDispatch = enabled;
+            uploadPersistence.saveCurrentUpload(currentSession);
+        }
+    }
+    
     // Queue management
     public void clearQueue() {
         executor.execute(() -> {
@@ -852,24 +897,20 @@ public class BulkSmsViewModel extends ViewModel {
     }
     
     private void removeRecipientByPhone(String phoneNumber) {
-        List<Recipient> currentRecipients = recipientsLiveData.getValue();
-        if (currentRecipients != null) {
-            List<Recipient> updatedRecipients = new ArrayList<>();
-            for (Recipient recipient : currentRecipients) {
-                if (!phoneNumber.equals(recipient.getPhone())) {
-                    updatedRecipients.add(recipient);
-                }
-            }
-            recipientsLiveData.postValue(updatedRecipients);
-            currentData = updatedRecipients;
-            queuedCountLiveData.postValue(updatedRecipients.size());
-            if (currentSession != null) {
-                currentSession.recipients = updatedRecipients;
-                currentSession.totalRecords = updatedRecipients.size();
-                currentSession.validRecords = updatedRecipients.size();
-                uploadPersistence.saveCurrentUpload(currentSession);
+        if (currentData == null || currentData.isEmpty()) {
+            return;
+        }
+        RecipientOverlayList recipients = RecipientOverlayList.over(currentData);
+        boolean removed = false;
+        for (int i = recipients.size() - 1; i >= 0; i--) {
+            if (phoneNumber.equals(recipients.get(i).getPhone())) {
+                recipients.remove(i);
+                removed = true;
             }
         }
+        if (removed) {
+            publishRecipientEdit(recipients);
+        }
     }
     
     // Template management
@@ -914,38 +955,37 @@ public class BulkSmsViewModel extends ViewModel {
     
     // Data management
     public void addRecipient(Recipient recipient) {
-        List<Recipient> currentRecipients = recipientsLiveData.getValue();
-        if (currentRecipients == null) {
-            currentRecipients = new ArrayList<>();
-        }
-        
-        currentRecipients.add(recipient);
-        currentData = currentRecipients;
-        recipientsLiveData.postValue(currentRecipients);
-        queuedCountLiveData.postValue(currentRecipients.size());
+        RecipientOverlayList recipients = RecipientOverlayList.over(
+                currentData != null ? currentData : new ArrayList<>());
+        recipients.add(recipient);
+        publishRecipientEdit(recipients);
         updateMessagePreviews();
-        if (currentSession != null) {
-            currentSession.recipients = currentRecipients;
-            currentSession.totalRecords = currentRecipients.size();
-            currentSession.validRecords = currentRecipients.size();
-            uploadPersistence.saveCurrentUpload(currentSession);
-        }
     }
     
     public void removeRecipient(Recipient recipient) {
-        List<Recipient> currentRecipients = recipientsLiveData.getValue();
-        if (currentRecipients != null) {
-            currentRecipients.remove(recipient);
-            currentData = currentRecipients;
-            recipientsLiveData.postValue(currentRecipients);
-            queuedCountLiveData.postValue(currentRecipients.size());
+        if (currentData == null) {
+            return;
+        }
+        RecipientOverlayList recipients = RecipientOverlayList.over(currentData);
+        if (recipients.remove(recipient)) {
+            publishRecipientEdit(recipients);
             updateMessagePreviews();
-            if (currentSession != null) {
-                currentSession.recipients = currentRecipients;
-                currentSession.totalRecords = currentRecipients.size();
-                currentSession.validRecords = currentRecipients.size();
-                uploadPersistence.saveCurrentUpload(currentSession);
-            }
+        }
+    }
+
+    /**
+     * Publish an edited recipient list. Edits live in an overlay over the imported list, so
+     * the same instance goes to the UI and the session without copying it.
+     */
+    private void publishRecipientEdit(RecipientOverlayList recipients) {
+        currentData = recipients;
+        recipientsLiveData.postValue(recipients);
+        queuedCountLiveData.postValue(recipients.size());
+        if (currentSession != null) {
+            currentSession.recipients = recipients;
+            currentSession.totalRecords = recipients.size();
+            currentSession.validRecords = recipients.size();
+            uploadPersistence.saveCurrentUpload(currentSession);
         }
     }
     
@@ -995,6 +1035,7 @@ public class BulkSmsViewModel extends ViewModel {
             progressLiveData.postValue(percent);
             sendSpeedLiveData.postValue(toResume.sendSpeed > 0 ? toResume.sendSpeed : 300);
             simSlotLiveData.postValue(toResume.simSlot);
+            multiSimDispatchLiveData.postValue(toResume.multiSimDispatch);
             activeSessionLiveData.postValue(toResume);
             resumePromptLiveData.postValue(false);
             statusLiveData.postValue("Session resumed");
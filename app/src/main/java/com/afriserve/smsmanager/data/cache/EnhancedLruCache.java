@@ -1,31 +1,58 @@
 package com.afriserve.smsmanager.data.cache;
 
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Enhanced LRU cache with optional TTL per-entry and convenience methods
+ * Concurrent cache with optional TTL per-entry and convenience methods
  * Provides a small API surface compatible with callers in ContactResolver
+ *
+ * Lookups go straight to a ConcurrentHashMap and only set a reference bit, so reads never
+ * lock. Eviction uses the CLOCK approximation of LRU over striped segments; a write locks
+ * only the segment its key hashes to.
+ *
+ * Keys must not be null; values may be (see {@link #putNotFound}).
  */
 public class EnhancedLruCache<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int ENTRIES_PER_SEGMENT = 16;
+
     private final int capacity;
     private final long defaultTtlMs;
 
-    private static class CacheEntry<V> {
+    private static final class CacheEntry<K, V> {
+        final K key;
         final V value;
         final long expiresAt; // 0 means no expiry
+        volatile boolean referenced;
+        int slot; // guarded by the owning segment
 
-        CacheEntry(V value, long expiresAt) {
+        CacheEntry(K key, V value, long expiresAt) {
+            this.key = key;
             this.value = value;
             this.expiresAt = expiresAt;
         }
 
-        boolean isExpired() {
-            return expiresAt > 0 && System.currentTimeMillis() > expiresAt;
+        boolean isExpired(long now) {
+            return expiresAt > 0 && now > expiresAt;
         }
     }
 
-    private final LinkedHashMap<K, CacheEntry<V>> delegate;
+    private final ConcurrentHashMap<K, CacheEntry<K, V>> entries;
+    private final List<Segment<K, V>> segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
 
     public EnhancedLruCache(int capacity) {
         this(capacity, 0L);
@@ -34,49 +61,225 @@ public class EnhancedLruCache<K, V> {
     public EnhancedLruCache(int capacity, long defaultTtlMs) {
         this.capacity = Math.max(1, capacity);
         this.defaultTtlMs = Math.max(0, defaultTtlMs);
-        this.delegate = new LinkedHashMap<K, CacheEntry<V>>(capacity, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
-                return size() > EnhancedLruCache.this.capacity;
-            }
-        };
+
+        int segmentCount = Integer.highestOneBit(
+                Math.max(1, Math.min(MAX_SEGMENTS, this.capacity / ENTRIES_PER_SEGMENT)));
+        int perSegment = (this.capacity + segmentCount - 1) / segmentCount;
+        this.entries = new ConcurrentHashMap<>(Math.max(16, this.capacity * 4 / 3 + 1), 0.75f, segmentCount);
+        List<Segment<K, V>> segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment<>(this, perSegment));
+        }
+        this.segments = Collections.unmodifiableList(segments);
+        this.segmentMask = segmentCount - 1;
     }
 
-    public synchronized V get(K key) {
-        CacheEntry<V> entry = delegate.get(key);
-        if (entry == null) return null;
-        if (entry.isExpired()) {
-            delegate.remove(key);
-            return null;
+    public V get(K key) {
+        CacheEntry<K, V> entry = lookup(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Like {@link #get} but returns {@code absent} on a miss, so a key stored with
+     * {@link #putNotFound} (which yields null) can be told apart from an uncached one.
+     */
+    public V get(K key, V absent) {
+        CacheEntry<K, V> entry = lookup(key);
+        return entry != null ? entry.value : absent;
+    }
+
+    /**
+     * Bulk lookup for prefetching. The result holds only cached keys; keys stored with
+     * {@link #putNotFound} map to null, and keys absent from the result need loading.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys) {
+        Map<K, V> result = new HashMap<>(Math.max(4, keys.size() * 2));
+        for (K key : keys) {
+            CacheEntry<K, V> entry = lookup(key);
+            if (entry != null) {
+                result.put(key, entry.value);
+            }
         }
-        return entry.value;
+        return result;
     }
 
-    public synchronized void put(K key, V value) {
+    public void put(K key, V value) {
         put(key, value, defaultTtlMs);
     }
 
-    public synchronized void put(K key, V value, long ttlMs) {
+    /**
+     * @throws NullPointerException if key is null
+     */
+    public void put(K key, V value, long ttlMs) {
+        Objects.requireNonNull(key, "key");
         long expiresAt = ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0L;
-        delegate.put(key, new CacheEntry<>(value, expiresAt));
+        segmentFor(key).insert(new CacheEntry<>(key, value, expiresAt));
     }
 
     /**
      * Convenience API to mark a key as "not found" with short TTL
      */
-    public synchronized void putNotFound(K key, long ttlMs) {
+    public void putNotFound(K key, long ttlMs) {
         put(key, null, ttlMs);
     }
 
-    public synchronized void remove(K key) {
-        delegate.remove(key);
+    /**
+     * @throws NullPointerException if key is null
+     */
+    public void remove(K key) {
+        Objects.requireNonNull(key, "key");
+        segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size());
+    }
+
+    private CacheEntry<K, V> lookup(K key) {
+        if (key == null) {
+            misses.increment();
+            return null;
+        }
+        CacheEntry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            segmentFor(key).expire(entry);
+            misses.increment();
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments.get((h * 0x9E3779B9 >>> 16) & segmentMask);
     }
 
-    public synchronized void clear() {
-        delegate.clear();
+    /**
+     * One stripe of the clock. The ring holds this segment's entries; the hand sweeps it,
+     * clearing reference bits until it finds an unreferenced or expired entry to replace.
+     */
+    private static final class Segment<K, V> {
+        private final ConcurrentHashMap<K, CacheEntry<K, V>> entries;
+        private final LongAdder evictions;
+        private final LongAdder expirations;
+        // Fixed-size ring; only set() is used, so it never grows or shifts
+        private final List<CacheEntry<K, V>> ring;
+        private int hand;
+
+        Segment(EnhancedLruCache<K, V> cache, int slots) {
+            entries = cache.entries;
+            evictions = cache.evictions;
+            expirations = cache.expirations;
+            ring = new ArrayList<>(Collections.<CacheEntry<K, V>>nCopies(Math.max(1, slots), null));
+        }
+
+        synchronized void insert(CacheEntry<K, V> entry) {
+            CacheEntry<K, V> previous = entries.put(entry.key, entry);
+            if (previous != null && ring.get(previous.slot) == previous) {
+                entry.slot = previous.slot;
+                ring.set(entry.slot, entry);
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            while (true) {
+                CacheEntry<K, V> candidate = ring.get(hand);
+                if (candidate == null || !candidate.referenced || candidate.isExpired(now)) {
+                    if (candidate != null && entries.remove(candidate.key, candidate)) {
+                        if (candidate.isExpired(now)) {
+                            expirations.increment();
+                        } else {
+                            evictions.increment();
+                        }
+                    }
+                    entry.slot = hand;
+                    ring.set(hand, entry);
+                    hand = (hand + 1) % ring.size();
+                    return;
+                }
+                candidate.referenced = false;
+                hand = (hand + 1) % ring.size();
+            }
+        }
+
+        synchronized void remove(K key) {
+            CacheEntry<K, V> entry = entries.remove(key);
+            if (entry != null && ring.get(entry.slot) == entry) {
+                ring.set(entry.slot, null);
+            }
+        }
+
+        synchronized void expire(CacheEntry<K, V> entry) {
+            if (entries.remove(entry.key, entry)) {
+                expirations.increment();
+            }
+            if (ring.get(entry.slot) == entry) {
+                ring.set(entry.slot, null);
+            }
+        }
+
+        synchronized void clear() {
+            for (int i = 0; i < ring.size(); i++) {
+                CacheEntry<K, V> entry = ring.get(i);
+                if (entry != null) {
+                    entries.remove(entry.key, entry);
+                    ring.set(i, null);
+                }
+            }
+            hand = 0;
+        }
     }
 
-    public synchronized int size() {
-        return delegate.size();
+    /**
+     * Point-in-time counters. Reads of keys stored with putNotFound count as hits.
+     */
+    public static final class Stats {
+        public final long hitCount;
+        public final long missCount;
+        public final long evictionCount;
+        public final long expirationCount;
+        public final int size;
+
+        Stats(long hitCount, long missCount, long evictionCount, long expirationCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.expirationCount = expirationCount;
+            this.size = size;
+        }
+
+        public double hitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 0.0 : (double) hitCount / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.US, "hits=%d misses=%d evictions=%d expirations=%d size=%d hitRate=%.2f",
+                    hitCount, missCount, evictionCount, expirationCount, size, hitRate());
+        }
     }
 }
@@ -0,0 +1,202 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import java.util.Arrays;
+
+/**
+ * Digit trie mapping international number prefixes to carriers.
+ * Built once and then frozen into flat arrays, so a lookup walks at most one node per digit
+ * and allocates nothing. The longest matching prefix wins.
+ */
+final class CarrierPrefixTrie {
+
+    static final String UNKNOWN = "UNKNOWN";
+
+    // Kenyan numbers written in national form are routed as +254
+    private static final String DEFAULT_COUNTRY_CODE = "254";
+    private static final int KENYA_NATIONAL_LENGTH = 9;
+
+    private final int[] children; // node * 10 + digit -> child node, 0 when absent
+    private final String[] carriers; // carrier ending at a node, or null
+
+    private CarrierPrefixTrie(int[] children, String[] carriers) {
+        this.children = children;
+        this.carriers = carriers;
+    }
+
+    /**
+     * Carrier for a phone number in international (+254712..., 00254712...), bare (254712...)
+     * or Kenyan national (0712..., 712...) form; UNKNOWN when no prefix matches.
+     */
+    String lookup(String phoneNumber) {
+        if (phoneNumber == null) {
+            return UNKNOWN;
+        }
+        int start = 0;
+        int length = phoneNumber.length();
+        while (start < length && !Character.isDigit(phoneNumber.charAt(start))) {
+            if (phoneNumber.charAt(start) == '+') {
+                return walk(phoneNumber, start + 1, 0);
+            }
+            start++;
+        }
+        if (phoneNumber.startsWith("00", start)) {
+            return walk(phoneNumber, start + 2, 0); // international dialling prefix
+        }
+        int digits = countDigits(phoneNumber, start);
+        if (digits == KENYA_NATIONAL_LENGTH + 1 && phoneNumber.charAt(start) == '0') {
+            return walkNational(phoneNumber, start + 1);
+        }
+        if (digits == KENYA_NATIONAL_LENGTH && phoneNumber.charAt(start) != '0') {
+            return walkNational(phoneNumber, start);
+        }
+        return walk(phoneNumber, start, 0);
+    }
+
+    private String walkNational(String phoneNumber, int start) {
+        int node = 0;
+        for (int i = 0; i < DEFAULT_COUNTRY_CODE.length(); i++) {
+            node = child(node, DEFAULT_COUNTRY_CODE.charAt(i) - '0');
+            if (node == 0) {
+                return UNKNOWN;
+            }
+        }
+        return walk(phoneNumber, start, node);
+    }
+
+    private String walk(String phoneNumber, int start, int node) {
+        String match = carriers[node];
+        for (int i = start; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c == ' ' || c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                break;
+            }
+            node = child(node, c - '0');
+            if (node <= 0) {
+                break;
+            }
+            if (carriers[node] != null) {
+                match = carriers[node];
+            }
+        }
+        return match != null ? match : UNKNOWN;
+    }
+
+    private int child(int node, int digit) {
+        return children[node * 10 + digit];
+    }
+
+    private static int countDigits(String s, int start) {
+        int digits = 0;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c != ' ' && c != '-') {
+                break;
+            }
+        }
+        return digits;
+    }
+
+    /**
+     * Trie over the prefixes the app knows about
+     */
+    static CarrierPrefixTrie defaults() {
+        Builder builder = new Builder();
+
+        // Kenya, per the Communications Authority numbering plan
+        builder.addRange("2547", 0, 9, "SAFARICOM");       // 700-709
+        builder.addRange("2547", 10, 29, "SAFARICOM");     // 710-729
+        builder.addRange("2547", 40, 43, "SAFARICOM");
+        builder.add("254745", "SAFARICOM");
+        builder.add("254746", "SAFARICOM");
+        builder.add("254748", "SAFARICOM");
+        builder.addRange("2547", 57, 59, "SAFARICOM");
+        builder.add("254768", "SAFARICOM");
+        builder.add("254769", "SAFARICOM");
+        builder.addRange("2547", 90, 99, "SAFARICOM");
+        builder.addRange("2541", 10, 15, "SAFARICOM");
+        builder.addRange("2547", 30, 39, "AIRTEL_KE");
+        builder.addRange("2547", 50, 56, "AIRTEL_KE");
+        builder.add("254762", "AIRTEL_KE");
+        builder.addRange("2547", 63, 66, "AIRTEL_KE");     // Equitel, carried on Airtel
+        builder.addRange("2547", 80, 89, "AIRTEL_KE");
+        builder.addRange("2541", 0, 2, "AIRTEL_KE");       // 100-102
+        builder.addRange("2547", 70, 79, "TELKOM_KE");
+
+        // US NPA samples
+        builder.add("1212", "VERIZON");
+        builder.add("1646", "VERIZON");
+        builder.add("1917", "VERIZON");
+        builder.add("1213", "AT&T");
+        builder.add("1310", "AT&T");
+        builder.add("1415", "AT&T");
+        builder.add("1206", "T-MOBILE");
+        builder.add("1425", "T-MOBILE");
+        builder.add("1971", "T-MOBILE");
+
+        // UK
+        builder.add("4477", "VODAFONE");
+        builder.add("4479", "VODAFONE");
+        builder.add("4478", "O2");
+        builder.add("4474", "EE");
+
+        // India
+        builder.add("9198", "AIRTEL");
+        builder.add("9197", "AIRTEL");
+        builder.add("9190", "JIO");
+        builder.add("9191", "JIO");
+        builder.add("9199", "IDEA");
+
+        return builder.build();
+    }
+
+    static final class Builder {
+        private int[] children = new int[10 * 64];
+        private String[] carriers = new String[64];
+        private int size = 1; // node 0 is the root
+
+        Builder add(String prefix, String carrier) {
+            int node = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                int digit = prefix.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("Non-digit in prefix: " + prefix);
+                }
+                int next = children[node * 10 + digit];
+                if (next == 0) {
+                    next = newNode();
+                    children[node * 10 + digit] = next;
+                }
+                node = next;
+            }
+            carriers[node] = carrier;
+            return this;
+        }
+
+        /**
+         * Add base followed by each two-digit suffix in [from, to]
+         */
+        Builder addRange(String base, int from, int to, String carrier) {
+            for (int suffix = from; suffix <= to; suffix++) {
+                add(base + (suffix < 10 ? "0" : "") + suffix, carrier);
+            }
+            return this;
+        }
+
+        CarrierPrefixTrie build() {
+            return new CarrierPrefixTrie(Arrays.copyOf(children, size * 10), Arrays.copyOf(carriers, size));
+        }
+
+        private int newNode() {
+            if (size == carriers.length) {
+                carriers = Arrays.copyOf(carriers, size * 2);
+                children = Arrays.copyOf(children, size * 2 * 10);
+            }
+            return size++;
+        }
+    }
+}
@@ -7,11 +7,13 @@ import androidx.lifecycle.MutableLiveData;
 
 import com.afriserve.smsmanager.data.dao.OptOutDao;
 import com.afriserve.smsmanager.data.entity.OptOutEntity;
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -29,12 +31,6 @@ public class ComplianceManager {
     
     private static final String TAG = "ComplianceManager";
     
-    // Phone number patterns for validation
-    private static final Pattern INTERNATIONAL_PATTERN = Pattern.compile("^\\+[1-9]\\d{1,14}$");
-    private static final Pattern US_PATTERN = Pattern.compile("^\\d{10}$");
-    private static final Pattern UK_PATTERN = Pattern.compile("^\\d{10,11}$");
-    private static final Pattern INDIA_PATTERN = Pattern.compile("^\\d{10}$");
-    
     // DND registry cache (in production would be synced with official registries)
     private final Set<String> dndRegistry = new HashSet<>();
     private final Set<String> ndncRegistry = new HashSet<>();
@@ -42,6 +38,9 @@ public class ComplianceManager {
     // Internal opt-out management
     private final OptOutDao optOutDao;
     
+    // Packed in-memory index of opt-out/DND/NDNC numbers, built lazily and kept in sync
+    private volatile ComplianceSnapshot snapshot;
+    
     // Compliance statistics
     private final MutableLiveData<ComplianceStats> _complianceStats = new MutableLiveData<>();
     public final LiveData<ComplianceStats> complianceStats = _complianceStats;
@@ -57,57 +56,89 @@ public class ComplianceManager {
      * Check if a phone number is compliant for sending
      */
     public Single<ComplianceResult> checkCompliance(String phoneNumber, String campaignType) {
+        return Single.fromCallable(() ->
+                evaluate(phoneNumber, getSnapshot(), isAllowedSendTime(campaignType))
+        ).subscribeOn(Schedulers.io());
+    }
+    
+    /**
+     * Check a whole chunk of numbers against one snapshot.
+     * The send-time window is evaluated once for the batch.
+     */
+    public Single<List<ComplianceResult>> checkComplianceBatch(List<String> phoneNumbers, String campaignType) {
         return Single.fromCallable(() -> {
-            ComplianceResult result = new ComplianceResult();
-            
-            // Validate phone number format
-            if (!isValidPhoneNumber(phoneNumber)) {
-                result.setCompliant(false);
-                result.setReason("Invalid phone number format");
-                result.setViolationType(ComplianceViolation.INVALID_FORMAT);
-                return result;
-            }
-            
-            String normalizedNumber = normalizePhoneNumber(phoneNumber);
-            
-            // Check DND registry
-            if (isInDndRegistry(normalizedNumber)) {
-                result.setCompliant(false);
-                result.setReason("Number is in DND registry");
-                result.setViolationType(ComplianceViolation.DND_VIOLATION);
-                return result;
-            }
-            
-            // Check NDNC registry (India specific)
-            if (isInNdncRegistry(normalizedNumber)) {
-                result.setCompliant(false);
-                result.setReason("Number is in NDNC registry");
-                result.setViolationType(ComplianceViolation.NDNC_VIOLATION);
-                return result;
-            }
-            
-            // Check internal opt-out list
-            if (isOptedOut(normalizedNumber)) {
-                result.setCompliant(false);
-                result.setReason("Number has opted out");
-                result.setViolationType(ComplianceViolation.OPTED_OUT);
-                return result;
-            }
-            
-            // Check time-based restrictions
-            if (!isAllowedSendTime(campaignType)) {
-                result.setCompliant(false);
-                result.setReason("Sending not allowed at this time");
-                result.setViolationType(ComplianceViolation.TIME_RESTRICTION);
-                return result;
+            ComplianceSnapshot current = getSnapshot();
+            boolean allowedNow = isAllowedSendTime(campaignType);
+            List<ComplianceResult> results = new ArrayList<>(phoneNumbers.size());
+            for (String phoneNumber : phoneNumbers) {
+                results.add(evaluate(phoneNumber, current, allowedNow));
             }
-            
-            result.setCompliant(true);
-            return result;
-            
+            return results;
         }).subscribeOn(Schedulers.io());
     }
     
+    public Single<List<ComplianceResult>> checkComplianceBatch(List<String> phoneNumbers) {
+        return checkComplianceBatch(phoneNumbers, "MARKETING");
+    }
+    
+    /**
+     * Rebuild the compliance snapshot from the database. Call once at the start of a campaign;
+     * later opt-out changes made through this manager are applied incrementally.
+     * Fails if the opt-out list cannot be read; the previous snapshot, if any, stays in use.
+     */
+    public Completable refreshSnapshot() {
+        return Completable.fromAction(this::rebuildSnapshot).subscribeOn(Schedulers.io());
+    }
+    
+    private ComplianceResult evaluate(String phoneNumber, ComplianceSnapshot current, boolean allowedNow) {
+        ComplianceResult result = new ComplianceResult();
+        
+        // Validate phone number format
+        if (!ComplianceSnapshot.isValidFormat(phoneNumber)) {
+            result.setCompliant(false);
+            result.setReason("Invalid phone number format");
+            result.setViolationType(ComplianceViolation.INVALID_FORMAT);
+            return result;
+        }
+        
+        long key = ComplianceSnapshot.phoneKey(phoneNumber);
+        
+        // Check DND registry
+        if (current.isInDnd(key)) {
+            result.setCompliant(false);
+            result.setReason("Number is in DND registry");
+            result.setViolationType(ComplianceViolation.DND_VIOLATION);
+            return result;
+        }
+        
+        // Check NDNC registry (India specific)
+        if (current.isInNdnc(key)) {
+            result.setCompliant(false);
+            result.setReason("Number is in NDNC registry");
+            result.setViolationType(ComplianceViolation.NDNC_VIOLATION);
+            return result;
+        }
+        
+        // Check internal opt-out list
+        if (current.isOptedOut(key)) {
+            result.setCompliant(false);
+            result.setReason("Number has opted out");
+            result.setViolationType(ComplianceViolation.OPTED_OUT);
+            return result;
+        }
+        
+        // Check time-based restrictions
+        if (!allowedNow) {
+            result.setCompliant(false);
+            result.setReason("Sending not allowed at this time");
+            result.setViolationType(ComplianceViolation.TIME_RESTRICTION);
+            return result;
+        }
+        
+        result.setCompliant(true);
+        return result;
+    }
+    
     /**
      * Add number to opt-out list
      */
@@ -123,6 +154,11 @@ public class ComplianceManager {
                 optOut.source = "USER_REQUEST";
                 
                 optOutDao.insertOptOut(optOut).blockingAwait();
+                ComplianceSnapshot current = snapshot;
+                if (current != null) {
+                    // Otherwise the next snapshot is built from the table, row included
+                    current.addOptOut(normalizedNumber);
+                }
                 
                 Log.d(TAG, "Added number to opt-out list: " + normalizedNumber);
                 
@@ -140,7 +176,16 @@ public class ComplianceManager {
         return Completable.fromAction(() -> {
             try {
                 String normalizedNumber = normalizePhoneNumber(phoneNumber);
+                long key = PhoneCanonicalizer.canonicalKey(phoneNumber);
+                if (key != PhoneCanonicalizer.NO_KEY) {
+                    // Also catches rows stored under another spelling of the same number
+                    optOutDao.deleteOptOutByPhoneKey(key).blockingAwait();
+                }
                 optOutDao.deleteOptOutByPhone(normalizedNumber).blockingAwait();
+                ComplianceSnapshot current = snapshot;
+                if (current != null) {
+                    current.removeOptOut(normalizedNumber);
+                }
                 
                 Log.d(TAG, "Removed number from opt-out list: " + normalizedNumber);
                 
@@ -155,43 +200,19 @@ public class ComplianceManager {
      * Validate phone number format
      */
     public boolean isValidPhoneNumber(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.trim().isEmpty()) {
-            return false;
-        }
-        
-        String normalized = phoneNumber.replaceAll("[^0-9+]", "");
-        
-        // Check international format
-        if (normalized.startsWith("+")) {
-            return INTERNATIONAL_PATTERN.matcher(normalized).matches();
-        }
-        
-        // Check country-specific formats
-        return US_PATTERN.matcher(normalized).matches() ||
-               UK_PATTERN.matcher(normalized).matches() ||
-               INDIA_PATTERN.matcher(normalized).matches();
+        // International +[1-9] with 2-15 digits, otherwise a 10/11-digit national number
+        return ComplianceSnapshot.isValidFormat(phoneNumber);
     }
     
     /**
-     * Normalize phone number to standard format
+     * Normalize phone number to standard format; see {@link PhoneCanonicalizer}.
+     * Numbers that cannot be canonicalized are returned trimmed, so they still match themselves.
      */
     public String normalizePhoneNumber(String phoneNumber) {
         if (phoneNumber == null) return "";
         
-        // Remove all non-numeric characters except +
-        String normalized = phoneNumber.replaceAll("[^0-9+]", "");
-        
-        // Convert to international format if needed
-        if (!normalized.startsWith("+")) {
-            // Assume US number if no country code
-            if (normalized.length() == 10) {
-                normalized = "+1" + normalized;
-            } else if (normalized.length() == 11 && normalized.startsWith("1")) {
-                normalized = "+" + normalized;
-            }
-        }
-        
-        return normalized;
+        String canonical = PhoneCanonicalizer.toE164(phoneNumber);
+        return canonical != null ? canonical : phoneNumber.trim();
     }
     
     /**
@@ -219,31 +240,42 @@ public class ComplianceManager {
         return hour >= 9 && hour < 21;
     }
     
-    /**
-     * Check if number is in DND registry
-     */
-    private boolean isInDndRegistry(String normalizedNumber) {
-        return dndRegistry.contains(normalizedNumber);
-    }
-    
-    /**
-     * Check if number is in NDNC registry (India)
-     */
-    private boolean isInNdncRegistry(String normalizedNumber) {
-        return ndncRegistry.contains(normalizedNumber);
+    private ComplianceSnapshot getSnapshot() {
+        ComplianceSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = rebuildSnapshot();
+                }
+            }
+        }
+        return current;
     }
     
     /**
-     * Check if number has opted out internally
+     * Build and publish a snapshot. If the opt-out list cannot be read this throws and leaves
+     * the current snapshot alone: an empty list would pass every opted-out number, so with no
+     * earlier snapshot the checks fail instead of sending.
      */
-    private boolean isOptedOut(String normalizedNumber) {
+    private synchronized ComplianceSnapshot rebuildSnapshot() {
+        List<String> optOutNumbers;
         try {
-            OptOutEntity optOut = optOutDao.getOptOutByPhone(normalizedNumber).blockingGet();
-            return optOut != null;
+            optOutNumbers = optOutDao.getAllActiveOptOutNumbers().blockingGet();
         } catch (Exception e) {
-            Log.w(TAG, "Failed to check opt-out status", e);
-            return false;
+            Log.e(TAG, "Failed to load opt-out numbers for snapshot"
+                    + (snapshot != null ? ", keeping the previous one" : ""), e);
+            throw new IllegalStateException("Opt-out list unavailable", e);
+        }
+        List<String> normalizedOptOuts = new ArrayList<>(optOutNumbers.size());
+        for (String number : optOutNumbers) {
+            normalizedOptOuts.add(normalizePhoneNumber(number));
         }
+        ComplianceSnapshot rebuilt = ComplianceSnapshot.build(normalizedOptOuts, dndRegistry, ndncRegistry);
+        snapshot = rebuilt;
+        Log.d(TAG, "Compliance snapshot built: " + rebuilt.getOptOutCount() + " opt-outs, "
+                + rebuilt.getDndCount() + " DND, " + rebuilt.getNdncCount() + " NDNC");
+        return rebuilt;
     }
     
     /**
@@ -0,0 +1,173 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of every number that must not be messaged: internal opt-outs plus the
+ * DND and NDNC registries. Built once per campaign and kept current by
+ * {@link ComplianceManager#addToOptOut} / {@link ComplianceManager#removeFromOptOut}.
+ *
+ * Numbers are normalized and packed into a long in a single character scan, so a lookup
+ * touches no regex, creates no strings and never hits SQLite.
+ */
+public final class ComplianceSnapshot {
+
+    /** Returned by {@link #phoneKey} when a number cannot be packed. */
+    public static final long NO_KEY = PhoneCanonicalizer.NO_KEY;
+
+    private static final int MAX_DIGITS = 15;
+
+    private final PhoneKeyIndex optOuts;
+    private final PhoneKeyIndex dnd;
+    private final PhoneKeyIndex ndnc;
+    // Opt-outs that do not fit a packed key (malformed input); expected to stay tiny.
+    private final Set<String> unpackedOptOuts;
+    private final long builtAt;
+
+    private ComplianceSnapshot(PhoneKeyIndex optOuts, PhoneKeyIndex dnd, PhoneKeyIndex ndnc,
+                               Set<String> unpackedOptOuts) {
+        this.optOuts = optOuts;
+        this.dnd = dnd;
+        this.ndnc = ndnc;
+        this.unpackedOptOuts = unpackedOptOuts;
+        this.builtAt = System.currentTimeMillis();
+    }
+
+    public static ComplianceSnapshot build(Collection<String> optOutNumbers,
+                                           Collection<String> dndNumbers,
+                                           Collection<String> ndncNumbers) {
+        Set<String> unpacked = ConcurrentHashMap.newKeySet();
+        return new ComplianceSnapshot(index(optOutNumbers, unpacked), index(dndNumbers, null),
+                index(ndncNumbers, null), unpacked);
+    }
+
+    public static ComplianceSnapshot empty() {
+        return build(Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static PhoneKeyIndex index(Collection<String> numbers, Set<String> unpacked) {
+        long[] keys = new long[numbers.size()];
+        int count = 0;
+        for (String number : numbers) {
+            long key = phoneKey(number);
+            if (key != NO_KEY) {
+                keys[count++] = key;
+            } else if (unpacked != null && number != null) {
+                unpacked.add(number);
+            }
+        }
+        return PhoneKeyIndex.build(keys, count);
+    }
+
+    public boolean isOptedOut(long key) {
+        return key != NO_KEY && optOuts.contains(key);
+    }
+
+    public boolean isOptedOut(String normalizedNumber) {
+        long key = phoneKey(normalizedNumber);
+        if (key == NO_KEY) {
+            return normalizedNumber != null && unpackedOptOuts.contains(normalizedNumber);
+        }
+        return optOuts.contains(key);
+    }
+
+    public boolean isInDnd(long key) {
+        return key != NO_KEY && dnd.contains(key);
+    }
+
+    public boolean isInNdnc(long key) {
+        return key != NO_KEY && ndnc.contains(key);
+    }
+
+    void addOptOut(String normalizedNumber) {
+        long key = phoneKey(normalizedNumber);
+        if (key == NO_KEY) {
+            if (normalizedNumber != null) {
+                unpackedOptOuts.add(normalizedNumber);
+            }
+            return;
+        }
+        optOuts.add(key);
+    }
+
+    void removeOptOut(String normalizedNumber) {
+        long key = phoneKey(normalizedNumber);
+        if (key == NO_KEY) {
+            if (normalizedNumber != null) {
+                unpackedOptOuts.remove(normalizedNumber);
+            }
+            return;
+        }
+        optOuts.remove(key);
+    }
+
+    public int getOptOutCount() {
+        return optOuts.size() + unpackedOptOuts.size();
+    }
+
+    public int getDndCount() {
+        return dnd.size();
+    }
+
+    public int getNdncCount() {
+        return ndnc.size();
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * Normalize and pack a phone number in one pass; see {@link PhoneCanonicalizer}.
+     */
+    public static long phoneKey(CharSequence number) {
+        return PhoneCanonicalizer.canonicalKey(number);
+    }
+
+    /**
+     * Allocation-free equivalent of the format rules in
+     * {@link ComplianceManager#isValidPhoneNumber}.
+     */
+    public static boolean isValidFormat(CharSequence number) {
+        if (number == null) {
+            return false;
+        }
+        int plusCount = 0;
+        boolean plusFirst = false;
+        boolean seenAny = false;
+        int digits = 0;
+        char firstDigit = 0;
+        boolean blank = true;
+        for (int i = 0, n = number.length(); i < n; i++) {
+            char c = number.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                blank = false;
+            }
+            if (c >= '0' && c <= '9') {
+                if (digits == 0) {
+                    firstDigit = c;
+                }
+                digits++;
+                seenAny = true;
+            } else if (c == '+') {
+                if (!seenAny) {
+                    plusFirst = true;
+                }
+                plusCount++;
+                seenAny = true;
+            }
+        }
+        if (blank) {
+            return false;
+        }
+        if (plusFirst) {
+            return plusCount == 1 && firstDigit >= '1' && digits >= 2 && digits <= MAX_DIGITS;
+        }
+        return plusCount == 0 && (digits == 10 || digits == 11);
+    }
+}
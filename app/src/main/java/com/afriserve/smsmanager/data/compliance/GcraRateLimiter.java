@@ -0,0 +1,128 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic cell rate algorithm limiter for one carrier.
+ * The whole state is a single theoretical arrival time (TAT), advanced by one emission interval
+ * per send with a CAS, so concurrent senders can neither overshoot the rate nor race a window
+ * reset. Up to burst sends may go back to back; after that they are spaced one interval apart.
+ * The long-run rate is limitPerMinute, but a burst comes on top of it: any 60 second window
+ * can hold up to limitPerMinute + burst - 1 sends.
+ */
+final class GcraRateLimiter {
+
+    private static final long WINDOW_MS = 60_000;
+
+    private final String carrier;
+    private final int limitPerMinute;
+    private final int burst;
+    private final long intervalMs;
+    private final long toleranceMs;
+    private final AtomicLong tat = new AtomicLong(0);
+
+    GcraRateLimiter(String carrier, int limitPerMinute, int burst) {
+        this.carrier = carrier;
+        this.limitPerMinute = Math.max(1, limitPerMinute);
+        this.burst = Math.max(1, Math.min(burst, this.limitPerMinute));
+        // Round up so the achieved rate never exceeds the configured one
+        this.intervalMs = (WINDOW_MS + this.limitPerMinute - 1) / this.limitPerMinute;
+        this.toleranceMs = (this.burst - 1) * intervalMs;
+    }
+
+    String getCarrier() {
+        return carrier;
+    }
+
+    int getLimit() {
+        return limitPerMinute;
+    }
+
+    int getBurst() {
+        return burst;
+    }
+
+    long getIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * How long a send would have to wait at now; does not consume a slot
+     */
+    long delay(long now) {
+        return Math.max(0, Math.max(tat.get(), now) - toleranceMs - now);
+    }
+
+    /**
+     * Consume one slot for a send that has already happened
+     */
+    void acquire(long now) {
+        reserve(1, now);
+    }
+
+    /**
+     * Consume count consecutive slots. Slot i opens at max(now, base + i * getIntervalMs()),
+     * where base is the returned value.
+     */
+    long reserve(int count, long now) {
+        while (true) {
+            long current = tat.get();
+            long start = Math.max(current, now);
+            if (tat.compareAndSet(current, start + count * intervalMs)) {
+                return start - toleranceMs;
+            }
+        }
+    }
+
+    /**
+     * TAT right after a reservation of count slots, given the base reserve() returned for it
+     */
+    long endOf(long base, int count) {
+        return base + toleranceMs + count * intervalMs;
+    }
+
+    /**
+     * Take over the sends another limiter for the same carrier still counts, so a limit change
+     * does not hand out a fresh burst. The backlog is carried over as a number of sends, spaced
+     * at this limiter's interval from now. Call before this limiter is used.
+     */
+    void continueFrom(GcraRateLimiter previous, long now) {
+        long ahead = previous.tat.get() - now;
+        if (ahead > 0) {
+            long slots = (ahead + previous.intervalMs - 1) / previous.intervalMs;
+            tat.set(now + slots * intervalMs);
+        }
+    }
+
+    /**
+     * Give back the last count slots of a reservation that will not be used. end is the
+     * reservation's endOf(). The TAT is only rewound while it still equals end: once a later
+     * reservation has been stacked on top, rewinding would hand its slots out a second time,
+     * so the released slots stay consumed. Never rewinds past now, so slots that were already
+     * due are not handed out twice either.
+     *
+     * @return whether the slots were given back
+     */
+    boolean release(long end, int count, long now) {
+        if (count <= 0) {
+            return false;
+        }
+        long rewound = Math.max(now, end - count * intervalMs);
+        return rewound < end && tat.compareAndSet(end, rewound);
+    }
+
+    /**
+     * Sends still counted against the bucket at now, 0 to burst
+     */
+    int backlog(long now) {
+        long ahead = tat.get() - now;
+        if (ahead <= 0) {
+            return 0;
+        }
+        return (int) Math.min(burst, (ahead + intervalMs - 1) / intervalMs);
+    }
+
+    boolean isLimited(long now) {
+        return delay(now) > 0;
+    }
+}
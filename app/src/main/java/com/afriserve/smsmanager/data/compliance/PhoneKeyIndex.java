@@ -0,0 +1,149 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import java.util.Arrays;
+
+/**
+ * Membership index over packed phone keys.
+ * Keys live in a sorted primitive long[] with a Bloom filter in front, so the common
+ * "not listed" answer costs three bit probes and no allocation. Reads are lock-free;
+ * writers publish a new immutable state through a volatile field.
+ */
+final class PhoneKeyIndex {
+
+    private static final int HASH_COUNT = 3;
+    private static final int BITS_PER_KEY = 10;
+    private static final int MIN_BLOOM_BITS = 1024;
+
+    private static final class State {
+        final long[] keys;
+        final long[] bloom;
+        final int bloomMask;
+        final int bloomCapacity;
+
+        State(long[] keys, long[] bloom, int bloomCapacity) {
+            this.keys = keys;
+            this.bloom = bloom;
+            this.bloomMask = (bloom.length << 6) - 1;
+            this.bloomCapacity = bloomCapacity;
+        }
+    }
+
+    private volatile State state;
+
+    private PhoneKeyIndex(State state) {
+        this.state = state;
+    }
+
+    /**
+     * Build an index from unsorted keys; duplicates are dropped.
+     */
+    static PhoneKeyIndex build(long[] keys, int count) {
+        long[] sorted = Arrays.copyOf(keys, count);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        if (unique != sorted.length) {
+            sorted = Arrays.copyOf(sorted, unique);
+        }
+        return new PhoneKeyIndex(newState(sorted, Math.max(unique, 16)));
+    }
+
+    static PhoneKeyIndex empty() {
+        return build(new long[0], 0);
+    }
+
+    boolean contains(long key) {
+        State current = state;
+        if (!mightContain(current, key)) {
+            return false;
+        }
+        return Arrays.binarySearch(current.keys, key) >= 0;
+    }
+
+    int size() {
+        return state.keys.length;
+    }
+
+    synchronized void add(long key) {
+        State current = state;
+        int position = Arrays.binarySearch(current.keys, key);
+        if (position >= 0) {
+            return;
+        }
+        int insertAt = -position - 1;
+        long[] next = new long[current.keys.length + 1];
+        System.arraycopy(current.keys, 0, next, 0, insertAt);
+        next[insertAt] = key;
+        System.arraycopy(current.keys, insertAt, next, insertAt + 1, current.keys.length - insertAt);
+
+        if (next.length > current.bloomCapacity * 2) {
+            state = newState(next, next.length);
+        } else {
+            // Setting extra bits only adds false positives, so readers of the old state stay correct.
+            setBits(current.bloom, current.bloomMask, key);
+            state = new State(next, current.bloom, current.bloomCapacity);
+        }
+    }
+
+    synchronized void remove(long key) {
+        State current = state;
+        int position = Arrays.binarySearch(current.keys, key);
+        if (position < 0) {
+            return;
+        }
+        long[] next = new long[current.keys.length - 1];
+        System.arraycopy(current.keys, 0, next, 0, position);
+        System.arraycopy(current.keys, position + 1, next, position, next.length - position);
+        // Stale Bloom bits are harmless: the sorted array has the final say.
+        state = new State(next, current.bloom, current.bloomCapacity);
+    }
+
+    private static State newState(long[] sortedKeys, int capacity) {
+        int bits = Integer.highestOneBit(Math.max(MIN_BLOOM_BITS, capacity * BITS_PER_KEY) - 1) << 1;
+        long[] bloom = new long[bits >>> 6];
+        int mask = bits - 1;
+        for (long key : sortedKeys) {
+            setBits(bloom, mask, key);
+        }
+        return new State(sortedKeys, bloom, capacity);
+    }
+
+    private static boolean mightContain(State current, long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = (h1 + i * h2) & current.bloomMask;
+            if ((current.bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setBits(long[] bloom, int mask, long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * MurmurHash3 64-bit finalizer.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
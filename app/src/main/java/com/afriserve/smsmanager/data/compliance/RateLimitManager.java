@@ -12,32 +12,41 @@ import io.reactivex.rxjava3.core.BackpressureStrategy;
 import io.reactivex.rxjava3.core.Flowable;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Rate limiting manager for SMS sending
- * Implements carrier-aware rate limiting to ensure compliance
+ * Implements carrier-aware rate limiting to ensure compliance.
+ * Each carrier (per SIM slot for the SIM-scoped calls) gets a GCRA limiter; carriers are
+ * resolved through a prefix trie covering the Kenyan networks. Limits can be overridden per
+ * carrier with {@link #setCarrierLimit}.
  */
 @Singleton
 public class RateLimitManager {
     
     private static final String TAG = "RateLimitManager";
     
-    // Carrier-specific rate limits (messages per minute)
-    private static final Map<String, Integer> CARRIER_RATE_LIMITS = Map.of(
-        "VERIZON", 30,      // 30 messages per minute
-        "AT&T", 60,         // 60 messages per minute  
-        "T-MOBILE", 120,    // 120 messages per minute
-        "SPRINT", 60,       // 60 messages per minute
-        "UNKNOWN", 30       // Conservative default
-    );
+    private static final String PREFS_NAME = "rate_limits";
+    private static final String KEY_PER_MINUTE_SUFFIX = ".per_minute";
+    private static final String KEY_BURST_SUFFIX = ".burst";
+    
+    private static final int DEFAULT_LIMIT = 30;
+    private static final int DEFAULT_BURST = 3;
+    
+    // Carrier-specific rate limits: {messages per minute, back-to-back burst}
+    private static final Map<String, int[]> CARRIER_RATE_LIMITS = buildDefaultLimits();
+    
+    private static final CarrierPrefixTrie CARRIER_PREFIXES = CarrierPrefixTrie.defaults();
     
     // Rate limit tracking
-    private final Map<String, RateLimitTracker> rateLimitTrackers = new ConcurrentHashMap<>();
+    private final Map<String, GcraRateLimiter> rateLimitTrackers = new ConcurrentHashMap<>();
     private final BehaviorSubject<RateLimitStatus> rateLimitStatus = BehaviorSubject.createDefault(RateLimitStatus.OK);
     
     // Global rate limiting
@@ -45,20 +54,32 @@ public class RateLimitManager {
     private static final long MIN_GLOBAL_INTERVAL = 100; // 100ms minimum between sends
     
     private final Context context;
+    private final SharedPreferences prefs;
     
     @Inject
     public RateLimitManager(@ApplicationContext Context context) {
         this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+    
+    private static Map<String, int[]> buildDefaultLimits() {
+        Map<String, int[]> limits = new HashMap<>();
+        limits.put("SAFARICOM", new int[]{60, 5});
+        limits.put("AIRTEL_KE", new int[]{40, 4});
+        limits.put("TELKOM_KE", new int[]{30, DEFAULT_BURST});
+        limits.put("VERIZON", new int[]{30, DEFAULT_BURST});
+        limits.put("AT&T", new int[]{60, 5});
+        limits.put("T-MOBILE", new int[]{120, 10});
+        limits.put("SPRINT", new int[]{60, 5});
+        limits.put(CarrierPrefixTrie.UNKNOWN, new int[]{DEFAULT_LIMIT, DEFAULT_BURST}); // Conservative default
+        return Collections.unmodifiableMap(limits);
     }
     
     /**
      * Get the delay needed before next send for the specified carrier
      */
     public long getDelayBeforeNextSend(String phoneNumber) {
-        String carrier = detectCarrier(phoneNumber);
-        RateLimitTracker tracker = rateLimitTrackers.computeIfAbsent(carrier, this::createTracker);
-        
-        return tracker.calculateDelay();
+        return limiterFor(detectCarrier(phoneNumber)).delay(System.currentTimeMillis());
     }
     
     /**
@@ -66,18 +87,134 @@ public class RateLimitManager {
      */
     public void recordSend(String phoneNumber) {
         String carrier = detectCarrier(phoneNumber);
-        RateLimitTracker tracker = rateLimitTrackers.get(carrier);
-        
-        if (tracker != null) {
-            tracker.recordSend();
-        }
+        long now = System.currentTimeMillis();
+        limiterFor(carrier).acquire(now);
         
         // Update global send time
-        lastGlobalSendTime.set(System.currentTimeMillis());
+        lastGlobalSendTime.set(now);
         
         Log.d(TAG, "Recorded send for carrier: " + carrier);
     }
     
+    /**
+     * Get the delay needed before the given SIM may send to the specified number.
+     * Each SIM slot has its own trackers, so parallel senders on different SIMs do
+     * not eat into each other's budget.
+     */
+    public long getDelayBeforeNextSend(int simSlot, String phoneNumber) {
+        return limiterFor(simSlot, detectCarrier(phoneNumber)).delay(System.currentTimeMillis());
+    }
+    
+    /**
+     * Record a successful send from the given SIM slot
+     */
+    public void recordSend(int simSlot, String phoneNumber) {
+        String carrier = detectCarrier(phoneNumber);
+        long now = System.currentTimeMillis();
+        limiterFor(simSlot, carrier).acquire(now);
+        
+        lastGlobalSendTime.set(now);
+        
+        Log.d(TAG, "Recorded send for carrier: " + carrier + " on SIM slot " + simSlot);
+    }
+    
+    /**
+     * Reserve count sends to the specified number's carrier in one step.
+     * The sends are already accounted for, so callers wait for each slot and send
+     * without calling recordSend.
+     */
+    public Reservation reserve(String phoneNumber, int count) {
+        return reserve(-1, Collections.nCopies(Math.max(0, count), phoneNumber));
+    }
+    
+    /**
+     * Reserve send slots for a batch from the given SIM slot, or from the shared trackers when
+     * simSlot is negative. Entry i of the reservation belongs to phoneNumbers[i]; null entries
+     * get no slot. Each carrier in the batch costs a single CAS, however many messages go to it.
+     */
+    public Reservation reserve(int simSlot, List<String> phoneNumbers) {
+        int size = phoneNumbers.size();
+        GcraRateLimiter[] limiters = new GcraRateLimiter[size];
+        Map<GcraRateLimiter, Integer> counts = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            String phone = phoneNumbers.get(i);
+            if (phone == null) {
+                continue;
+            }
+            String carrier = detectCarrier(phone);
+            limiters[i] = simSlot >= 0 ? limiterFor(simSlot, carrier) : limiterFor(carrier);
+            Integer count = counts.get(limiters[i]);
+            counts.put(limiters[i], count == null ? 1 : count + 1);
+        }
+        
+        long now = System.currentTimeMillis();
+        Map<GcraRateLimiter, Long> bases = new HashMap<>();
+        Map<GcraRateLimiter, Long> ends = new HashMap<>();
+        for (Map.Entry<GcraRateLimiter, Integer> entry : counts.entrySet()) {
+            GcraRateLimiter limiter = entry.getKey();
+            long base = limiter.reserve(entry.getValue(), now);
+            bases.put(limiter, base);
+            ends.put(limiter, limiter.endOf(base, entry.getValue()));
+        }
+        
+        long[] sendAt = new long[size];
+        Map<GcraRateLimiter, Integer> taken = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            GcraRateLimiter limiter = limiters[i];
+            if (limiter == null) {
+                continue;
+            }
+            Integer slot = taken.get(limiter);
+            int index = slot == null ? 0 : slot;
+            taken.put(limiter, index + 1);
+            sendAt[i] = Math.max(now, bases.get(limiter) + index * limiter.getIntervalMs());
+        }
+        if (!counts.isEmpty()) {
+            lastGlobalSendTime.set(now);
+        }
+        return new Reservation(limiters, sendAt, ends);
+    }
+    
+    /**
+     * Override the limit for a carrier. Persisted, and applied to new sends straight away.
+     */
+    public void setCarrierLimit(String carrier, int limitPerMinute, int burst) {
+        prefs.edit()
+                .putInt(carrier + KEY_PER_MINUTE_SUFFIX, Math.max(1, limitPerMinute))
+                .putInt(carrier + KEY_BURST_SUFFIX, Math.max(1, burst))
+                .apply();
+        replaceLimiters(carrier);
+        Log.d(TAG, "Rate limit for " + carrier + " set to " + limitPerMinute + "/min, burst " + burst);
+    }
+    
+    /**
+     * Drop a carrier's override and go back to the built-in limit
+     */
+    public void clearCarrierLimit(String carrier) {
+        prefs.edit()
+                .remove(carrier + KEY_PER_MINUTE_SUFFIX)
+                .remove(carrier + KEY_BURST_SUFFIX)
+                .apply();
+        replaceLimiters(carrier);
+    }
+    
+    /**
+     * Swap a carrier's limiters for ones built from its current limit, keeping the sends they
+     * already count. Sends reserved on an old limiter while it is being replaced are not
+     * carried over.
+     */
+    private void replaceLimiters(String carrier) {
+        long now = System.currentTimeMillis();
+        rateLimitTrackers.replaceAll((key, previous) -> {
+            if (!carrier.equals(carrierOf(key))) {
+                return previous;
+            }
+            GcraRateLimiter replacement = createTracker(carrier);
+            replacement.continueFrom(previous, now);
+            return replacement;
+        });
+    }
+    
     /**
      * Get current rate limit status
      */
@@ -93,20 +230,22 @@ public class RateLimitManager {
     }
     
     /**
-     * Get rate limit statistics
+     * Get rate limit statistics.
+     * currentRate is the limiter's fill expressed against its per-minute limit, so a carrier
+     * whose burst is used up reports its full limit.
      */
     public RateLimitStats getStats() {
         Map<String, CarrierStats> carrierStats = new HashMap<>();
+        long now = System.currentTimeMillis();
         
-        for (Map.Entry<String, RateLimitTracker> entry : rateLimitTrackers.entrySet()) {
-            String carrier = entry.getKey();
-            RateLimitTracker tracker = entry.getValue();
+        for (Map.Entry<String, GcraRateLimiter> entry : rateLimitTrackers.entrySet()) {
+            GcraRateLimiter tracker = entry.getValue();
             
-            carrierStats.put(carrier, new CarrierStats(
-                carrier,
-                (double) tracker.getCurrentRate(),
+            carrierStats.put(entry.getKey(), new CarrierStats(
+                tracker.getCarrier(),
+                (double) tracker.getLimit() * tracker.backlog(now) / tracker.getBurst(),
                 tracker.getLimit(),
-                tracker.isRateLimited()
+                tracker.isLimited(now)
             ));
         }
         
@@ -124,161 +263,111 @@ public class RateLimitManager {
     }
     
     /**
-     * Detect carrier based on phone number
+     * Carrier a number is routed to, as used for rate limiting; "UNKNOWN" when undetected
      */
-    private String detectCarrier(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.isEmpty()) {
-            return "UNKNOWN";
-        }
-        
-        // Simple carrier detection based on number patterns
-        // In production, this would use a more sophisticated method
-        if (phoneNumber.startsWith("+1")) {
-            // US number - detect based on first 6 digits (NPA-NXX)
-            String prefix = phoneNumber.length() >= 6 ? phoneNumber.substring(2, 6) : "";
-            return detectUSCarrier(prefix);
-        } else if (phoneNumber.startsWith("+44")) {
-            // UK number
-            return detectUKCarrier(phoneNumber);
-        } else if (phoneNumber.startsWith("+91")) {
-            // India number
-            return detectIndiaCarrier(phoneNumber);
-        }
-        
-        return "UNKNOWN";
+    public String getCarrier(String phoneNumber) {
+        return detectCarrier(phoneNumber);
     }
     
     /**
-     * Detect US carrier based on NPA-NXX prefix
+     * Spacing between sustained sends to a carrier once its burst is used up
      */
-    private String detectUSCarrier(String prefix) {
-        // Simplified carrier detection - in production would use comprehensive database
-        Map<String, String> carrierMap = Map.of(
-            "212", "VERIZON",
-            "646", "VERIZON", 
-            "917", "VERIZON",
-            "213", "AT&T",
-            "310", "AT&T",
-            "415", "AT&T",
-            "206", "T-MOBILE",
-            "425", "T-MOBILE",
-            "971", "T-MOBILE"
-        );
-        
-        return carrierMap.getOrDefault(prefix, "UNKNOWN");
+    public long getSendIntervalMs(String carrier) {
+        return limiterFor(carrier).getIntervalMs();
     }
-    
+
     /**
-     * Detect UK carrier
+     * Detect carrier based on phone number prefix
      */
-    private String detectUKCarrier(String phoneNumber) {
-        // UK carrier detection logic
-        if (phoneNumber.startsWith("+4477") || phoneNumber.startsWith("+4479")) {
-            return "VODAFONE";
-        } else if (phoneNumber.startsWith("+4478")) {
-            return "O2";
-        } else if (phoneNumber.startsWith("+4474")) {
-            return "EE";
+    private String detectCarrier(String phoneNumber) {
+        if (phoneNumber == null || phoneNumber.isEmpty()) {
+            return CarrierPrefixTrie.UNKNOWN;
         }
-        return "UNKNOWN";
+        return CARRIER_PREFIXES.lookup(phoneNumber);
     }
     
-    /**
-     * Detect India carrier
-     */
-    private String detectIndiaCarrier(String phoneNumber) {
-        // India carrier detection logic
-        if (phoneNumber.startsWith("+9198") || phoneNumber.startsWith("+9197")) {
-            return "AIRTEL";
-        } else if (phoneNumber.startsWith("+9190") || phoneNumber.startsWith("+9191")) {
-            return "JIO";
-        } else if (phoneNumber.startsWith("+9199")) {
-            return "IDEA";
-        }
-        return "UNKNOWN";
+    private GcraRateLimiter limiterFor(String carrier) {
+        return rateLimitTrackers.computeIfAbsent(carrier, this::createTracker);
+    }
+    
+    private GcraRateLimiter limiterFor(int simSlot, String carrier) {
+        return rateLimitTrackers.computeIfAbsent(simTrackerKey(simSlot, carrier), k -> createTracker(carrierOf(k)));
+    }
+    
+    private static String simTrackerKey(int simSlot, String carrier) {
+        return "SIM" + simSlot + ":" + carrier;
+    }
+    
+    private static String carrierOf(String trackerKey) {
+        int separator = trackerKey.indexOf(':');
+        return separator >= 0 ? trackerKey.substring(separator + 1) : trackerKey;
     }
     
     /**
-     * Create rate limit tracker for carrier
+     * Create rate limit tracker for carrier, applying any stored override
      */
-    private RateLimitTracker createTracker(String carrier) {
-        int limit = CARRIER_RATE_LIMITS.getOrDefault(carrier, 30);
-        return new RateLimitTracker(carrier, limit);
+    private GcraRateLimiter createTracker(String carrier) {
+        int[] defaults = CARRIER_RATE_LIMITS.get(carrier);
+        int limit = prefs.getInt(carrier + KEY_PER_MINUTE_SUFFIX, defaults != null ? defaults[0] : DEFAULT_LIMIT);
+        int burst = prefs.getInt(carrier + KEY_BURST_SUFFIX, defaults != null ? defaults[1] : DEFAULT_BURST);
+        return new GcraRateLimiter(carrier, limit, burst);
     }
     
     /**
-     * Rate limit tracker for individual carriers
+     * Send slots handed out by {@link #reserve}
      */
-    private static class RateLimitTracker {
-        private final String carrier;
-        private final int limitPerMinute;
-        private final AtomicLong messagesInCurrentMinute = new AtomicLong(0);
-        private final AtomicLong currentMinuteStart = new AtomicLong(System.currentTimeMillis());
-        private final AtomicLong lastSendTime = new AtomicLong(0);
+    public static final class Reservation {
+        private final GcraRateLimiter[] limiters;
+        private final long[] sendAt;
+        // Each limiter's TAT right after this reservation
+        private final Map<GcraRateLimiter, Long> ends;
+        private boolean released;
         
-        public RateLimitTracker(String carrier, int limitPerMinute) {
-            this.carrier = carrier;
-            this.limitPerMinute = limitPerMinute;
+        Reservation(GcraRateLimiter[] limiters, long[] sendAt, Map<GcraRateLimiter, Long> ends) {
+            this.limiters = limiters;
+            this.sendAt = sendAt;
+            this.ends = ends;
         }
         
-        public long calculateDelay() {
-            long now = System.currentTimeMillis();
-            long currentMinute = (now / 60000) * 60000;
-            
-            // Reset counter if we're in a new minute
-            if (currentMinuteStart.get() != currentMinute) {
-                currentMinuteStart.set(currentMinute);
-                messagesInCurrentMinute.set(0);
-            }
-            
-            // Check if we've hit the rate limit
-            if (messagesInCurrentMinute.get() >= limitPerMinute) {
-                long nextMinute = currentMinute + 60000;
-                return Math.max(0, nextMinute - now);
-            }
-            
-            // Check minimum interval between sends
-            long timeSinceLastSend = now - lastSendTime.get();
-            long minInterval = 60000 / limitPerMinute; // Evenly distribute sends
-            
-            return Math.max(0, minInterval - timeSinceLastSend);
+        public int size() {
+            return sendAt.length;
         }
         
-        public void recordSend() {
-            long now = System.currentTimeMillis();
-            long currentMinute = (now / 60000) * 60000;
-            
-            // Reset counter if we're in a new minute
-            if (currentMinuteStart.get() != currentMinute) {
-                currentMinuteStart.set(currentMinute);
-                messagesInCurrentMinute.set(0);
-            }
-            
-            messagesInCurrentMinute.incrementAndGet();
-            lastSendTime.set(now);
+        /**
+         * Wall-clock time entry index may be sent at; 0 for entries without a slot
+         */
+        public long getSendAt(int index) {
+            return sendAt[index];
         }
         
-        public int getMessagesPerMinute() {
-            long now = System.currentTimeMillis();
-            long currentMinute = (now / 60000) * 60000;
-            
-            if (currentMinuteStart.get() != currentMinute) {
-                return 0;
-            }
-            
-            return (int) messagesInCurrentMinute.get();
-        }
-        
-        public double getCurrentRate() {
-            return getMessagesPerMinute();
-        }
-        
-        public int getLimit() {
-            return limitPerMinute;
+        /**
+         * How long to wait from now before sending entry index
+         */
+        public long delayFor(int index) {
+            return Math.max(0, sendAt[index] - System.currentTimeMillis());
         }
         
-        public boolean isRateLimited() {
-            return getMessagesPerMinute() >= limitPerMinute;
+        /**
+         * Hand back the slots of entries from index on, e.g. when a campaign is paused
+         * part way through a batch. Only the first call has an effect. Slots of a carrier
+         * that has been reserved again since stay consumed.
+         */
+        public synchronized void releaseFrom(int index) {
+            if (released) {
+                return;
+            }
+            released = true;
+            Map<GcraRateLimiter, Integer> unused = new HashMap<>();
+            for (int i = Math.max(0, index); i < limiters.length; i++) {
+                if (limiters[i] != null) {
+                    Integer count = unused.get(limiters[i]);
+                    unused.put(limiters[i], count == null ? 1 : count + 1);
+                }
+            }
+            long now = System.currentTimeMillis();
+            for (Map.Entry<GcraRateLimiter, Integer> entry : unused.entrySet()) {
+                entry.getKey().release(ends.get(entry.getKey()), entry.getValue(), now);
+            }
         }
     }
     
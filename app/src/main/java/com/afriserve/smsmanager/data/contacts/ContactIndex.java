@@ -0,0 +1,318 @@
+package com.afriserve.smsmanager.data.contacts;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.ContactsContract;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * In-memory map from normalized phone number to contact, built from a single query over
+ * CommonDataKinds.Phone. A ContentObserver marks the index stale on contact changes; the next
+ * read then re-queries only contacts updated or deleted since the last load.
+ *
+ * Provider queries only ever run on the index's own background thread. Readers never wait for
+ * them: until the first build finishes the index reports itself unloaded, and while a catch-up
+ * is running they keep reading the previous contents.
+ */
+final class ContactIndex {
+
+    private static final String TAG = "ContactIndex";
+    // Same minimum match PhoneLookup uses for numbers stored in another format
+    private static final int SUFFIX_LENGTH = 7;
+    private static final Contact AMBIGUOUS = new Contact(-1L, "", null);
+
+    static final class Contact {
+        final long contactId;
+        final String name;
+        @Nullable final String photoUri;
+
+        Contact(long contactId, String name, @Nullable String photoUri) {
+            this.contactId = contactId;
+            this.name = name;
+            this.photoUri = photoUri;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final Map<String, Contact> byNumber = new ConcurrentHashMap<>();
+    private final Map<String, Contact> bySuffix = new ConcurrentHashMap<>();
+    // Only touched on the refresh thread
+    private final Map<Long, List<String>> numbersByContact = new HashMap<>();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ContactIndexRefresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean loaded;
+    private volatile boolean stale;
+    private volatile boolean readable = true;
+    private long lastUpdatedAt;
+    private ContentObserver observer;
+    // Guarded by this
+    @Nullable
+    private Future<?> pendingRefresh;
+
+    ContactIndex(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Start loading or catching up the index in the background if it needs it, without waiting.
+     * Safe to call from the main thread.
+     *
+     * @return true if the index has contents to read, possibly from before the latest change
+     */
+    boolean requestRefresh() {
+        if (!loaded || stale) {
+            scheduleRefresh();
+        }
+        return loaded;
+    }
+
+    /**
+     * Load or catch up the index and wait for it. Returns false if contacts cannot be read.
+     */
+    @WorkerThread
+    boolean ensureFresh() {
+        if (loaded && !stale) {
+            return true;
+        }
+        Future<?> refresh = scheduleRefresh();
+        try {
+            refresh.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Contact index refresh failed", e.getCause());
+        }
+        return readable && loaded;
+    }
+
+    private synchronized Future<?> scheduleRefresh() {
+        if (pendingRefresh == null || pendingRefresh.isDone()) {
+            pendingRefresh = refresher.submit(this::refresh);
+        }
+        return pendingRefresh;
+    }
+
+    private void refresh() {
+        if (loaded && !stale) {
+            return;
+        }
+        try {
+            if (!loaded) {
+                registerObserver();
+                stale = false;
+                loadChangedSince(0L);
+                loaded = true;
+                Log.d(TAG, "Indexed " + byNumber.size() + " contact numbers");
+            } else {
+                stale = false;
+                long since = lastUpdatedAt;
+                removeDeletedSince(since);
+                loadChangedSince(since);
+            }
+            readable = true;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Contacts permission not granted; index unavailable");
+            readable = false;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to refresh contact index", e);
+            stale = true;
+        }
+    }
+
+    /**
+     * Look up an already-normalized number. Returns null when no contact matches or when only an
+     * ambiguous suffix match exists; callers can use {@link #isAmbiguous} to tell them apart.
+     */
+    @Nullable
+    Contact find(String normalizedNumber) {
+        Contact contact = byNumber.get(normalizedNumber);
+        if (contact != null) {
+            return contact;
+        }
+        String suffix = suffixOf(normalizedNumber);
+        contact = suffix != null ? bySuffix.get(suffix) : null;
+        return contact != AMBIGUOUS ? contact : null;
+    }
+
+    boolean isAmbiguous(String normalizedNumber) {
+        String suffix = suffixOf(normalizedNumber);
+        return suffix != null && !byNumber.containsKey(normalizedNumber) && bySuffix.get(suffix) == AMBIGUOUS;
+    }
+
+    /**
+     * Drop the index; it is rebuilt in the background on the next request.
+     */
+    void clear() {
+        loaded = false;
+        refresher.execute(() -> {
+            byNumber.clear();
+            bySuffix.clear();
+            numbersByContact.clear();
+            lastUpdatedAt = 0L;
+            loaded = false;
+        });
+    }
+
+    private void loadChangedSince(long since) {
+        String[] projection = {
+            ContactsContract.CommonDataKinds.Phone.CONTACT_ID,
+            ContactsContract.CommonDataKinds.Phone.NUMBER,
+            ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
+            ContactsContract.CommonDataKinds.Phone.PHOTO_URI,
+            ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP
+        };
+        String selection = since > 0
+            ? ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP + " > ?"
+            : null;
+        String[] selectionArgs = since > 0 ? new String[]{String.valueOf(since)} : null;
+
+        Cursor cursor = contentResolver.query(
+            ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+            projection,
+            selection,
+            selectionArgs,
+            null
+        );
+        if (cursor == null) {
+            return;
+        }
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.CONTACT_ID);
+            int numberColumn = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER);
+            int nameColumn = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME);
+            int photoColumn = cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.PHOTO_URI);
+            int updatedColumn = cursor.getColumnIndexOrThrow(
+                ContactsContract.CommonDataKinds.Phone.CONTACT_LAST_UPDATED_TIMESTAMP);
+
+            Map<Long, Boolean> reset = new HashMap<>();
+            long newest = since;
+            while (cursor.moveToNext()) {
+                long contactId = cursor.getLong(idColumn);
+                String name = cursor.getString(nameColumn);
+                String normalized = PhoneNumberUtils.normalizePhoneNumber(cursor.getString(numberColumn));
+                newest = Math.max(newest, cursor.getLong(updatedColumn));
+                if (since > 0 && reset.put(contactId, Boolean.TRUE) == null) {
+                    // Numbers may have been removed from an updated contact
+                    removeContact(contactId);
+                }
+                if (normalized == null || name == null || name.trim().isEmpty()) {
+                    continue;
+                }
+                add(normalized, new Contact(contactId, name, cursor.getString(photoColumn)));
+            }
+            lastUpdatedAt = newest;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void removeDeletedSince(long since) {
+        Cursor cursor = contentResolver.query(
+            ContactsContract.DeletedContacts.CONTENT_URI,
+            new String[]{ContactsContract.DeletedContacts.CONTACT_ID},
+            ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " > ?",
+            new String[]{String.valueOf(since)},
+            null
+        );
+        if (cursor == null) {
+            return;
+        }
+        try {
+            int idColumn = cursor.getColumnIndexOrThrow(ContactsContract.DeletedContacts.CONTACT_ID);
+            while (cursor.moveToNext()) {
+                removeContact(cursor.getLong(idColumn));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void add(String normalized, Contact contact) {
+        byNumber.put(normalized, contact);
+        List<String> numbers = numbersByContact.get(contact.contactId);
+        if (numbers == null) {
+            numbers = new ArrayList<>(2);
+            numbersByContact.put(contact.contactId, numbers);
+        }
+        numbers.add(normalized);
+
+        String suffix = suffixOf(normalized);
+        if (suffix != null) {
+            Contact existing = bySuffix.putIfAbsent(suffix, contact);
+            if (existing != null && existing.contactId != contact.contactId) {
+                bySuffix.put(suffix, AMBIGUOUS);
+            }
+        }
+    }
+
+    private void removeContact(long contactId) {
+        List<String> numbers = numbersByContact.remove(contactId);
+        if (numbers == null) {
+            return;
+        }
+        for (String number : numbers) {
+            Contact contact = byNumber.get(number);
+            if (contact != null && contact.contactId == contactId) {
+                byNumber.remove(number);
+            }
+            String suffix = suffixOf(number);
+            if (suffix != null) {
+                bySuffix.computeIfPresent(suffix, (key, value) -> value.contactId == contactId ? null : value);
+            }
+        }
+    }
+
+    private void registerObserver() {
+        if (observer != null) {
+            return;
+        }
+        observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                stale = true;
+            }
+        };
+        contentResolver.registerContentObserver(ContactsContract.Contacts.CONTENT_URI, true, observer);
+    }
+
+    @Nullable
+    private static String suffixOf(String normalized) {
+        int digits = 0;
+        char[] tail = new char[SUFFIX_LENGTH];
+        for (int i = normalized.length() - 1; i >= 0 && digits < SUFFIX_LENGTH; i--) {
+            char c = normalized.charAt(i);
+            if (c >= '0' && c <= '9') {
+                tail[SUFFIX_LENGTH - 1 - digits] = c;
+                digits++;
+            }
+        }
+        return digits == SUFFIX_LENGTH ? new String(tail) : null;
+    }
+}
@@ -16,6 +16,11 @@ import com.afriserve.smsmanager.data.cache.EnhancedLruCache;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import android.util.LruCache;
 import androidx.annotation.Nullable;
@@ -28,7 +33,7 @@ import androidx.annotation.Nullable;
 public class ContactResolver {
     
     private static final String TAG = "ContactResolver";
-    private static final int CACHE_SIZE = 100; // Cache up to 100 contacts
+    private static final int CACHE_SIZE = 500; // Several prefetched inbox pages
     private static final long CACHE_TTL_MS = 5 * 60 * 1000; // 5 minutes TTL
     private static final long NOT_FOUND_TTL_MS = 30 * 1000; // 30 seconds for not found
     private static final int MAX_RETRY_ATTEMPTS = 2; // Retry transient errors
@@ -39,6 +44,7 @@ public class ContactResolver {
     private final ConcurrentHashMap<String, BehaviorSubject<String>> nameSubjects;
     private final ConcurrentHashMap<String, BehaviorSubject<Uri>> photoSubjects;
     private final ContentResolver contentResolver;
+    private final ContactIndex contactIndex;
     
     @Inject
     public ContactResolver(@ApplicationContext Context context) {
@@ -50,6 +56,7 @@ public class ContactResolver {
         this.photoCache = new EnhancedLruCache<>(CACHE_SIZE, CACHE_TTL_MS);
         this.nameSubjects = new ConcurrentHashMap<>();
         this.photoSubjects = new ConcurrentHashMap<>();
+        this.contactIndex = new ContactIndex(contentResolver);
     }
     
     /**
@@ -79,10 +86,20 @@ public class ContactResolver {
         }
         
         // Check enhanced cache first
-        ContactCacheEntry cachedEntry = nameCache.get(normalizedNumber);
-            if (cachedEntry != null) {
+        ContactCacheEntry cachedEntry = nameCache.get(normalizedNumber, ContactCacheEntry.MISS);
+            if (cachedEntry == null) {
+                // Cached "not found"
+                return normalizedNumber;
+            }
+            if (cachedEntry != ContactCacheEntry.MISS) {
                 return cachedEntry.name;
             }
+
+        // Serve from the contacts index once a batch prefetch has built it; a pending catch-up
+        // runs in the background, so this never waits on a provider query for the whole index
+        if (contactIndex.isLoaded() && contactIndex.requestRefresh() && !contactIndex.isAmbiguous(normalizedNumber)) {
+            return cacheIndexed(normalizedNumber, contactIndex.find(normalizedNumber));
+        }
         
         // Query with retry logic
         String contactName = queryContactNameWithRetry(normalizedNumber);
@@ -98,6 +115,75 @@ public class ContactResolver {
         return contactName;
     }
     
+    /**
+     * Resolve a batch of numbers at once, e.g. the rows of an inbox page before they bind.
+     * Numbers missing from the cache are answered from the contacts index, which costs one
+     * provider query when first built and an incremental query after contacts change.
+     * Waits for the index, so call it off the main thread.
+     * @param phoneNumbers Phone numbers to resolve
+     * @return Map of normalized number to contact name, or to the number itself if not found
+     */
+    public Map<String, String> prefetchContactNames(Collection<String> phoneNumbers) {
+        Map<String, String> names = new HashMap<>();
+        Set<String> uncached = new LinkedHashSet<>();
+        for (String phoneNumber : phoneNumbers) {
+            String normalizedNumber = PhoneNumberUtils.normalizePhoneNumber(phoneNumber);
+            if (normalizedNumber == null || names.containsKey(normalizedNumber)) {
+                continue;
+            }
+            ContactCacheEntry cachedEntry = nameCache.get(normalizedNumber, ContactCacheEntry.MISS);
+            if (cachedEntry == null) {
+                names.put(normalizedNumber, normalizedNumber);
+            } else if (cachedEntry != ContactCacheEntry.MISS) {
+                names.put(normalizedNumber, cachedEntry.name);
+            } else {
+                uncached.add(normalizedNumber);
+            }
+        }
+        if (uncached.isEmpty()) {
+            return names;
+        }
+
+        boolean indexed = contactIndex.ensureFresh();
+        for (String normalizedNumber : uncached) {
+            if (indexed && !contactIndex.isAmbiguous(normalizedNumber)) {
+                names.put(normalizedNumber, cacheIndexed(normalizedNumber, contactIndex.find(normalizedNumber)));
+            } else {
+                // No contacts permission, or several contacts share the number's last digits
+                names.put(normalizedNumber, getContactName(normalizedNumber));
+            }
+        }
+        Log.d(TAG, "Prefetched " + uncached.size() + " contacts (" + (indexed ? "index" : "lookup") + ")");
+        return names;
+    }
+
+    /**
+     * Asynchronous {@link #prefetchContactNames}
+     */
+    public Single<Map<String, String>> prefetchContactNamesAsync(Collection<String> phoneNumbers) {
+        return Single.fromCallable(() -> prefetchContactNames(phoneNumbers))
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Cache an index result for both name and photo lookups.
+     * @return Contact name, or the number itself if not found
+     */
+    private String cacheIndexed(String normalizedNumber, @Nullable ContactIndex.Contact contact) {
+        if (contact == null) {
+            nameCache.putNotFound(normalizedNumber, NOT_FOUND_TTL_MS);
+            photoCache.putNotFound(normalizedNumber, NOT_FOUND_TTL_MS);
+            return normalizedNumber;
+        }
+        nameCache.put(normalizedNumber, new ContactCacheEntry(contact.name, System.currentTimeMillis()));
+        if (contact.photoUri != null) {
+            photoCache.put(normalizedNumber, Uri.parse(contact.photoUri));
+        } else {
+            photoCache.putNotFound(normalizedNumber, CACHE_TTL_MS);
+        }
+        return contact.name;
+    }
+    
     /**
      * Query contact name with retry logic for transient errors
      */
@@ -232,6 +318,12 @@ public class ContactResolver {
                 Log.w(TAG, "Invalid phone number for contact photo lookup: " + phoneNumber);
                 return null;
             }
+
+            // Null entries are cached "no photo" results
+            Uri cachedPhoto = photoCache.get(normalizedNumber, Uri.EMPTY);
+            if (cachedPhoto != Uri.EMPTY) {
+                return cachedPhoto;
+            }
             
             Uri uri = Uri.withAppendedPath(
                 ContactsContract.PhoneLookup.CONTENT_FILTER_URI,
@@ -281,6 +373,7 @@ public class ContactResolver {
         photoCache.clear();
         nameSubjects.clear();
         photoSubjects.clear();
+        contactIndex.clear();
         Log.d(TAG, "Contact cache cleared");
     }
     
@@ -302,6 +395,9 @@ public class ContactResolver {
      * Cache entry with timestamp for TTL support
      */
     private static class ContactCacheEntry {
+        // Sentinel for an uncached number; null entries are cached "not found" results
+        static final ContactCacheEntry MISS = new ContactCacheEntry(null, 0L);
+
         public final String name;
         public final long timestamp;
         
@@ -315,8 +411,8 @@ public class ContactResolver {
      * Get cache statistics for debugging
      */
     public String getCacheStats() {
-        return String.format("NameCache: %d/%d entries, PhotoCache: %d/%d entries", 
-            nameCache.size(), CACHE_SIZE, 
-            photoCache.size(), CACHE_SIZE);
+        return String.format("NameCache: %d/%d entries (%s), PhotoCache: %d/%d entries (%s)", 
+            nameCache.size(), CACHE_SIZE, nameCache.stats(),
+            photoCache.size(), CACHE_SIZE, photoCache.stats());
     }
 }
@@ -8,6 +8,7 @@ import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
@@ -206,50 +207,18 @@ public class EnhancedContactResolver {
             return phoneNumber;
         }
         
-        try {
-            // Get all contacts and find best match
-            Cursor cursor = contentResolver.query(
-                ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-                new String[]{
-                    ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME,
-                    ContactsContract.CommonDataKinds.Phone.NUMBER
-                },
-                null,
-                null,
-                null
-            );
-            
-            if (cursor != null) {
-                try {
-                    String bestMatch = null;
-                    double bestScore = 0.0;
-                    
-                    while (cursor.moveToNext()) {
-                        int nameIdx = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME);
-                        int phoneIdx = cursor.getColumnIndex(ContactsContract.CommonDataKinds.Phone.NUMBER);
-                        if (nameIdx < 0 || phoneIdx < 0) continue;
-                        String name = cursor.getString(nameIdx);
-                        String contactPhone = cursor.getString(phoneIdx);
-                        
-                        String normalizedContact = PhoneNumberUtils.normalizePhoneNumber(contactPhone);
-                        if (normalizedContact != null) {
-                            double similarity = calculateSimilarity(normalized, normalizedContact);
-                            if (similarity > bestScore && similarity >= SIMILARITY_THRESHOLD) {
-                                bestScore = similarity;
-                                bestMatch = name;
-                            }
-                        }
-                    }
-                    
-                    if (bestMatch != null) {
-                        return bestMatch;
-                    }
-                } finally {
-                    cursor.close();
-                }
+        // Score against the contacts loaded at startup rather than re-reading the table per miss
+        String bestMatch = null;
+        double bestScore = 0.0;
+        for (Map.Entry<String, LocalContact> entry : localContactsCache.entrySet()) {
+            double similarity = calculateSimilarity(normalized, entry.getKey());
+            if (similarity > bestScore && similarity >= SIMILARITY_THRESHOLD) {
+                bestScore = similarity;
+                bestMatch = entry.getValue().name;
             }
-        } catch (Exception e) {
-            Log.w(TAG, "Fuzzy match search failed for " + phoneNumber, e);
+        }
+        if (bestMatch != null) {
+            return bestMatch;
         }
         
         return phoneNumber;
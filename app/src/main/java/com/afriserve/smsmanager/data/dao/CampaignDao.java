@@ -6,6 +6,8 @@ import androidx.room.Insert;
 import androidx.room.Update;
 import androidx.room.Delete;
 import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
 import androidx.room.OnConflictStrategy;
 
 import com.afriserve.smsmanager.data.entity.CampaignEntity;
@@ -28,8 +30,11 @@ public interface CampaignDao {
     @Query("SELECT * FROM campaign_entities WHERE status = :status ORDER BY createdAt DESC")
     PagingSource<Integer, CampaignEntity> getCampaignsByStatusPaged(String status);
     
-    @Query("SELECT * FROM campaign_entities WHERE name LIKE '%' || :query || '%' OR description LIKE '%' || :query || '%' ORDER BY createdAt DESC")
-    PagingSource<Integer, CampaignEntity> searchCampaignsPaged(String query);
+    /**
+     * Backs campaign search through SearchPagingSource, which builds the SQL.
+     */
+    @RawQuery
+    List<CampaignEntity> getCampaignsByQuery(SupportSQLiteQuery query);
     
     @Query("SELECT * FROM campaign_entities WHERE id = :id")
     Single<CampaignEntity> getCampaignById(long id);
@@ -118,6 +123,18 @@ public interface CampaignDao {
     @Query("UPDATE campaign_entities SET failedCount = failedCount + 1 WHERE id = :id")
     Completable incrementFailedCount(long id);
     
+    /**
+     * Apply aggregated counter deltas collected by the bulk send pipeline in a single UPDATE.
+     */
+    @Query("UPDATE campaign_entities SET sentCount = sentCount + :sentDelta, failedCount = failedCount + :failedDelta, skippedCount = skippedCount + :skippedDelta, updatedAt = :updatedAt WHERE id = :id")
+    int applyCountDeltas(long id, int sentDelta, int failedDelta, int skippedDelta, long updatedAt);
+
+    /**
+     * Apply delivery-callback counter deltas collected by the delivery status queue.
+     */
+    @Query("UPDATE campaign_entities SET deliveredCount = deliveredCount + :deliveredDelta, failedCount = failedCount + :failedDelta, updatedAt = :updatedAt WHERE id = :id")
+    int applyDeliveryDeltas(long id, int deliveredDelta, int failedDelta, long updatedAt);
+    
     @Query("UPDATE campaign_entities SET sentCount = :sentCount, deliveredCount = :deliveredCount, failedCount = :failedCount WHERE id = :id")
     Completable updateCampaignCounts(long id, int sentCount, int deliveredCount, int failedCount);
     
@@ -1,5 +1,7 @@
 package com.afriserve.smsmanager.data.dao;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.LiveData;
 import androidx.paging.PagingSource;
 import androidx.room.Dao;
@@ -7,7 +9,10 @@ import androidx.room.Insert;
 import androidx.room.Update;
 import androidx.room.Delete;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.OnConflictStrategy;
+import androidx.room.Transaction;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import com.afriserve.smsmanager.data.entity.ConversationEntity;
 
@@ -123,33 +128,69 @@ public interface ConversationDao {
     
     @Query("DELETE FROM conversations WHERE phoneNumber = :phoneNumber")
     Completable deleteConversationByPhoneNumber(String phoneNumber);
+
+    /**
+     * Per-conversation aggregates over sms_entities in one GROUP BY pass, streamed as a cursor.
+     * Rows without a phone number are grouped by thread. Bare columns (threadId, lastMessage,
+     * lastBoxType) come from the row holding MAX(createdAt), as SQLite guarantees; the preview
+     * is cut to 51 characters so the caller can still tell whether it needs truncating.
+     */
+    @Query("SELECT phoneNumber, threadId, MAX(createdAt) AS lastMessageTime, " +
+           "SUBSTR(message, 1, 51) AS lastMessage, boxType AS lastBoxType, " +
+           "COUNT(*) AS messageCount, " +
+           "SUM(CASE WHEN isRead = 0 OR (isRead IS NULL AND status IN ('PENDING', 'SENT', 'RECEIVED')) " +
+           "THEN 1 ELSE 0 END) AS unreadCount " +
+           "FROM sms_entities " +
+           "GROUP BY CASE WHEN phoneNumber IS NULL OR TRIM(phoneNumber) = '' " +
+           "THEN 'thread:' || IFNULL(threadId, 0) ELSE phoneNumber END")
+    Cursor getConversationAggregates();
+
+    @Query("SELECT * FROM conversations")
+    List<ConversationEntity> getAllConversationsSync();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    List<Long> insertConversationsSync(List<ConversationEntity> conversations);
+
+    @Update(onConflict = OnConflictStrategy.IGNORE)
+    int updateConversationsSync(List<ConversationEntity> conversations);
+
+    @Query("SELECT * FROM conversations WHERE threadId = :threadId LIMIT 1")
+    ConversationEntity findConversationByThreadIdSync(long threadId);
+
+    @Query("SELECT * FROM conversations WHERE phoneNumber = :phoneNumber LIMIT 1")
+    ConversationEntity findConversationByPhoneNumberSync(String phoneNumber);
+
+    @Query("SELECT * FROM conversations WHERE phoneKey = :phoneKey ORDER BY lastMessageTime DESC LIMIT 1")
+    ConversationEntity findConversationByPhoneKeySync(long phoneKey);
+
+    /**
+     * Run a read-modify-write over several conversations in one transaction, so counter updates
+     * made elsewhere (e.g. mark as read) cannot land between the read and the write.
+     */
+    @Transaction
+    default void runInTransaction(Runnable block) {
+        block.run();
+    }
+
+    /**
+     * Write a batch of new and changed conversations in one transaction.
+     */
+    @Transaction
+    default void applyConversationAggregates(List<ConversationEntity> inserts, List<ConversationEntity> updates) {
+        if (!updates.isEmpty()) {
+            updateConversationsSync(updates);
+        }
+        if (!inserts.isEmpty()) {
+            insertConversationsSync(inserts);
+        }
+    }
     
     @Query("DELETE FROM conversations")
     Completable deleteAllConversations();
     
-    @Query("SELECT * FROM conversations WHERE " +
-           "contactName LIKE '%' || :query || '%' OR " +
-           "phoneNumber LIKE '%' || :query || '%' OR " +
-           "lastMessagePreview LIKE '%' || :query || '%' " +
-           "ORDER BY lastMessageTime DESC")
-    PagingSource<Integer, ConversationEntity> searchConversations(String query);
-
-        @Query("SELECT * FROM conversations " +
-            "WHERE (" +
-            "  :filter = 'ALL' OR " +
-            "  (:filter = 'INBOX' AND isArchived = 0) OR " +
-            "  (:filter = 'SENT' AND isArchived = 0 AND lastMessageType = 'SENT') OR " +
-            "  (:filter = 'UNREAD' AND unreadCount > 0)" +
-            ") AND (" +
-            "  COALESCE(:query, '') = '' OR " +
-            "  contactName LIKE '%' || :query || '%' OR " +
-            "  phoneNumber LIKE '%' || :query || '%' OR " +
-            "  lastMessagePreview LIKE '%' || :query || '%'" +
-            ") " +
-            "ORDER BY " +
-            "  CASE WHEN :sort = 'UNREAD_FIRST' THEN CASE WHEN unreadCount > 0 THEN 0 ELSE 1 END ELSE 0 END ASC, " +
-            "  isPinned DESC, " +
-            "  CASE WHEN :sort = 'OLDEST' THEN lastMessageTime END ASC, " +
-            "  CASE WHEN :sort != 'OLDEST' THEN lastMessageTime END DESC")
-        PagingSource<Integer, ConversationEntity> getConversationsPaged(String filter, String query, String sort);
+    /**
+     * Backs ConversationKeysetPagingSource and conversation search; both build the SQL.
+     */
+    @RawQuery
+    List<ConversationEntity> getConversationsByQuery(SupportSQLiteQuery query);
 }
@@ -13,6 +13,7 @@ import androidx.sqlite.db.SupportSQLiteQuery;
 import com.afriserve.smsmanager.data.entity.DashboardMetricsEntity;
 import com.afriserve.smsmanager.data.entity.DashboardStatsEntity;
 import com.afriserve.smsmanager.data.entity.KpiEntity;
+import com.afriserve.smsmanager.data.entity.SmsRollupEntity;
 
 import java.util.List;
 
@@ -145,8 +146,71 @@ public interface DashboardDao {
     @RawQuery
     Single<List<ComplianceReportData>> getComplianceReport(SupportSQLiteQuery query);
     
+    // ==================== SMS Rollup ====================
+    
+    /**
+     * Today's and yesterday's counters from the sms_rollup hour buckets, in one query.
+     * Days are given as local midnights (yesterday, today, tomorrow) so they follow the
+     * device's current zone; outgoing covers every status that belongs to a send attempt.
+     * Where the zone is offset by part of an hour, the hour holding midnight counts as the
+     * earlier day.
+     */
+    @Query("SELECT " +
+           "IFNULL(SUM(CASE WHEN bucketStart >= :todayStart AND status IN ('PENDING', 'SENT', 'DELIVERED', 'FAILED') THEN count END), 0) AS todayOutgoing, " +
+           "IFNULL(SUM(CASE WHEN bucketStart >= :todayStart AND status = 'DELIVERED' THEN count END), 0) AS todayDelivered, " +
+           "IFNULL(SUM(CASE WHEN bucketStart >= :todayStart AND status = 'FAILED' THEN count END), 0) AS todayFailed, " +
+           "IFNULL(SUM(CASE WHEN bucketStart >= :todayStart AND status = 'PENDING' THEN count END), 0) AS todayPending, " +
+           "IFNULL(SUM(CASE WHEN bucketStart < :todayStart AND status IN ('PENDING', 'SENT', 'DELIVERED', 'FAILED') THEN count END), 0) AS yesterdayOutgoing " +
+           "FROM sms_rollup WHERE bucketType = 'HOUR' AND bucketStart >= :yesterdayStart AND bucketStart < :tomorrowStart")
+    Single<DailyRollupCounts> getDailyRollupCounts(long yesterdayStart, long todayStart, long tomorrowStart);
+    
+    /**
+     * All-time message counters from the sms_rollup hour buckets
+     */
+    @Query("SELECT " +
+           "IFNULL(SUM(count), 0) AS total, " +
+           "IFNULL(SUM(CASE WHEN status = 'DELIVERED' THEN count END), 0) AS delivered, " +
+           "IFNULL(SUM(CASE WHEN status = 'FAILED' THEN count END), 0) AS failed, " +
+           "IFNULL(SUM(CASE WHEN status = 'PENDING' THEN count END), 0) AS pending " +
+           "FROM sms_rollup WHERE bucketType = 'HOUR'")
+    Single<RollupTotals> getRollupTotals();
+    
+    @Query("SELECT * FROM sms_rollup WHERE bucketType = 'HOUR' AND bucketStart >= :since ORDER BY bucketStart ASC")
+    Single<List<SmsRollupEntity>> getHourlyRollup(long since);
+    
     // ==================== Summary Classes ====================
     
+    class DailyRollupCounts {
+        public final int todayOutgoing;
+        public final int todayDelivered;
+        public final int todayFailed;
+        public final int todayPending;
+        public final int yesterdayOutgoing;
+        
+        public DailyRollupCounts(int todayOutgoing, int todayDelivered, int todayFailed,
+                                 int todayPending, int yesterdayOutgoing) {
+            this.todayOutgoing = todayOutgoing;
+            this.todayDelivered = todayDelivered;
+            this.todayFailed = todayFailed;
+            this.todayPending = todayPending;
+            this.yesterdayOutgoing = yesterdayOutgoing;
+        }
+    }
+    
+    class RollupTotals {
+        public final int total;
+        public final int delivered;
+        public final int failed;
+        public final int pending;
+        
+        public RollupTotals(int total, int delivered, int failed, int pending) {
+            this.total = total;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.pending = pending;
+        }
+    }
+    
     class DashboardMetricsSummary {
         public final int totalSent;
         public final int totalDelivered;
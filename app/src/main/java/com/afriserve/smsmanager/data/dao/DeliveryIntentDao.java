@@ -0,0 +1,33 @@
+package com.afriserve.smsmanager.data.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.afriserve.smsmanager.data.entity.DeliveryIntentEntity;
+
+import java.util.List;
+
+/**
+ * Data Access Object for the persistent delivery-intent registry
+ */
+@Dao
+public interface DeliveryIntentDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<DeliveryIntentEntity> intents);
+
+    @Query("DELETE FROM delivery_intents WHERE requestCode IN (:requestCodes)")
+    int deleteByRequestCodes(List<Integer> requestCodes);
+
+    @Query("SELECT * FROM delivery_intents")
+    List<DeliveryIntentEntity> getAllSync();
+
+    /**
+     * Drop intents whose broadcast can no longer arrive, e.g. delivery reports past the SMSC
+     * validity period.
+     */
+    @Query("DELETE FROM delivery_intents WHERE createdAt < :cutoff")
+    int deleteOlderThan(long cutoff);
+}
@@ -38,6 +38,9 @@ public interface OptOutDao {
     @Query("DELETE FROM opt_outs WHERE phoneNumber = :phoneNumber")
     Completable deleteOptOutByPhone(String phoneNumber);
     
+    @Query("DELETE FROM opt_outs WHERE phoneKey = :phoneKey")
+    Completable deleteOptOutByPhoneKey(long phoneKey);
+    
     @Query("SELECT * FROM opt_outs WHERE isActive = 1 ORDER BY optOutTime DESC")
     PagingSource<Integer, OptOutEntity> getActiveOptOutsPaged();
     
@@ -1,5 +1,7 @@
 package com.afriserve.smsmanager.data.dao;
 
+import android.database.Cursor;
+
 import androidx.lifecycle.LiveData;
 import androidx.paging.PagingSource;
 import androidx.room.Dao;
@@ -7,7 +9,10 @@ import androidx.room.Insert;
 import androidx.room.Update;
 import androidx.room.Delete;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.OnConflictStrategy;
+import androidx.room.Transaction;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import com.afriserve.smsmanager.data.entity.SmsEntity;
 
@@ -35,9 +40,6 @@ public interface SmsDao {
     @Query("SELECT * FROM sms_entities WHERE phoneNumber LIKE '%' || :phone || '%' ORDER BY createdAt DESC")
     PagingSource<Integer, SmsEntity> getSmsByPhonePaged(String phone);
 
-    @Query("SELECT * FROM sms_entities WHERE message LIKE '%' || :query || '%' ORDER BY createdAt DESC")
-    PagingSource<Integer, SmsEntity> searchSmsPaged(String query);
-
     @Query("SELECT * FROM sms_entities WHERE status = :status AND nextRetryAt <= :currentTime ORDER BY nextRetryAt ASC")
     List<SmsEntity> getPendingRetries(String status, long currentTime);
 
@@ -119,6 +121,57 @@ public interface SmsDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     Completable insertSmsList(List<SmsEntity> smsList);
 
+    /**
+     * Record a received message, deduplicated by dedupeKey. A row the provider sync imported
+     * under the same deviceSmsId before the receiver got here has no dedupeKey yet; it is
+     * claimed instead of inserting a second copy, and its id is returned so the receiver still
+     * notifies and updates the conversation.
+     * @return the row id, or -1 if the message was already received
+     */
+    @Transaction
+    default long insertIncomingSmsSync(SmsEntity sms) {
+        if (sms.dedupeKey != null && existsByDedupeKeySync(sms.dedupeKey)) {
+            return -1;
+        }
+        if (sms.deviceSmsId != null) {
+            Long synced = getUnclaimedIdByDeviceSmsIdSync(sms.deviceSmsId);
+            if (synced != null) {
+                claimIncomingSmsSync(synced, sms.dedupeKey, sms.threadId);
+                sms.id = synced;
+                return synced;
+            }
+            if (existsByDeviceSmsIdSync(sms.deviceSmsId)) {
+                // Received before under another key
+                return -1;
+            }
+        }
+        // Both unique keys were checked in this transaction, so a conflict here is a real error
+        return insertIncomingRowSync(sms);
+    }
+
+    @Insert(onConflict = OnConflictStrategy.ABORT)
+    long insertIncomingRowSync(SmsEntity sms);
+
+    @Query("SELECT id FROM sms_entities WHERE deviceSmsId = :deviceSmsId AND dedupeKey IS NULL")
+    Long getUnclaimedIdByDeviceSmsIdSync(long deviceSmsId);
+
+    @Query("UPDATE sms_entities SET dedupeKey = :dedupeKey, threadId = COALESCE(threadId, :threadId) " +
+           "WHERE id = :id")
+    void claimIncomingSmsSync(long id, Long dedupeKey, Long threadId);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM sms_entities WHERE deviceSmsId = :deviceSmsId)")
+    boolean existsByDeviceSmsIdSync(long deviceSmsId);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM sms_entities WHERE dedupeKey = :dedupeKey)")
+    boolean existsByDedupeKeySync(long dedupeKey);
+
+    /**
+     * Synchronous batch insert used by the bulk send pipeline.
+     * Room assigns the generated ids in the same order as the input list.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    List<Long> insertSmsBatch(List<SmsEntity> smsList);
+
     @Update
     Completable updateSms(SmsEntity sms);
 
@@ -155,12 +208,147 @@ public interface SmsDao {
     @Query("UPDATE sms_entities SET status = :newStatus, errorCode = :errorCode, errorMessage = :errorMessage, retryCount = retryCount + 1, nextRetryAt = :nextRetryAt WHERE id = :id")
     Completable markAsFailed(long id, String newStatus, String errorCode, String errorMessage, long nextRetryAt);
 
+    /**
+     * Promote a PENDING row to SENT. Rows already advanced by a delivery callback are left alone.
+     */
+    @Query("UPDATE sms_entities SET status = 'SENT', sentAt = :sentAt WHERE id = :id AND status = 'PENDING'")
+    int markPendingAsSent(long id, long sentAt);
+
+    /**
+     * Mark a PENDING row as FAILED without touching rows already updated by a callback.
+     */
+    @Query("UPDATE sms_entities SET status = 'FAILED', errorCode = :errorCode, errorMessage = :errorMessage, sentAt = :sentAt WHERE id = :id AND status = 'PENDING'")
+    int markPendingAsFailed(long id, String errorCode, String errorMessage, long sentAt);
+
+    @Query("SELECT * FROM sms_entities WHERE id IN (:ids)")
+    List<SmsEntity> getSmsByIdsSync(List<Long> ids);
+
+    /**
+     * Apply a sent-callback outcome. Used by the batched delivery status queue.
+     */
+    @Query("UPDATE sms_entities SET status = :status, sentAt = :sentAt, errorCode = :errorCode, errorMessage = :errorMessage WHERE id = :id")
+    int updateStatusWithSentAt(long id, String status, long sentAt, String errorCode, String errorMessage);
+
+    /**
+     * Apply a delivery-report outcome. Used by the batched delivery status queue.
+     */
+    @Query("UPDATE sms_entities SET status = :status, deliveredAt = :deliveredAt, errorCode = :errorCode, errorMessage = :errorMessage WHERE id = :id")
+    int updateStatusWithDeliveredAt(long id, String status, long deliveredAt, String errorCode, String errorMessage);
+
+    /**
+     * Remove PENDING rows that were prepared but never dispatched (pause/stop mid-chunk).
+     */
+    @Query("DELETE FROM sms_entities WHERE id IN (:ids) AND status = 'PENDING'")
+    int deletePendingByIds(List<Long> ids);
+
+    /**
+     * Apply a batch of send outcomes in one transaction.
+     * Rows with an id were inserted as PENDING by the preparation stage and only get a status
+     * transition; rows without an id never made it into the table and are inserted as-is.
+     */
+    @Transaction
+    default void applySendResults(List<SmsEntity> results) {
+        List<SmsEntity> inserts = new java.util.ArrayList<>();
+        for (SmsEntity sms : results) {
+            if (sms.id <= 0) {
+                inserts.add(sms);
+            } else if ("SENT".equals(sms.status)) {
+                markPendingAsSent(sms.id, sms.sentAt != null ? sms.sentAt : System.currentTimeMillis());
+            } else {
+                markPendingAsFailed(sms.id, sms.errorCode, sms.errorMessage,
+                        sms.sentAt != null ? sms.sentAt : System.currentTimeMillis());
+            }
+        }
+        if (!inserts.isEmpty()) {
+            List<Long> ids = insertSmsBatch(inserts);
+            for (int i = 0; i < inserts.size() && i < ids.size(); i++) {
+                inserts.get(i).id = ids.get(i);
+            }
+        }
+    }
+
+    /**
+     * Link a row to its Telephony provider copy without touching status columns.
+     */
+    @Query("UPDATE OR IGNORE sms_entities SET deviceSmsId = :deviceSmsId, threadId = COALESCE(:threadId, threadId) WHERE id = :id")
+    int attachDeviceSmsId(long id, long deviceSmsId, Long threadId);
+
+    @Transaction
+    default void attachDeviceSmsIds(List<SmsEntity> messages) {
+        for (SmsEntity sms : messages) {
+            if (sms.deviceSmsId != null) {
+                attachDeviceSmsId(sms.id, sms.deviceSmsId, sms.threadId);
+            }
+        }
+    }
+
+    /**
+     * Compact view of every provider-linked row for the sync diff.
+     * Only the compared columns are read; the body is reduced to its length.
+     */
+    @Query("SELECT deviceSmsId, boxType, threadId, isRead, LENGTH(message) AS messageLength " +
+           "FROM sms_entities WHERE deviceSmsId IS NOT NULL")
+    Cursor getProviderSyncState();
+
+    /**
+     * Rows not yet linked to the provider that a provider row dated since could still be a copy
+     * of, e.g. receiver inserts and campaign sends awaiting their provider copy. Only the
+     * columns the sync matcher compares are read.
+     */
+    @Query("SELECT id, phoneNumber, boxType, message, createdAt FROM sms_entities " +
+           "WHERE deviceSmsId IS NULL AND createdAt >= :since")
+    List<UnlinkedSms> getUnlinkedSmsSinceSync(long since);
+
+    /**
+     * Link a row to its provider copy, unless another sync linked it first.
+     */
+    @Query("UPDATE sms_entities SET deviceSmsId = :deviceSmsId, threadId = :threadId, isRead = :isRead " +
+           "WHERE id = :id AND deviceSmsId IS NULL")
+    int linkToProviderSync(long id, long deviceSmsId, Long threadId, Boolean isRead);
+
+    @Query("SELECT * FROM sms_entities WHERE deviceSmsId IN (:deviceSmsIds)")
+    List<SmsEntity> getSmsByDeviceSmsIdsSync(List<Long> deviceSmsIds);
+
+    @Update
+    int updateSmsBatch(List<SmsEntity> smsList);
+
+    /**
+     * Write one chunk of a provider sync in a single transaction.
+     */
+    @Transaction
+    default void applyProviderSync(List<SmsEntity> inserts, List<SmsEntity> updates, List<SmsEntity> links) {
+        if (!updates.isEmpty()) {
+            updateSmsBatch(updates);
+        }
+        for (SmsEntity link : links) {
+            linkToProviderSync(link.id, link.deviceSmsId, link.threadId, link.isRead);
+        }
+        if (!inserts.isEmpty()) {
+            List<Long> ids = insertSmsBatch(inserts);
+            for (int i = 0; i < inserts.size() && i < ids.size(); i++) {
+                inserts.get(i).id = ids.get(i);
+            }
+        }
+    }
+
     @Query("SELECT * FROM sms_entities WHERE phoneNumber = :phoneNumber ORDER BY createdAt ASC")
     Single<List<SmsEntity>> getMessagesByPhoneNumber(String phoneNumber);
 
+    /**
+     * Messages to any spelling of a number, by canonical key
+     */
+    @Query("SELECT * FROM sms_entities WHERE phoneKey = :phoneKey ORDER BY createdAt ASC")
+    Single<List<SmsEntity>> getMessagesByPhoneKey(long phoneKey);
+
     @Query("SELECT * FROM sms_entities WHERE threadId = :threadId ORDER BY createdAt ASC")
     Single<List<SmsEntity>> getMessagesByThreadId(long threadId);
 
+    /**
+     * Backs MessageKeysetPagingSource and message search; both build the SQL.
+     */
+    @RawQuery
+    List<SmsEntity> getSmsByQuery(SupportSQLiteQuery query);
+
     @Query("SELECT * FROM sms_entities WHERE phoneNumber LIKE '%' || :phoneNumber || '%' ORDER BY createdAt ASC")
     Single<List<SmsEntity>> getMessagesByPhoneNumberLike(String phoneNumber);
 
@@ -204,9 +392,6 @@ public interface SmsDao {
     @Query("SELECT * FROM sms_entities WHERE boxType = 1 ORDER BY createdAt DESC")
     PagingSource<Integer, SmsEntity> getInboxMessagesPaged();
 
-    @Query("SELECT * FROM sms_entities WHERE (phoneNumber LIKE '%' || :query || '%' OR message LIKE '%' || :query || '%') ORDER BY createdAt DESC")
-    PagingSource<Integer, SmsEntity> searchMessagesPaged(String query);
-
     /**
      * Get the timestamp of the most recent message for incremental sync
      */
@@ -224,4 +409,17 @@ public interface SmsDao {
      */
     @Query("SELECT * FROM sms_entities WHERE deviceSmsId IS NULL AND (boxType = 1 OR status = 'RECEIVED') ORDER BY createdAt ASC")
     io.reactivex.rxjava3.core.Single<List<SmsEntity>> getInboxMessagesWithoutDeviceId();
+
+    // ==================== Sync Projections ====================
+
+    /**
+     * Matching columns of a row not yet linked to the provider.
+     */
+    class UnlinkedSms {
+        public long id;
+        public String phoneNumber;
+        public Integer boxType;
+        public String message;
+        public long createdAt;
+    }
 }
@@ -6,6 +6,7 @@ import androidx.room.Update;
 import androidx.room.Delete;
 import androidx.room.Query;
 import androidx.room.OnConflictStrategy;
+import androidx.room.Transaction;
 
 import com.afriserve.smsmanager.data.entity.SmsQueueEntity;
 import com.afriserve.smsmanager.data.queue.SmsQueueManager.QueueStatistics;
@@ -40,6 +41,32 @@ public interface SmsQueueDao {
     @Query("SELECT * FROM sms_queue WHERE status = 'PENDING' ORDER BY nextRetryAt ASC")
     List<SmsQueueEntity> getAllPendingItems();
     
+    /**
+     * Every item the scheduler should hold, loaded once at startup
+     */
+    @Query("SELECT * FROM sms_queue WHERE status IN ('PENDING', 'FAILED') ORDER BY nextRetryAt ASC")
+    List<SmsQueueEntity> getSchedulableItems();
+    
+    @Update
+    void updateQueueItems(List<SmsQueueEntity> queueItems);
+    
+    @Query("DELETE FROM sms_queue WHERE id IN (:ids)")
+    void deleteQueueItemsByIds(List<Long> ids);
+    
+    /**
+     * Write back a batch of scheduler outcomes: retries and exhausted items are updated,
+     * delivered items are removed.
+     */
+    @Transaction
+    default void applyTransitions(List<SmsQueueEntity> updates, List<Long> deletes) {
+        if (!updates.isEmpty()) {
+            updateQueueItems(updates);
+        }
+        if (!deletes.isEmpty()) {
+            deleteQueueItemsByIds(deletes);
+        }
+    }
+    
     @Query("SELECT * FROM sms_queue WHERE status = 'PROCESSING' ORDER BY createdAt ASC")
     List<SmsQueueEntity> getProcessingItems();
     
@@ -5,6 +5,8 @@ import androidx.room.PrimaryKey;
 import androidx.room.Index;
 import androidx.room.ForeignKey;
 
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
+
 /**
  * Conversation entity for threading messages
  * Groups messages by phone number/contact
@@ -14,7 +16,12 @@ import androidx.room.ForeignKey;
     indices = {
         @Index(value = {"phoneNumber"}, unique = true),
         @Index(value = {"lastMessageTime"}),
-        @Index(value = {"threadId"})
+        @Index(value = {"threadId"}),
+        @Index(value = {"phoneKey"}),
+        // Keyset paging: one index per inbox filter, each ending in the full sort key
+        @Index(value = {"isPinned", "lastMessageTime", "id"}),
+        @Index(value = {"isArchived", "isPinned", "lastMessageTime", "id"}),
+        @Index(value = {"isArchived", "lastMessageType", "isPinned", "lastMessageTime", "id"})
     }
 )
 public class ConversationEntity {
@@ -24,6 +31,12 @@ public class ConversationEntity {
     
     // Phone number (normalized)
     public String phoneNumber;
+
+    /**
+     * Canonical key of phoneNumber ({@link PhoneCanonicalizer}), for matching numbers written
+     * in different forms. Room writes it through the getter, so it can never go stale.
+     */
+    private long phoneKey = PhoneCanonicalizer.NO_KEY;
     
     // Contact name (resolved)
     public String contactName;
@@ -59,6 +72,14 @@ public class ConversationEntity {
         this.updatedAt = now;
     }
     
+    public long getPhoneKey() {
+        return PhoneCanonicalizer.canonicalKey(phoneNumber);
+    }
+
+    public void setPhoneKey(long phoneKey) {
+        this.phoneKey = phoneKey;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
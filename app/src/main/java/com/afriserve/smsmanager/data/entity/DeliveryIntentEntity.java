@@ -0,0 +1,53 @@
+package com.afriserve.smsmanager.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A sent or delivered PendingIntent that is still waiting for its broadcast.
+ * Persisted so request codes stay attributable to their message across process restarts.
+ */
+@Entity(
+    tableName = "delivery_intents",
+    indices = {@Index("smsId")}
+)
+public class DeliveryIntentEntity {
+
+    public static final String KIND_SENT = "SENT";
+    public static final String KIND_DELIVERED = "DELIVERED";
+
+    @PrimaryKey
+    @ColumnInfo(name = "requestCode")
+    public int requestCode;
+
+    @ColumnInfo(name = "smsId")
+    public long smsId;
+
+    @NonNull
+    @ColumnInfo(name = "kind")
+    public String kind = KIND_SENT; // SENT or DELIVERED
+
+    @ColumnInfo(name = "partIndex")
+    public int partIndex; // Part of a multipart message this intent reports on, 0-based
+
+    @ColumnInfo(name = "partCount")
+    public int partCount = 1;
+
+    @ColumnInfo(name = "createdAt")
+    public long createdAt;
+
+    public DeliveryIntentEntity() {
+    }
+
+    @Ignore
+    public DeliveryIntentEntity(int requestCode, long smsId, @NonNull String kind, long createdAt) {
+        this.requestCode = requestCode;
+        this.smsId = smsId;
+        this.kind = kind;
+        this.createdAt = createdAt;
+    }
+}
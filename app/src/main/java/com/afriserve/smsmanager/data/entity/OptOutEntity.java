@@ -6,6 +6,8 @@ import androidx.room.ColumnInfo;
 import androidx.room.Index;
 import androidx.room.Ignore;
 
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
+
 /**
  * Entity for tracking opted-out phone numbers
  * Ensures compliance with marketing regulations
@@ -14,7 +16,8 @@ import androidx.room.Ignore;
     tableName = "opt_outs",
     indices = {
         @Index(value = {"phoneNumber"}, unique = true),
-        @Index(value = {"optOutTime"})
+        @Index(value = {"optOutTime"}),
+        @Index(value = {"phoneKey"})
     }
 )
 public class OptOutEntity {
@@ -25,6 +28,13 @@ public class OptOutEntity {
     @ColumnInfo(name = "phoneNumber")
     public String phoneNumber;
     
+    /**
+     * Canonical key of phoneNumber ({@link PhoneCanonicalizer}), for matching numbers written
+     * in different forms. Room writes it through the getter, so it can never go stale.
+     */
+    @ColumnInfo(name = "phoneKey")
+    private long phoneKey = PhoneCanonicalizer.NO_KEY;
+    
     @ColumnInfo(name = "reason")
     public String reason;
     
@@ -64,6 +74,14 @@ public class OptOutEntity {
         this.optOutTime = System.currentTimeMillis();
     }
     
+    public long getPhoneKey() {
+        return PhoneCanonicalizer.canonicalKey(phoneNumber);
+    }
+
+    public void setPhoneKey(long phoneKey) {
+        this.phoneKey = phoneKey;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
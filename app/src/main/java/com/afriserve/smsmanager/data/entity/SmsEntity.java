@@ -7,18 +7,22 @@ import androidx.room.Index;
 import androidx.room.ForeignKey;
 import androidx.room.Ignore;
 
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
+
 @Entity(
     tableName = "sms_entities",
     indices = {
         @Index(value = {"status"}),
         @Index(value = {"campaignId"}),
-        @Index(value = {"phoneNumber"}),
+        @Index(value = {"phoneNumber", "createdAt", "id"}),
+        @Index(value = {"phoneKey", "createdAt", "id"}),
         @Index(value = {"createdAt"}),
         @Index(value = {"nextRetryAt"}, unique = false),
         @Index(value = {"deviceSmsId"}, unique = true),
+        @Index(value = {"dedupeKey"}, unique = true),
         @Index(value = {"boxType"}),
         @Index(value = {"isRead"}),
-        @Index(value = {"threadId"})
+        @Index(value = {"threadId", "createdAt", "id"})
     },
     foreignKeys = {
         @ForeignKey(
@@ -65,6 +69,21 @@ public class SmsEntity {
     
     @ColumnInfo(name = "phoneNumber")
     public String phoneNumber;
+
+    /**
+     * Canonical key of phoneNumber ({@link PhoneCanonicalizer}), for matching numbers written
+     * in different forms. Room writes it through the getter, so it can never go stale.
+     */
+    @ColumnInfo(name = "phoneKey")
+    private long phoneKey = PhoneCanonicalizer.NO_KEY;
+
+    public long getPhoneKey() {
+        return PhoneCanonicalizer.canonicalKey(phoneNumber);
+    }
+
+    public void setPhoneKey(long phoneKey) {
+        this.phoneKey = phoneKey;
+    }
     
     // Alias for compatibility with inbox functionality
     public String getAddress() { return phoneNumber; }
@@ -142,6 +161,14 @@ public class SmsEntity {
     
     @ColumnInfo(name = "errorMessage")
     public String errorMessage;
+
+    /**
+     * Duplicate-detection key of a received message, from
+     * {@link com.afriserve.smsmanager.data.utils.IncomingSmsDedupe#keyOf}. Null for every other
+     * row; the unique index lets receivers insert with OR IGNORE.
+     */
+    @ColumnInfo(name = "dedupeKey")
+    public Long dedupeKey;
     
     /**
      * Delivery tracking state for multipart messages
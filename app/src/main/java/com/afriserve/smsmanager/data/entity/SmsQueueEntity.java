@@ -18,6 +18,10 @@ import androidx.room.Index;
 )
 public class SmsQueueEntity {
     
+    // Priority lanes: transactional traffic (OTPs, alerts) is served ahead of marketing
+    public static final int PRIORITY_TRANSACTIONAL = 0;
+    public static final int PRIORITY_MARKETING = 1;
+    
     @PrimaryKey(autoGenerate = true)
     public long id;
     
@@ -39,6 +43,9 @@ public class SmsQueueEntity {
     // Status: PENDING, PROCESSING, FAILED, EXHAUSTED
     public String status;
     
+    // PRIORITY_TRANSACTIONAL or PRIORITY_MARKETING
+    public int priority;
+    
     // Timestamps
     public long createdAt;
     public long nextRetryAt;
@@ -52,6 +59,7 @@ public class SmsQueueEntity {
         this.createdAt = System.currentTimeMillis();
         this.retryCount = 0;
         this.status = "PENDING";
+        this.priority = PRIORITY_MARKETING;
     }
     
     @Override
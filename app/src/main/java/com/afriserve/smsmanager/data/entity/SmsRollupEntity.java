@@ -0,0 +1,33 @@
+package com.afriserve.smsmanager.data.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+/**
+ * Materialized message counts per time bucket and status.
+ * Maintained by triggers on sms_entities (see AppDatabase.createSmsRollupTable), so dashboard
+ * counters are read from a handful of rows instead of counting sms_entities.
+ */
+@Entity(
+    tableName = "sms_rollup",
+    primaryKeys = {"bucketType", "bucketStart", "status"}
+)
+public class SmsRollupEntity {
+
+    public static final String BUCKET_HOUR = "HOUR";
+
+    @NonNull
+    @ColumnInfo(name = "bucketType")
+    public String bucketType = BUCKET_HOUR; // HOUR; local days are summed from hours when read
+
+    @ColumnInfo(name = "bucketStart")
+    public long bucketStart; // Start of the UTC hour, epoch millis
+
+    @NonNull
+    @ColumnInfo(name = "status")
+    public String status = ""; // Message status, empty when unset
+
+    @ColumnInfo(name = "count")
+    public int count;
+}
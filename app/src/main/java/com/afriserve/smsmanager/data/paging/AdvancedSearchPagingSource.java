@@ -0,0 +1,66 @@
+package com.afriserve.smsmanager.data.paging;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.data.search.SearchQueryCompiler;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keyset-paged messages matching an operator query (from:, date:, unread, ...), newest first.
+ * The whole filter is a compiled WHERE clause, so each page is one query that reads only
+ * matching rows.
+ */
+public class AdvancedSearchPagingSource extends KeysetPagingSource<SmsEntity> {
+
+    private static final List<SortColumn> NEWEST_FIRST = Arrays.asList(
+        new SortColumn("createdAt", true),
+        new SortColumn("id", true)
+    );
+
+    private final SmsDao smsDao;
+    private final SearchQueryCompiler.Plan plan;
+
+    public AdvancedSearchPagingSource(RoomDatabase database, SmsDao smsDao, SearchQueryCompiler.Plan plan) {
+        super(database, "sms_entities");
+        this.smsDao = smsDao;
+        this.plan = plan;
+    }
+
+    @NonNull
+    @Override
+    protected List<SortColumn> sortColumns() {
+        return NEWEST_FIRST;
+    }
+
+    @NonNull
+    @Override
+    protected Object[] sortKeyOf(@NonNull SmsEntity message) {
+        return new Object[]{message.createdAt, message.id};
+    }
+
+    @NonNull
+    @Override
+    protected String selectClause() {
+        return "SELECT * FROM sms_entities";
+    }
+
+    @Nullable
+    @Override
+    protected String filterClause(@NonNull List<Object> args) {
+        args.addAll(plan.args);
+        return plan.where;
+    }
+
+    @NonNull
+    @Override
+    protected List<SmsEntity> runQuery(@NonNull SupportSQLiteQuery query) {
+        return smsDao.getSmsByQuery(query);
+    }
+}
@@ -0,0 +1,125 @@
+package com.afriserve.smsmanager.data.paging;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.afriserve.smsmanager.data.dao.ConversationDao;
+import com.afriserve.smsmanager.data.entity.ConversationEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keyset-paged conversation list for the inbox.
+ * Each filter/sort pair orders by columns that match one of the composite indexes on
+ * conversations, so a page is a range seek rather than a scan past every earlier row.
+ * Text search goes through SearchPagingSource instead.
+ */
+public class ConversationKeysetPagingSource extends KeysetPagingSource<ConversationEntity> {
+
+    public static final String FILTER_ALL = "ALL";
+    public static final String FILTER_INBOX = "INBOX";
+    public static final String FILTER_SENT = "SENT";
+    public static final String FILTER_UNREAD = "UNREAD";
+    public static final String FILTER_ARCHIVED = "ARCHIVED";
+
+    public static final String SORT_NEWEST = "NEWEST";
+    public static final String SORT_OLDEST = "OLDEST";
+    public static final String SORT_UNREAD_FIRST = "UNREAD_FIRST";
+
+    private static final List<SortColumn> NEWEST_FIRST = Arrays.asList(
+        new SortColumn("isPinned", true),
+        new SortColumn("lastMessageTime", true),
+        new SortColumn("id", true)
+    );
+    private static final List<SortColumn> OLDEST_FIRST = Arrays.asList(
+        new SortColumn("isPinned", true),
+        new SortColumn("lastMessageTime", false),
+        new SortColumn("id", false)
+    );
+    private static final List<SortColumn> UNREAD_FIRST = Arrays.asList(
+        new SortColumn("(unreadCount > 0)", true),
+        new SortColumn("isPinned", true),
+        new SortColumn("lastMessageTime", true),
+        new SortColumn("id", true)
+    );
+
+    private final ConversationDao conversationDao;
+    private final String filter;
+    private final String sort;
+
+    public ConversationKeysetPagingSource(
+        RoomDatabase database,
+        ConversationDao conversationDao,
+        String filter,
+        String sort
+    ) {
+        super(database, "conversations");
+        this.conversationDao = conversationDao;
+        this.filter = filter;
+        this.sort = sort;
+    }
+
+    @NonNull
+    @Override
+    protected List<SortColumn> sortColumns() {
+        if (SORT_OLDEST.equals(sort)) {
+            return OLDEST_FIRST;
+        }
+        if (SORT_UNREAD_FIRST.equals(sort)) {
+            return UNREAD_FIRST;
+        }
+        return NEWEST_FIRST;
+    }
+
+    @NonNull
+    @Override
+    protected Object[] sortKeyOf(@NonNull ConversationEntity conversation) {
+        long pinned = conversation.isPinned ? 1L : 0L;
+        if (SORT_UNREAD_FIRST.equals(sort)) {
+            long unread = conversation.unreadCount > 0 ? 1L : 0L;
+            return new Object[]{unread, pinned, conversation.lastMessageTime, conversation.id};
+        }
+        return new Object[]{pinned, conversation.lastMessageTime, conversation.id};
+    }
+
+    @NonNull
+    @Override
+    protected String selectClause() {
+        return "SELECT * FROM conversations";
+    }
+
+    @Nullable
+    @Override
+    protected String filterClause(@NonNull List<Object> args) {
+        return filterCondition(filter);
+    }
+
+    /**
+     * SQL condition for an inbox filter, or null for ALL. Shared with the search results so a
+     * filtered search keeps the same scope.
+     */
+    @Nullable
+    public static String filterCondition(String filter) {
+        switch (filter) {
+            case FILTER_INBOX:
+                return "isArchived = 0";
+            case FILTER_SENT:
+                return "isArchived = 0 AND lastMessageType = 'SENT'";
+            case FILTER_UNREAD:
+                return "unreadCount > 0";
+            case FILTER_ARCHIVED:
+                return "isArchived = 1";
+            default:
+                return null;
+        }
+    }
+
+    @NonNull
+    @Override
+    protected List<ConversationEntity> runQuery(@NonNull SupportSQLiteQuery query) {
+        return conversationDao.getConversationsByQuery(query);
+    }
+}
@@ -0,0 +1,157 @@
+package com.afriserve.smsmanager.data.paging
+
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import androidx.room.RoomDatabase
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteQuery
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.withContext
+
+/**
+ * PagingSource that pages by seeking past the sort key of the boundary row instead of using
+ * LIMIT/OFFSET. Each page is an index seek plus [LoadParams.loadSize] rows, so loading stays
+ * constant however deep the list is scrolled.
+ *
+ * Subclasses describe the query: the sort columns (the last one must be unique, normally `id`),
+ * an optional filter, how to read a row's sort key, and how to run the final SQL. The source
+ * invalidates itself when any of the observed tables change, like Room's generated sources.
+ */
+abstract class KeysetPagingSource<T : Any>(
+    private val database: RoomDatabase,
+    vararg tables: String
+) : PagingSource<KeysetPagingSource.Key, T>() {
+
+    /**
+     * Sort key of a boundary row and the direction to seek from it.
+     */
+    class Key internal constructor(
+        val values: Array<Any?>,
+        internal val forward: Boolean,
+        internal val inclusive: Boolean
+    )
+
+    /**
+     * One ORDER BY term. [expression] must be deterministic for a row, e.g. a column name.
+     */
+    class SortColumn(val expression: String, val descending: Boolean)
+
+    private val invalidation = TableInvalidation(database, this, tables)
+
+    /** ORDER BY terms, most significant first. */
+    protected abstract fun sortColumns(): List<SortColumn>
+
+    /** Values of [sortColumns] for [item], in the same order. */
+    protected abstract fun sortKeyOf(item: T): Array<Any?>
+
+    /** SELECT ... FROM clause without WHERE/ORDER BY/LIMIT. */
+    protected abstract fun selectClause(): String
+
+    /** Filter condition, or null for none. Bind arguments are appended to [args]. */
+    protected abstract fun filterClause(args: MutableList<Any?>): String?
+
+    /** Run the assembled query on the calling thread. */
+    protected abstract fun runQuery(query: SupportSQLiteQuery): List<T>
+
+    override fun getRefreshKey(state: PagingState<Key, T>): Key? {
+        val anchor = state.anchorPosition ?: return null
+        // Start a little above the anchor so the visible rows are in the first page
+        val item = state.closestItemToPosition(maxOf(0, anchor - state.config.pageSize / 2))
+            ?: return null
+        return Key(sortKeyOf(item), forward = true, inclusive = true)
+    }
+
+    override suspend fun load(params: LoadParams<Key>): LoadResult<Key, T> {
+        invalidation.register()
+
+        val key = params.key
+        val forward = key?.forward ?: true
+        val rows = try {
+            withContext(database.queryExecutor.asCoroutineDispatcher()) {
+                val fetched = runQuery(buildQuery(key, forward, params.loadSize))
+                if (forward) fetched else fetched.asReversed()
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            return LoadResult.Error(e)
+        }
+        if (invalid) {
+            return LoadResult.Invalid()
+        }
+
+        val first = rows.firstOrNull()
+        val last = rows.lastOrNull()
+        val full = rows.size >= params.loadSize
+        val prevKey = when {
+            key == null -> null
+            !forward && !full -> null
+            first != null -> Key(sortKeyOf(first), forward = false, inclusive = false)
+            // Refreshed past the end; rows before the old anchor may still exist
+            key.inclusive -> Key(key.values, forward = false, inclusive = false)
+            else -> null
+        }
+        val nextKey = when {
+            forward && !full -> null
+            last != null -> Key(sortKeyOf(last), forward = true, inclusive = false)
+            else -> null
+        }
+        return LoadResult.Page(rows, prevKey, nextKey)
+    }
+
+    private fun buildQuery(key: Key?, forward: Boolean, limit: Int): SupportSQLiteQuery {
+        val columns = sortColumns()
+        val args = ArrayList<Any?>()
+        val conditions = ArrayList<String>(2)
+        filterClause(args)?.let { conditions.add("($it)") }
+        if (key != null) {
+            conditions.add(seekClause(columns, key, args))
+        }
+
+        val sql = StringBuilder(selectClause())
+        if (conditions.isNotEmpty()) {
+            sql.append(" WHERE ").append(conditions.joinToString(" AND "))
+        }
+        sql.append(" ORDER BY ")
+        columns.forEachIndexed { i, column ->
+            if (i > 0) sql.append(", ")
+            // Prepends walk the index backwards and are reversed after loading
+            sql.append(column.expression).append(if (column.descending == forward) " DESC" else " ASC")
+        }
+        sql.append(" LIMIT ").append(limit)
+        return SimpleSQLiteQuery(sql.toString(), args.toTypedArray())
+    }
+
+    /**
+     * Rows strictly after (or before) the key in sort order. When every column sorts the same
+     * way this is a single row-value comparison, which SQLite turns into an index range seek.
+     */
+    private fun seekClause(columns: List<SortColumn>, key: Key, args: MutableList<Any?>): String {
+        val uniform = columns.all { it.descending == columns[0].descending }
+        if (uniform) {
+            val greater = columns[0].descending != key.forward
+            val op = (if (greater) ">" else "<") + (if (key.inclusive) "=" else "")
+            args.addAll(key.values)
+            return columns.joinToString(", ", "(", ")") { it.expression } +
+                " $op " + columns.joinToString(", ", "(", ")") { "?" }
+        }
+
+        // Mixed directions: a > ? OR (a = ? AND (b < ? OR (b = ? AND ...)))
+        val clause = StringBuilder()
+        columns.forEachIndexed { i, column ->
+            val greater = column.descending != key.forward
+            val lastColumn = i == columns.size - 1
+            val op = (if (greater) ">" else "<") + (if (lastColumn && key.inclusive) "=" else "")
+            clause.append("(").append(column.expression).append(" ").append(op).append(" ?")
+            args.add(key.values[i])
+            if (!lastColumn) {
+                clause.append(" OR (").append(column.expression).append(" = ? AND ")
+                args.add(key.values[i])
+            }
+        }
+        repeat(columns.size - 1) { clause.append("))") }
+        clause.append(")")
+        return clause.toString()
+    }
+}
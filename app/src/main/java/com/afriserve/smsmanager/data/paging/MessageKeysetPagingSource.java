@@ -0,0 +1,78 @@
+package com.afriserve.smsmanager.data.paging;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keyset-paged messages of one conversation, newest first, for a reverse-layout message list.
+ * Seeks on the (threadId, createdAt, id) or (phoneNumber, createdAt, id) index.
+ */
+public class MessageKeysetPagingSource extends KeysetPagingSource<SmsEntity> {
+
+    private static final List<SortColumn> NEWEST_FIRST = Arrays.asList(
+        new SortColumn("createdAt", true),
+        new SortColumn("id", true)
+    );
+
+    private final SmsDao smsDao;
+    @Nullable private final Long threadId;
+    @Nullable private final String phoneNumber;
+
+    /**
+     * Pages by thread when threadId is positive, otherwise by the normalized phone number.
+     */
+    public MessageKeysetPagingSource(
+        RoomDatabase database,
+        SmsDao smsDao,
+        @Nullable Long threadId,
+        @Nullable String phoneNumber
+    ) {
+        super(database, "sms_entities");
+        this.smsDao = smsDao;
+        this.threadId = threadId != null && threadId > 0 ? threadId : null;
+        this.phoneNumber = phoneNumber;
+    }
+
+    @NonNull
+    @Override
+    protected List<SortColumn> sortColumns() {
+        return NEWEST_FIRST;
+    }
+
+    @NonNull
+    @Override
+    protected Object[] sortKeyOf(@NonNull SmsEntity message) {
+        return new Object[]{message.createdAt, message.id};
+    }
+
+    @NonNull
+    @Override
+    protected String selectClause() {
+        return "SELECT * FROM sms_entities";
+    }
+
+    @Nullable
+    @Override
+    protected String filterClause(@NonNull List<Object> args) {
+        if (threadId != null) {
+            args.add(threadId);
+            return "threadId = ?";
+        }
+        args.add(phoneNumber);
+        return "phoneNumber = ?";
+    }
+
+    @NonNull
+    @Override
+    protected List<SmsEntity> runQuery(@NonNull SupportSQLiteQuery query) {
+        return smsDao.getSmsByQuery(query);
+    }
+}
@@ -0,0 +1,95 @@
+package com.afriserve.smsmanager.data.paging
+
+import android.os.CancellationSignal
+import androidx.paging.PagingSource
+import androidx.paging.PagingState
+import androidx.room.RoomDatabase
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+/**
+ * PagingSource over relevance-ranked search results. The first load runs the ranking query
+ * once and keeps the ordered ids; every page then loads just its own rows by id. If the
+ * collector goes away mid-query, for example when a newer keystroke replaces the Pager, the
+ * in-flight SQLite query is cancelled through a CancellationSignal.
+ */
+abstract class RankedPagingSource<T : Any>(
+    private val database: RoomDatabase,
+    vararg tables: String
+) : PagingSource<Int, T>() {
+
+    private val invalidation = TableInvalidation(database, this, tables)
+
+    @Volatile
+    private var rankedIds: List<Long>? = null
+
+    @Volatile
+    private var activeSignal: CancellationSignal? = null
+
+    /** Ids of all matches, best first. Runs on a query thread. */
+    protected abstract fun rank(signal: CancellationSignal): List<Long>
+
+    /** Rows for [ids] in any order; rows that no longer match may be left out. */
+    protected abstract fun loadByIds(ids: List<Long>): List<T>
+
+    protected abstract fun idOf(item: T): Long
+
+    /**
+     * Abort an in-flight query once its results are no longer wanted, e.g. when the user has
+     * typed past it. Paging cancels its own loads only when the collecting scope ends.
+     */
+    fun cancelPendingLoad() {
+        activeSignal?.cancel()
+    }
+
+    override fun getRefreshKey(state: PagingState<Int, T>): Int? {
+        val anchor = state.anchorPosition ?: return null
+        return maxOf(0, anchor - state.config.initialLoadSize / 2)
+    }
+
+    override suspend fun load(params: LoadParams<Int>): LoadResult<Int, T> {
+        invalidation.register()
+        return try {
+            val page = runCancellable { signal ->
+                val ids = rankedIds ?: rank(signal).also { rankedIds = it }
+                val (from, to) = when (params) {
+                    is LoadParams.Prepend -> maxOf(0, params.key - params.loadSize) to params.key
+                    else -> {
+                        val start = (params.key ?: 0).coerceIn(0, ids.size)
+                        start to minOf(ids.size, start + params.loadSize)
+                    }
+                }
+                val pageIds = ids.subList(from, to)
+                val rows = if (pageIds.isEmpty()) emptyList() else loadByIds(pageIds)
+                val byId = HashMap<Long, T>(rows.size * 2)
+                rows.forEach { byId[idOf(it)] = it }
+                LoadResult.Page(
+                    data = pageIds.mapNotNull { byId[it] },
+                    prevKey = if (from > 0) from else null,
+                    nextKey = if (to < ids.size) to else null
+                )
+            }
+            if (invalid) LoadResult.Invalid<Int, T>() else page
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            LoadResult.Error(e)
+        }
+    }
+
+    private suspend fun <R> runCancellable(block: (CancellationSignal) -> R): R =
+        suspendCancellableCoroutine { continuation ->
+            val signal = CancellationSignal()
+            activeSignal = signal
+            continuation.invokeOnCancellation { signal.cancel() }
+            database.queryExecutor.execute {
+                try {
+                    continuation.resume(block(signal))
+                } catch (e: Exception) {
+                    continuation.resumeWithException(e)
+                }
+            }
+        }
+}
@@ -0,0 +1,78 @@
+package com.afriserve.smsmanager.data.paging;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.afriserve.smsmanager.data.search.SearchIndex;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * bm25-ranked search results of one kind from the unified search index, paged by rank.
+ * Rows are loaded per page by id from the source table, with an optional extra filter.
+ */
+public class SearchPagingSource<T> extends RankedPagingSource<T> {
+
+    // As-you-type search only ever shows the head of the ranking
+    private static final int MAX_RESULTS = 500;
+
+    private final SearchIndex searchIndex;
+    private final int kind;
+    private final String query;
+    private final String table;
+    @Nullable private final String filter;
+    private final Function<SupportSQLiteQuery, List<T>> loader;
+    private final ToLongFunction<T> idFunction;
+
+    public SearchPagingSource(
+        RoomDatabase database,
+        SearchIndex searchIndex,
+        int kind,
+        String query,
+        String table,
+        @Nullable String filter,
+        Function<SupportSQLiteQuery, List<T>> loader,
+        ToLongFunction<T> idFunction
+    ) {
+        super(database, table);
+        this.searchIndex = searchIndex;
+        this.kind = kind;
+        this.query = query;
+        this.table = table;
+        this.filter = filter;
+        this.loader = loader;
+        this.idFunction = idFunction;
+    }
+
+    @NonNull
+    @Override
+    protected List<Long> rank(@NonNull CancellationSignal signal) {
+        return searchIndex.searchIds(query, kind, MAX_RESULTS, signal);
+    }
+
+    @NonNull
+    @Override
+    protected List<T> loadByIds(@NonNull List<Long> ids) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table).append(" WHERE id IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        if (filter != null) {
+            sql.append(" AND (").append(filter).append(')');
+        }
+        return loader.apply(new SimpleSQLiteQuery(sql.toString(), ids.toArray()));
+    }
+
+    @Override
+    protected long idOf(@NonNull T item) {
+        return idFunction.applyAsLong(item);
+    }
+}
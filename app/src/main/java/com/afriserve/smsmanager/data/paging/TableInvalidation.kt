@@ -0,0 +1,32 @@
+package com.afriserve.smsmanager.data.paging
+
+import androidx.paging.PagingSource
+import androidx.room.InvalidationTracker
+import androidx.room.RoomDatabase
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Invalidates a hand-written PagingSource when any of its Room tables change, the way Room's
+ * generated sources do. The observer is registered on first load and removed on invalidation.
+ */
+internal class TableInvalidation(
+    private val database: RoomDatabase,
+    private val source: PagingSource<*, *>,
+    tables: Array<out String>
+) {
+    private val observer = object : InvalidationTracker.Observer(tables) {
+        override fun onInvalidated(tables: Set<String>) {
+            source.invalidate()
+        }
+    }
+    private val registered = AtomicBoolean(false)
+
+    fun register() {
+        if (registered.compareAndSet(false, true)) {
+            database.invalidationTracker.addObserver(observer)
+            source.registerInvalidatedCallback {
+                database.invalidationTracker.removeObserver(observer)
+            }
+        }
+    }
+}
@@ -19,7 +19,6 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -56,6 +55,20 @@ public class CsvParser {
      * Parse CSV input stream and return headers + rows
      */
     public static ParsedData parseCsvStreamWithHeaders(InputStream inputStream) throws IOException {
+        ExcelParser.RowCollector collector = new ExcelParser.RowCollector();
+        streamCsv(inputStream, collector);
+
+        Log.d(TAG, "Parsed " + collector.rows.size() + " rows from file");
+        return new ParsedData(collector.headers, collector.rows);
+    }
+
+    /**
+     * Stream CSV rows to a listener without holding the file in memory.
+     * Charset and delimiter are detected from the first 64 KB.
+     *
+     * @return number of non-blank rows delivered
+     */
+    public static int streamCsv(InputStream inputStream, RowListener listener) throws IOException {
         if (inputStream == null) {
             throw new IOException("Input stream is null");
         }
@@ -97,24 +110,29 @@ public class CsvParser {
             }
 
             List<String> headers = normalizeHeaders(rawHeaders);
+            String[] headerArray = new String[headers.size()];
+            for (int i = 0; i < headerArray.length; i++) {
+                headerArray[i] = headers.get(i).intern();
+            }
+            listener.onHeaders(headerArray);
 
-            List<Map<String, String>> data = new ArrayList<>();
+            String[] values = new String[headerArray.length];
+            int delivered = 0;
             String[] row;
             while ((row = reader.readNext()) != null) {
                 if (isBlankRow(row)) {
                     continue;
                 }
 
-                Map<String, String> rowMap = new LinkedHashMap<>();
-                for (int i = 0; i < headers.size(); i++) {
-                    String value = i < row.length ? row[i] : "";
-                    rowMap.put(headers.get(i), cleanValue(value));
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = cleanValue(i < row.length ? row[i] : "");
+                }
+                delivered++;
+                if (!listener.onRow(values)) {
+                    break;
                 }
-                data.add(rowMap);
             }
-
-            Log.d(TAG, "Parsed " + data.size() + " rows from file");
-            return new ParsedData(headers, data);
+            return delivered;
 
         } catch (CsvValidationException e) {
             Log.e(TAG, "CSV parsing error", e);
@@ -305,10 +323,7 @@ public class CsvParser {
 
     private static String cleanValue(String value) {
         if (value == null) return "";
-        String cleaned = value
-            .replace("\uFEFF", "")
-            .replaceAll("[\\u200B\\u00A0]", "")
-            .trim();
+        String cleaned = stripInvisible(value).trim();
         if (looksLikeScientific(cleaned)) {
             try {
                 cleaned = new BigDecimal(cleaned).toPlainString();
@@ -318,9 +333,59 @@ public class CsvParser {
         return cleaned;
     }
 
-    private static boolean looksLikeScientific(String value) {
+    /**
+     * Remove BOM, zero-width and non-breaking spaces; returns the input when there are none
+     */
+    static String stripInvisible(String value) {
+        int length = value.length();
+        int i = 0;
+        while (i < length && !isInvisible(value.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return value;
+        }
+        StringBuilder cleaned = new StringBuilder(length);
+        cleaned.append(value, 0, i);
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (!isInvisible(c)) {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString();
+    }
+
+    private static boolean isInvisible(char c) {
+        return c == '\uFEFF' || c == '\u200B' || c == '\u00A0';
+    }
+
+    static boolean looksLikeScientific(String value) {
         if (value == null) return false;
-        return value.matches("[-+]?\\d+(\\.\\d+)?[eE][-+]?\\d+");
+        int length = value.length();
+        int i = 0;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+        int intDigits = skipDigits(value, i);
+        if (intDigits == i) return false;
+        i = intDigits;
+        if (i < length && value.charAt(i) == '.') {
+            int fraction = skipDigits(value, i + 1);
+            if (fraction == i + 1) return false;
+            i = fraction;
+        }
+        if (i >= length || (value.charAt(i) != 'e' && value.charAt(i) != 'E')) return false;
+        i++;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+        int exponent = skipDigits(value, i);
+        return exponent > i && exponent == length;
+    }
+
+    private static int skipDigits(String value, int from) {
+        int i = from;
+        while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
     }
 
     private static List<String> normalizeHeaders(String[] rawHeaders) {
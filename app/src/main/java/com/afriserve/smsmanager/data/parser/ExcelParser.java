@@ -2,13 +2,18 @@ package com.afriserve.smsmanager.data.parser;
 
 import android.util.Log;
 import com.afriserve.smsmanager.models.Recipient;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -16,6 +21,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Excel file parser supporting .xlsx, .xls, and CSV formats
@@ -23,6 +29,7 @@ import java.util.Set;
  */
 public class ExcelParser {
     private static final String TAG = "ExcelParser";
+    private static final Pattern CURRENCY_PATTERN = Pattern.compile("(?i)(Ksh|KES|ksh|kes)");
     
     // Header aliases for smart column mapping
     private static final Map<String, List<String>> HEADER_ALIASES = new HashMap<>();
@@ -139,15 +146,62 @@ public class ExcelParser {
      * Parse Excel file with headers preserved
      */
     public static ParsedSheet parseExcelFileWithHeaders(String filePath) throws IOException {
-        try (FileInputStream fis = new FileInputStream(filePath)) {
-            return parseExcelStreamWithHeaders(fis);
-        }
+        RowCollector collector = new RowCollector();
+        streamExcel(new File(filePath), collector);
+        Log.d(TAG, "Parsed " + collector.rows.size() + " rows from Excel file");
+        return new ParsedSheet(collector.headers, collector.rows);
     }
 
     /**
      * Parse Excel InputStream with headers preserved
      */
     public static ParsedSheet parseExcelStreamWithHeaders(InputStream inputStream) throws IOException {
+        RowCollector collector = new RowCollector();
+        InputStream markable = FileMagic.prepareToCheckMagic(inputStream);
+        if (FileMagic.valueOf(markable) == FileMagic.OOXML) {
+            // The event reader needs random access to the zip; spool it instead of building a DOM
+            File spooled = File.createTempFile("import_", ".xlsx");
+            try {
+                try (OutputStream out = new FileOutputStream(spooled)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = markable.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                XlsxStreamReader.read(spooled, collector);
+            } finally {
+                if (!spooled.delete()) {
+                    Log.w(TAG, "Failed to delete " + spooled);
+                }
+            }
+        } else {
+            streamWorkbook(markable, collector);
+        }
+        Log.d(TAG, "Parsed " + collector.rows.size() + " rows from Excel file");
+        return new ParsedSheet(collector.headers, collector.rows);
+    }
+
+    /**
+     * Stream the rows of the first non-empty worksheet to a listener.
+     * .xlsx/.xlsm files are read with the SAX event model, so memory does not grow with the
+     * row count; legacy binary formats still go through the POI workbook model.
+     *
+     * @return number of non-empty rows delivered
+     */
+    public static int streamExcel(File file, RowListener listener) throws IOException {
+        if (FileMagic.valueOf(file) == FileMagic.OOXML) {
+            return XlsxStreamReader.read(file, listener);
+        }
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return streamWorkbook(fis, listener);
+        }
+    }
+
+    /**
+     * Workbook-model reader for formats without an event API (.xls and friends)
+     */
+    private static int streamWorkbook(InputStream inputStream, RowListener listener) throws IOException {
         try (Workbook workbook = createWorkbook(inputStream)) {
             Sheet sheet = findFirstNonEmptySheet(workbook);
             if (sheet == null) {
@@ -168,7 +222,7 @@ public class ExcelParser {
                 throw new IOException("Excel file has empty header row");
             }
 
-            List<String> headers = new ArrayList<>();
+            String[] headers = new String[lastCell];
             Set<String> usedHeaders = new HashSet<>();
             for (int i = 0; i < lastCell; i++) {
                 Cell cell = headerRow.getCell(i, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
@@ -176,29 +230,28 @@ public class ExcelParser {
                 if (header.isEmpty()) {
                     header = "Column" + (i + 1);
                 }
-                header = makeUniqueHeader(header, usedHeaders);
-                headers.add(header);
+                headers[i] = makeUniqueHeader(header, usedHeaders).intern();
             }
+            listener.onHeaders(headers);
 
-            List<Map<String, String>> data = new ArrayList<>();
+            String[] values = new String[headers.length];
+            int delivered = 0;
             for (int i = headerRowIndex + 1; i <= sheet.getLastRowNum(); i++) {
                 Row row = sheet.getRow(i);
-                if (row == null || isEmptyRow(row, headers.size(), formatter, evaluator)) {
+                if (row == null || isEmptyRow(row, headers.length, formatter, evaluator)) {
                     continue;
                 }
 
-                Map<String, String> rowObject = new LinkedHashMap<>();
-                for (int j = 0; j < headers.size(); j++) {
-                    String header = headers.get(j);
+                for (int j = 0; j < headers.length; j++) {
                     Cell cell = row.getCell(j, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL);
-                    String value = cleanCellValue(getCellValueAsString(cell, formatter, evaluator));
-                    rowObject.put(header, value);
+                    values[j] = cleanCellValue(getCellValueAsString(cell, formatter, evaluator));
+                }
+                delivered++;
+                if (!listener.onRow(values)) {
+                    break;
                 }
-                data.add(rowObject);
             }
-
-            Log.d(TAG, "Parsed " + data.size() + " rows from Excel file");
-            return new ParsedSheet(headers, data);
+            return delivered;
 
         } catch (Exception e) {
             Log.e(TAG, "Excel parsing error", e);
@@ -292,7 +345,7 @@ public class ExcelParser {
     /**
      * Ensure header name uniqueness (case-insensitive)
      */
-    private static String makeUniqueHeader(String header, Set<String> usedHeaders) {
+    static String makeUniqueHeader(String header, Set<String> usedHeaders) {
         String base = header;
         String key = base.toLowerCase(Locale.US);
         if (!usedHeaders.contains(key)) {
@@ -315,7 +368,7 @@ public class ExcelParser {
     /**
      * Clean header values (strip BOM, trim)
      */
-    private static String cleanHeaderValue(String value) {
+    static String cleanHeaderValue(String value) {
         if (value == null) return "";
         String cleaned = value.replace("\uFEFF", "").trim();
         return cleaned;
@@ -326,39 +379,61 @@ public class ExcelParser {
      * Auto-detects file type and parses accordingly
      */
     public static ParseResult parseImportFile(String filePath, String fileName) throws IOException {
+        List<Recipient> recipients = new ArrayList<>();
+        ImportSummary summary = streamImportFile(filePath, fileName, recipients::add);
+        return new ParseResult(recipients, summary.mapping, new ArrayList<>(), summary);
+    }
+
+    /**
+     * Stream an import file straight into a recipient sink.
+     * Rows are mapped, normalized, validated and de-duplicated as they are read; the file is
+     * never held in memory as a whole. Falls back to the other parser family only when the
+     * first one fails before delivering any row.
+     */
+    public static ImportSummary streamImportFile(String filePath, String fileName,
+                                                 RecipientRowMapper.RecipientSink sink) throws IOException {
         ImportFileType fileType = detectFileType(fileName);
+        File file = new File(filePath);
+        boolean textFirst = isTextLike(fileType);
 
-        List<Map<String, String>> data;
-        Exception excelError = null;
-        Exception csvError = null;
+        RecipientRowMapper mapper = new RecipientRowMapper(sink);
+        Exception firstError;
+        try {
+            readInto(file, textFirst, mapper);
+            return logSummary(mapper.summary());
+        } catch (Exception e) {
+            if (mapper.hasReadRows()) {
+                throw e instanceof IOException ? (IOException) e
+                    : new IOException("Failed to parse " + fileName + ": " + e.getMessage(), e);
+            }
+            firstError = e;
+        }
 
-        if (isTextLike(fileType)) {
-            try {
-                data = CsvParser.parseCsvFile(filePath);
-            } catch (Exception csvException) {
-                csvError = csvException;
-                try {
-                    data = parseExcelFile(filePath);
-                } catch (Exception excelException) {
-                    excelError = excelException;
-                    throw new IOException(buildParseFailureMessage(fileName, csvError, excelError), excelException);
-                }
+        mapper = new RecipientRowMapper(sink);
+        try {
+            readInto(file, !textFirst, mapper);
+            return logSummary(mapper.summary());
+        } catch (Exception secondError) {
+            Exception csvError = textFirst ? firstError : secondError;
+            Exception excelError = textFirst ? secondError : firstError;
+            throw new IOException(buildParseFailureMessage(fileName, csvError, excelError), excelError);
+        }
+    }
+
+    private static void readInto(File file, boolean asText, RowListener listener) throws IOException {
+        if (asText) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                CsvParser.streamCsv(inputStream, listener);
             }
         } else {
-            try {
-                data = parseExcelFile(filePath);
-            } catch (Exception excelException) {
-                excelError = excelException;
-                try {
-                    data = CsvParser.parseCsvFile(filePath);
-                } catch (Exception csvException) {
-                    csvError = csvException;
-                    throw new IOException(buildParseFailureMessage(fileName, csvError, excelError), excelException);
-                }
-            }
+            streamExcel(file, listener);
         }
-        
-        return parseWithSmartMapping(data);
+    }
+
+    private static ImportSummary logSummary(ImportSummary summary) {
+        Log.d(TAG, "Imported " + summary.importedRows + " of " + summary.totalRows + " rows ("
+            + summary.invalidRows + " invalid, " + summary.duplicateRows + " duplicate)");
+        return summary;
     }
 
     private static boolean isTextLike(ImportFileType fileType) {
@@ -383,58 +458,41 @@ public class ExcelParser {
         
         // Get headers from first row
         List<String> headers = new ArrayList<>(data.get(0).keySet());
-        List<String> normalizedHeaders = new ArrayList<>();
+        List<Recipient> recipients = new ArrayList<>();
+        RecipientRowMapper mapper = new RecipientRowMapper(recipients::add);
+        
+        try {
+            mapper.onHeaders(headers.toArray(new String[0]));
+            String[] values = new String[headers.size()];
+            for (Map<String, String> row : data) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = row.get(headers.get(i));
+                }
+                mapper.onRow(values);
+            }
+        } catch (IOException e) {
+            // The in-memory sink never throws
+            throw new IllegalStateException(e);
+        }
         
+        Log.d(TAG, "Parsed " + recipients.size() + " valid recipients");
+        return new ParseResult(recipients, mapper.getMapping(), data, mapper.summary());
+    }
+
+    /**
+     * Match name/phone/amount columns against the known header aliases
+     */
+    static ColumnMapping detectColumnMapping(List<String> headers) {
+        List<String> normalizedHeaders = new ArrayList<>();
         for (String header : headers) {
             normalizedHeaders.add(normalizeHeader(header));
         }
-        
-        // Find column matches
+
         ColumnMapping mapping = new ColumnMapping();
         mapping.name = findColumnMatch(headers, normalizedHeaders, HEADER_ALIASES.get("name"));
         mapping.phone = findColumnMatch(headers, normalizedHeaders, HEADER_ALIASES.get("phone"));
         mapping.amount = findColumnMatch(headers, normalizedHeaders, HEADER_ALIASES.get("amount"));
-        
-        // Parse recipients
-        List<Recipient> recipients = new ArrayList<>();
-        
-        for (Map<String, String> row : data) {
-            Map<String, String> fields = new HashMap<>();
-            for (Map.Entry<String, String> entry : row.entrySet()) {
-                String normalizedKey = normalizePlaceholderHeader(entry.getKey());
-                if (normalizedKey.isEmpty()) {
-                    continue;
-                }
-
-                String value = cleanCellValue(entry.getValue());
-                if (!fields.containsKey(normalizedKey) || fields.get(normalizedKey).isEmpty()) {
-                    fields.put(normalizedKey, value);
-                }
-            }
-
-            String name = cleanCellValue(
-                mapping.name != null ? row.get(mapping.name) : 
-                row.getOrDefault("FullNames", row.getOrDefault("Name", ""))
-            );
-            
-            String phoneRaw = mapping.phone != null ? row.get(mapping.phone) : 
-                row.getOrDefault("PhoneNumber", row.getOrDefault("Phone", ""));
-            String phone = PhoneNormalizer.normalizePhone(cleanCellValue(phoneRaw));
-            
-            Double amount = mapping.amount != null ? 
-                parseAmount(row.get(mapping.amount)) : 
-                parseAmount(row.getOrDefault("Amount", null));
-            
-            // Skip rows without valid phone numbers after normalization
-            if (phone == null || phone.isEmpty()) {
-                continue;
-            }
-            
-            recipients.add(new Recipient(name, phone, amount, false, fields));
-        }
-        
-        Log.d(TAG, "Parsed " + recipients.size() + " valid recipients");
-        return new ParseResult(recipients, mapping, data);
+        return mapping;
     }
     
     /**
@@ -464,7 +522,7 @@ public class ExcelParser {
     /**
      * Normalize headers for placeholder keys (matches TemplateVariableExtractor normalization)
      */
-    private static String normalizePlaceholderHeader(String header) {
+    static String normalizePlaceholderHeader(String header) {
         if (header == null) return "";
         return header.toLowerCase()
             .replaceAll("\\s+", "_")
@@ -476,20 +534,21 @@ public class ExcelParser {
     /**
      * Clean cell values (remove invisible characters, trim)
      */
-    private static String cleanCellValue(Object value) {
+    static String cleanCellValue(Object value) {
         if (value == null) return "";
-        return value.toString()
-            .replaceAll("[\\u200B\\u00A0\\uFEFF]", "")
-            .trim();
+        return CsvParser.stripInvisible(value.toString()).trim();
     }
     
     /**
      * Parse amount such as "Ksh 1,200.00" → 1200.0
      */
-    private static Double parseAmount(Object value) {
-        String clean = cleanCellValue(value)
-            .replaceAll("(?i)(Ksh|KES|ksh|kes)", "")
-            .replaceAll(",", "")
+    static Double parseAmount(Object value) {
+        String clean = cleanCellValue(value);
+        if (clean.isEmpty()) {
+            return null;
+        }
+        clean = CURRENCY_PATTERN.matcher(clean).replaceAll("")
+            .replace(",", "")
             .trim();
         
         try {
@@ -556,11 +615,63 @@ public class ExcelParser {
         public final List<Recipient> recipients;
         public final ColumnMapping mapping;
         public final List<Map<String, String>> rawData;
+        public final ImportSummary summary;
         
         public ParseResult(List<Recipient> recipients, ColumnMapping mapping, List<Map<String, String>> rawData) {
+            this(recipients, mapping, rawData, null);
+        }
+
+        public ParseResult(List<Recipient> recipients, ColumnMapping mapping, List<Map<String, String>> rawData,
+                           ImportSummary summary) {
             this.recipients = recipients;
             this.mapping = mapping;
             this.rawData = rawData;
+            this.summary = summary;
+        }
+    }
+
+    /**
+     * Row counts of a streamed import
+     */
+    public static class ImportSummary {
+        public final List<String> headers;
+        public final ColumnMapping mapping;
+        public final int totalRows;
+        public final int importedRows;
+        public final int invalidRows;
+        public final int duplicateRows;
+
+        public ImportSummary(List<String> headers, ColumnMapping mapping, int totalRows, int importedRows,
+                             int invalidRows, int duplicateRows) {
+            this.headers = headers;
+            this.mapping = mapping;
+            this.totalRows = totalRows;
+            this.importedRows = importedRows;
+            this.invalidRows = invalidRows;
+            this.duplicateRows = duplicateRows;
+        }
+    }
+
+    /**
+     * Collects streamed rows into header-keyed maps for callers of the list-based API
+     */
+    static class RowCollector implements RowListener {
+        final List<String> headers = new ArrayList<>();
+        final List<Map<String, String>> rows = new ArrayList<>();
+
+        @Override
+        public void onHeaders(String[] names) {
+            Collections.addAll(headers, names);
+        }
+
+        @Override
+        public boolean onRow(String[] values) {
+            Map<String, String> rowObject = new LinkedHashMap<>();
+            for (int i = 0; i < values.length; i++) {
+                rowObject.put(headers.get(i), values[i]);
+            }
+            rows.add(rowObject);
+            return true;
         }
     }
 
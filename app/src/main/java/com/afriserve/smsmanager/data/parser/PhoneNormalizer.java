@@ -1,6 +1,9 @@
 package com.afriserve.smsmanager.data.parser;
 
 import android.util.Log;
+
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -71,100 +74,25 @@ public class PhoneNormalizer {
     }
     
     /**
-     * Normalize phone number to E.164 format with country code override
+     * Normalize phone number to E.164 format with country code override.
+     * Parsing is done by {@link PhoneCanonicalizer}; only full international numbers of at
+     * least 7 digits are accepted, anything else gives "".
      */
     public static String normalizePhone(String phone, String countryCode) {
-        if (phone == null || phone.trim().isEmpty()) {
+        if (phone == null) {
             return "";
         }
         
-        // Remove all non-numeric characters except leading +
-        String cleaned = phone.trim();
-        boolean hasLeadingPlus = cleaned.startsWith("+");
-        cleaned = cleaned.replaceAll("[^\\d]", "");
-        
-        if (hasLeadingPlus) {
-            cleaned = "+" + cleaned;
-        }
-        
-        // If empty after cleaning, return empty
-        if (cleaned.isEmpty()) {
+        CountryConfig config = COUNTRY_CONFIGS.get(countryCode);
+        long key = config != null
+                ? PhoneCanonicalizer.canonicalKey(phone, Integer.parseInt(countryCode), config.localLength)
+                : PhoneCanonicalizer.canonicalKey(phone);
+        if (!PhoneCanonicalizer.isInternational(key)) {
             return "";
         }
         
-        // Handle different formats
-        if (cleaned.startsWith("+")) {
-            // International format: +XXXXXXXXX
-            return handleInternationalFormat(cleaned, countryCode);
-        } else {
-            // Local format: various possibilities
-            return handleLocalFormat(cleaned, countryCode);
-        }
-    }
-    
-    /**
-     * Handle international format phone numbers
-     */
-    private static String handleInternationalFormat(String cleaned, String countryCode) {
-        String withoutPlus = cleaned.substring(1);
-        
-        // If it's already +254 format, validate basic length for Kenya
-        if (withoutPlus.startsWith("254")) {
-            String localNumber = withoutPlus.substring(3);
-            // Accept any 6-9 digit number for Kenya (be more permissive)
-            if (localNumber.length() >= 6 && localNumber.length() <= 9) {
-                return "+254" + padAndTruncate(localNumber, 9);
-            }
-        }
-        
-        // For other international numbers, accept reasonable lengths (7-15 digits)
-        if (withoutPlus.length() >= 7 && withoutPlus.length() <= 15) {
-            return cleaned;
-        }
-        
-        return ""; // Invalid international format
-    }
-    
-    /**
-     * Handle local format phone numbers
-     */
-    private static String handleLocalFormat(String cleaned, String countryCode) {
-        String digits = cleaned;
-        
-        // Handle leading 254 (without +) - international format without +
-        if (digits.startsWith("254")) {
-            digits = digits.substring(3);
-        }
-        
-        // Remove leading zero if present
-        if (digits.startsWith("0")) {
-            digits = digits.substring(1);
-        }
-        
-        // Accept reasonable local lengths (6-10 digits, be permissive)
-        if (digits.length() >= 6 && digits.length() <= 10) {
-            // Pad to 9 digits for Kenyan numbers, but accept other lengths for international
-            if (digits.length() <= 9) {
-                return "+254" + padAndTruncate(digits, 9);
-            } else {
-                // Assume it's already an international number
-                return "+" + digits;
-            }
-        }
-        
-        return ""; // Invalid local format
-    }
-    
-    /**
-     * Pad or truncate number to target length
-     */
-    private static String padAndTruncate(String number, int targetLength) {
-        if (number.length() >= targetLength) {
-            return number.substring(number.length() - targetLength);
-        } else {
-            // Pad with leading zeros
-            return String.format("%0" + targetLength + "d", Integer.parseInt(number));
-        }
+        String normalized = PhoneCanonicalizer.toE164(key);
+        return normalized.length() >= 8 ? normalized : "";
     }
     
     /**
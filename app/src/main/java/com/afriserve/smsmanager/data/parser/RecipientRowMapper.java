@@ -0,0 +1,205 @@
+package com.afriserve.smsmanager.data.parser;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.compliance.ComplianceSnapshot;
+import com.afriserve.smsmanager.models.Recipient;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns streamed rows into recipients as they arrive.
+ * Column mapping and placeholder keys are resolved once from the headers; each row is then
+ * normalized, validated and de-duplicated by phone number before it is handed to the sink,
+ * so no intermediate row maps are kept.
+ */
+public final class RecipientRowMapper implements RowListener {
+
+    /**
+     * Destination for accepted recipients, e.g. an in-memory list or the session store.
+     */
+    public interface RecipientSink {
+        void accept(@NonNull Recipient recipient) throws IOException;
+    }
+
+    private final RecipientSink sink;
+    private final PhoneKeySet seenKeys = new PhoneKeySet();
+    // Numbers that cannot be packed into a key; expected to stay tiny
+    private final Set<String> seenUnpacked = new HashSet<>();
+
+    private List<String> headers = Collections.emptyList();
+    private ExcelParser.ColumnMapping mapping = new ExcelParser.ColumnMapping();
+    private String[] fieldKeys = new String[0];
+    private int nameColumn = -1;
+    private int phoneColumn = -1;
+    private int amountColumn = -1;
+
+    private int totalRows;
+    private int acceptedRows;
+    private int invalidRows;
+    private int duplicateRows;
+
+    public RecipientRowMapper(@NonNull RecipientSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void onHeaders(@NonNull String[] names) {
+        headers = Collections.unmodifiableList(Arrays.asList(names.clone()));
+        mapping = ExcelParser.detectColumnMapping(headers);
+
+        fieldKeys = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            String key = ExcelParser.normalizePlaceholderHeader(names[i]);
+            fieldKeys[i] = key.isEmpty() ? null : key.intern();
+        }
+
+        // Same fallbacks as before smart mapping existed
+        nameColumn = mapping.name != null ? headers.indexOf(mapping.name)
+                : firstIndexOf("FullNames", "Name");
+        phoneColumn = mapping.phone != null ? headers.indexOf(mapping.phone)
+                : firstIndexOf("PhoneNumber", "Phone");
+        amountColumn = mapping.amount != null ? headers.indexOf(mapping.amount)
+                : headers.indexOf("Amount");
+    }
+
+    @Override
+    public boolean onRow(@NonNull String[] values) throws IOException {
+        totalRows++;
+
+        String phone = PhoneNormalizer.normalizePhone(ExcelParser.cleanCellValue(valueAt(values, phoneColumn)));
+        if (phone == null || phone.isEmpty() || !ComplianceSnapshot.isValidFormat(phone)) {
+            invalidRows++;
+            return true;
+        }
+        if (!markSeen(phone)) {
+            duplicateRows++;
+            return true;
+        }
+
+        Map<String, String> fields = new HashMap<>(Math.max(4, fieldKeys.length * 2));
+        for (int i = 0; i < fieldKeys.length; i++) {
+            String key = fieldKeys[i];
+            if (key == null) {
+                continue;
+            }
+            String value = ExcelParser.cleanCellValue(values[i]);
+            String existing = fields.get(key);
+            if (existing == null || existing.isEmpty()) {
+                fields.put(key, value);
+            }
+        }
+
+        String name = ExcelParser.cleanCellValue(valueAt(values, nameColumn));
+        Double amount = ExcelParser.parseAmount(valueAt(values, amountColumn));
+
+        sink.accept(new Recipient(name, phone, amount, false, fields));
+        acceptedRows++;
+        return true;
+    }
+
+    @NonNull
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    @NonNull
+    public ExcelParser.ColumnMapping getMapping() {
+        return mapping;
+    }
+
+    /**
+     * True once any row has been read, after which the file cannot be re-parsed into the
+     * same sink with another format.
+     */
+    public boolean hasReadRows() {
+        return totalRows > 0;
+    }
+
+    @NonNull
+    public ExcelParser.ImportSummary summary() {
+        return new ExcelParser.ImportSummary(headers, mapping, totalRows, acceptedRows,
+                invalidRows, duplicateRows);
+    }
+
+    @Nullable
+    private static String valueAt(String[] values, int column) {
+        return column >= 0 && column < values.length ? values[column] : null;
+    }
+
+    private int firstIndexOf(String first, String second) {
+        int index = headers.indexOf(first);
+        return index >= 0 ? index : headers.indexOf(second);
+    }
+
+    private boolean markSeen(@NonNull String phone) {
+        long key = ComplianceSnapshot.phoneKey(phone);
+        if (key == ComplianceSnapshot.NO_KEY) {
+            return seenUnpacked.add(phone);
+        }
+        return seenKeys.add(key);
+    }
+
+    /**
+     * Open-addressing set of packed phone keys; about 16 bytes per number.
+     */
+    private static final class PhoneKeySet {
+        private static final long EMPTY = ComplianceSnapshot.NO_KEY;
+
+        private long[] slots = newSlots(1024);
+        private int size;
+
+        boolean add(long key) {
+            if ((size + 1) * 2 > slots.length) {
+                grow();
+            }
+            if (!insert(slots, key)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private void grow() {
+            long[] bigger = newSlots(slots.length * 2);
+            for (long key : slots) {
+                if (key != EMPTY) {
+                    insert(bigger, key);
+                }
+            }
+            slots = bigger;
+        }
+
+        private static boolean insert(long[] table, long key) {
+            int mask = table.length - 1;
+            int index = mix(key) & mask;
+            while (table[index] != EMPTY) {
+                if (table[index] == key) {
+                    return false;
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = key;
+            return true;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private static long[] newSlots(int capacity) {
+            long[] table = new long[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.afriserve.smsmanager.data.parser;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Receives rows from a streaming CSV or spreadsheet import.
+ * Headers arrive once, de-duplicated and interned; each row is then delivered as an array of
+ * cleaned values aligned with the headers. The row array is reused between calls, so
+ * listeners must copy any value they keep.
+ */
+public interface RowListener {
+
+    void onHeaders(@NonNull String[] headers) throws IOException;
+
+    /**
+     * @return false to stop reading the rest of the file
+     */
+    boolean onRow(@NonNull String[] values) throws IOException;
+}
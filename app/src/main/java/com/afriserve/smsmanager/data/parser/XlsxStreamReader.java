@@ -0,0 +1,224 @@
+package com.afriserve.smsmanager.data.parser;
+
+import androidx.annotation.NonNull;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Event-model (SAX) reader for .xlsx/.xlsm files.
+ * Sheet XML is parsed as a stream and each row is pushed to a {@link RowListener}, so memory
+ * use does not grow with the number of rows; only the shared-strings table and styles are
+ * kept. Header and cell cleanup match {@link ExcelParser#parseExcelStreamWithHeaders}.
+ */
+final class XlsxStreamReader {
+
+    private XlsxStreamReader() {
+    }
+
+    /**
+     * Stream the first worksheet that has a header row.
+     *
+     * @return number of non-empty rows delivered
+     */
+    static int read(@NonNull File file, @NonNull RowListener listener) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new PlainNumberFormatter();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            boolean sawSheet = false;
+            while (sheets.hasNext()) {
+                sawSheet = true;
+                SheetRows rows = new SheetRows(listener);
+                try (InputStream sheet = sheets.next()) {
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, strings, rows, formatter, false));
+                    parser.parse(new InputSource(sheet));
+                } catch (StopReading stop) {
+                    // Listener asked for no more rows
+                }
+                if (rows.failure != null) {
+                    throw rows.failure;
+                }
+                if (rows.headers != null) {
+                    return rows.delivered;
+                }
+            }
+            throw new IOException(sawSheet ? "Excel file has no header row" : "Excel file has no worksheets");
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to read spreadsheet: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Collects one row at a time; the first non-empty row becomes the header.
+     */
+    private static final class SheetRows implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowListener listener;
+        private final List<String> pending = new ArrayList<>();
+        private String[] headers;
+        private String[] values;
+        private int nextColumn;
+        private int delivered;
+        private IOException failure;
+
+        SheetRows(RowListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            pending.clear();
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? columnIndex(cellReference) : nextColumn;
+            nextColumn = column + 1;
+            if (headers != null && column >= headers.length) {
+                return;
+            }
+            while (pending.size() < column) {
+                pending.add("");
+            }
+            pending.add(formattedValue);
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            try {
+                if (headers == null) {
+                    startSheet();
+                } else {
+                    deliverRow();
+                }
+            } catch (IOException e) {
+                failure = e;
+                throw new StopReading();
+            }
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+
+        private void startSheet() throws IOException {
+            boolean empty = true;
+            for (String value : pending) {
+                if (!ExcelParser.cleanCellValue(value).isEmpty()) {
+                    empty = false;
+                    break;
+                }
+            }
+            if (empty) {
+                return;
+            }
+            headers = new String[pending.size()];
+            Set<String> used = new HashSet<>();
+            for (int i = 0; i < headers.length; i++) {
+                String header = ExcelParser.cleanHeaderValue(pending.get(i));
+                if (header.isEmpty()) {
+                    header = "Column" + (i + 1);
+                }
+                headers[i] = ExcelParser.makeUniqueHeader(header, used).intern();
+            }
+            values = new String[headers.length];
+            listener.onHeaders(headers);
+        }
+
+        private void deliverRow() throws IOException {
+            boolean empty = true;
+            Arrays.fill(values, "");
+            for (int i = 0; i < pending.size(); i++) {
+                String value = ExcelParser.cleanCellValue(pending.get(i));
+                values[i] = value;
+                empty &= value.isEmpty();
+            }
+            if (empty) {
+                return;
+            }
+            delivered++;
+            if (!listener.onRow(values)) {
+                throw new StopReading();
+            }
+        }
+    }
+
+    /**
+     * Zero-based column of an A1-style reference, e.g. "AB12" -> 27.
+     */
+    static int columnIndex(@NonNull String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                column = column * 26 + (c - 'A' + 1);
+            } else if (c >= 'a' && c <= 'z') {
+                column = column * 26 + (c - 'a' + 1);
+            } else {
+                break;
+            }
+        }
+        return column - 1;
+    }
+
+    /**
+     * Keeps large numbers such as phone numbers out of scientific notation, as the DOM path
+     * does with the cell's numeric value.
+     */
+    private static final class PlainNumberFormatter extends DataFormatter {
+        PlainNumberFormatter() {
+            super(Locale.US, true);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString,
+                                            boolean use1904Windowing) {
+            String formatted = super.formatRawCellContents(value, formatIndex, formatString, use1904Windowing);
+            if (formatted != null && (formatted.indexOf('E') >= 0 || formatted.indexOf('e') >= 0)) {
+                try {
+                    return new BigDecimal(Double.toString(value)).toPlainString();
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return formatted;
+        }
+    }
+
+    /**
+     * Unwinds the SAX parse once the listener has seen enough rows or failed.
+     */
+    private static final class StopReading extends RuntimeException {
+        StopReading() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,670 @@
+package com.afriserve.smsmanager.data.persistence;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.SimLaneProgress;
+import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.UploadSession;
+import com.afriserve.smsmanager.models.Recipient;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * File-backed store for upload sessions. Each session directory holds:
+ * <ul>
+ *   <li>{@code recipients.bin} - the recipient list, written once and memory-mapped on load;</li>
+ *   <li>{@code meta.json} - template, mapping and other fields that change only on user edits;</li>
+ *   <li>{@code state.bin} - progress counters and control flags in a fixed-size record,
+ *       double-buffered and overwritten in place;</li>
+ *   <li>{@code progress.journal} - append-only log of checkpoints, used to recover the
+ *       counters if both state slots are unreadable.</li>
+ * </ul>
+ * A checkpoint touches only the state record and the journal, so its cost does not grow
+ * with the number of recipients.
+ */
+final class BinarySessionStore {
+
+    private static final String TAG = "BinarySessionStore";
+
+    private static final String RECIPIENTS_FILE = "recipients.bin";
+    private static final String META_FILE = "meta.json";
+    private static final String STATE_FILE = "state.bin";
+    private static final String JOURNAL_FILE = "progress.journal";
+
+    private static final int RECIPIENTS_MAGIC = 0x52435031; // "RCP1"
+    private static final int RECIPIENTS_HEADER_SIZE = 4 + 4 + 8;
+    private static final String RECORDS_SPOOL = RECIPIENTS_FILE + ".records";
+    private static final String INDEX_SPOOL = RECIPIENTS_FILE + ".index";
+    private static final long FINGERPRINT_SEED = 1125899906842597L;
+    // Each recipient folds five fields into the fingerprint
+    private static final long FINGERPRINT_STEP = 31L * 31L * 31L * 31L * 31L;
+
+    private static final int STATE_MAGIC = 0x53535231; // "SSR1"
+    private static final int STATE_SLOT_SIZE = 512;
+    private static final int MAX_STATUS_BYTES = 32;
+    private static final int MAX_RECORD_LANES = 8;
+
+    private static final int JOURNAL_ENTRY_SIZE = 40;
+    private static final long JOURNAL_COMPACT_BYTES = 64L * 1024;
+
+    private static final int FLAG_ACTIVE = 1;
+    private static final int FLAG_PAUSED = 1 << 1;
+    private static final int FLAG_STOPPED = 1 << 2;
+
+    private final File rootDir;
+    private final Gson metaGson;
+    private final Map<String, Long> lastSequence = new HashMap<>();
+
+    BinarySessionStore(@NonNull File rootDir) {
+        this.rootDir = rootDir;
+        // Recipients live in their own file; keep them out of the metadata document.
+        this.metaGson = new GsonBuilder()
+                .setExclusionStrategies(new ExclusionStrategy() {
+                    @Override
+                    public boolean shouldSkipField(FieldAttributes f) {
+                        return f.getDeclaringClass() == UploadSession.class
+                                && "recipients".equals(f.getName());
+                    }
+
+                    @Override
+                    public boolean shouldSkipClass(Class<?> clazz) {
+                        return false;
+                    }
+                })
+                .create();
+    }
+
+    synchronized boolean exists(@NonNull String sessionId) {
+        return new File(sessionDir(sessionId), META_FILE).isFile();
+    }
+
+    /**
+     * Write the whole session. The recipient file is rewritten only when the list changed.
+     */
+    synchronized void save(@NonNull UploadSession session) throws IOException {
+        File dir = sessionDir(session.fileId);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create session directory " + dir);
+        }
+        writeRecipientsIfChanged(session.fileId, dir, session.recipients);
+        writeMeta(dir, session);
+        writeState(session);
+    }
+
+    /**
+     * Persist progress counters and flags only.
+     */
+    synchronized void checkpoint(@NonNull UploadSession session) throws IOException {
+        if (!exists(session.fileId)) {
+            save(session);
+            return;
+        }
+        writeState(session);
+    }
+
+    @Nullable
+    synchronized UploadSession load(@NonNull String sessionId) throws IOException {
+        File dir = sessionDir(sessionId);
+        File metaFile = new File(dir, META_FILE);
+        if (!metaFile.isFile()) {
+            return null;
+        }
+        UploadSession session;
+        try (Reader reader = new InputStreamReader(new FileInputStream(metaFile), StandardCharsets.UTF_8)) {
+            session = metaGson.fromJson(reader, UploadSession.class);
+        }
+        if (session == null) {
+            return null;
+        }
+        session.fileId = sessionId;
+        if (!readState(dir, session)) {
+            recoverFromJournal(dir, session);
+        }
+        List<Recipient> recipients = mapRecipients(new File(dir, RECIPIENTS_FILE));
+        session.recipients = recipients != null ? recipients : new ArrayList<>();
+        return session;
+    }
+
+    /**
+     * Start streaming the recipient list of a session that is being imported.
+     */
+    @NonNull
+    synchronized RecipientWriter openRecipients(@NonNull String sessionId) throws IOException {
+        File dir = sessionDir(sessionId);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create session directory " + dir);
+        }
+        return new RecipientWriter(sessionId, dir);
+    }
+
+    synchronized void delete(@NonNull String sessionId) {
+        File dir = sessionDir(sessionId);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Failed to delete " + file);
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            Log.w(TAG, "Failed to delete " + dir);
+        }
+        lastSequence.remove(sessionId);
+    }
+
+    private File sessionDir(@NonNull String sessionId) {
+        StringBuilder safe = new StringBuilder(sessionId.length());
+        for (int i = 0; i < sessionId.length(); i++) {
+            char c = sessionId.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.';
+            safe.append(allowed ? c : '_');
+        }
+        return new File(rootDir, safe.toString());
+    }
+
+    private void writeRecipientsIfChanged(@NonNull String sessionId, @NonNull File dir,
+                                          @Nullable List<Recipient> recipients) throws IOException {
+        File file = new File(dir, RECIPIENTS_FILE);
+        List<Recipient> list = recipients != null ? RecipientOverlayList.unwrap(recipients) : new ArrayList<>();
+        if (list instanceof MappedRecipientList
+                && ((MappedRecipientList) list).isUnmodifiedViewOf(file)) {
+            return;
+        }
+        long fingerprint = fingerprint(list);
+        if (file.isFile() && readFingerprint(file) == fingerprint) {
+            return;
+        }
+
+        // Stream through the import spools, so an edited mapped list is never staged in memory.
+        try (RecipientWriter writer = new RecipientWriter(sessionId, dir)) {
+            for (int i = 0, count = list.size(); i < count; i++) {
+                Recipient recipient = list.get(i);
+                writer.append(recipient != null ? recipient : new Recipient(null, null));
+            }
+            writer.commit();
+        }
+    }
+
+    @Nullable
+    private static List<Recipient> mapRecipients(@NonNull File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt(0) != RECIPIENTS_MAGIC) {
+                throw new IOException("Bad recipients file " + file);
+            }
+            int count = buffer.getInt(4);
+            int indexOffset = RECIPIENTS_HEADER_SIZE;
+            int dataOffset = indexOffset + count * 4;
+            return new MappedRecipientList(file, buffer, count, indexOffset, dataOffset);
+        }
+    }
+
+    private static long readFingerprint(@NonNull File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.readInt() != RECIPIENTS_MAGIC) {
+                return 0L;
+            }
+            raf.readInt();
+            return raf.readLong();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Cheap content hash used to skip rewriting an unchanged recipient list.
+     */
+    private static long fingerprint(@NonNull List<Recipient> recipients) {
+        long hash = FINGERPRINT_SEED + recipients.size();
+        for (Recipient recipient : recipients) {
+            hash = fold(hash, recipient);
+        }
+        return hash;
+    }
+
+    private static long fold(long hash, @NonNull Recipient recipient) {
+        hash = 31 * hash + hashOf(recipient.getName());
+        hash = 31 * hash + hashOf(recipient.getPhone());
+        Double amount = recipient.getAmount();
+        hash = 31 * hash + (amount != null ? Double.doubleToLongBits(amount) : 7L);
+        hash = 31 * hash + (recipient.isProcessed() ? 1 : 0);
+        Map<String, String> fields = recipient.getFields();
+        hash = 31 * hash + (fields != null ? fields.hashCode() : 0);
+        return hash;
+    }
+
+    private static int hashOf(@Nullable String value) {
+        return value != null ? value.hashCode() : 0;
+    }
+
+    private static void encode(@NonNull DataOutputStream out, @Nullable Recipient recipient) throws IOException {
+        if (recipient == null) {
+            recipient = new Recipient(null, null);
+        }
+        writeString(out, recipient.getName());
+        writeString(out, recipient.getPhone());
+        Double amount = recipient.getAmount();
+        out.writeByte(amount != null ? 1 : 0);
+        if (amount != null) {
+            out.writeDouble(amount);
+        }
+        out.writeByte(recipient.isProcessed() ? 1 : 0);
+        Map<String, String> fields = recipient.getFields();
+        if (fields == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(fields.size());
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            writeString(out, field.getKey());
+            writeString(out, field.getValue());
+        }
+    }
+
+    private static void writeString(@NonNull DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeMeta(@NonNull File dir, @NonNull UploadSession session) throws IOException {
+        File file = new File(dir, META_FILE);
+        File tmp = new File(dir, META_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            metaGson.toJson(session, writer);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private void writeState(@NonNull UploadSession session) throws IOException {
+        File dir = sessionDir(session.fileId);
+        File stateFile = new File(dir, STATE_FILE);
+        long sequence = nextSequence(session.fileId, stateFile);
+
+        ByteBuffer slot = ByteBuffer.allocate(STATE_SLOT_SIZE);
+        slot.putInt(STATE_MAGIC);
+        slot.putLong(sequence);
+        slot.putLong(session.lastAccessed);
+        slot.putLong(session.campaignId);
+        slot.putInt(session.lastProcessedIndex);
+        slot.putInt(session.sentCount);
+        slot.putInt(session.failedCount);
+        slot.putInt(session.skippedCount);
+        slot.putInt(session.totalRecords);
+        slot.putInt(session.validRecords);
+        slot.putInt(session.simSlot);
+        slot.putInt(session.sendSpeed);
+        slot.putInt(flagsOf(session));
+
+        byte[] status = session.processingStatus != null
+                ? session.processingStatus.getBytes(StandardCharsets.UTF_8) : null;
+        if (status == null || status.length > MAX_STATUS_BYTES) {
+            slot.putShort((short) -1);
+        } else {
+            slot.putShort((short) status.length);
+            slot.put(status);
+        }
+
+        List<SimLaneProgress> lanes = session.simLanes;
+        if (lanes == null || lanes.size() > MAX_RECORD_LANES) {
+            // Larger lane sets stay in the metadata document.
+            slot.putInt(-1);
+        } else {
+            slot.putInt(lanes.size());
+            for (SimLaneProgress lane : lanes) {
+                slot.putInt(lane.simSlot);
+                slot.putInt(lane.startIndex);
+                slot.putInt(lane.endIndex);
+                slot.putInt(lane.nextIndex);
+                slot.putInt(lane.sentCount);
+                slot.putInt(lane.failedCount);
+                slot.putInt(lane.skippedCount);
+            }
+        }
+        slot.putInt(crc(slot.array(), slot.position()));
+        slot.rewind();
+
+        try (RandomAccessFile raf = new RandomAccessFile(stateFile, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // Alternate slots so a torn write never destroys the previous record.
+            channel.write(slot, (sequence & 1L) * STATE_SLOT_SIZE);
+        }
+        appendJournal(dir, sequence, session);
+    }
+
+    private long nextSequence(@NonNull String sessionId, @NonNull File stateFile) {
+        Long last = lastSequence.get(sessionId);
+        if (last == null) {
+            last = 0L;
+            ByteBuffer[] slots = readSlots(stateFile);
+            for (ByteBuffer slot : slots) {
+                if (slot != null) {
+                    last = Math.max(last, slot.getLong(4));
+                }
+            }
+        }
+        long next = last + 1;
+        lastSequence.put(sessionId, next);
+        return next;
+    }
+
+    private boolean readState(@NonNull File dir, @NonNull UploadSession session) {
+        ByteBuffer latest = null;
+        for (ByteBuffer slot : readSlots(new File(dir, STATE_FILE))) {
+            if (slot != null && (latest == null || slot.getLong(4) > latest.getLong(4))) {
+                latest = slot;
+            }
+        }
+        if (latest == null) {
+            return false;
+        }
+        latest.position(4 + 8);
+        session.lastAccessed = latest.getLong();
+        session.campaignId = latest.getLong();
+        session.lastProcessedIndex = latest.getInt();
+        session.sentCount = latest.getInt();
+        session.failedCount = latest.getInt();
+        session.skippedCount = latest.getInt();
+        session.totalRecords = latest.getInt();
+        session.validRecords = latest.getInt();
+        session.simSlot = latest.getInt();
+        session.sendSpeed = latest.getInt();
+        applyFlags(session, latest.getInt());
+
+        short statusLength = latest.getShort();
+        if (statusLength >= 0) {
+            byte[] status = new byte[statusLength];
+            latest.get(status);
+            session.processingStatus = new String(status, StandardCharsets.UTF_8);
+        }
+
+        int laneCount = latest.getInt();
+        if (laneCount >= 0) {
+            List<SimLaneProgress> lanes = new ArrayList<>(laneCount);
+            for (int i = 0; i < laneCount; i++) {
+                SimLaneProgress lane = new SimLaneProgress();
+                lane.simSlot = latest.getInt();
+                lane.startIndex = latest.getInt();
+                lane.endIndex = latest.getInt();
+                lane.nextIndex = latest.getInt();
+                lane.sentCount = latest.getInt();
+                lane.failedCount = latest.getInt();
+                lane.skippedCount = latest.getInt();
+                lanes.add(lane);
+            }
+            session.simLanes = lanes;
+        }
+        return true;
+    }
+
+    /**
+     * Both state slots, or null for slots that are missing or fail their checksum.
+     */
+    @NonNull
+    private static ByteBuffer[] readSlots(@NonNull File stateFile) {
+        ByteBuffer[] slots = new ByteBuffer[2];
+        if (!stateFile.isFile()) {
+            return slots;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(stateFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            for (int i = 0; i < 2; i++) {
+                ByteBuffer slot = ByteBuffer.allocate(STATE_SLOT_SIZE);
+                int read = channel.read(slot, (long) i * STATE_SLOT_SIZE);
+                if (read == STATE_SLOT_SIZE && isValidSlot(slot.array())) {
+                    slots[i] = slot;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read state record " + stateFile, e);
+        }
+        return slots;
+    }
+
+    private static boolean isValidSlot(@NonNull byte[] slot) {
+        ByteBuffer buffer = ByteBuffer.wrap(slot);
+        if (buffer.getInt(0) != STATE_MAGIC) {
+            return false;
+        }
+        // Walk to the end of the variable part to find the checksum.
+        int position = 4 + 8 + 8 + 8 + 4 * 9;
+        short statusLength = buffer.getShort(position);
+        position += 2 + Math.max(0, statusLength);
+        int laneCount = buffer.getInt(position);
+        position += 4 + Math.max(0, laneCount) * 7 * 4;
+        if (laneCount > MAX_RECORD_LANES || statusLength > MAX_STATUS_BYTES
+                || position + 4 > STATE_SLOT_SIZE) {
+            return false;
+        }
+        return buffer.getInt(position) == crc(slot, position);
+    }
+
+    private static void appendJournal(@NonNull File dir, long sequence, @NonNull UploadSession session)
+            throws IOException {
+        File journal = new File(dir, JOURNAL_FILE);
+        ByteBuffer entry = ByteBuffer.allocate(JOURNAL_ENTRY_SIZE);
+        entry.putLong(sequence);
+        entry.putLong(System.currentTimeMillis());
+        entry.putInt(session.lastProcessedIndex);
+        entry.putInt(session.sentCount);
+        entry.putInt(session.failedCount);
+        entry.putInt(session.skippedCount);
+        entry.putInt(flagsOf(session));
+        entry.putInt(crc(entry.array(), JOURNAL_ENTRY_SIZE - 4));
+        entry.rewind();
+
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size >= JOURNAL_COMPACT_BYTES) {
+                // The state record already holds the latest values; start a fresh journal.
+                channel.truncate(0);
+                size = 0;
+            }
+            channel.write(entry, size - size % JOURNAL_ENTRY_SIZE);
+        }
+    }
+
+    private static void recoverFromJournal(@NonNull File dir, @NonNull UploadSession session) {
+        File journal = new File(dir, JOURNAL_FILE);
+        if (!journal.isFile()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "r");
+             FileChannel channel = raf.getChannel()) {
+            long entries = channel.size() / JOURNAL_ENTRY_SIZE;
+            ByteBuffer entry = ByteBuffer.allocate(JOURNAL_ENTRY_SIZE);
+            for (long i = entries - 1; i >= 0; i--) {
+                entry.clear();
+                if (channel.read(entry, i * JOURNAL_ENTRY_SIZE) != JOURNAL_ENTRY_SIZE
+                        || entry.getInt(JOURNAL_ENTRY_SIZE - 4) != crc(entry.array(), JOURNAL_ENTRY_SIZE - 4)) {
+                    continue;
+                }
+                session.lastProcessedIndex = entry.getInt(16);
+                session.sentCount = entry.getInt(20);
+                session.failedCount = entry.getInt(24);
+                session.skippedCount = entry.getInt(28);
+                applyFlags(session, entry.getInt(32));
+                Log.w(TAG, "Recovered session " + session.fileId + " progress from journal entry " + i);
+                return;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read progress journal " + journal, e);
+        }
+    }
+
+    private static int flagsOf(@NonNull UploadSession session) {
+        return (session.isActive ? FLAG_ACTIVE : 0)
+                | (session.isPaused ? FLAG_PAUSED : 0)
+                | (session.isStopped ? FLAG_STOPPED : 0);
+    }
+
+    private static void applyFlags(@NonNull UploadSession session, int flags) {
+        session.isActive = (flags & FLAG_ACTIVE) != 0;
+        session.isPaused = (flags & FLAG_PAUSED) != 0;
+        session.isStopped = (flags & FLAG_STOPPED) != 0;
+    }
+
+    private static int crc(@NonNull byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Streams recipients into a session directory. Records and their offsets go to two spool
+     * files and are assembled into {@code recipients.bin} on commit, so neither the list nor
+     * its encoded form is ever held in memory. The fingerprint is accumulated on the way so a
+     * later {@link #save} sees an unchanged list.
+     */
+    final class RecipientWriter implements Closeable {
+        private final String sessionId;
+        private final File dir;
+        private final File recordsFile;
+        private final File indexFile;
+        private final DataOutputStream records;
+        private final DataOutputStream index;
+        private long hash = FINGERPRINT_SEED;
+        private long scale = 1L;
+        private int count;
+        private boolean finished;
+
+        private RecipientWriter(@NonNull String sessionId, @NonNull File dir) throws IOException {
+            this.sessionId = sessionId;
+            this.dir = dir;
+            this.recordsFile = new File(dir, RECORDS_SPOOL);
+            this.indexFile = new File(dir, INDEX_SPOOL);
+            this.records = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(recordsFile), 64 * 1024));
+            this.index = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(indexFile), 16 * 1024));
+        }
+
+        void append(@NonNull Recipient recipient) throws IOException {
+            index.writeInt(records.size());
+            encode(records, recipient);
+            hash = fold(hash, recipient);
+            scale *= FINGERPRINT_STEP;
+            count++;
+        }
+
+        /**
+         * Publish the streamed list and return a mapped view of it.
+         */
+        @NonNull
+        List<Recipient> commit() throws IOException {
+            records.close();
+            index.close();
+            // Same value fingerprint(list) gives: the seed term also carries the list size
+            long fingerprint = hash + count * scale;
+            File file = new File(dir, RECIPIENTS_FILE);
+            File tmp = new File(dir, RECIPIENTS_FILE + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp);
+                 FileChannel target = out.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(RECIPIENTS_HEADER_SIZE);
+                header.putInt(RECIPIENTS_MAGIC);
+                header.putInt(count);
+                header.putLong(fingerprint);
+                header.flip();
+                while (header.hasRemaining()) {
+                    target.write(header);
+                }
+                transfer(indexFile, target);
+                transfer(recordsFile, target);
+            }
+            synchronized (BinarySessionStore.this) {
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Cannot replace " + file);
+                }
+                finished = true;
+                deleteSpools();
+                Log.d(TAG, "Streamed " + count + " recipients to " + file);
+                List<Recipient> mapped = mapRecipients(file);
+                return mapped != null ? mapped : new ArrayList<>();
+            }
+        }
+
+        /**
+         * Discard the import unless it was committed.
+         */
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                records.close();
+                index.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close recipient spool", e);
+            }
+            deleteSpools();
+            synchronized (BinarySessionStore.this) {
+                if (!exists(sessionId)) {
+                    delete(sessionId);
+                }
+            }
+        }
+
+        private void deleteSpools() {
+            if (recordsFile.exists() && !recordsFile.delete()) {
+                Log.w(TAG, "Failed to delete " + recordsFile);
+            }
+            if (indexFile.exists() && !indexFile.delete()) {
+                Log.w(TAG, "Failed to delete " + indexFile);
+            }
+        }
+
+        private void transfer(@NonNull File source, @NonNull FileChannel target) throws IOException {
+            try (FileInputStream in = new FileInputStream(source);
+                 FileChannel channel = in.getChannel()) {
+                long position = 0;
+                long size = channel.size();
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+            }
+        }
+    }
+}
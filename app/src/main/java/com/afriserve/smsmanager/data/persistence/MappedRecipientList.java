@@ -0,0 +1,124 @@
+package com.afriserve.smsmanager.data.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.models.Recipient;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-through view of a recipients file written by {@link BinarySessionStore}.
+ * Recipients are decoded from the memory-mapped file on access, so reads are safe from any
+ * thread; the first mutation copies the list to the heap so callers can still edit a loaded
+ * session.
+ */
+final class MappedRecipientList extends AbstractList<Recipient> implements RandomAccess {
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int indexOffset;
+    private final int dataOffset;
+    private volatile List<Recipient> heapCopy;
+
+    MappedRecipientList(@NonNull File file, @NonNull ByteBuffer buffer, int count,
+                        int indexOffset, int dataOffset) {
+        this.file = file;
+        this.buffer = buffer;
+        this.count = count;
+        this.indexOffset = indexOffset;
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * True while the list still mirrors the given file unchanged, so it need not be rewritten.
+     */
+    synchronized boolean isUnmodifiedViewOf(@NonNull File other) {
+        return heapCopy == null && file.equals(other);
+    }
+
+    @Override
+    public Recipient get(int index) {
+        List<Recipient> copy = heapCopy;
+        if (copy != null) {
+            return copy.get(index);
+        }
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.position(dataOffset + view.getInt(indexOffset + index * 4));
+        return decode(view);
+    }
+
+    @Override
+    public int size() {
+        List<Recipient> copy = heapCopy;
+        return copy != null ? copy.size() : count;
+    }
+
+    @Override
+    public synchronized Recipient set(int index, Recipient element) {
+        return materialize().set(index, element);
+    }
+
+    @Override
+    public synchronized void add(int index, Recipient element) {
+        materialize().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public synchronized Recipient remove(int index) {
+        Recipient removed = materialize().remove(index);
+        modCount++;
+        return removed;
+    }
+
+    private List<Recipient> materialize() {
+        List<Recipient> copy = heapCopy;
+        if (copy == null) {
+            copy = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                copy.add(get(i));
+            }
+            heapCopy = copy;
+        }
+        return copy;
+    }
+
+    static Recipient decode(@NonNull ByteBuffer in) {
+        String name = readString(in);
+        String phone = readString(in);
+        Double amount = in.get() != 0 ? in.getDouble() : null;
+        boolean processed = in.get() != 0;
+        int fieldCount = in.getInt();
+        Map<String, String> fields = null;
+        if (fieldCount >= 0) {
+            fields = new HashMap<>(Math.max(4, fieldCount * 2));
+            for (int i = 0; i < fieldCount; i++) {
+                String key = readString(in);
+                fields.put(key, readString(in));
+            }
+        }
+        return new Recipient(name, phone, amount, processed, fields);
+    }
+
+    private static String readString(@NonNull ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.afriserve.smsmanager.data.persistence;
+
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.models.Recipient;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Editable view over a recipient list that is too large to copy, such as the memory-mapped
+ * list of an imported session. Removals, replacements and appended recipients are kept as an
+ * overlay next to the untouched base list, so an edit costs O(log removed) and memory in
+ * proportion to the number of edits, never to the size of the list.
+ *
+ * Recipients can only be inserted at the end. Reads are safe from any thread as long as
+ * edits are made from one thread, as the bulk SMS screen does.
+ */
+public final class RecipientOverlayList extends AbstractList<Recipient> implements RandomAccess {
+
+    private final List<Recipient> base;
+    // Sorted base indices that have been removed
+    private int[] removed = new int[8];
+    private int removedCount;
+    private final Map<Integer, Recipient> replaced = new HashMap<>();
+    private final List<Recipient> appended = new ArrayList<>();
+
+    private RecipientOverlayList(@NonNull List<Recipient> base) {
+        this.base = base;
+    }
+
+    /**
+     * Editable view of list; returns list itself if it already is one.
+     */
+    @NonNull
+    public static RecipientOverlayList over(@NonNull List<Recipient> list) {
+        if (list instanceof RecipientOverlayList) {
+            return (RecipientOverlayList) list;
+        }
+        return new RecipientOverlayList(list);
+    }
+
+    /**
+     * The list to persist: the base list itself while no edit has been made.
+     */
+    @NonNull
+    static List<Recipient> unwrap(@NonNull List<Recipient> list) {
+        if (list instanceof RecipientOverlayList) {
+            RecipientOverlayList overlay = (RecipientOverlayList) list;
+            if (!overlay.hasEdits()) {
+                return overlay.base;
+            }
+        }
+        return list;
+    }
+
+    boolean hasEdits() {
+        return removedCount > 0 || !replaced.isEmpty() || !appended.isEmpty();
+    }
+
+    @Override
+    public Recipient get(int index) {
+        int baseLive = base.size() - removedCount;
+        if (index < 0 || index >= baseLive + appended.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        if (index >= baseLive) {
+            return appended.get(index - baseLive);
+        }
+        int baseIndex = toBaseIndex(index);
+        Recipient replacement = replaced.get(baseIndex);
+        return replacement != null ? replacement : base.get(baseIndex);
+    }
+
+    @Override
+    public int size() {
+        return base.size() - removedCount + appended.size();
+    }
+
+    @Override
+    public Recipient set(int index, Recipient element) {
+        int baseLive = base.size() - removedCount;
+        if (index >= baseLive && index < size()) {
+            return appended.set(index - baseLive, element);
+        }
+        Recipient previous = get(index);
+        replaced.put(toBaseIndex(index), element);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Recipient element) {
+        if (index != size()) {
+            throw new UnsupportedOperationException("Recipients can only be appended");
+        }
+        appended.add(element);
+        modCount++;
+    }
+
+    @Override
+    public Recipient remove(int index) {
+        int baseLive = base.size() - removedCount;
+        if (index >= baseLive && index < size()) {
+            modCount++;
+            return appended.remove(index - baseLive);
+        }
+        Recipient previous = get(index);
+        int baseIndex = toBaseIndex(index);
+        replaced.remove(baseIndex);
+        int slot = -Arrays.binarySearch(removed, 0, removedCount, baseIndex) - 1;
+        if (removedCount == removed.length) {
+            removed = Arrays.copyOf(removed, removedCount * 2);
+        }
+        System.arraycopy(removed, slot, removed, slot + 1, removedCount - slot);
+        removed[slot] = baseIndex;
+        removedCount++;
+        modCount++;
+        return previous;
+    }
+
+    /**
+     * Base index of the index-th base recipient still in the list. Each step adds the removals
+     * at or before the current guess; the guess only grows, so it settles on the first base
+     * index with exactly index live entries before it.
+     */
+    private int toBaseIndex(int index) {
+        int baseIndex = index;
+        while (true) {
+            int next = index + removedAtOrBefore(baseIndex);
+            if (next == baseIndex) {
+                return baseIndex;
+            }
+            baseIndex = next;
+        }
+    }
+
+    private int removedAtOrBefore(int baseIndex) {
+        int slot = Arrays.binarySearch(removed, 0, removedCount, baseIndex);
+        return slot >= 0 ? slot + 1 : -slot - 1;
+    }
+}
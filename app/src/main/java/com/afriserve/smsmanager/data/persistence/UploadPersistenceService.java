@@ -5,6 +5,9 @@ import android.content.SharedPreferences;
 import android.util.Log;
 import com.afriserve.smsmanager.models.Recipient;
 import com.google.gson.Gson;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -17,12 +20,17 @@ import javax.inject.Singleton;
 
 /**
  * Session persistence service for Excel upload data
- * Manages upload sessions across app restarts with timeout handling
+ * Manages upload sessions across app restarts with timeout handling.
+ * Sessions live in a {@link BinarySessionStore}; SharedPreferences keeps only the active
+ * session id, history and preferences. Sessions saved by older versions as JSON in
+ * SharedPreferences are migrated on first load.
  */
 @Singleton
 public class UploadPersistenceService {
     private static final String TAG = "UploadPersistence";
     private static final String PREFS_NAME = "bulk_sms_upload_persistence";
+    private static final String SESSIONS_DIR = "upload_sessions";
+    // Legacy keys: sessions used to be stored as JSON under these
     private static final String KEY_CURRENT_UPLOAD = "current_upload";
     private static final String KEY_UPLOAD_HISTORY = "upload_history";
     private static final String KEY_PREFERENCES = "upload_preferences";
@@ -31,6 +39,7 @@ public class UploadPersistenceService {
     private static final long DEFAULT_SESSION_TIMEOUT_MS = 24 * 60 * 60 * 1000; // 24 hours
 
     private final SharedPreferences preferences;
+    private final BinarySessionStore sessionStore;
     private final Gson gson;
     private final ExecutorService executor;
     private UploadPreferences uploadPreferences;
@@ -38,6 +47,7 @@ public class UploadPersistenceService {
     @Inject
     public UploadPersistenceService(@dagger.hilt.android.qualifiers.ApplicationContext Context context) {
         this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.sessionStore = new BinarySessionStore(new File(context.getFilesDir(), SESSIONS_DIR));
         this.gson = new Gson();
         this.executor = Executors.newSingleThreadExecutor();
         this.uploadPreferences = loadPreferences();
@@ -73,6 +83,8 @@ public class UploadPersistenceService {
         public boolean isPaused;
         public boolean isStopped;
         public Long scheduledAt;
+        public boolean multiSimDispatch;
+        public List<SimLaneProgress> simLanes;
 
         public UploadSession() {
             this.uploadTimestamp = System.currentTimeMillis();
@@ -85,6 +97,71 @@ public class UploadPersistenceService {
         }
     }
 
+    /**
+     * Resumable progress of one SIM's share of a multi-SIM session.
+     * The lane covers recipients [startIndex, endIndex); nextIndex is the first one not yet processed.
+     */
+    public static class SimLaneProgress {
+        public int simSlot;
+        public int startIndex;
+        public int endIndex;
+        public int nextIndex;
+        public int sentCount;
+        public int failedCount;
+        public int skippedCount;
+
+        public SimLaneProgress() {
+        }
+
+        public SimLaneProgress(int simSlot, int startIndex, int endIndex) {
+            this.simSlot = simSlot;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.nextIndex = startIndex;
+        }
+
+        public SimLaneProgress copy() {
+            SimLaneProgress copy = new SimLaneProgress(simSlot, startIndex, endIndex);
+            copy.nextIndex = nextIndex;
+            copy.sentCount = sentCount;
+            copy.failedCount = failedCount;
+            copy.skippedCount = skippedCount;
+            return copy;
+        }
+
+        public boolean isDone() {
+            return nextIndex >= endIndex;
+        }
+    }
+
+    /**
+     * Recipient list being streamed into the session store. Closing it without a commit
+     * discards everything written so far.
+     */
+    public static final class RecipientImport implements Closeable {
+        private final BinarySessionStore.RecipientWriter writer;
+
+        private RecipientImport(BinarySessionStore.RecipientWriter writer) {
+            this.writer = writer;
+        }
+
+        public void append(Recipient recipient) throws IOException {
+            writer.append(recipient);
+        }
+
+        /**
+         * Finish the import and return a memory-mapped view of the stored recipients.
+         */
+        public List<Recipient> commit() throws IOException {
+            return writer.commit();
+        }
+
+        @Override
+        public void close() {
+            writer.close();
+        }
+    }
+
     /**
      * Data class for upload preferences
      */
@@ -140,47 +217,88 @@ public class UploadPersistenceService {
         return sessionAge > maxAge;
     }
 
-    private void saveSessionInternal(UploadSession session, String key, boolean updateHistory) {
+    private void saveSessionInternal(UploadSession session, boolean updateHistory) throws IOException {
         ensureSessionId(session);
         session.lastAccessed = System.currentTimeMillis();
         session.isActive = true;
-        String json = gson.toJson(session);
-        preferences.edit()
-                .putString(key, json)
-                .apply();
+        sessionStore.save(session);
         if (updateHistory && uploadPreferences.keepHistory) {
             addToHistory(session);
         }
     }
 
-    private UploadSession loadSessionInternal(String key, boolean touch) {
-        String json = preferences.getString(key, null);
-        if (json == null) {
+    private UploadSession loadSessionInternal(String sessionId, boolean touch) throws IOException {
+        if (sessionId == null) {
             return null;
         }
-        UploadSession session = gson.fromJson(json, UploadSession.class);
+        UploadSession session = sessionStore.load(sessionId);
+        if (session == null) {
+            session = migrateLegacySession(sessionKey(sessionId));
+        }
         if (session == null) {
             return null;
         }
-        normalizeSession(session);
+        if (session.totalRecords < session.recipients.size()) {
+            session.totalRecords = session.recipients.size();
+        }
+        if (session.validRecords < session.recipients.size()) {
+            session.validRecords = session.recipients.size();
+        }
         if (isSessionExpired(session)) {
-            preferences.edit().remove(key).apply();
-            if (KEY_CURRENT_UPLOAD.equals(key)) {
+            sessionStore.delete(sessionId);
+            if (isActiveSession(sessionId)) {
                 preferences.edit().remove(KEY_ACTIVE_SESSION_ID).apply();
             }
             return null;
         }
         if (touch) {
             session.lastAccessed = System.currentTimeMillis();
-            saveSessionInternal(session, key, false);
+            session.isActive = true;
+            sessionStore.checkpoint(session);
+        }
+        return session;
+    }
+
+    private UploadSession loadCurrentInternal() throws IOException {
+        String activeId = getActiveSessionId();
+        UploadSession session = loadSessionInternal(activeId, true);
+        if (session == null) {
+            session = migrateLegacySession(KEY_CURRENT_UPLOAD);
+        }
+        return session;
+    }
+
+    /**
+     * Move a session stored as JSON in SharedPreferences into the session store.
+     */
+    private UploadSession migrateLegacySession(String key) throws IOException {
+        String json = preferences.getString(key, null);
+        if (json == null) {
+            return null;
+        }
+        UploadSession session = gson.fromJson(json, UploadSession.class);
+        SharedPreferences.Editor editor = preferences.edit().remove(key);
+        if (session != null && session.fileId != null) {
+            editor.remove(sessionKey(session.fileId));
+        }
+        editor.apply();
+        if (session == null) {
+            return null;
         }
+        normalizeSession(session);
+        ensureSessionId(session);
+        if (isSessionExpired(session)) {
+            return null;
+        }
+        sessionStore.save(session);
+        Log.d(TAG, "Migrated legacy session " + session.fileId + " (" + session.recipients.size() + " recipients)");
         return session;
     }
 
     public void saveSession(UploadSession session) {
         executor.execute(() -> {
             try {
-                saveSessionInternal(session, sessionKey(session.fileId), false);
+                saveSessionInternal(session, false);
             } catch (Exception e) {
                 Log.e(TAG, "Failed to save upload session", e);
             }
@@ -189,15 +307,38 @@ public class UploadPersistenceService {
 
     public void saveSessionSync(UploadSession session) {
         try {
-            saveSessionInternal(session, sessionKey(session.fileId), false);
+            saveSessionInternal(session, false);
         } catch (Exception e) {
             Log.e(TAG, "Failed to save upload session", e);
         }
     }
 
+    /**
+     * Persist only the progress counters and control flags of a session. The recipient list
+     * and metadata are left untouched, so the cost does not depend on the campaign size.
+     */
+    public void checkpointSessionSync(UploadSession session) {
+        try {
+            ensureSessionId(session);
+            session.lastAccessed = System.currentTimeMillis();
+            session.isActive = true;
+            sessionStore.checkpoint(session);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to checkpoint upload session", e);
+        }
+    }
+
+    /**
+     * Stream recipients for a new session straight into the session store. Commit the import
+     * before saving the session, then use the returned list as {@code session.recipients}.
+     */
+    public RecipientImport beginRecipientImport(String sessionId) throws IOException {
+        return new RecipientImport(sessionStore.openRecipients(sessionId));
+    }
+
     public UploadSession loadSessionSync(String sessionId) {
         try {
-            return loadSessionInternal(sessionKey(sessionId), false);
+            return loadSessionInternal(sessionId, false);
         } catch (Exception e) {
             Log.e(TAG, "Failed to load upload session", e);
             return null;
@@ -206,7 +347,7 @@ public class UploadPersistenceService {
 
     public UploadSession loadCurrentUploadSync() {
         try {
-            UploadSession session = loadSessionInternal(KEY_CURRENT_UPLOAD, true);
+            UploadSession session = loadCurrentInternal();
             if (session != null) {
                 setActiveSessionId(session.fileId);
             }
@@ -233,6 +374,7 @@ public class UploadPersistenceService {
     public void clearSession(String sessionId) {
         executor.execute(() -> {
             try {
+                sessionStore.delete(sessionId);
                 preferences.edit()
                         .remove(sessionKey(sessionId))
                         .apply();
@@ -248,8 +390,7 @@ public class UploadPersistenceService {
     public void saveCurrentUpload(UploadSession session) {
         executor.execute(() -> {
             try {
-                saveSessionInternal(session, KEY_CURRENT_UPLOAD, true);
-                saveSessionInternal(session, sessionKey(session.fileId), false);
+                saveSessionInternal(session, true);
                 setActiveSessionId(session.fileId);
                 Log.d(TAG, "Saved upload session: " + session.fileName +
                         " (" + session.validRecords + " contacts)");
@@ -261,8 +402,7 @@ public class UploadPersistenceService {
 
     public void saveCurrentUploadSync(UploadSession session) {
         try {
-            saveSessionInternal(session, KEY_CURRENT_UPLOAD, false);
-            saveSessionInternal(session, sessionKey(session.fileId), false);
+            saveSessionInternal(session, false);
             setActiveSessionId(session.fileId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to save upload session", e);
@@ -276,7 +416,7 @@ public class UploadPersistenceService {
     public void loadCurrentUpload(Callback<UploadSession> callback) {
         executor.execute(() -> {
             try {
-                UploadSession session = loadSessionInternal(KEY_CURRENT_UPLOAD, true);
+                UploadSession session = loadCurrentInternal();
                 if (session == null) {
                     callback.onResult(null);
                     return;
@@ -302,6 +442,7 @@ public class UploadPersistenceService {
                         .remove(KEY_CURRENT_UPLOAD)
                         .remove(KEY_ACTIVE_SESSION_ID);
                 if (activeId != null) {
+                    sessionStore.delete(activeId);
                     editor.remove(sessionKey(activeId));
                 }
                 editor.apply();
@@ -0,0 +1,265 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * In-process control channel for running bulk sessions.
+ * The UI and the sending worker signal pause/stop/speed changes here; the send loop reads
+ * plain volatile flags and sleeps in timed waits that wake as soon as a signal arrives.
+ * Persisted session flags are only consulted when a run starts.
+ *
+ * Each run owns its channel from {@link #open} to {@link #close}. A resume or a new run that
+ * arrives while the previous run is still halting does not reuse or discard that channel: the
+ * old channel is marked superseded, so its run finishes without re-pausing the session, and
+ * the next run gets a fresh channel that waits for the old run to exit before it starts.
+ */
+@Singleton
+public class CampaignControl {
+
+    private static final String TAG = "CampaignControl";
+    // A superseded run halts at its next check; this only guards against one that never exits.
+    private static final long PREVIOUS_RUN_EXIT_TIMEOUT_MS = 60_000;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    @Inject
+    public CampaignControl() {
+    }
+
+    /**
+     * Open the channel for a run, seeded with the persisted flags. Signals sent after the
+     * previous run closed but before this one opened are kept. If an earlier run of the
+     * session is still in progress, it is superseded and this call waits for it to exit;
+     * {@link Channel#followedRun()} then tells the caller to reload the session's progress.
+     */
+    @NonNull
+    public Channel open(@NonNull String sessionId, boolean paused, boolean stopped, int sendSpeed) {
+        Channel channel = channels.compute(sessionId, (id, current) -> {
+            Channel next;
+            if (current == null) {
+                next = new Channel(null);
+            } else if (current.running) {
+                current.supersede();
+                next = new Channel(current);
+            } else {
+                next = current;
+            }
+            next.running = true;
+            return next;
+        });
+        channel.awaitPrevious(PREVIOUS_RUN_EXIT_TIMEOUT_MS);
+        channel.seed(paused, stopped, sendSpeed);
+        return channel;
+    }
+
+    /**
+     * Release the channel once a run has finished.
+     */
+    public void close(@NonNull String sessionId, @NonNull Channel channel) {
+        channel.running = false;
+        channel.exited.countDown();
+        channels.remove(sessionId, channel);
+    }
+
+    public void pause(@NonNull String sessionId) {
+        channel(sessionId).pause();
+        Log.d(TAG, "Pause signalled for session " + sessionId);
+    }
+
+    public void stop(@NonNull String sessionId) {
+        channel(sessionId).stop();
+        Log.d(TAG, "Stop signalled for session " + sessionId);
+    }
+
+    /**
+     * Halt the current run without marking the session paused, so a rescheduled run
+     * continues where this one stopped.
+     */
+    public void suspend(@NonNull String sessionId) {
+        Channel channel = channels.get(sessionId);
+        // A replaced worker is cancelled while its successor's channel is already mapped
+        Channel earlier = channel != null ? channel.previous : null;
+        if (earlier != null) {
+            channel = earlier;
+        }
+        if (channel != null && channel.running) {
+            channel.suspend();
+            Log.d(TAG, "Suspend signalled for session " + sessionId);
+        }
+    }
+
+    /**
+     * Clear pending pause/stop signals ahead of a resumed run. A run that is still halting
+     * keeps its channel until it exits, but is told it has been superseded.
+     */
+    public void resume(@NonNull String sessionId) {
+        channels.compute(sessionId, (id, current) -> {
+            if (current == null || !current.running) {
+                return null;
+            }
+            current.supersede();
+            return new Channel(current);
+        });
+    }
+
+    public void setSendSpeed(@NonNull String sessionId, int sendSpeed) {
+        channel(sessionId).setSendSpeed(sendSpeed);
+    }
+
+    @NonNull
+    private Channel channel(@NonNull String sessionId) {
+        return channels.computeIfAbsent(sessionId, id -> new Channel(null));
+    }
+
+    /**
+     * Control state of one session run.
+     */
+    public static final class Channel {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition signalled = lock.newCondition();
+        private volatile boolean paused;
+        private volatile boolean stopped;
+        private volatile boolean suspended;
+        private volatile int sendSpeed;
+        private volatile boolean superseded;
+        private volatile boolean running;
+        private final CountDownLatch exited = new CountDownLatch(1);
+        // Run that must exit before this one starts, cleared once it has
+        @Nullable
+        private volatile Channel previous;
+        private boolean followedRun;
+
+        Channel(@Nullable Channel previous) {
+            this.previous = previous;
+        }
+
+        void seed(boolean paused, boolean stopped, int sendSpeed) {
+            lock.lock();
+            try {
+                this.paused |= paused;
+                this.stopped |= stopped;
+                if (this.sendSpeed <= 0) {
+                    this.sendSpeed = sendSpeed;
+                }
+                signalled.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void pause() {
+            signal(() -> paused = true);
+        }
+
+        public void stop() {
+            signal(() -> stopped = true);
+        }
+
+        void suspend() {
+            signal(() -> suspended = true);
+        }
+
+        void supersede() {
+            signal(() -> {
+                superseded = true;
+                suspended = true;
+            });
+        }
+
+        void awaitPrevious(long timeoutMs) {
+            Channel earlier = previous;
+            if (earlier == null) {
+                return;
+            }
+            followedRun = true;
+            try {
+                if (!earlier.exited.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "Previous run did not exit within " + timeoutMs + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stop();
+            }
+            previous = null;
+        }
+
+        void setSendSpeed(int sendSpeed) {
+            if (sendSpeed > 0) {
+                this.sendSpeed = sendSpeed;
+            }
+        }
+
+        public boolean isPaused() {
+            return paused;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * True when the run was halted by the system, or handed over to a newer run, rather
+         * than paused or stopped by the user.
+         */
+        public boolean isSuspendedOnly() {
+            return superseded ? !stopped : suspended && !paused && !stopped;
+        }
+
+        /**
+         * True if this run waited for an earlier run of the session to exit when it opened,
+         * so progress loaded before then may be stale.
+         */
+        public boolean followedRun() {
+            return followedRun;
+        }
+
+        public boolean isHalted() {
+            return paused || stopped || suspended;
+        }
+
+        public int getSendSpeed() {
+            return sendSpeed;
+        }
+
+        /**
+         * Wait up to {@code delayMs}, returning early when the run is halted.
+         *
+         * @return true if the full delay elapsed without a halt
+         */
+        public boolean await(long delayMs) throws InterruptedException {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+            lock.lockInterruptibly();
+            try {
+                while (!isHalted() && remainingNanos > 0) {
+                    remainingNanos = signalled.awaitNanos(remainingNanos);
+                }
+                return !isHalted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signal(@NonNull Runnable update) {
+            lock.lock();
+            try {
+                update.run();
+                signalled.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.data.templates.CompiledTemplate;
+import com.afriserve.smsmanager.data.utils.SmsSegmentCounter;
+import com.afriserve.smsmanager.models.Recipient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Campaign-wide part, cost and duration forecast.
+ * Each recipient's message is measured straight from the compiled template and the recipient's
+ * values with one reused {@link SmsSegmentCounter}, so nothing is rendered and nothing is
+ * allocated per row beyond what the resolver itself does. Rows that go multipart or fall back to
+ * UCS-2 are ranked in a small sorted array as the scan goes (most parts first, UCS-2 breaking
+ * ties), so the report can point at them.
+ */
+public final class CampaignForecaster {
+
+    /** Fixed start-up allowance added to every duration estimate */
+    private static final long BASE_DURATION_MS = 1000;
+
+    /**
+     * Supplies template values for one recipient; may return the same instance every time.
+     */
+    public interface ResolverFactory {
+        @NonNull
+        CompiledTemplate.Resolver resolverFor(@NonNull Recipient recipient);
+    }
+
+    /**
+     * Carrier routing and rate-limit spacing the dispatcher will apply.
+     */
+    public interface Pacing {
+        @NonNull
+        String carrierOf(String phone);
+
+        long intervalMs(@NonNull String carrier);
+    }
+
+    private CampaignForecaster() {
+    }
+
+    /**
+     * Forecast sending plan to every recipient.
+     *
+     * @param sendDelayMs pause the campaign speed setting puts between sends, 0 for none
+     * @param costPerPart price of one SMS part, 0 to skip costing
+     * @param worstRows   how many multipart or UCS-2 rows to report
+     */
+    @NonNull
+    public static Forecast forecast(@NonNull CompiledTemplate plan, @NonNull List<Recipient> recipients,
+                                    @NonNull ResolverFactory resolvers, @NonNull Pacing pacing,
+                                    long sendDelayMs, double costPerPart, int worstRows) {
+        SmsSegmentCounter counter = new SmsSegmentCounter();
+        int keep = Math.max(0, worstRows);
+        int[] worstIndex = new int[keep];
+        int[] worstScore = new int[keep];
+        int[] worstChar = new int[keep];
+        int worstCount = 0;
+
+        Map<String, int[]> perCarrier = new HashMap<>();
+        long totalParts = 0;
+        int ucs2Messages = 0;
+        int multipartMessages = 0;
+        int maxParts = 0;
+
+        for (int i = 0, n = recipients.size(); i < n; i++) {
+            Recipient recipient = recipients.get(i);
+            counter.reset();
+            plan.measure(resolvers.resolverFor(recipient), counter);
+            int parts = counter.getParts();
+
+            totalParts += parts;
+            maxParts = Math.max(maxParts, parts);
+            if (!counter.isGsm7()) {
+                ucs2Messages++;
+            }
+            if (parts > 1) {
+                multipartMessages++;
+            }
+            String carrier = pacing.carrierOf(recipient.getPhone());
+            int[] carrierCount = perCarrier.get(carrier);
+            if (carrierCount == null) {
+                carrierCount = new int[1];
+                perCarrier.put(carrier, carrierCount);
+            }
+            carrierCount[0]++;
+
+            // Insertion into a descending array; ties keep the earlier row
+            int score = parts * 2 + (counter.isGsm7() ? 0 : 1);
+            if (keep > 0 && score > 2 && (worstCount < keep || score > worstScore[worstCount - 1])) {
+                int slot = Math.min(worstCount, keep - 1);
+                while (slot > 0 && worstScore[slot - 1] < score) {
+                    worstIndex[slot] = worstIndex[slot - 1];
+                    worstScore[slot] = worstScore[slot - 1];
+                    worstChar[slot] = worstChar[slot - 1];
+                    slot--;
+                }
+                worstIndex[slot] = i;
+                worstScore[slot] = score;
+                worstChar[slot] = counter.getFirstNonGsmChar();
+                worstCount = Math.min(worstCount + 1, keep);
+            }
+        }
+
+        // Carriers are paced independently, so the slowest carrier or the speed setting bounds the run
+        int count = recipients.size();
+        long durationMs = count * Math.max(0, sendDelayMs);
+        for (Map.Entry<String, int[]> entry : perCarrier.entrySet()) {
+            durationMs = Math.max(durationMs, entry.getValue()[0] * pacing.intervalMs(entry.getKey()));
+        }
+        if (count > 0) {
+            durationMs += BASE_DURATION_MS;
+        }
+
+        List<Offender> offenders = new ArrayList<>(worstCount);
+        for (int w = 0; w < worstCount; w++) {
+            offenders.add(new Offender(worstIndex[w], worstScore[w] / 2, worstChar[w]));
+        }
+        return new Forecast(count, totalParts, ucs2Messages, multipartMessages, maxParts,
+                totalParts * costPerPart, durationMs, Collections.unmodifiableList(offenders));
+    }
+
+    public static final class Forecast {
+        public final int recipients;
+        public final long totalParts;
+        public final int ucs2Messages;
+        public final int multipartMessages;
+        public final int maxParts;
+        public final double estimatedCost;
+        public final long estimatedDurationMs;
+        /** Multipart or UCS-2 rows needing the most parts, most first */
+        public final List<Offender> worstRows;
+
+        Forecast(int recipients, long totalParts, int ucs2Messages, int multipartMessages, int maxParts,
+                 double estimatedCost, long estimatedDurationMs, List<Offender> worstRows) {
+            this.recipients = recipients;
+            this.totalParts = totalParts;
+            this.ucs2Messages = ucs2Messages;
+            this.multipartMessages = multipartMessages;
+            this.maxParts = maxParts;
+            this.estimatedCost = estimatedCost;
+            this.estimatedDurationMs = estimatedDurationMs;
+            this.worstRows = worstRows;
+        }
+
+        public double getAveragePartsPerMessage() {
+            return recipients > 0 ? (double) totalParts / recipients : 0;
+        }
+    }
+
+    public static final class Offender {
+        /** Index into the recipient list */
+        public final int index;
+        public final int parts;
+        /** Character that forced UCS-2, or -1 if the message is GSM-7 */
+        public final int nonGsmChar;
+
+        Offender(int index, int parts, int nonGsmChar) {
+            this.index = index;
+            this.parts = parts;
+            this.nonGsmChar = nonGsmChar;
+        }
+
+        public boolean isUcs2() {
+            return nonGsmChar >= 0;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.models.Recipient;
+
+/**
+ * A recipient that has been through the preparation stage of the bulk send pipeline.
+ * READY messages carry a rendered body and a PENDING row that already has its database id,
+ * so the dispatch stage only has to hand them to SmsManager.
+ */
+public final class PreparedMessage {
+
+    public enum State {
+        READY,
+        SKIPPED,
+        ERROR
+    }
+
+    public final int index;
+    @NonNull
+    public final Recipient recipient;
+    @NonNull
+    public final State state;
+    @Nullable
+    public final String message;
+    @Nullable
+    public final SmsEntity entity;
+    @Nullable
+    public final String reason;
+
+    private PreparedMessage(int index, @NonNull Recipient recipient, @NonNull State state,
+                            @Nullable String message, @Nullable SmsEntity entity, @Nullable String reason) {
+        this.index = index;
+        this.recipient = recipient;
+        this.state = state;
+        this.message = message;
+        this.entity = entity;
+        this.reason = reason;
+    }
+
+    static PreparedMessage ready(int index, @NonNull Recipient recipient, @NonNull String message,
+                                 @NonNull SmsEntity entity) {
+        return new PreparedMessage(index, recipient, State.READY, message, entity, null);
+    }
+
+    static PreparedMessage skipped(int index, @NonNull Recipient recipient, @Nullable String reason) {
+        return new PreparedMessage(index, recipient, State.SKIPPED, null, null, reason);
+    }
+
+    static PreparedMessage error(int index, @NonNull Recipient recipient, @Nullable String message,
+                                 @Nullable SmsEntity entity, @Nullable String reason) {
+        return new PreparedMessage(index, recipient, State.ERROR, message, entity, reason);
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public boolean isSkipped() {
+        return state == State.SKIPPED;
+    }
+
+    /**
+     * Database id of the PENDING row, or 0 when none was inserted.
+     */
+    public long getSmsId() {
+        return entity != null ? entity.id : 0L;
+    }
+}
@@ -0,0 +1,308 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.AppDatabase;
+import com.afriserve.smsmanager.data.dao.CampaignDao;
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persistence stage of the bulk send pipeline.
+ * Collects per-message outcomes from the dispatch loop and writes them back on a single
+ * writer thread: status transitions, released PENDING rows and aggregated campaign
+ * counter deltas all land in one Room transaction per batch.
+ *
+ * A batch that fails to commit is retried with backoff. If it still fails, it is put back
+ * ahead of newer results so the next flush writes it again, and the failure listener is told
+ * so the send loop can halt instead of dispatching further messages it cannot record.
+ */
+public class SendPersistenceStage {
+
+    private static final String TAG = "SendPersistenceStage";
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int MAX_WRITE_ATTEMPTS = 4;
+    private static final long RETRY_BASE_DELAY_MS = 250;
+
+    /**
+     * Called on the writer thread after a batch has been committed.
+     */
+    public interface FlushListener {
+        void onFlushed(@NonNull List<SmsEntity> written);
+    }
+
+    /**
+     * Called on the writer thread when a batch could not be committed after all retries.
+     * The batch stays queued; the run should halt.
+     */
+    public interface FailureListener {
+        void onFlushFailed(@NonNull Exception error);
+    }
+
+    private final AppDatabase database;
+    private final SmsDao smsDao;
+    private final CampaignDao campaignDao;
+    private final long campaignId;
+    private final int batchSize;
+    @Nullable
+    private final FlushListener listener;
+    @Nullable
+    private final FailureListener failureListener;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private List<SmsEntity> pendingResults = new ArrayList<>();
+    private List<Long> pendingReleases = new ArrayList<>();
+    private int sentDelta = 0;
+    private int failedDelta = 0;
+    private int skippedDelta = 0;
+    @Nullable
+    private Future<?> lastFlush;
+    @Nullable
+    private volatile Exception lastFailure;
+    // A failed batch is back in pendingResults, not yet resubmitted
+    private boolean requeued;
+    // Submitted batches carrying requeued work that have not finished
+    private int retriesInFlight;
+
+    public SendPersistenceStage(@NonNull AppDatabase database,
+                                @NonNull SmsDao smsDao,
+                                @NonNull CampaignDao campaignDao,
+                                long campaignId,
+                                int batchSize,
+                                @Nullable FlushListener listener,
+                                @Nullable FailureListener failureListener) {
+        this.database = database;
+        this.smsDao = smsDao;
+        this.campaignDao = campaignDao;
+        this.campaignId = campaignId;
+        this.batchSize = Math.max(1, batchSize);
+        this.listener = listener;
+        this.failureListener = failureListener;
+    }
+
+    public synchronized void recordSent(@NonNull SmsEntity sms, long sentAt) {
+        sms.status = "SENT";
+        sms.sentAt = sentAt;
+        pendingResults.add(sms);
+        sentDelta++;
+        flushIfFull();
+    }
+
+    public synchronized void recordFailed(@NonNull SmsEntity sms, @Nullable String errorMessage, long failedAt) {
+        sms.status = "FAILED";
+        sms.errorMessage = errorMessage;
+        sms.errorCode = "SEND_ERROR";
+        sms.sentAt = failedAt;
+        pendingResults.add(sms);
+        failedDelta++;
+        flushIfFull();
+    }
+
+    /**
+     * Count a failure that has no message body to persist (e.g. rendering failed).
+     */
+    public synchronized void recordFailedWithoutMessage() {
+        failedDelta++;
+    }
+
+    public synchronized void recordSkipped() {
+        skippedDelta++;
+    }
+
+    /**
+     * Drop the PENDING rows of prepared messages that will not be dispatched in this run.
+     */
+    public synchronized void release(@NonNull List<PreparedMessage> unsent) {
+        for (PreparedMessage prepared : unsent) {
+            long smsId = prepared.getSmsId();
+            if (prepared.isReady() && smsId > 0) {
+                pendingReleases.add(smsId);
+            }
+        }
+    }
+
+    /**
+     * Flush everything recorded so far and wait until it is committed.
+     *
+     * @return false if a batch could not be committed and is still queued
+     */
+    public boolean flush() {
+        Future<?> future;
+        synchronized (this) {
+            future = submitFlush();
+        }
+        await(future);
+        return lastFailure == null;
+    }
+
+    /**
+     * True while a batch that failed to commit is waiting to be written again. Only cleared
+     * once that batch itself has been committed.
+     */
+    public boolean isFailing() {
+        return lastFailure != null;
+    }
+
+    /**
+     * Flush remaining work and stop the writer thread.
+     */
+    public void close() {
+        if (!flush()) {
+            // The run has halted by now; give the queued batches one more round of retries.
+            if (!flush()) {
+                synchronized (this) {
+                    Log.e(TAG, "Giving up on " + pendingResults.size() + " unrecorded send results",
+                            lastFailure);
+                }
+            }
+        }
+        writer.shutdown();
+    }
+
+    private void flushIfFull() {
+        if (pendingResults.size() >= batchSize) {
+            submitFlush();
+        }
+    }
+
+    @Nullable
+    private Future<?> submitFlush() {
+        if (pendingResults.isEmpty() && pendingReleases.isEmpty()
+                && sentDelta == 0 && failedDelta == 0 && skippedDelta == 0) {
+            return lastFlush;
+        }
+
+        final List<SmsEntity> results = pendingResults;
+        final List<Long> releases = pendingReleases;
+        final int sent = sentDelta;
+        final int failed = failedDelta;
+        final int skipped = skippedDelta;
+        final boolean retry = requeued;
+
+        pendingResults = new ArrayList<>(batchSize);
+        pendingReleases = new ArrayList<>();
+        sentDelta = 0;
+        failedDelta = 0;
+        skippedDelta = 0;
+        requeued = false;
+        if (retry) {
+            retriesInFlight++;
+        }
+
+        lastFlush = writer.submit(() -> writeBatch(results, releases, sent, failed, skipped, retry));
+        return lastFlush;
+    }
+
+    private void writeBatch(@NonNull List<SmsEntity> results, @NonNull List<Long> releases,
+                            int sent, int failed, int skipped, boolean retry) {
+        Exception error = null;
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            if (attempt > 0 && !sleepBeforeRetry(attempt)) {
+                break;
+            }
+            try {
+                database.runInTransaction(() -> {
+                    if (!results.isEmpty()) {
+                        smsDao.applySendResults(results);
+                    }
+                    if (!releases.isEmpty()) {
+                        smsDao.deletePendingByIds(releases);
+                    }
+                    if (campaignId > 0 && (sent != 0 || failed != 0 || skipped != 0)) {
+                        campaignDao.applyCountDeltas(campaignId, sent, failed, skipped, System.currentTimeMillis());
+                    }
+                });
+                error = null;
+                break;
+            } catch (Exception e) {
+                error = e;
+                Log.w(TAG, "Send batch of " + results.size() + " failed to persist (attempt "
+                        + (attempt + 1) + "/" + MAX_WRITE_ATTEMPTS + ")", e);
+            }
+        }
+
+        if (error != null) {
+            requeue(results, releases, sent, failed, skipped, retry, error);
+            return;
+        }
+        synchronized (this) {
+            if (retry) {
+                retriesInFlight--;
+            }
+            // Another batch committing says nothing about work that is still waiting
+            if (!requeued && retriesInFlight == 0) {
+                lastFailure = null;
+            }
+        }
+        Log.d(TAG, "Persisted batch: " + results.size() + " results, " + releases.size()
+                + " released, +" + sent + " sent, +" + failed + " failed, +" + skipped + " skipped");
+
+        if (listener != null && !results.isEmpty()) {
+            try {
+                listener.onFlushed(results);
+            } catch (Exception e) {
+                Log.w(TAG, "Flush listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Put a batch that could not be committed back ahead of anything recorded since.
+     */
+    private void requeue(@NonNull List<SmsEntity> results, @NonNull List<Long> releases,
+                         int sent, int failed, int skipped, boolean retry, @NonNull Exception error) {
+        synchronized (this) {
+            if (retry) {
+                retriesInFlight--;
+            }
+            requeued = true;
+            pendingResults.addAll(0, results);
+            pendingReleases.addAll(0, releases);
+            sentDelta += sent;
+            failedDelta += failed;
+            skippedDelta += skipped;
+            lastFailure = error;
+        }
+        Log.e(TAG, "Send batch of " + results.size() + " kept queued after "
+                + MAX_WRITE_ATTEMPTS + " failed attempts", error);
+        if (failureListener != null) {
+            try {
+                failureListener.onFlushFailed(error);
+            } catch (Exception e) {
+                Log.w(TAG, "Failure listener failed", e);
+            }
+        }
+    }
+
+    private boolean sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BASE_DELAY_MS << (attempt - 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void await(@Nullable Future<?> future) {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.w(TAG, "Send batch flush failed", e);
+        }
+    }
+}
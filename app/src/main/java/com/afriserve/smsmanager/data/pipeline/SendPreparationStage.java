@@ -0,0 +1,138 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import android.provider.Telephony;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.data.compliance.ComplianceManager;
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.models.Recipient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preparation stage of the bulk send pipeline.
+ * Runs compliance screening (one batch lookup per chunk) and template rendering ahead of
+ * dispatch, then inserts all PENDING rows of the chunk in a single batch so every READY
+ * message already has the sms id its delivery intents need.
+ */
+public class SendPreparationStage {
+
+    private static final String TAG = "SendPreparationStage";
+
+    /**
+     * Renders the message body for one recipient.
+     */
+    public interface MessageRenderer {
+        @NonNull
+        String render(@NonNull Recipient recipient);
+    }
+
+    private final ComplianceManager complianceManager;
+    private final SmsDao smsDao;
+    private final MessageRenderer renderer;
+    private final long campaignId;
+    private final String campaignType;
+
+    public SendPreparationStage(@NonNull ComplianceManager complianceManager,
+                                @NonNull SmsDao smsDao,
+                                @NonNull MessageRenderer renderer,
+                                long campaignId,
+                                @NonNull String campaignType) {
+        this.complianceManager = complianceManager;
+        this.smsDao = smsDao;
+        this.renderer = renderer;
+        this.campaignId = campaignId;
+        this.campaignType = campaignType;
+    }
+
+    /**
+     * Prepare recipients in [fromIndex, toIndex). Never throws; per-recipient problems are
+     * reported through {@link PreparedMessage.State}.
+     */
+    @NonNull
+    public List<PreparedMessage> prepare(@NonNull List<Recipient> recipients, int fromIndex, int toIndex) {
+        int count = Math.max(0, toIndex - fromIndex);
+        List<PreparedMessage> prepared = new ArrayList<>(count);
+        List<SmsEntity> pendingRows = new ArrayList<>();
+        List<Integer> pendingSlots = new ArrayList<>();
+
+        List<String> phones = new ArrayList<>(count);
+        for (int i = fromIndex; i < toIndex; i++) {
+            phones.add(recipients.get(i).getPhone());
+        }
+        List<ComplianceManager.ComplianceResult> complianceResults = null;
+        Exception complianceError = null;
+        try {
+            complianceResults = complianceManager.checkComplianceBatch(phones, campaignType).blockingGet();
+        } catch (Exception e) {
+            Log.e(TAG, "Compliance screening failed for chunk starting at " + fromIndex, e);
+            complianceError = e;
+        }
+
+        for (int i = fromIndex; i < toIndex; i++) {
+            Recipient recipient = recipients.get(i);
+            String message = null;
+            try {
+                if (complianceResults == null) {
+                    throw complianceError != null ? complianceError
+                            : new IllegalStateException("Compliance screening unavailable");
+                }
+                ComplianceManager.ComplianceResult complianceResult = complianceResults.get(i - fromIndex);
+                if (!complianceResult.isCompliant()) {
+                    prepared.add(PreparedMessage.skipped(i, recipient, complianceResult.getReason()));
+                    continue;
+                }
+
+                message = renderer.render(recipient);
+
+                SmsEntity entity = new SmsEntity();
+                entity.phoneNumber = recipient.getPhone();
+                entity.message = message;
+                entity.status = "PENDING";
+                entity.boxType = Telephony.Sms.MESSAGE_TYPE_SENT;
+                entity.isRead = true;
+                entity.campaignId = campaignId;
+                entity.createdAt = System.currentTimeMillis();
+
+                pendingSlots.add(prepared.size());
+                pendingRows.add(entity);
+                prepared.add(PreparedMessage.ready(i, recipient, message, entity));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to prepare recipient: " + recipient.getPhone(), e);
+                prepared.add(PreparedMessage.error(i, recipient, message, null, e.getMessage()));
+            }
+        }
+
+        if (!pendingRows.isEmpty()) {
+            insertPendingRows(prepared, pendingRows, pendingSlots);
+        }
+        return prepared;
+    }
+
+    private void insertPendingRows(@NonNull List<PreparedMessage> prepared,
+                                   @NonNull List<SmsEntity> pendingRows,
+                                   @NonNull List<Integer> pendingSlots) {
+        try {
+            List<Long> ids = smsDao.insertSmsBatch(pendingRows);
+            for (int i = 0; i < pendingRows.size(); i++) {
+                pendingRows.get(i).id = ids.get(i);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to insert pending rows for " + pendingRows.size() + " recipients", e);
+            // Without ids there is nothing to attach delivery intents to; fail the chunk.
+            for (int slot : pendingSlots) {
+                PreparedMessage ready = prepared.get(slot);
+                SmsEntity entity = ready.entity;
+                if (entity != null) {
+                    entity.id = 0L;
+                }
+                prepared.set(slot, PreparedMessage.error(ready.index, ready.recipient, ready.message,
+                        entity, e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.SimLaneProgress;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a session's recipients into per-SIM lanes for parallel dispatch and maps
+ * persisted lanes back onto the SIMs that are active when a session resumes.
+ */
+public final class SimLanePlanner {
+
+    private SimLanePlanner() {
+    }
+
+    /**
+     * Split [fromIndex, total) into one contiguous lane per SIM; lane sizes differ by at most one.
+     */
+    @NonNull
+    public static List<SimLaneProgress> split(int fromIndex, int total, @NonNull List<Integer> simSlots) {
+        List<SimLaneProgress> lanes = new ArrayList<>(simSlots.size());
+        int remaining = Math.max(0, total - fromIndex);
+        int laneCount = simSlots.size();
+        int start = fromIndex;
+        for (int i = 0; i < laneCount; i++) {
+            int size = remaining / laneCount + (i < remaining % laneCount ? 1 : 0);
+            lanes.add(new SimLaneProgress(simSlots.get(i), start, start + size));
+            start += size;
+        }
+        return lanes;
+    }
+
+    /**
+     * Move unfinished lanes whose SIM is no longer active onto the active SIMs, round-robin.
+     */
+    public static void reassign(@NonNull List<SimLaneProgress> lanes, @NonNull List<Integer> activeSlots) {
+        if (activeSlots.isEmpty()) {
+            return;
+        }
+        int next = 0;
+        for (SimLaneProgress lane : lanes) {
+            if (!lane.isDone() && !activeSlots.contains(lane.simSlot)) {
+                lane.simSlot = activeSlots.get(next++ % activeSlots.size());
+            }
+        }
+    }
+
+    /**
+     * Group unfinished lanes by SIM slot; each group is processed by one worker, in order.
+     */
+    @NonNull
+    public static Map<Integer, List<SimLaneProgress>> bySimSlot(@NonNull List<SimLaneProgress> lanes) {
+        Map<Integer, List<SimLaneProgress>> grouped = new LinkedHashMap<>();
+        for (SimLaneProgress lane : lanes) {
+            if (!lane.isDone()) {
+                List<SimLaneProgress> group = grouped.get(lane.simSlot);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    grouped.put(lane.simSlot, group);
+                }
+                group.add(lane);
+            }
+        }
+        return grouped;
+    }
+
+    /**
+     * Number of recipients processed across all lanes, counted from the first lane's start.
+     */
+    public static int processedIndex(@NonNull List<SimLaneProgress> lanes) {
+        if (lanes.isEmpty()) {
+            return 0;
+        }
+        int base = Integer.MAX_VALUE;
+        int processed = 0;
+        for (SimLaneProgress lane : lanes) {
+            base = Math.min(base, lane.startIndex);
+            processed += lane.nextIndex - lane.startIndex;
+        }
+        return base + processed;
+    }
+}
@@ -0,0 +1,76 @@
+package com.afriserve.smsmanager.data.queue;
+
+/**
+ * Circuit breaker for one carrier's queue traffic.
+ * Opens after a run of consecutive failures; once the cooldown passes a single trial send is
+ * let through, which closes the breaker on success or reopens it on failure.
+ */
+final class CarrierCircuitBreaker {
+
+    private final String carrier;
+    private final int threshold;
+    private final long cooldownMs;
+
+    // Guarded by this
+    private int consecutiveFailures;
+    private long openedAt = -1;
+    private boolean trialInFlight;
+
+    CarrierCircuitBreaker(String carrier, int threshold, long cooldownMs) {
+        this.carrier = carrier;
+        this.threshold = threshold;
+        this.cooldownMs = cooldownMs;
+    }
+
+    String getCarrier() {
+        return carrier;
+    }
+
+    /**
+     * Whether a send to this carrier may go ahead now
+     */
+    synchronized boolean allow(long now) {
+        if (openedAt < 0) {
+            return true;
+        }
+        if (now - openedAt < cooldownMs || trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    /**
+     * Earliest time allow() can next succeed while the breaker is open
+     */
+    synchronized long retryAt(long now) {
+        return openedAt < 0 ? now : Math.max(now + 1, openedAt + cooldownMs);
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        openedAt = -1;
+        trialInFlight = false;
+    }
+
+    /**
+     * @return true if this failure opened the breaker
+     */
+    synchronized boolean onFailure(long now) {
+        consecutiveFailures++;
+        boolean wasOpen = openedAt >= 0;
+        if (trialInFlight || consecutiveFailures >= threshold) {
+            openedAt = now;
+        }
+        trialInFlight = false;
+        return !wasOpen && openedAt >= 0;
+    }
+
+    synchronized boolean isOpen() {
+        return openedAt >= 0;
+    }
+
+    synchronized long cooldownRemaining(long now) {
+        return openedAt < 0 ? 0 : Math.max(0, openedAt + cooldownMs - now);
+    }
+}
@@ -0,0 +1,91 @@
+package com.afriserve.smsmanager.data.queue;
+
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.entity.SmsQueueEntity;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory view of sms_queue for SmsQueueManager.
+ * Items wait in a timer wheel until their nextRetryAt, then move to a ready lane by priority.
+ * Transactional items are served first, but after a burst of them one marketing item is let
+ * through so a steady OTP stream cannot starve campaign retries.
+ */
+final class QueueScheduler {
+
+    static final long TICK_MS = 1000;
+    static final int WHEEL_SLOTS = 512;
+    // Transactional items served in a row before a waiting marketing item gets a turn
+    static final int TRANSACTIONAL_BURST = 4;
+
+    private final RetryTimerWheel wheel;
+    private final Map<Long, SmsQueueEntity> items = new HashMap<>();
+    private final ArrayDeque<Long> transactionalLane = new ArrayDeque<>();
+    private final ArrayDeque<Long> marketingLane = new ArrayDeque<>();
+    private int transactionalStreak;
+
+    QueueScheduler(long now) {
+        this.wheel = new RetryTimerWheel(TICK_MS, WHEEL_SLOTS, now);
+    }
+
+    /**
+     * Hold item until at, replacing any earlier copy with the same id
+     */
+    synchronized void schedule(SmsQueueEntity item, long at) {
+        remove(item.id);
+        items.put(item.id, item);
+        wheel.schedule(item.id, at);
+    }
+
+    synchronized void remove(long id) {
+        if (items.remove(id) != null) {
+            wheel.cancel(id);
+            transactionalLane.remove(id);
+            marketingLane.remove(id);
+        }
+    }
+
+    /**
+     * Next item to send, or null if nothing is due. The item is no longer held afterwards;
+     * callers reschedule it if it needs another attempt.
+     */
+    @Nullable
+    synchronized SmsQueueEntity poll(long now) {
+        for (long id : wheel.advance(now)) {
+            SmsQueueEntity item = items.get(id);
+            if (item != null) {
+                laneFor(item).addLast(id);
+            }
+        }
+
+        ArrayDeque<Long> lane;
+        if (transactionalLane.isEmpty()) {
+            lane = marketingLane;
+        } else if (!marketingLane.isEmpty() && transactionalStreak >= TRANSACTIONAL_BURST) {
+            lane = marketingLane;
+        } else {
+            lane = transactionalLane;
+        }
+        Long id = lane.pollFirst();
+        if (id == null) {
+            return null;
+        }
+        transactionalStreak = lane == transactionalLane ? transactionalStreak + 1 : 0;
+        return items.remove(id);
+    }
+
+    synchronized int size() {
+        return items.size();
+    }
+
+    synchronized int readyCount() {
+        return transactionalLane.size() + marketingLane.size();
+    }
+
+    private ArrayDeque<Long> laneFor(SmsQueueEntity item) {
+        return item.priority == SmsQueueEntity.PRIORITY_TRANSACTIONAL ? transactionalLane : marketingLane;
+    }
+}
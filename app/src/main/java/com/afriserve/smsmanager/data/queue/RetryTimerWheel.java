@@ -0,0 +1,127 @@
+package com.afriserve.smsmanager.data.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hashed timer wheel for queue retries.
+ * Deadlines are bucketed by tick into a fixed ring of slots, so scheduling and cancelling are
+ * O(1) and each advance only looks at the slots for the ticks that elapsed, however many
+ * retries are waiting further out. Not thread-safe; QueueScheduler guards it.
+ */
+final class RetryTimerWheel {
+
+    private static final class Entry {
+        final long id;
+        final long deadline;
+        final long deadlineTick;
+
+        Entry(long id, long deadline, long deadlineTick) {
+            this.id = id;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final long tickMs;
+    private final int mask;
+    private final List<List<Entry>> slots;
+    // Live entry per id; slot lists may still hold superseded entries, skipped lazily
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // Deadlines that were already due when scheduled
+    private final List<Entry> overdue = new ArrayList<>();
+    private long currentTick;
+
+    /**
+     * @param wheelSize number of slots, rounded up to a power of two
+     */
+    RetryTimerWheel(long tickMs, int wheelSize, long now) {
+        this.tickMs = Math.max(1, tickMs);
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = now / this.tickMs;
+    }
+
+    /**
+     * Schedule id to fire at deadline, replacing any earlier schedule for it
+     */
+    void schedule(long id, long deadline) {
+        long tick = deadline / tickMs;
+        Entry entry = new Entry(id, deadline, tick);
+        entries.put(id, entry);
+        if (tick <= currentTick) {
+            overdue.add(entry);
+        } else {
+            slots.get((int) (tick & mask)).add(entry);
+        }
+    }
+
+    void cancel(long id) {
+        entries.remove(id);
+    }
+
+    boolean contains(long id) {
+        return entries.containsKey(id);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Move the wheel to now and return the ids that came due, earliest deadline first
+     */
+    List<Long> advance(long now) {
+        long nowTick = now / tickMs;
+        List<Entry> due = new ArrayList<>();
+        drain(overdue, Long.MAX_VALUE, due);
+
+        if (nowTick > currentTick) {
+            if (nowTick - currentTick > mask) {
+                // A full revolution or more elapsed: every slot may hold due entries
+                for (List<Entry> slot : slots) {
+                    drain(slot, nowTick, due);
+                }
+            } else {
+                for (long tick = currentTick + 1; tick <= nowTick; tick++) {
+                    drain(slots.get((int) (tick & mask)), nowTick, due);
+                }
+            }
+            currentTick = nowTick;
+        }
+
+        if (due.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Collections.sort(due, (a, b) -> a.deadline != b.deadline
+                ? Long.compare(a.deadline, b.deadline)
+                : Long.compare(a.id, b.id));
+        List<Long> ids = new ArrayList<>(due.size());
+        for (Entry entry : due) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    private void drain(List<Entry> slot, long nowTick, List<Entry> due) {
+        Iterator<Entry> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entries.get(entry.id) != entry) {
+                iterator.remove(); // cancelled or rescheduled
+            } else if (entry.deadlineTick <= nowTick) {
+                iterator.remove();
+                entries.remove(entry.id);
+                due.add(entry);
+            }
+        }
+    }
+}
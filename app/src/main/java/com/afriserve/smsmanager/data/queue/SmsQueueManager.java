@@ -1,17 +1,20 @@
 package com.afriserve.smsmanager.data.queue;
 
 import android.util.Log;
+import com.afriserve.smsmanager.data.compliance.RateLimitManager;
 import com.afriserve.smsmanager.data.dao.SmsQueueDao;
 import com.afriserve.smsmanager.data.entity.SmsQueueEntity;
 import com.afriserve.smsmanager.BulkSmsService;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import io.reactivex.rxjava3.core.Completable;
@@ -19,7 +22,10 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 
 /**
  * SMS Queue Manager with Circuit Breaker Pattern
- * Handles failed SMS retries with exponential backoff and circuit breaking
+ * Handles failed SMS retries with exponential backoff and circuit breaking.
+ * sms_queue is loaded once into a timer-wheel scheduler with priority lanes, so due items are
+ * found without rescanning the table; outcomes are written back in batches. Each carrier has
+ * its own circuit breaker, so one failing network does not hold back the others.
  */
 @Singleton
 public class SmsQueueManager {
@@ -32,16 +38,29 @@ public class SmsQueueManager {
     private static final long BASE_RETRY_DELAY_MS = 5000; // 5 seconds
     private static final long MAX_RETRY_DELAY_MS = 300000; // 5 minutes max
     
+    // Status transitions written back per transaction
+    private static final int TRANSITION_BATCH_SIZE = 50;
+    
+    // Short numeric codes next to OTP wording mark transactional traffic
+    private static final Pattern TRANSACTIONAL_PATTERN = Pattern.compile(
+        "(?i)\\b(otp|one[- ]time|verification|verify|code|pin|password)\\b.*\\b\\d{4,8}\\b" +
+        "|\\b\\d{4,8}\\b.*\\b(otp|one[- ]time|verification|verify|code|pin|password)\\b",
+        Pattern.DOTALL);
+    
     private final SmsQueueDao smsQueueDao;
     private final BulkSmsService bulkSmsService;
+    private final RateLimitManager rateLimitManager;
     private final ExecutorService executor;
     private final ScheduledExecutorService scheduledExecutor;
     
-    // Circuit breaker state
-    private final AtomicBoolean circuitBreakerOpen = new AtomicBoolean(false);
-    private final AtomicInteger failureCount = new AtomicInteger(0);
-    private final AtomicLong circuitBreakerOpenTime = new AtomicLong(0);
-    private final AtomicLong lastFailureTime = new AtomicLong(0);
+    // Scheduler state
+    private final QueueScheduler scheduler = new QueueScheduler(System.currentTimeMillis());
+    private final Map<String, CarrierCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Object drainLock = new Object();
+    
+    // Pending write-back, guarded by drainLock
+    private final List<SmsQueueEntity> pendingUpdates = new ArrayList<>();
+    private final List<Long> pendingDeletes = new ArrayList<>();
     
     // Queue statistics
     private final AtomicInteger pendingCount = new AtomicInteger(0);
@@ -50,21 +69,31 @@ public class SmsQueueManager {
     private final AtomicInteger processedCount = new AtomicInteger(0);
     
     @Inject
-    public SmsQueueManager(SmsQueueDao smsQueueDao, BulkSmsService bulkSmsService) {
+    public SmsQueueManager(SmsQueueDao smsQueueDao, BulkSmsService bulkSmsService,
+                           RateLimitManager rateLimitManager) {
         this.smsQueueDao = smsQueueDao;
         this.bulkSmsService = bulkSmsService;
+        this.rateLimitManager = rateLimitManager;
         this.executor = Executors.newFixedThreadPool(2);
         this.scheduledExecutor = Executors.newScheduledThreadPool(1);
         
-        // Start periodic queue processing
+        // Load the queue, then start ticking the scheduler
+        scheduledExecutor.execute(this::loadQueue);
         startQueueProcessor();
         startStatisticsUpdater();
     }
     
     /**
-     * Enqueue SMS for retry
+     * Enqueue SMS for retry. OTP-style messages go to the transactional lane.
      */
     public Completable enqueueSms(String phoneNumber, String message, int simSlot, Long originalSmsId) {
+        return enqueueSms(phoneNumber, message, simSlot, originalSmsId, classifyPriority(message));
+    }
+    
+    /**
+     * Enqueue SMS for retry in the given priority lane
+     */
+    public Completable enqueueSms(String phoneNumber, String message, int simSlot, Long originalSmsId, int priority) {
         return Completable.fromAction(() -> {
             try {
                 SmsQueueEntity queueEntity = new SmsQueueEntity();
@@ -74,13 +103,20 @@ public class SmsQueueManager {
                 queueEntity.originalSmsId = originalSmsId;
                 queueEntity.retryCount = 0;
                 queueEntity.status = "PENDING";
+                queueEntity.priority = priority;
                 queueEntity.createdAt = System.currentTimeMillis();
                 queueEntity.nextRetryAt = System.currentTimeMillis();
                 queueEntity.lastFailureAt = null;
                 queueEntity.errorMessage = null;
                 
-                smsQueueDao.insertQueueItem(queueEntity);
-                Log.d(TAG, "Enqueued SMS for retry: " + phoneNumber);
+                queueEntity.id = smsQueueDao.insertQueueItem(queueEntity);
+                scheduler.schedule(queueEntity, queueEntity.nextRetryAt);
+                Log.d(TAG, "Enqueued SMS for retry: " + phoneNumber + " (priority " + priority + ")");
+                
+                if (priority == SmsQueueEntity.PRIORITY_TRANSACTIONAL) {
+                    // Don't make an OTP wait for the next tick
+                    scheduledExecutor.execute(this::drainQueue);
+                }
                 
             } catch (Exception e) {
                 Log.e(TAG, "Failed to enqueue SMS", e);
@@ -89,77 +125,104 @@ public class SmsQueueManager {
         }).subscribeOn(Schedulers.io());
     }
     
+    static int classifyPriority(String message) {
+        return message != null && TRANSACTIONAL_PATTERN.matcher(message).find()
+            ? SmsQueueEntity.PRIORITY_TRANSACTIONAL
+            : SmsQueueEntity.PRIORITY_MARKETING;
+    }
+    
     /**
      * Process queue items
      */
     public Completable processQueue() {
-        return Completable.fromAction(() -> {
-            if (circuitBreakerOpen.get()) {
-                long timeSinceOpen = System.currentTimeMillis() - circuitBreakerOpenTime.get();
-                if (timeSinceOpen >= CIRCUIT_BREAKER_TIMEOUT_MS) {
-                    // Try to close circuit breaker
-                    if (circuitBreakerOpen.compareAndSet(true, false)) {
-                        failureCount.set(0);
-                        Log.i(TAG, "Circuit breaker closed after timeout");
-                    }
-                } else {
-                    Log.d(TAG, "Circuit breaker is open, skipping queue processing");
-                    return;
-                }
+        return Completable.fromAction(this::drainQueue).subscribeOn(Schedulers.io());
+    }
+    
+    /**
+     * Load sms_queue into the scheduler. Items left PROCESSING by a previous process never got
+     * an outcome and are retried.
+     */
+    private void loadQueue() {
+        try {
+            long now = System.currentTimeMillis();
+            int reset = smsQueueDao.resetStaleProcessingItems(now + 1);
+            List<SmsQueueEntity> items = smsQueueDao.getSchedulableItems();
+            for (SmsQueueEntity item : items) {
+                scheduler.schedule(item, item.nextRetryAt);
             }
-            
+            Log.d(TAG, "Loaded " + items.size() + " queue items (" + reset + " interrupted)");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load queue", e);
+        }
+    }
+    
+    /**
+     * Send everything that is due, highest priority lane first
+     */
+    private void drainQueue() {
+        synchronized (drainLock) {
             try {
-                List<SmsQueueEntity> pendingItems = smsQueueDao.getPendingItems(System.currentTimeMillis());
-                
-                for (SmsQueueEntity item : pendingItems) {
-                    if (circuitBreakerOpen.get()) {
-                        break; // Stop processing if circuit breaker opened during processing
+                SmsQueueEntity item;
+                while ((item = scheduler.poll(System.currentTimeMillis())) != null) {
+                    CarrierCircuitBreaker breaker = breakerFor(item.phoneNumber);
+                    long now = System.currentTimeMillis();
+                    if (!breaker.allow(now)) {
+                        // Park in memory until the carrier's cooldown ends; the row is unchanged
+                        scheduler.schedule(item, breaker.retryAt(now));
+                        continue;
+                    }
+                    processQueueItem(item, breaker);
+                    if (pendingUpdates.size() + pendingDeletes.size() >= TRANSITION_BATCH_SIZE) {
+                        flushTransitions();
                     }
-                    
-                    processQueueItem(item);
                 }
-                
             } catch (Exception e) {
                 Log.e(TAG, "Error processing queue", e);
-                handleFailure();
+            } finally {
+                flushTransitions();
             }
-        }).subscribeOn(Schedulers.io());
+        }
     }
     
     /**
      * Process individual queue item
      */
-    private void processQueueItem(SmsQueueEntity item) {
+    private void processQueueItem(SmsQueueEntity item, CarrierCircuitBreaker breaker) {
         try {
             Log.d(TAG, "Processing queue item: " + item.phoneNumber + 
                   " (attempt " + (item.retryCount + 1) + ")");
             
-            // Update status to PROCESSING
-            item.status = "PROCESSING";
-            smsQueueDao.updateQueueItem(item);
-            
             // Attempt to send SMS
             boolean success = attemptSmsSend(item);
             
             if (success) {
-                // Success - remove from queue
-                smsQueueDao.deleteQueueItemById(item.id);
+                // Success - remove from queue now: a buffered delete lost to a crash would resend it
+                deleteSentItem(item);
                 processedCount.incrementAndGet();
+                breaker.onSuccess();
                 Log.d(TAG, "✅ Queue item processed successfully: " + item.phoneNumber);
                 
-                // Reset failure count on success
-                if (failureCount.get() > 0) {
-                    failureCount.set(0);
-                }
-                
             } else {
                 // Failed - update for retry
-                handleQueueItemFailure(item);
+                handleQueueItemFailure(item, breaker);
             }
             
         } catch (Exception e) {
             Log.e(TAG, "Error processing queue item: " + item.phoneNumber, e);
-            handleQueueItemFailure(item);
+            handleQueueItemFailure(item, breaker);
+        }
+    }
+    
+    /**
+     * Delete a sent item's row. If that fails the delete is buffered with the failure
+     * transitions and retried on the next flush; the item is not rescheduled either way.
+     */
+    private void deleteSentItem(SmsQueueEntity item) {
+        try {
+            smsQueueDao.deleteQueueItemById(item.id);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to remove sent queue item " + item.id + ", retrying with the next batch", e);
+            pendingDeletes.add(item.id);
         }
     }
     
@@ -193,9 +256,10 @@ public class SmsQueueManager {
     /**
      * Handle queue item failure
      */
-    private void handleQueueItemFailure(SmsQueueEntity item) {
+    private void handleQueueItemFailure(SmsQueueEntity item, CarrierCircuitBreaker breaker) {
+        long now = System.currentTimeMillis();
         item.retryCount++;
-        item.lastFailureAt = System.currentTimeMillis();
+        item.lastFailureAt = now;
         item.status = "FAILED";
         
         if (item.retryCount >= MAX_RETRY_ATTEMPTS) {
@@ -208,16 +272,19 @@ public class SmsQueueManager {
         } else {
             // Calculate next retry time with exponential backoff
             long delay = calculateRetryDelay(item.retryCount);
-            item.nextRetryAt = System.currentTimeMillis() + delay;
+            item.nextRetryAt = now + delay;
+            scheduler.schedule(item, item.nextRetryAt);
             Log.d(TAG, "⏳ Queue item scheduled for retry: " + item.phoneNumber + 
                   " in " + (delay / 1000) + "s");
         }
         
-        // Update item in database
-        smsQueueDao.updateQueueItem(item);
+        // Written back with the rest of the batch
+        pendingUpdates.add(item);
         
         // Handle circuit breaker
-        handleFailure();
+        if (breaker.onFailure(now)) {
+            Log.w(TAG, "🔌 Circuit breaker OPENED for " + breaker.getCarrier());
+        }
     }
     
     /**
@@ -234,19 +301,29 @@ public class SmsQueueManager {
         return Math.min(delay + jitter, MAX_RETRY_DELAY_MS);
     }
     
+    private CarrierCircuitBreaker breakerFor(String phoneNumber) {
+        String carrier = rateLimitManager.getCarrier(phoneNumber);
+        return circuitBreakers.computeIfAbsent(carrier, key ->
+            new CarrierCircuitBreaker(key, CIRCUIT_BREAKER_THRESHOLD, CIRCUIT_BREAKER_TIMEOUT_MS));
+    }
+    
     /**
-     * Handle circuit breaker logic
+     * Write collected status transitions in one transaction. Called with drainLock held.
+     * On failure the transitions stay buffered and are written with the next flush.
      */
-    private void handleFailure() {
-        int failures = failureCount.incrementAndGet();
-        lastFailureTime.set(System.currentTimeMillis());
-        
-        if (failures >= CIRCUIT_BREAKER_THRESHOLD && !circuitBreakerOpen.get()) {
-            if (circuitBreakerOpen.compareAndSet(false, true)) {
-                circuitBreakerOpenTime.set(System.currentTimeMillis());
-                Log.w(TAG, "🔌 Circuit breaker OPENED after " + failures + " failures");
-            }
+    private void flushTransitions() {
+        if (pendingUpdates.isEmpty() && pendingDeletes.isEmpty()) {
+            return;
+        }
+        try {
+            smsQueueDao.applyTransitions(new ArrayList<>(pendingUpdates), new ArrayList<>(pendingDeletes));
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write back " + (pendingUpdates.size() + pendingDeletes.size())
+                + " queue transitions, keeping them for the next flush", e);
+            return;
         }
+        pendingUpdates.clear();
+        pendingDeletes.clear();
     }
     
     /**
@@ -259,15 +336,18 @@ public class SmsQueueManager {
             stats.failedCount = failedCount.get();
             stats.exhaustedCount = exhaustedCount.get();
             stats.processedCount = processedCount.get();
-            stats.circuitBreakerActive = circuitBreakerOpen.get();
             
-            if (circuitBreakerOpen.get()) {
-                long cooldownRemaining = CIRCUIT_BREAKER_TIMEOUT_MS - 
-                    (System.currentTimeMillis() - circuitBreakerOpenTime.get());
-                stats.cooldownRemainingMs = Math.max(0, cooldownRemaining);
-            } else {
-                stats.cooldownRemainingMs = null;
+            // Active while any carrier's breaker is open; cooldown is the longest remaining
+            long now = System.currentTimeMillis();
+            Long cooldownRemaining = null;
+            for (CarrierCircuitBreaker breaker : circuitBreakers.values()) {
+                if (breaker.isOpen()) {
+                    long remaining = breaker.cooldownRemaining(now);
+                    cooldownRemaining = cooldownRemaining == null ? remaining : Math.max(cooldownRemaining, remaining);
+                }
             }
+            stats.circuitBreakerActive = cooldownRemaining != null;
+            stats.cooldownRemainingMs = cooldownRemaining;
             
             return stats;
             
@@ -304,27 +384,22 @@ public class SmsQueueManager {
      * Reset circuit breaker
      */
     public void resetCircuitBreaker() {
-        circuitBreakerOpen.set(false);
-        failureCount.set(0);
-        circuitBreakerOpenTime.set(0);
-        Log.i(TAG, "Circuit breaker manually reset");
+        circuitBreakers.clear();
+        Log.i(TAG, "Circuit breakers manually reset");
     }
     
     /**
-     * Start periodic queue processor
+     * Start periodic queue processor. Each tick only advances the in-memory wheel; the
+     * database is not read.
      */
     private void startQueueProcessor() {
         scheduledExecutor.scheduleWithFixedDelay(() -> {
             try {
-                processQueue()
-                    .subscribe(
-                        () -> Log.d(TAG, "Queue processing completed"),
-                        error -> Log.e(TAG, "Queue processing failed", error)
-                    );
+                drainQueue();
             } catch (Exception e) {
                 Log.e(TAG, "Error in queue processor", e);
             }
-        }, 30, 30, TimeUnit.SECONDS); // Process every 30 seconds
+        }, QueueScheduler.TICK_MS, QueueScheduler.TICK_MS, TimeUnit.MILLISECONDS);
     }
     
     /**
@@ -12,6 +12,12 @@ import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.entity.ConversationEntity;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
 import com.afriserve.smsmanager.data.contacts.ContactResolver;
+import com.afriserve.smsmanager.data.paging.ConversationKeysetPagingSource;
+import com.afriserve.smsmanager.data.paging.KeysetPagingSource;
+import com.afriserve.smsmanager.data.paging.RankedPagingSource;
+import com.afriserve.smsmanager.data.paging.SearchPagingSource;
+import com.afriserve.smsmanager.data.search.SearchIndex;
+import com.afriserve.smsmanager.AppDatabase;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -21,6 +27,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import dagger.hilt.android.qualifiers.ApplicationContext;
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
 import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Single;
@@ -43,6 +50,9 @@ public class ConversationRepository {
     private final ContactResolver contactResolver;
     private final Context context;
     private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final ConversationUpdateBuffer updateBuffer =
+        new ConversationUpdateBuffer(this::flushConversationDeltas, ConversationUpdateBuffer.DEFAULT_WINDOW_MS);
+    private volatile SearchIndex searchIndex;
     
     // Error states
     private final MutableLiveData<String> _errorState = new MutableLiveData<>();
@@ -97,29 +107,60 @@ public class ConversationRepository {
         if (query == null || query.trim().isEmpty()) {
             return getAllConversationsPaged();
         }
-        return conversationDao.searchConversations(query);
+        return searchConversations(query, ConversationKeysetPagingSource.FILTER_ALL);
     }
 
     /**
-     * Get conversations with filter + search + sort in one paged query.
+     * bm25-ranked conversation search over the full-text index, prefix-matching every term.
+     * Returns a new PagingSource on every call, as Pager requires.
      */
-    public PagingSource<Integer, ConversationEntity> getConversationsPaged(String filter, String query, String sort) {
-        String safeFilter;
-        if ("INBOX".equals(filter) || "SENT".equals(filter) || "UNREAD".equals(filter)) {
-            safeFilter = filter;
-        } else {
-            safeFilter = "ALL";
-        }
+    public RankedPagingSource<ConversationEntity> searchConversations(String query, String filter) {
+        return new SearchPagingSource<>(
+            AppDatabase.getInstance(context),
+            getSearchIndex(),
+            SearchIndex.KIND_CONVERSATION,
+            query != null ? query.trim() : "",
+            "conversations",
+            ConversationKeysetPagingSource.filterCondition(safeFilter(filter)),
+            conversationDao::getConversationsByQuery,
+            conversation -> conversation.id
+        );
+    }
 
+    /**
+     * Get conversations with filter + sort in one keyset-paged query.
+     * Returns a new PagingSource on every call, as Pager requires.
+     */
+    public PagingSource<KeysetPagingSource.Key, ConversationEntity> getConversationsPaged(String filter, String sort) {
         String safeSort;
-        if ("OLDEST".equals(sort) || "UNREAD_FIRST".equals(sort)) {
+        if (ConversationKeysetPagingSource.SORT_OLDEST.equals(sort)
+            || ConversationKeysetPagingSource.SORT_UNREAD_FIRST.equals(sort)) {
             safeSort = sort;
         } else {
-            safeSort = "NEWEST";
+            safeSort = ConversationKeysetPagingSource.SORT_NEWEST;
         }
 
-        String safeQuery = query != null ? query.trim() : "";
-        return conversationDao.getConversationsPaged(safeFilter, safeQuery, safeSort);
+        return new ConversationKeysetPagingSource(
+            AppDatabase.getInstance(context), conversationDao, safeFilter(filter), safeSort);
+    }
+
+    private static String safeFilter(String filter) {
+        if (ConversationKeysetPagingSource.FILTER_INBOX.equals(filter)
+            || ConversationKeysetPagingSource.FILTER_SENT.equals(filter)
+            || ConversationKeysetPagingSource.FILTER_UNREAD.equals(filter)
+            || ConversationKeysetPagingSource.FILTER_ARCHIVED.equals(filter)) {
+            return filter;
+        }
+        return ConversationKeysetPagingSource.FILTER_ALL;
+    }
+
+    private SearchIndex getSearchIndex() {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            index = new SearchIndex(AppDatabase.getInstance(context));
+            searchIndex = index;
+        }
+        return index;
     }
     
     /**
@@ -135,65 +176,22 @@ public class ConversationRepository {
     
     /**
      * Create or update conversation from SMS message
+     * Coalesced with other updates to the same conversation; completes once written.
      */
     public Completable updateConversationFromMessage(SmsEntity message) {
-        return Completable.fromAction(() -> {
-            try {
-                String phoneNumber = normalizePhoneNumber(message.phoneNumber);
-                Long threadId = message.threadId;
-
-                ConversationEntity conversation = getOrCreateConversation(threadId, phoneNumber);
-
-                // Update existing conversation stats
-                conversation.messageCount++;
-                if (message.isUnread()) {
-                    conversation.unreadCount++;
-                }
-                
-                // Update conversation details
-                conversation.lastMessageTime = message.getDate();
-                conversation.lastMessagePreview = truncateMessage(message.getBody());
-                conversation.lastMessageType = getMessageType(message);
-                conversation.updatedAt = System.currentTimeMillis();
-                conversation.threadId = threadId;
-                
-                // Resolve contact name and photo
-                try {
-                    if (phoneNumber != null) {
-                        String contactName = contactResolver.getContactName(phoneNumber);
-                        if (contactName != null && !contactName.trim().isEmpty()) {
-                            if (!contactName.equals(phoneNumber)) {
-                                conversation.contactName = contactName;
-                            } else if (conversation.contactName == null || conversation.contactName.trim().isEmpty()) {
-                                // Store phone number as display name when contact is not saved
-                                conversation.contactName = PhoneNumberUtils.formatForDisplay(phoneNumber);
-                            }
-                        }
-                        
-                        Uri photoUri = contactResolver.getContactPhotoUri(phoneNumber);
-                        if (photoUri != null) {
-                            conversation.contactPhotoUri = photoUri.toString();
-                        }
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to resolve contact info for: " + phoneNumber, e);
-                }
-                
-                // Save conversation
-                if (conversation.id == 0) {
-                    conversationDao.insertConversation(conversation).blockingAwait();
-                } else {
-                    conversationDao.updateConversation(conversation).blockingAwait();
-                }
-                
-                Log.d(TAG, "Updated conversation for: " + phoneNumber);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to update conversation from message", e);
-                _errorState.postValue("Failed to update conversation: " + e.getMessage());
-                throw new RuntimeException(e);
-            }
-        }).subscribeOn(Schedulers.io());
+        return Completable.defer(() -> {
+            String phoneNumber = normalizePhoneNumber(message.phoneNumber);
+            ConversationUpdateBuffer.Delta delta = newDelta(message.threadId, phoneNumber, System.currentTimeMillis());
+            delta.refreshContact = true;
+            delta.lastMessageTime = message.getDate();
+            delta.lastMessagePreview = truncateMessage(message.getBody());
+            delta.lastMessageType = getMessageType(message);
+            delta.unreadCount = message.isUnread() ? 1 : 0;
+            return updateBuffer.submit(delta);
+        }).doOnError(e -> {
+            Log.e(TAG, "Failed to update conversation from message", e);
+            _errorState.postValue("Failed to update conversation: " + e.getMessage());
+        });
     }
     
     /**
@@ -356,29 +354,17 @@ public class ConversationRepository {
         boolean isIncoming,
         long timestamp
     ) {
-        return Completable.fromAction(() -> {
-            try {
-                String lookupKey = normalizeConversationLookupKey(phoneNumber);
-                ConversationEntity conversation = getOrCreateConversation(null, lookupKey);
-                
-                conversation.lastMessageTime = messageTimestamp;
-                conversation.lastMessagePreview = truncateMessage(messagePreview);
-                conversation.lastMessageType = messageType;
-                conversation.messageCount++;
-                if (isIncoming) {
-                    conversation.unreadCount++;
-                }
-                conversation.updatedAt = timestamp;
-                
-                conversationDao.updateConversation(conversation).blockingAwait();
-                Log.d(TAG, "Updated conversation with new message: " + lookupKey);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to update conversation with new message", e);
-                _errorState.postValue("Failed to update conversation: " + e.getMessage());
-                throw new RuntimeException(e);
-            }
-        }).subscribeOn(Schedulers.io());
+        return Completable.defer(() -> {
+            ConversationUpdateBuffer.Delta delta = newDelta(null, normalizeConversationLookupKey(phoneNumber), timestamp);
+            delta.lastMessageTime = messageTimestamp;
+            delta.lastMessagePreview = truncateMessage(messagePreview);
+            delta.lastMessageType = messageType;
+            delta.unreadCount = isIncoming ? 1 : 0;
+            return updateBuffer.submit(delta);
+        }).doOnError(e -> {
+            Log.e(TAG, "Failed to update conversation with new message", e);
+            _errorState.postValue("Failed to update conversation: " + e.getMessage());
+        });
     }
 
     /**
@@ -393,32 +379,144 @@ public class ConversationRepository {
         boolean isIncoming,
         long timestamp
     ) {
-        return Completable.fromAction(() -> {
+        return Completable.defer(() -> {
+            ConversationUpdateBuffer.Delta delta = newDelta(threadId, normalizeConversationLookupKey(phoneNumber), timestamp);
+            delta.lastMessageTime = messageTimestamp;
+            delta.lastMessagePreview = truncateMessage(messagePreview);
+            delta.lastMessageType = messageType;
+            delta.unreadCount = isIncoming ? 1 : 0;
+            return updateBuffer.submit(delta);
+        }).doOnError(e -> {
+            Log.e(TAG, "Failed to update conversation with new message", e);
+            _errorState.postValue("Failed to update conversation: " + e.getMessage());
+        });
+    }
+    
+    /**
+     * One message's worth of change, keyed the way getOrCreateConversation keys conversations.
+     */
+    private ConversationUpdateBuffer.Delta newDelta(Long threadId, String lookupKey, long updatedAt) {
+        Long parsedThreadId = parseThreadId(lookupKey);
+        Long resolvedThreadId = (threadId != null && threadId > 0) ? threadId : parsedThreadId;
+        String normalized = lookupKey != null && !lookupKey.startsWith("thread:") ? lookupKey : null;
+        String key = normalized != null
+            ? normalized
+            : (lookupKey != null ? lookupKey : ("thread:" + (resolvedThreadId != null ? resolvedThreadId : "unknown")));
+
+        ConversationUpdateBuffer.Delta delta = new ConversationUpdateBuffer.Delta(key);
+        delta.threadId = resolvedThreadId;
+        delta.contactLookup = normalized;
+        delta.messageCount = 1;
+        delta.updatedAt = updatedAt;
+        return delta;
+    }
+
+    /**
+     * Apply one window of coalesced deltas: contacts are resolved once for the batch, then every
+     * conversation is read, merged and written inside a single transaction.
+     */
+    private void flushConversationDeltas(java.util.Collection<ConversationUpdateBuffer.Delta> deltas) {
+        List<String> lookups = new java.util.ArrayList<>();
+        for (ConversationUpdateBuffer.Delta delta : deltas) {
+            if (delta.contactLookup != null) {
+                lookups.add(delta.contactLookup);
+            }
+        }
+        java.util.Map<String, String> contactNames = java.util.Collections.emptyMap();
+        java.util.Map<String, Uri> contactPhotos = new java.util.HashMap<>();
+        if (!lookups.isEmpty()) {
             try {
-                String lookupKey = normalizeConversationLookupKey(phoneNumber);
-                ConversationEntity conversation = getOrCreateConversation(threadId, lookupKey);
-
-                conversation.lastMessageTime = messageTimestamp;
-                conversation.lastMessagePreview = truncateMessage(messagePreview);
-                conversation.lastMessageType = messageType;
-                conversation.messageCount++;
-                if (isIncoming) {
-                    conversation.unreadCount++;
+                contactNames = contactResolver.prefetchContactNames(lookups);
+                for (String lookup : lookups) {
+                    Uri photoUri = contactResolver.getContactPhotoUri(lookup);
+                    if (photoUri != null) {
+                        contactPhotos.put(lookup, photoUri);
+                    }
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to resolve contact info for conversation batch", e);
+            }
+        }
+        final java.util.Map<String, String> names = contactNames;
+
+        conversationDao.runInTransaction(() -> {
+            java.util.Map<String, ConversationEntity> byKey = new java.util.HashMap<>();
+            java.util.Map<Long, ConversationEntity> byThread = new java.util.HashMap<>();
+            java.util.Map<Long, ConversationEntity> updates = new java.util.LinkedHashMap<>();
+            List<ConversationEntity> inserts = new java.util.ArrayList<>();
+
+            for (ConversationUpdateBuffer.Delta delta : deltas) {
+                ConversationEntity conversation = null;
+                if (delta.threadId != null && delta.threadId > 0) {
+                    conversation = byThread.get(delta.threadId);
+                    if (conversation == null) {
+                        conversation = conversationDao.findConversationByThreadIdSync(delta.threadId);
+                    }
+                }
+                if (conversation == null) {
+                    conversation = byKey.get(delta.key);
+                    if (conversation == null) {
+                        conversation = conversationDao.findConversationByPhoneNumberSync(delta.key);
+                    }
+                    if (conversation == null && delta.key != null) {
+                        // Same number stored under another spelling
+                        long phoneKey = PhoneCanonicalizer.canonicalKey(delta.key);
+                        if (phoneKey != PhoneCanonicalizer.NO_KEY) {
+                            conversation = conversationDao.findConversationByPhoneKeySync(phoneKey);
+                        }
+                    }
+                }
+                if (conversation == null) {
+                    Log.d(TAG, "Creating new conversation for: " + delta.key);
+                    conversation = new ConversationEntity();
+                    conversation.phoneNumber = delta.key;
+                    conversation.createdAt = System.currentTimeMillis();
+                    inserts.add(conversation);
+                } else if (conversation.id != 0) {
+                    updates.put(conversation.id, conversation);
+                }
+                if (conversation.phoneNumber != null) {
+                    byKey.put(conversation.phoneNumber, conversation);
                 }
-                conversation.updatedAt = timestamp;
-                conversation.threadId = threadId;
 
-                conversationDao.updateConversation(conversation).blockingAwait();
-                Log.d(TAG, "Updated conversation with new message: " + lookupKey);
+                conversation.messageCount += delta.messageCount;
+                conversation.unreadCount += delta.unreadCount;
+                // Synced history can arrive after newer messages; keep the newest as the preview
+                if (delta.lastMessageTime >= conversation.lastMessageTime) {
+                    conversation.lastMessageTime = delta.lastMessageTime;
+                    conversation.lastMessagePreview = delta.lastMessagePreview;
+                    conversation.lastMessageType = delta.lastMessageType;
+                }
+                conversation.updatedAt = delta.updatedAt;
+                if (delta.threadId != null) {
+                    conversation.threadId = delta.threadId;
+                    byThread.put(delta.threadId, conversation);
+                }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to update conversation with new message", e);
-                _errorState.postValue("Failed to update conversation: " + e.getMessage());
-                throw new RuntimeException(e);
+                String lookup = delta.contactLookup;
+                boolean unnamed = conversation.contactName == null || conversation.contactName.trim().isEmpty();
+                if (lookup != null && (delta.refreshContact || unnamed)) {
+                    String contactName = names.get(lookup);
+                    if (contactName != null && !contactName.trim().isEmpty()) {
+                        if (!contactName.equals(lookup)) {
+                            conversation.contactName = contactName;
+                        } else if (unnamed) {
+                            // Store phone number as display name when contact is not saved
+                            conversation.contactName = PhoneNumberUtils.formatForDisplay(lookup);
+                        }
+                    }
+                    Uri photoUri = contactPhotos.get(lookup);
+                    if (photoUri != null) {
+                        conversation.contactPhotoUri = photoUri.toString();
+                    }
+                }
             }
-        }).subscribeOn(Schedulers.io());
+
+            conversationDao.applyConversationAggregates(inserts, new java.util.ArrayList<>(updates.values()));
+        });
+        Log.d(TAG, "Flushed " + deltas.size() + " conversation updates");
     }
-    
+
     /**
      * Pin/unpin conversation
      */
@@ -454,6 +552,10 @@ public class ConversationRepository {
                         String normalized = normalizePhoneNumber(conversation.phoneNumber);
                         if (normalized != null && !normalized.isEmpty()) {
                             messages.addAll(smsDao.getMessagesByPhoneNumber(normalized).blockingGet());
+                            long phoneKey = PhoneCanonicalizer.canonicalKey(normalized);
+                            if (messages.isEmpty() && phoneKey != PhoneCanonicalizer.NO_KEY) {
+                                messages.addAll(smsDao.getMessagesByPhoneKey(phoneKey).blockingGet());
+                            }
                             if (messages.isEmpty()) {
                                 String lastDigits = PhoneNumberUtils.getLastNDigits(normalized, 7);
                                 if (lastDigits != null && !lastDigits.isEmpty()) {
@@ -496,63 +598,94 @@ public class ConversationRepository {
     
     /**
      * Sync all conversations from existing messages
+     *
+     * Aggregates come from a single GROUP BY over sms_entities read as a cursor, so memory grows
+     * with the number of conversations rather than messages. Contacts are resolved in one batch
+     * and every insert/update is written in one transaction.
      */
     public Completable syncConversationsFromMessages() {
         return Completable.fromAction(() -> {
             try {
-                // Get all messages grouped by phone number
-                // This would typically be a custom query in SmsDao
-                // For now, we'll use a simplified approach
-                
                 Log.d(TAG, "Syncing conversations from messages...");
-                
-                // Get all messages and create conversations
-                List<SmsEntity> allMessages = new java.util.ArrayList<>();
-                try {
-                    List<SmsEntity> fetched = smsDao.getAllSms().blockingGet();
-                    if (fetched != null) {
-                        allMessages.addAll(fetched);
+
+                java.util.Map<String, ConversationEntity> aggregates = new java.util.LinkedHashMap<>();
+                try (android.database.Cursor cursor = conversationDao.getConversationAggregates()) {
+                    if (cursor != null) {
+                        int phoneColumn = cursor.getColumnIndexOrThrow("phoneNumber");
+                        int threadIdColumn = cursor.getColumnIndexOrThrow("threadId");
+                        int timeColumn = cursor.getColumnIndexOrThrow("lastMessageTime");
+                        int messageColumn = cursor.getColumnIndexOrThrow("lastMessage");
+                        int boxTypeColumn = cursor.getColumnIndexOrThrow("lastBoxType");
+                        int countColumn = cursor.getColumnIndexOrThrow("messageCount");
+                        int unreadColumn = cursor.getColumnIndexOrThrow("unreadCount");
+
+                        while (cursor.moveToNext()) {
+                            SmsEntity latest = new SmsEntity();
+                            latest.phoneNumber = cursor.getString(phoneColumn);
+                            latest.threadId = cursor.isNull(threadIdColumn) ? null : cursor.getLong(threadIdColumn);
+                            latest.createdAt = cursor.getLong(timeColumn);
+                            latest.message = cursor.getString(messageColumn);
+                            latest.boxType = cursor.isNull(boxTypeColumn) ? 0 : cursor.getInt(boxTypeColumn);
+
+                            String key = buildConversationKey(latest);
+                            ConversationEntity conversation = aggregates.get(key);
+                            if (conversation == null) {
+                                conversation = new ConversationEntity();
+                                conversation.phoneNumber = key;
+                                aggregates.put(key, conversation);
+                            }
+                            // Raw numbers that normalize to the same key fold into one conversation
+                            if (conversation.messageCount == 0 || latest.createdAt > conversation.lastMessageTime) {
+                                conversation.threadId = latest.threadId;
+                                conversation.lastMessageTime = latest.getDate();
+                                conversation.lastMessagePreview = truncateMessage(latest.getBody());
+                                conversation.lastMessageType = getMessageType(latest);
+                            }
+                            conversation.messageCount += cursor.getInt(countColumn);
+                            conversation.unreadCount += cursor.getInt(unreadColumn);
+                        }
                     }
-                    Log.d(TAG, "Fetched " + allMessages.size() + " messages for conversation sync");
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not fetch all messages", e);
                 }
-                
-                java.util.Map<String, List<SmsEntity>> messagesByKey = new java.util.HashMap<>();
-                for (SmsEntity message : allMessages) {
-                    String key = buildConversationKey(message);
-                    messagesByKey.computeIfAbsent(key, k -> new java.util.ArrayList<>()).add(message);
-                }
-                
-                int syncedCount = 0;
-                for (java.util.Map.Entry<String, List<SmsEntity>> entry : messagesByKey.entrySet()) {
-                    String phoneNumber = entry.getKey();
-                    List<SmsEntity> messages = entry.getValue();
-
-                    if (messages.isEmpty()) {
-                        continue;
+                Log.d(TAG, "Aggregated " + aggregates.size() + " conversations");
+
+                // Resolve every conversation's contact in one batch instead of a lookup per conversation
+                java.util.Map<String, String> contactNames = java.util.Collections.emptyMap();
+                List<String> lookups = new java.util.ArrayList<>(aggregates.size());
+                for (String key : aggregates.keySet()) {
+                    if (isContactLookupKey(key)) {
+                        lookups.add(key);
                     }
+                }
+                try {
+                    contactNames = contactResolver.prefetchContactNames(lookups);
+                } catch (Exception e) {
+                    Log.w(TAG, "Contact prefetch failed during sync", e);
+                }
 
-                    ConversationEntity conversation = createConversationFromMessages(phoneNumber, messages);
-                    conversation.updatedAt = System.currentTimeMillis();
-
-                    ConversationEntity existing = null;
-                    try {
-                        if (conversation.threadId != null && conversation.threadId > 0) {
-                            existing = conversationDao.getConversationByThreadId(conversation.threadId).blockingGet();
-                        }
-                    } catch (Exception ignored) {
+                java.util.Map<String, ConversationEntity> existingByPhone = new java.util.HashMap<>();
+                java.util.Map<Long, ConversationEntity> existingByThread = new java.util.HashMap<>();
+                for (ConversationEntity existing : conversationDao.getAllConversationsSync()) {
+                    if (existing.phoneNumber != null) {
+                        existingByPhone.put(existing.phoneNumber, existing);
                     }
-                    if (existing == null) {
-                        try {
-                            if (conversation.phoneNumber != null && !conversation.phoneNumber.trim().isEmpty()) {
-                                existing = conversationDao.getConversationByPhoneNumber(conversation.phoneNumber).blockingGet();
-                            }
-                        } catch (Exception ignored) {
-                        }
+                    if (existing.threadId != null && existing.threadId > 0) {
+                        existingByThread.putIfAbsent(existing.threadId, existing);
                     }
+                }
 
-                    if (existing != null) {
+                long now = System.currentTimeMillis();
+                List<ConversationEntity> inserts = new java.util.ArrayList<>();
+                List<ConversationEntity> updates = new java.util.ArrayList<>();
+                java.util.Set<Long> claimed = new java.util.HashSet<>();
+                for (ConversationEntity conversation : aggregates.values()) {
+                    conversation.updatedAt = now;
+                    applyContactInfo(conversation, contactNames);
+
+                    ConversationEntity existing = existingByPhone.get(conversation.phoneNumber);
+                    if (existing == null && conversation.threadId != null && conversation.threadId > 0) {
+                        existing = existingByThread.get(conversation.threadId);
+                    }
+                    if (existing != null && claimed.add(existing.id)) {
                         conversation.id = existing.id;
                         conversation.isPinned = existing.isPinned;
                         conversation.isArchived = existing.isArchived;
@@ -563,16 +696,15 @@ public class ConversationRepository {
                         if (conversation.contactPhotoUri == null || conversation.contactPhotoUri.trim().isEmpty()) {
                             conversation.contactPhotoUri = existing.contactPhotoUri;
                         }
-                        conversationDao.updateConversation(conversation).blockingAwait();
+                        updates.add(conversation);
                     } else {
-                        conversationDao.insertConversation(conversation).blockingAwait();
+                        inserts.add(conversation);
                     }
-
-                    syncedCount++;
-                    Log.d(TAG, "Synced conversation for " + phoneNumber + " with " + messages.size() + " messages");
                 }
 
-                Log.d(TAG, "Synced " + syncedCount + " conversations");
+                conversationDao.applyConversationAggregates(inserts, updates);
+                Log.d(TAG, "Synced " + aggregates.size() + " conversations ("
+                        + inserts.size() + " new, " + updates.size() + " updated)");
                 
             } catch (Exception e) {
                 Log.e(TAG, "Failed to sync conversations", e);
@@ -638,66 +770,38 @@ public class ConversationRepository {
         }
     }
     
-    private ConversationEntity createConversationFromMessages(String phoneNumber, List<SmsEntity> messages) {
-        ConversationEntity conversation = new ConversationEntity();
-        conversation.phoneNumber = phoneNumber;
-        if (messages != null && !messages.isEmpty()) {
-            conversation.threadId = messages.get(0).threadId;
+    private static boolean isContactLookupKey(String key) {
+        return key != null && !key.startsWith("thread:") && !"unknown".equals(key);
+    }
+
+    /**
+     * Fill display name and photo from a batch-resolved contact map.
+     */
+    private void applyContactInfo(ConversationEntity conversation, java.util.Map<String, String> contactNames) {
+        String lookup = conversation.phoneNumber;
+        if (!isContactLookupKey(lookup)) {
+            return;
         }
-        
-        // Sort messages by date
-        messages.sort((a, b) -> Long.compare(b.createdAt, a.createdAt));
-        
-        // Get latest message
-        SmsEntity latestMessage = messages.get(0);
-        conversation.lastMessageTime = latestMessage.getDate();
-        conversation.lastMessagePreview = truncateMessage(latestMessage.getBody());
-        conversation.lastMessageType = getMessageType(latestMessage);
-        
-        // Count messages and unread
-        conversation.messageCount = messages.size();
-        conversation.unreadCount = (int) messages.stream().filter(SmsEntity::isUnread).count();
-        
-        // Resolve contact info (even when conversation key is thread-based)
         try {
-            String resolvedPhone = null;
-            if (messages != null) {
-                for (SmsEntity msg : messages) {
-                    if (msg != null && msg.phoneNumber != null && !msg.phoneNumber.trim().isEmpty()) {
-                        String candidate = PhoneNumberUtils.normalizePhoneNumber(msg.phoneNumber);
-                        if (candidate != null && !candidate.trim().isEmpty()) {
-                            resolvedPhone = candidate;
-                            break;
-                        }
-                    }
-                }
-            }
-
-            String lookup = resolvedPhone;
-            if (lookup == null && phoneNumber != null && !phoneNumber.startsWith("thread:")) {
-                lookup = phoneNumber;
+            String contactName = contactNames.get(lookup);
+            if (contactName == null) {
+                contactName = contactResolver.getContactName(lookup);
             }
-
-            if (lookup != null) {
-                String contactName = contactResolver.getContactName(lookup);
-                if (contactName != null && !contactName.trim().isEmpty()) {
-                    if (!contactName.equals(lookup)) {
-                        conversation.contactName = contactName;
-                    } else {
-                        conversation.contactName = PhoneNumberUtils.formatForDisplay(lookup);
-                    }
+            if (contactName != null && !contactName.trim().isEmpty()) {
+                if (!contactName.equals(lookup)) {
+                    conversation.contactName = contactName;
+                } else {
+                    conversation.contactName = PhoneNumberUtils.formatForDisplay(lookup);
                 }
+            }
 
-                Uri photoUri = contactResolver.getContactPhotoUri(lookup);
-                if (photoUri != null) {
-                    conversation.contactPhotoUri = photoUri.toString();
-                }
+            Uri photoUri = contactResolver.getContactPhotoUri(lookup);
+            if (photoUri != null) {
+                conversation.contactPhotoUri = photoUri.toString();
             }
         } catch (Exception e) {
             Log.w(TAG, "Failed to resolve contact info during sync", e);
         }
-        
-        return conversation;
     }
 
     private String buildConversationKey(SmsEntity message) {
@@ -717,6 +821,7 @@ public class ConversationRepository {
      * Call this when the repository is no longer needed (e.g., app shutdown)
      */
     public void shutdown() {
+        updateBuffer.flushNow();
         try {
             if (executor != null && !executor.isShutdown()) {
                 executor.shutdown();
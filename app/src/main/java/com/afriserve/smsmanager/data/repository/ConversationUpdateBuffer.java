@@ -0,0 +1,160 @@
+package com.afriserve.smsmanager.data.repository;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+
+/**
+ * Write-behind buffer for conversation updates.
+ * Message deltas for the same conversation key are merged for a short window and handed to the
+ * flusher together, so a burst of messages costs one upsert per conversation instead of one per
+ * message. Each caller's Completable completes once the flush holding its delta has committed.
+ */
+final class ConversationUpdateBuffer {
+
+    private static final String TAG = "ConversationUpdateBuffer";
+    static final long DEFAULT_WINDOW_MS = 250L;
+    static final int MAX_PENDING_KEYS = 500;
+
+    // Shared by every buffer, so a repository built outside the singleton graph does not hold
+    // a thread of its own. The thread exits when idle.
+    private static final ScheduledThreadPoolExecutor FLUSH_EXECUTOR = createFlushExecutor();
+
+    interface Flusher {
+        void flush(Collection<Delta> deltas) throws Exception;
+    }
+
+    /**
+     * Accumulated change for one conversation key.
+     */
+    static final class Delta {
+        final String key;
+        Long threadId;
+        // Normalized number to resolve contact info for; null for thread-keyed conversations
+        String contactLookup;
+        // Re-resolve contact info even if the conversation already has a name
+        boolean refreshContact;
+        long lastMessageTime;
+        String lastMessagePreview;
+        String lastMessageType;
+        long updatedAt;
+        int messageCount;
+        int unreadCount;
+        final List<CompletableSubject> waiters = new ArrayList<>(1);
+
+        Delta(String key) {
+            this.key = key;
+        }
+
+        void merge(Delta other) {
+            messageCount += other.messageCount;
+            unreadCount += other.unreadCount;
+            refreshContact |= other.refreshContact;
+            updatedAt = Math.max(updatedAt, other.updatedAt);
+            if (other.threadId != null) {
+                threadId = other.threadId;
+            }
+            if (contactLookup == null) {
+                contactLookup = other.contactLookup;
+            }
+            if (other.lastMessageTime >= lastMessageTime) {
+                lastMessageTime = other.lastMessageTime;
+                lastMessagePreview = other.lastMessagePreview;
+                lastMessageType = other.lastMessageType;
+            }
+            waiters.addAll(other.waiters);
+        }
+    }
+
+    private final Flusher flusher;
+    private final long windowMs;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private Map<String, Delta> pending = new LinkedHashMap<>();
+    private boolean scheduled;
+
+    ConversationUpdateBuffer(Flusher flusher, long windowMs) {
+        this.flusher = flusher;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Queue a delta; callers wrap this in Completable.defer so each subscription submits its own.
+     */
+    Completable submit(Delta delta) {
+        CompletableSubject done = CompletableSubject.create();
+        delta.waiters.add(done);
+        synchronized (lock) {
+            Delta existing = pending.get(delta.key);
+            if (existing == null) {
+                pending.put(delta.key, delta);
+            } else {
+                existing.merge(delta);
+            }
+            if (pending.size() >= MAX_PENDING_KEYS) {
+                FLUSH_EXECUTOR.execute(this::flush);
+            } else if (!scheduled) {
+                scheduled = true;
+                FLUSH_EXECUTOR.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Flush whatever is pending without waiting for the window.
+     */
+    void flushNow() {
+        FLUSH_EXECUTOR.execute(this::flush);
+    }
+
+    private void flush() {
+        Map<String, Delta> batch;
+        synchronized (lock) {
+            scheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        Throwable failure = null;
+        try {
+            flusher.flush(batch.values());
+        } catch (Throwable t) {
+            Log.e(TAG, "Failed to flush " + batch.size() + " conversation updates", t);
+            failure = t;
+        }
+        for (Delta delta : batch.values()) {
+            for (CompletableSubject waiter : delta.waiters) {
+                if (failure == null) {
+                    waiter.onComplete();
+                } else {
+                    waiter.onError(failure);
+                }
+            }
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createFlushExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "conversation-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -5,7 +5,9 @@ import android.util.Log;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
+import androidx.room.InvalidationTracker;
 
+import com.afriserve.smsmanager.AppDatabase;
 import com.afriserve.smsmanager.data.dao.DashboardDao;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.dao.CampaignDao;
@@ -22,10 +24,12 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -43,6 +47,15 @@ public class DashboardRepository {
     
     private static final String TAG = "DashboardRepository";
     
+    // Bulk sends touch sms_entities once per message; coalesce them into one refresh
+    private static final long REFRESH_DEBOUNCE_MS = 1000;
+    
+    // Tables whose writes change the dashboard counters; the refresh itself only writes
+    // dashboard_stats and kpi_data, so it never re-triggers itself
+    private static final String[] OBSERVED_TABLES = {
+        "sms_rollup", "campaign_entities", "opt_outs", "scheduled_campaigns"
+    };
+    
     // Data sources
     private final DashboardDao dashboardDao;
     private final SmsDao smsDao;
@@ -63,9 +76,12 @@ public class DashboardRepository {
     
     // Background processing
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+    private final AppDatabase database;
     
     @Inject
     public DashboardRepository(
+        AppDatabase database,
         DashboardDao dashboardDao,
         SmsDao smsDao,
         CampaignDao campaignDao,
@@ -73,6 +89,7 @@ public class DashboardRepository {
         ComplianceManager complianceManager,
         DeliveryTracker deliveryTracker
     ) {
+        this.database = database;
         this.dashboardDao = dashboardDao;
         this.smsDao = smsDao;
         this.campaignDao = campaignDao;
@@ -269,28 +286,16 @@ public class DashboardRepository {
     }
     
     /**
-     * Start real-time updates
+     * Start real-time updates. Counters are refreshed when an observed table changes rather
+     * than on a timer, so an idle dashboard runs no queries.
      */
     private void startRealTimeUpdates() {
-        // Update dashboard every 30 seconds
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                updateCurrentStats();
-                updateKpis();
-                updateAlerts();
-            } catch (Exception e) {
-                Log.e(TAG, "Real-time update failed", e);
-            }
-        }, 30, 30, TimeUnit.SECONDS);
-        
-        // Update trends every 5 minutes
-        scheduler.scheduleAtFixedRate(() -> {
-            try {
-                updateTrends();
-            } catch (Exception e) {
-                Log.e(TAG, "Trend update failed", e);
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer(OBSERVED_TABLES) {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                scheduleRefresh();
             }
-        }, 5, 5, TimeUnit.MINUTES);
+        });
         
         // Daily metrics aggregation at midnight
         scheduler.scheduleAtFixedRate(() -> {
@@ -302,6 +307,26 @@ public class DashboardRepository {
         }, calculateTimeUntilMidnight(), 24, TimeUnit.HOURS);
     }
     
+    /**
+     * Refresh once after a burst of changes settles
+     */
+    private void scheduleRefresh() {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            refreshScheduled.set(false);
+            try {
+                updateCurrentStats();
+                updateKpis();
+                updateAlerts();
+                updateTrends();
+            } catch (Exception e) {
+                Log.e(TAG, "Real-time update failed", e);
+            }
+        }, REFRESH_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+    }
+    
     /**
      * Update current statistics
      */
@@ -311,11 +336,12 @@ public class DashboardRepository {
             DashboardStatsEntity stats = dashboardDao.getDashboardStats("current").blockingGet();
             
             if (stats != null) {
-                // Update with latest data from other sources
-                stats.totalSent = smsDao.getTotalCountSingle().blockingGet();
-                stats.totalDelivered = smsDao.getDeliveredCountSingle().blockingGet();
-                stats.totalFailed = smsDao.getFailedCountSingle().blockingGet();
-                stats.totalPending = smsDao.getPendingCountSingle().blockingGet();
+                // Update with latest data from other sources; SMS counters come from the rollup
+                DashboardDao.RollupTotals totals = dashboardDao.getRollupTotals().blockingGet();
+                stats.totalSent = totals.total;
+                stats.totalDelivered = totals.delivered;
+                stats.totalFailed = totals.failed;
+                stats.totalPending = totals.pending;
                 stats.activeCampaigns = campaignDao.getActiveCampaignsCount().blockingFirst();
                 stats.scheduledCampaigns = dashboardDao.getPendingScheduledCampaignsCount(System.currentTimeMillis()).blockingGet();
                 stats.optOutCount = optOutDao.getOptOutCount().blockingGet();
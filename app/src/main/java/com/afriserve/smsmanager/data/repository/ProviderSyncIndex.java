@@ -0,0 +1,146 @@
+package com.afriserve.smsmanager.data.repository;
+
+import android.database.Cursor;
+
+import java.util.Arrays;
+
+/**
+ * Primitive snapshot of the Room rows already linked to the Telephony provider, keyed by
+ * deviceSmsId. Holds only what the sync diff compares (box type, thread, read flag and body
+ * length), so a provider row can be classified as new, changed or unchanged without a query
+ * and without loading the message bodies.
+ */
+final class ProviderSyncIndex {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long NO_THREAD = Long.MIN_VALUE;
+    private static final byte READ_UNKNOWN = -1;
+
+    private long[] keys;
+    private int[] slots;
+    private int mask;
+
+    private int[] boxTypes;
+    private long[] threadIds;
+    private byte[] readFlags;
+    private int[] messageLengths;
+    private int size;
+
+    private ProviderSyncIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        slots = new int[capacity];
+        mask = capacity - 1;
+        boxTypes = new int[Math.max(16, expected)];
+        threadIds = new long[boxTypes.length];
+        readFlags = new byte[boxTypes.length];
+        messageLengths = new int[boxTypes.length];
+    }
+
+    /**
+     * Build from a cursor over {@code deviceSmsId, boxType, threadId, isRead, messageLength}.
+     */
+    static ProviderSyncIndex build(Cursor cursor) {
+        ProviderSyncIndex index = new ProviderSyncIndex(cursor != null ? cursor.getCount() : 0);
+        if (cursor == null) {
+            return index;
+        }
+        int deviceSmsIdColumn = cursor.getColumnIndexOrThrow("deviceSmsId");
+        int boxTypeColumn = cursor.getColumnIndexOrThrow("boxType");
+        int threadIdColumn = cursor.getColumnIndexOrThrow("threadId");
+        int isReadColumn = cursor.getColumnIndexOrThrow("isRead");
+        int messageLengthColumn = cursor.getColumnIndexOrThrow("messageLength");
+        while (cursor.moveToNext()) {
+            index.add(
+                    cursor.getLong(deviceSmsIdColumn),
+                    cursor.isNull(boxTypeColumn) ? 0 : cursor.getInt(boxTypeColumn),
+                    cursor.isNull(threadIdColumn) ? NO_THREAD : cursor.getLong(threadIdColumn),
+                    cursor.isNull(isReadColumn) ? READ_UNKNOWN : (byte) cursor.getInt(isReadColumn),
+                    cursor.isNull(messageLengthColumn) ? 0 : cursor.getInt(messageLengthColumn));
+        }
+        return index;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long deviceSmsId) {
+        return find(deviceSmsId) >= 0;
+    }
+
+    /**
+     * True when the stored row already mirrors the provider values.
+     * Body length stands in for the body; it is counted in code points, as SQLite's LENGTH is.
+     */
+    boolean isUnchanged(long deviceSmsId, int boxType, long threadId, boolean read, int messageLength) {
+        int slot = find(deviceSmsId);
+        return slot >= 0
+                && boxTypes[slot] == boxType
+                && threadIds[slot] == threadId
+                && readFlags[slot] == (read ? 1 : 0)
+                && messageLengths[slot] == messageLength;
+    }
+
+    private void add(long deviceSmsId, int boxType, long threadId, byte read, int messageLength) {
+        if (deviceSmsId == EMPTY) {
+            return;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        int position = probe(deviceSmsId);
+        if (keys[position] == deviceSmsId) {
+            return;
+        }
+        if (size == boxTypes.length) {
+            int capacity = size * 2;
+            boxTypes = Arrays.copyOf(boxTypes, capacity);
+            threadIds = Arrays.copyOf(threadIds, capacity);
+            readFlags = Arrays.copyOf(readFlags, capacity);
+            messageLengths = Arrays.copyOf(messageLengths, capacity);
+        }
+        keys[position] = deviceSmsId;
+        slots[position] = size;
+        boxTypes[size] = boxType;
+        threadIds[size] = threadId;
+        readFlags[size] = read;
+        messageLengths[size] = messageLength;
+        size++;
+    }
+
+    private int find(long deviceSmsId) {
+        int position = probe(deviceSmsId);
+        return keys[position] == deviceSmsId ? slots[position] : -1;
+    }
+
+    private int probe(long key) {
+        int position = mix(key) & mask;
+        while (keys[position] != EMPTY && keys[position] != key) {
+            position = (position + 1) & mask;
+        }
+        return position;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        slots = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int position = probe(oldKeys[i]);
+                keys[position] = oldKeys[i];
+                slots[position] = oldSlots[i];
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -4,6 +4,7 @@ import android.app.PendingIntent;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
@@ -20,16 +21,24 @@ import androidx.core.content.ContextCompat;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import com.afriserve.smsmanager.data.dao.DashboardDao;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.data.paging.KeysetPagingSource;
+import com.afriserve.smsmanager.data.paging.MessageKeysetPagingSource;
+import com.afriserve.smsmanager.data.paging.SearchPagingSource;
+import com.afriserve.smsmanager.data.search.SearchIndex;
 import com.afriserve.smsmanager.data.sync.BidirectionalSmsSync;
+import com.afriserve.smsmanager.data.utils.PhoneCanonicalizer;
 import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -79,7 +88,14 @@ public class SmsRepository {
 
     private static final String TAG = "SmsRepository";
     private static final long DUPLICATE_MATCH_WINDOW_MS = 60_000L;
+    private static final String SYNC_PREFS_NAME = "sms_provider_sync";
+    private static final String KEY_HIGH_WATER_ID = "high_water_id";
+    private static final String KEY_HIGH_WATER_DATE = "high_water_date";
+    private static final String KEY_LAST_FULL_SCAN = "last_full_scan";
+    private static final long FULL_SCAN_INTERVAL_MS = TimeUnit.HOURS.toMillis(24);
+    private static final int SYNC_BATCH_SIZE = 500;
     private final SmsDao smsDao;
+    private final DashboardDao dashboardDao;
     private final Context context;
     private final BidirectionalSmsSync bidirectionalSmsSync;
     private final ExecutorService executor = Executors.newFixedThreadPool(2);
@@ -95,9 +111,11 @@ public class SmsRepository {
     @Inject
     public SmsRepository(
             SmsDao smsDao,
+            DashboardDao dashboardDao,
             @ApplicationContext Context context,
             BidirectionalSmsSync bidirectionalSmsSync) {
         this.smsDao = smsDao;
+        this.dashboardDao = dashboardDao;
         this.context = context.getApplicationContext();
         this.bidirectionalSmsSync = bidirectionalSmsSync;
     }
@@ -121,11 +139,36 @@ public class SmsRepository {
         return smsDao.getUnreadMessagesPaged();
     }
 
+    /**
+     * bm25-ranked message search over sms_fts, prefix-matching every term.
+     */
     public androidx.paging.PagingSource<Integer, SmsEntity> searchMessagesPaged(String query) {
         if (query == null || query.trim().isEmpty()) {
             return getAllMessagesPaged();
         }
-        return smsDao.searchMessagesPaged("%" + query + "%");
+        com.afriserve.smsmanager.AppDatabase database = com.afriserve.smsmanager.AppDatabase.getInstance(context);
+        return new SearchPagingSource<>(
+                database,
+                new SearchIndex(database),
+                SearchIndex.KIND_MESSAGE,
+                query.trim(),
+                "sms_entities",
+                null,
+                smsDao::getSmsByQuery,
+                message -> message.id);
+    }
+
+    /**
+     * Keyset-paged messages of one conversation, newest first.
+     * Pages by thread when threadId is set, otherwise by the normalized phone number.
+     */
+    public androidx.paging.PagingSource<KeysetPagingSource.Key, SmsEntity> getConversationMessagesPaged(
+            Long threadId, String phoneNumber) {
+        return new MessageKeysetPagingSource(
+                com.afriserve.smsmanager.AppDatabase.getInstance(context),
+                smsDao,
+                threadId,
+                normalizePhoneNumber(phoneNumber));
     }
 
     /**
@@ -160,6 +203,18 @@ public class SmsRepository {
             // Fall through to fuzzy match
         }
 
+        long phoneKey = PhoneCanonicalizer.canonicalKey(normalized);
+        if (phoneKey != PhoneCanonicalizer.NO_KEY) {
+            try {
+                java.util.List<SmsEntity> sameNumber = smsDao.getMessagesByPhoneKey(phoneKey).blockingGet();
+                if (sameNumber != null && !sameNumber.isEmpty()) {
+                    return sameNumber;
+                }
+            } catch (Exception e) {
+                // Fall through to fuzzy match
+            }
+        }
+
         String lastDigits = PhoneNumberUtils.getLastNDigits(normalized, 7);
         if (lastDigits != null && !lastDigits.isEmpty()) {
             try {
@@ -309,13 +364,17 @@ public class SmsRepository {
 
             long now = System.currentTimeMillis();
             long startToday = getStartOfDay(now);
-            long startYesterday = startToday - TimeUnit.DAYS.toMillis(1);
-
-            int todaySent = smsDao.getOutgoingCountInRange(startToday, now).blockingGet();
-            int todayDelivered = smsDao.getDeliveredCountInRange(startToday, now).blockingGet();
-            int todayFailed = smsDao.getFailedCountInRange(startToday, now).blockingGet();
-            int todayQueued = smsDao.getPendingCountInRange(startToday, now).blockingGet();
-            int yesterdaySent = smsDao.getOutgoingCountInRange(startYesterday, startToday).blockingGet();
+            long startYesterday = getStartOfAdjacentDay(startToday, -1);
+            long startTomorrow = getStartOfAdjacentDay(startToday, 1);
+
+            // One read of at most two days of hourly rollup rows instead of five COUNTs over sms_entities
+            DashboardDao.DailyRollupCounts counts = dashboardDao
+                    .getDailyRollupCounts(startYesterday, startToday, startTomorrow).blockingGet();
+            int todaySent = counts.todayOutgoing;
+            int todayDelivered = counts.todayDelivered;
+            int todayFailed = counts.todayFailed;
+            int todayQueued = counts.todayPending;
+            int yesterdaySent = counts.yesterdayOutgoing;
 
             List<SmsEntity> recentActivity = smsDao.getRecentSmsInRange(startToday, now, activityLimit).blockingGet();
             if (recentActivity == null) {
@@ -354,6 +413,16 @@ public class SmsRepository {
         return calendar.getTimeInMillis();
     }
 
+    /**
+     * Local midnight of the day before or after; 23 or 25 hours away across a DST change.
+     */
+    private long getStartOfAdjacentDay(long startOfDay, int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startOfDay);
+        calendar.add(Calendar.DAY_OF_MONTH, days);
+        return getStartOfDay(calendar.getTimeInMillis());
+    }
+
     private float calculateTrendPercent(int baseline, int current) {
         if (baseline <= 0) {
             if (current <= 0) {
@@ -492,6 +561,12 @@ public class SmsRepository {
     /**
      * Sync messages from device SMS ContentProvider to Room database
      * Returns Completable for proper async handling
+     *
+     * The provider is read once with column indices resolved up front and diffed against a
+     * primitive snapshot of the linked Room rows, so no per-row queries are issued. Rows are
+     * written in chunked transactions. After a successful pass the highest provider _ID/date is
+     * remembered and later syncs read only rows past it; a full pass still runs periodically to
+     * pick up read/box changes on older rows made by other apps.
      */
     public Completable syncNewMessages() {
         return Completable.fromAction(() -> {
@@ -510,96 +585,127 @@ public class SmsRepository {
                         Telephony.Sms.THREAD_ID
                 };
 
-                String sortOrder = Telephony.Sms.DATE + " DESC";
+                ProviderSyncIndex known;
+                try (Cursor state = smsDao.getProviderSyncState()) {
+                    known = ProviderSyncIndex.build(state);
+                }
 
-                Log.d(TAG, "Querying SMS ContentProvider...");
-                Cursor cursor = contentResolver.query(uri, projection, null, null, sortOrder);
+                SharedPreferences prefs = context.getSharedPreferences(SYNC_PREFS_NAME, Context.MODE_PRIVATE);
+                long highWaterId = prefs.getLong(KEY_HIGH_WATER_ID, 0L);
+                long highWaterDate = prefs.getLong(KEY_HIGH_WATER_DATE, 0L);
+                long now = System.currentTimeMillis();
+                boolean fullScan = highWaterId <= 0
+                        || known.size() == 0
+                        || now - prefs.getLong(KEY_LAST_FULL_SCAN, 0L) >= FULL_SCAN_INTERVAL_MS;
+
+                String selection = null;
+                String[] selectionArgs = null;
+                if (!fullScan) {
+                    // Date catches rows re-imported with low ids, e.g. after a backup restore
+                    selection = Telephony.Sms._ID + " > ? OR " + Telephony.Sms.DATE + " > ?";
+                    selectionArgs = new String[]{String.valueOf(highWaterId), String.valueOf(highWaterDate)};
+                }
+                String sortOrder = Telephony.Sms._ID + " ASC";
+
+                Log.d(TAG, "Querying SMS ContentProvider (" + (fullScan ? "full" : "since _id " + highWaterId) + ")...");
+                Cursor cursor = contentResolver.query(uri, projection, selection, selectionArgs, sortOrder);
 
                 if (cursor != null) {
                     try {
                         int totalCount = cursor.getCount();
                         Log.d(TAG, "SMS cursor returned with " + totalCount + " messages");
 
-                        if (totalCount == 0) {
+                        if (totalCount == 0 && fullScan) {
                             Log.w(TAG, "No SMS messages found in device ContentProvider");
                             _syncResult.postValue(new SyncResult.Success(0, 0));
                             return;
                         }
 
+                        int idColumn = cursor.getColumnIndexOrThrow(Telephony.Sms._ID);
+                        int addressColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS);
+                        int bodyColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY);
+                        int dateColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE);
+                        int typeColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.TYPE);
+                        int readColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.READ);
+                        int threadIdColumn = cursor.getColumnIndexOrThrow(Telephony.Sms.THREAD_ID);
+
+                        // Rows older than the last sync's newest message minus the match window
+                        // already met their provider copies, so only newer ones are candidates.
+                        long unlinkedSince = highWaterDate > 0 ? highWaterDate - DUPLICATE_MATCH_WINDOW_MS : 0L;
+                        Map<String, List<SmsDao.UnlinkedSms>> unlinked =
+                                groupUnlinked(smsDao.getUnlinkedSmsSinceSync(unlinkedSince));
+                        List<SmsEntity> inserts = new ArrayList<>();
+                        List<SmsEntity> updates = new ArrayList<>();
+                        List<SmsEntity> links = new ArrayList<>();
+                        List<SmsEntity> changed = new ArrayList<>();
+
                         int syncedCount = 0;
                         int skippedCount = 0;
+                        long maxId = highWaterId;
+                        long maxDate = highWaterDate;
 
                         while (cursor.moveToNext()) {
                             try {
-                                long deviceSmsId = cursor.getLong(cursor.getColumnIndexOrThrow(Telephony.Sms._ID));
-                                String address = cursor.getString(cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS));
-                                String body = cursor.getString(cursor.getColumnIndexOrThrow(Telephony.Sms.BODY));
-                                long date = cursor.getLong(cursor.getColumnIndexOrThrow(Telephony.Sms.DATE));
-                                int type = cursor.getInt(cursor.getColumnIndexOrThrow(Telephony.Sms.TYPE));
-                                int read = cursor.getInt(cursor.getColumnIndexOrThrow(Telephony.Sms.READ));
-                                long threadId = cursor.getLong(cursor.getColumnIndexOrThrow(Telephony.Sms.THREAD_ID));
-                                String normalizedAddress = normalizePhoneNumber(address);
-
-                                SmsEntity existing = findExistingMessage(deviceSmsId, normalizedAddress, body, type, date);
-
-                                if (existing == null) {
-                                    // New message - create entity
-                                    String status = mapSmsTypeToStatus(type, read);
-
-                                    SmsEntity smsEntity = new SmsEntity();
-                                    smsEntity.deviceSmsId = deviceSmsId;
-                                    smsEntity.boxType = type;
-                                    smsEntity.threadId = threadId;
-                                    smsEntity.isRead = read == 1;
-                                    smsEntity.phoneNumber = normalizedAddress;
-                                    smsEntity.message = body != null ? body : "";
-                                    smsEntity.status = status;
-                                    smsEntity.createdAt = date;
+                                long deviceSmsId = cursor.getLong(idColumn);
+                                String body = cursor.getString(bodyColumn);
+                                long date = cursor.getLong(dateColumn);
+                                int type = cursor.getInt(typeColumn);
+                                int read = cursor.getInt(readColumn);
+                                long threadId = cursor.getLong(threadIdColumn);
+                                String safeBody = body != null ? body : "";
+                                maxId = Math.max(maxId, deviceSmsId);
+                                maxDate = Math.max(maxDate, date);
+
+                                if (known.isUnchanged(deviceSmsId, type, threadId, read == 1,
+                                        safeBody.codePointCount(0, safeBody.length()))) {
+                                    skippedCount++;
+                                    continue;
+                                }
 
-                                    @SuppressWarnings("CheckResult")
-                                    Long result = smsDao.insertSms(smsEntity).blockingGet();
-                                    syncedCount++;
+                                SmsEntity provided = new SmsEntity();
+                                provided.deviceSmsId = deviceSmsId;
+                                provided.boxType = type;
+                                provided.threadId = threadId;
+                                provided.isRead = read == 1;
+                                provided.phoneNumber = normalizePhoneNumber(cursor.getString(addressColumn));
+                                provided.message = safeBody;
+                                provided.status = mapSmsTypeToStatus(type, read);
+                                provided.createdAt = date;
+
+                                if (known.contains(deviceSmsId)) {
+                                    changed.add(provided);
                                 } else {
-                                    // Update existing message if needed
-                                    boolean needsUpdate = false;
-
-                                    if (existing.deviceSmsId == null || existing.deviceSmsId.longValue() != deviceSmsId) {
-                                        existing.deviceSmsId = deviceSmsId;
-                                        needsUpdate = true;
-                                    }
-                                    if (!java.util.Objects.equals(existing.boxType, type)) {
-                                        existing.boxType = type;
-                                        needsUpdate = true;
-                                    }
-                                    if (!java.util.Objects.equals(existing.threadId, threadId)) {
-                                        existing.threadId = threadId;
-                                        needsUpdate = true;
-                                    }
-                                    if (existing.isRead == null || existing.isRead != (read == 1)) {
-                                        existing.isRead = read == 1;
-                                        needsUpdate = true;
-                                    }
-                                    if (!java.util.Objects.equals(existing.phoneNumber, normalizedAddress)) {
-                                        existing.phoneNumber = normalizedAddress;
-                                        needsUpdate = true;
-                                    }
-                                    if (!java.util.Objects.equals(existing.message, body)) {
-                                        existing.message = body != null ? body : "";
-                                        needsUpdate = true;
-                                    }
-
-                                    if (needsUpdate) {
-                                        smsDao.updateSms(existing).blockingAwait();
-                                        syncedCount++;
+                                    SmsDao.UnlinkedSms duplicate = takeUnlinkedDuplicate(unlinked, provided);
+                                    if (duplicate == null) {
+                                        inserts.add(provided);
                                     } else {
-                                        skippedCount++;
+                                        // Phone, box and body already match; only the link is written
+                                        provided.id = duplicate.id;
+                                        links.add(provided);
                                     }
                                 }
                             } catch (Exception e) {
                                 Log.w(TAG, "Failed to process SMS: " + e.getMessage());
                                 // Continue with next message
                             }
+
+                            if (inserts.size() + updates.size() + links.size() + changed.size() >= SYNC_BATCH_SIZE) {
+                                int[] counts = flushProviderSync(inserts, updates, links, changed);
+                                syncedCount += counts[0];
+                                skippedCount += counts[1];
+                            }
                         }
+                        int[] counts = flushProviderSync(inserts, updates, links, changed);
+                        syncedCount += counts[0];
+                        skippedCount += counts[1];
+
+                        SharedPreferences.Editor editor = prefs.edit()
+                                .putLong(KEY_HIGH_WATER_ID, maxId)
+                                .putLong(KEY_HIGH_WATER_DATE, maxDate);
+                        if (fullScan) {
+                            editor.putLong(KEY_LAST_FULL_SCAN, now);
+                        }
+                        editor.apply();
 
                         Log.d(TAG, "Sync completed: " + syncedCount + " synced, " + skippedCount + " skipped");
 
@@ -626,6 +732,128 @@ public class SmsRepository {
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Write one chunk of the provider diff and clear the buffers.
+     * Changed rows are loaded in one IN query and only written if a mirrored field differs.
+     *
+     * @return {synced, skipped}
+     */
+    private int[] flushProviderSync(List<SmsEntity> inserts, List<SmsEntity> updates,
+                                    List<SmsEntity> links, List<SmsEntity> changed) {
+        int skipped = 0;
+        if (!changed.isEmpty()) {
+            List<Long> ids = new ArrayList<>(changed.size());
+            for (SmsEntity provided : changed) {
+                ids.add(provided.deviceSmsId);
+            }
+            Map<Long, SmsEntity> existingById = new HashMap<>(changed.size() * 2);
+            for (SmsEntity existing : smsDao.getSmsByDeviceSmsIdsSync(ids)) {
+                existingById.put(existing.deviceSmsId, existing);
+            }
+            for (SmsEntity provided : changed) {
+                SmsEntity existing = existingById.get(provided.deviceSmsId);
+                if (existing == null) {
+                    inserts.add(provided);
+                } else if (mergeProviderFields(existing, provided)) {
+                    updates.add(existing);
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        int synced = inserts.size() + updates.size() + links.size();
+        if (synced > 0) {
+            smsDao.applyProviderSync(inserts, updates, links);
+        }
+        inserts.clear();
+        updates.clear();
+        links.clear();
+        changed.clear();
+        return new int[]{synced, skipped};
+    }
+
+    /**
+     * Copy provider-owned fields onto a stored row.
+     *
+     * @return true if anything changed
+     */
+    private static boolean mergeProviderFields(SmsEntity existing, SmsEntity provided) {
+        boolean needsUpdate = false;
+
+        if (existing.deviceSmsId == null || !existing.deviceSmsId.equals(provided.deviceSmsId)) {
+            existing.deviceSmsId = provided.deviceSmsId;
+            needsUpdate = true;
+        }
+        if (!java.util.Objects.equals(existing.boxType, provided.boxType)) {
+            existing.boxType = provided.boxType;
+            needsUpdate = true;
+        }
+        if (!java.util.Objects.equals(existing.threadId, provided.threadId)) {
+            existing.threadId = provided.threadId;
+            needsUpdate = true;
+        }
+        if (!java.util.Objects.equals(existing.isRead, provided.isRead)) {
+            existing.isRead = provided.isRead;
+            needsUpdate = true;
+        }
+        if (!java.util.Objects.equals(existing.phoneNumber, provided.phoneNumber)) {
+            existing.phoneNumber = provided.phoneNumber;
+            needsUpdate = true;
+        }
+        if (!java.util.Objects.equals(existing.message, provided.message)) {
+            existing.message = provided.message;
+            needsUpdate = true;
+        }
+        return needsUpdate;
+    }
+
+    /**
+     * Group rows without a deviceSmsId by phone, box type and body for in-memory duplicate matching.
+     */
+    private static Map<String, List<SmsDao.UnlinkedSms>> groupUnlinked(List<SmsDao.UnlinkedSms> rows) {
+        Map<String, List<SmsDao.UnlinkedSms>> groups = new HashMap<>();
+        for (SmsDao.UnlinkedSms row : rows) {
+            String key = unlinkedKey(row.phoneNumber, row.boxType != null ? row.boxType : 0, row.message);
+            List<SmsDao.UnlinkedSms> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>(1);
+                groups.put(key, group);
+            }
+            group.add(row);
+        }
+        return groups;
+    }
+
+    /**
+     * Same match as {@link SmsDao#findUnsyncedDuplicate}: nearest unlinked row within
+     * {@link #DUPLICATE_MATCH_WINDOW_MS}. A matched row is removed so it is linked only once.
+     */
+    private static SmsDao.UnlinkedSms takeUnlinkedDuplicate(Map<String, List<SmsDao.UnlinkedSms>> unlinked,
+                                                            SmsEntity provided) {
+        if (unlinked.isEmpty()) {
+            return null;
+        }
+        List<SmsDao.UnlinkedSms> group = unlinked.get(unlinkedKey(provided.phoneNumber, provided.boxType, provided.message));
+        if (group == null) {
+            return null;
+        }
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int i = 0; i < group.size(); i++) {
+            long distance = Math.abs(group.get(i).createdAt - provided.createdAt);
+            if (distance <= DUPLICATE_MATCH_WINDOW_MS && distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best >= 0 ? group.remove(best) : null;
+    }
+
+    private static String unlinkedKey(String phoneNumber, int boxType, String message) {
+        return (phoneNumber != null ? phoneNumber : "") + '\u0000' + boxType + '\u0000'
+                + (message != null ? message : "");
+    }
+
     /**
      * Legacy sync method for backward compatibility
      */
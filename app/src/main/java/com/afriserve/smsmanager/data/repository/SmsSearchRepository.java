@@ -6,11 +6,17 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.paging.PagingSource;
 
+import com.afriserve.smsmanager.AppDatabase;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.dao.SmsSearchDao;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
 import com.afriserve.smsmanager.data.entity.SmsFtsEntity;
 import com.afriserve.smsmanager.data.contacts.ContactResolver;
+import com.afriserve.smsmanager.data.paging.AdvancedSearchPagingSource;
+import com.afriserve.smsmanager.data.paging.KeysetPagingSource;
+import com.afriserve.smsmanager.data.search.AdvancedSearchParser;
+import com.afriserve.smsmanager.data.search.SearchQueryCompiler;
+import com.afriserve.smsmanager.data.search.SmsFtsIndexBuilder;
 
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -39,8 +45,14 @@ public class SmsSearchRepository {
     private final SmsSearchDao searchDao;
     private final ContactResolver contactResolver;
     private final Context context;
+    private final AppDatabase database;
+    private final AdvancedSearchParser searchParser;
+    private final SmsFtsIndexBuilder indexBuilder;
     private final ExecutorService executor = Executors.newFixedThreadPool(2);
     
+    // When the last index rebuild was swapped in; 0 if none has completed yet
+    private volatile long lastIndexRebuildAt = 0L;
+    
     // Search state
     private final MutableLiveData<SearchState> _searchState = new MutableLiveData<>();
     public final LiveData<SearchState> searchState = _searchState;
@@ -58,11 +70,16 @@ public class SmsSearchRepository {
         SmsDao smsDao,
         SmsSearchDao searchDao,
         ContactResolver contactResolver,
+        AppDatabase database,
+        AdvancedSearchParser searchParser,
         @ApplicationContext Context context
     ) {
         this.smsDao = smsDao;
         this.searchDao = searchDao;
         this.contactResolver = contactResolver;
+        this.database = database;
+        this.searchParser = searchParser;
+        this.indexBuilder = new SmsFtsIndexBuilder(database);
         this.context = context.getApplicationContext();
     }
     
@@ -139,6 +156,18 @@ public class SmsSearchRepository {
         return searchDao.searchMessagesInDateRange(cleanQuery, startDate, endDate);
     }
     
+    /**
+     * Search with operators such as from:0712345678, date:week, unread or type:mms.
+     * The parsed query is compiled into SQL, so filtering happens in SQLite rather than
+     * on loaded rows. Returns a new PagingSource on every call, as Pager requires.
+     */
+    public PagingSource<KeysetPagingSource.Key, SmsEntity> searchWithOperators(String query) {
+        AdvancedSearchParser.SearchCriteria criteria = searchParser.parse(query);
+        SearchQueryCompiler.Plan plan = SearchQueryCompiler.compile(criteria);
+        Log.d(TAG, "Operator search plan: " + plan);
+        return new AdvancedSearchPagingSource(database, smsDao, plan);
+    }
+    
     /**
      * Get search suggestions
      */
@@ -166,49 +195,27 @@ public class SmsSearchRepository {
     }
     
     /**
-     * Build and maintain FTS index
+     * Rebuild the FTS index from every message, resuming an interrupted rebuild.
+     * Messages are streamed into a shadow table in id order and swapped in at the end,
+     * so search keeps working on the old index meanwhile. Progress is posted to searchState.
      */
     public Completable buildSearchIndex() {
         return Completable.fromAction(() -> {
             try {
-                _searchState.postValue(SearchState.INDEXING);
-                
-                // Clear existing index
-                searchDao.deleteAllFtsEntries().blockingAwait();
-                
-                // Get all SMS messages
-                List<SmsEntity> allMessages = new java.util.ArrayList<>();
-                try {
-                    allMessages.addAll(smsDao.getRecentSmsByStatus("DELIVERED", 10000).blockingGet());
-                    allMessages.addAll(smsDao.getRecentSmsByStatus("SENT", 10000).blockingGet());
-                    allMessages.addAll(smsDao.getRecentSmsByStatus("PENDING", 10000).blockingGet());
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not fetch all messages", e);
-                }
+                _searchState.postValue(SearchState.indexing(0, 0));
                 
-                // Create FTS entities
-                List<SmsFtsEntity> ftsEntities = new java.util.ArrayList<>();
-                for (SmsEntity message : allMessages) {
-                    SmsFtsEntity ftsEntity = createFtsEntity(message);
-                    if (ftsEntity != null) {
-                        ftsEntities.add(ftsEntity);
-                    }
+                SmsFtsIndexBuilder.Result result = indexBuilder.rebuild(
+                    (indexed, total) -> _searchState.postValue(SearchState.indexing(indexed, total)));
+                if (result == null) {
+                    // Another rebuild owns the state updates
+                    return;
                 }
-                
-                // Insert in batches to avoid memory issues
-                int batchSize = 100;
-                for (int i = 0; i < ftsEntities.size(); i += batchSize) {
-                    int end = Math.min(i + batchSize, ftsEntities.size());
-                    List<SmsFtsEntity> batch = ftsEntities.subList(i, end);
-                    searchDao.insertFtsEntities(batch).blockingAwait();
-                }
-                
-                // Rebuild and optimize index
-                searchDao.rebuildFtsIndex().blockingAwait();
-                searchDao.optimizeFtsIndex().blockingAwait();
+                lastIndexRebuildAt = System.currentTimeMillis();
                 
                 _searchState.postValue(SearchState.READY);
-                Log.d(TAG, "Search index built with " + ftsEntities.size() + " entries");
+                _syncResult.postValue(SearchSyncResult.Success((int) result.indexed));
+                Log.d(TAG, "Search index built with " + result.indexed + " entries" +
+                    (result.resumed ? " (resumed)" : ""));
                 
             } catch (Exception error) {
                 Log.e(TAG, "Failed to build search index", error);
@@ -219,6 +226,20 @@ public class SmsSearchRepository {
         }).subscribeOn(Schedulers.io());
     }
     
+    /**
+     * Whether a full index rebuild is in progress
+     */
+    public boolean isIndexRebuilding() {
+        return indexBuilder.isRunning();
+    }
+    
+    /**
+     * Time the last full rebuild was swapped in. Changes made before then are already indexed.
+     */
+    public long getLastIndexRebuildAt() {
+        return lastIndexRebuildAt;
+    }
+    
     /**
      * Add message to search index
      */
@@ -389,13 +410,50 @@ public class SmsSearchRepository {
     }
     
     /**
-     * Search state enum
+     * Search index state, with progress while a rebuild is running
      */
-    public enum SearchState {
-        IDLE,
-        INDEXING,
-        READY,
-        ERROR
+    public static final class SearchState {
+        public enum Phase {
+            IDLE,
+            INDEXING,
+            READY,
+            ERROR
+        }
+        
+        public static final SearchState IDLE = new SearchState(Phase.IDLE, 0, 0);
+        public static final SearchState INDEXING = new SearchState(Phase.INDEXING, 0, 0);
+        public static final SearchState READY = new SearchState(Phase.READY, 0, 0);
+        public static final SearchState ERROR = new SearchState(Phase.ERROR, 0, 0);
+        
+        public final Phase phase;
+        public final long indexed;
+        public final long total;
+        
+        private SearchState(Phase phase, long indexed, long total) {
+            this.phase = phase;
+            this.indexed = indexed;
+            this.total = total;
+        }
+        
+        public static SearchState indexing(long indexed, long total) {
+            return new SearchState(Phase.INDEXING, indexed, total);
+        }
+        
+        /**
+         * Fraction of messages indexed, or -1 when the total is not known yet
+         */
+        public float getProgress() {
+            return total > 0 ? Math.min(1f, (float) indexed / total) : -1f;
+        }
+        
+        public boolean isIndexing() {
+            return phase == Phase.INDEXING;
+        }
+        
+        @Override
+        public String toString() {
+            return phase == Phase.INDEXING ? "INDEXING(" + indexed + "/" + total + ")" : phase.name();
+        }
     }
     
     /**
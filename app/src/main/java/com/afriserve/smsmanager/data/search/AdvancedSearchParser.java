@@ -3,7 +3,6 @@ package com.afriserve.smsmanager.data.search;
 import android.util.Log;
 
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -30,14 +29,8 @@ public class AdvancedSearchParser {
     
     private static final String TAG = "AdvancedSearchParser";
     
-    // Search operator patterns
-    private static final Pattern FROM_PATTERN = Pattern.compile("(?i)from:(\\+?[\\d\\s\\-\\(\\)]+|\"[^\"]+\")");
-    private static final Pattern TO_PATTERN = Pattern.compile("(?i)to:(\\+?[\\d\\s\\-\\(\\)]+|\"[^\"]+\")");
-    private static final Pattern DATE_PATTERN = Pattern.compile("(?i)date:(today|yesterday|week|month|year|\\d{4}-\\d{2}-\\d{2})");
-    private static final Pattern STATUS_PATTERN = Pattern.compile("(?i)(unread|read|sent|received|draft|failed)");
-    private static final Pattern CONTACT_PATTERN = Pattern.compile("(?i)contact:\"([^\"]+)\"");
-    private static final Pattern HAS_ATTACHMENT_PATTERN = Pattern.compile("(?i)has:attachment");
-    private static final Pattern MESSAGE_TYPE_PATTERN = Pattern.compile("(?i)type:(sms|mms)");
+    // Phone numbers may be typed in groups: from:0712 345 678
+    private static final Pattern PHONE_FRAGMENT = Pattern.compile("\\+?[\\d\\-()]+");
     
     private final ContactResolver contactResolver;
     private final SimpleDateFormat dateFormat;
@@ -58,109 +51,187 @@ public class AdvancedSearchParser {
      * Parse search query with advanced operators
      */
     public Single<SearchCriteria> parseQuery(String query) {
-        return Single.fromCallable(() -> {
-            SearchCriteria criteria = new SearchCriteria();
-            
-            if (query == null || query.trim().isEmpty()) {
-                return criteria;
-            }
-            
-            String remainingQuery = query.trim();
-            
-            // Parse FROM operator
-            Matcher fromMatcher = FROM_PATTERN.matcher(remainingQuery);
-            while (fromMatcher.find()) {
-                String phoneValue = fromMatcher.group(1).replace("\"", "").trim();
-                String normalizedPhone = PhoneNumberUtils.normalizePhoneNumber(phoneValue);
-                if (normalizedPhone != null) {
-                    criteria.fromPhoneNumbers.add(normalizedPhone);
+        return Single.fromCallable(() -> parse(query))
+            .subscribeOn(Schedulers.io());
+    }
+    
+    /**
+     * Parse search query in one pass over its tokens. Operators are recognised only as whole
+     * tokens, so "already" is text rather than the read filter. Unrecognised operators and
+     * values stay in the text query. Cheap enough to call on the main thread.
+     */
+    public SearchCriteria parse(String query) {
+        SearchCriteria criteria = new SearchCriteria();
+        if (query == null || query.trim().isEmpty()) {
+            return criteria;
+        }
+        
+        List<String> tokens = tokenize(query);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!applyOperator(token, tokens, i, criteria)) {
+                if (text.length() > 0) {
+                    text.append(' ');
                 }
-                remainingQuery = remainingQuery.replace(fromMatcher.group(), "").trim();
+                text.append(token);
+            } else if (isPhoneOperator(token)) {
+                // Skip the number groups the operator consumed
+                i += countPhoneFragments(token, tokens, i);
             }
-            
-            // Parse TO operator
-            Matcher toMatcher = TO_PATTERN.matcher(remainingQuery);
-            while (toMatcher.find()) {
-                String phoneValue = toMatcher.group(1).replace("\"", "").trim();
-                String normalizedPhone = PhoneNumberUtils.normalizePhoneNumber(phoneValue);
-                if (normalizedPhone != null) {
+        }
+        criteria.textQuery = text.toString();
+        
+        // Resolve contact names to phone numbers
+        if (!criteria.contactNames.isEmpty()) {
+            resolveContactNames(criteria);
+        }
+        
+        Log.d(TAG, "Parsed search query: " + criteria);
+        return criteria;
+    }
+    
+    /**
+     * Apply one token to the criteria. Returns false if it is plain text.
+     */
+    private boolean applyOperator(String token, List<String> tokens, int index, SearchCriteria criteria) {
+        int colon = token.indexOf(':');
+        if (colon <= 0) {
+            return applyStatus(token.toLowerCase(Locale.ROOT), criteria);
+        }
+        String key = token.substring(0, colon).toLowerCase(Locale.ROOT);
+        String value = unquote(token.substring(colon + 1));
+        switch (key) {
+            case "from":
+            case "to": {
+                StringBuilder number = new StringBuilder(value);
+                int fragments = countPhoneFragments(token, tokens, index);
+                for (int k = 1; k <= fragments; k++) {
+                    number.append(tokens.get(index + k));
+                }
+                String normalizedPhone = PhoneNumberUtils.normalizePhoneNumber(number.toString());
+                if (normalizedPhone == null) {
+                    return false;
+                }
+                if ("from".equals(key)) {
+                    criteria.fromPhoneNumbers.add(normalizedPhone);
+                } else {
                     criteria.toPhoneNumbers.add(normalizedPhone);
                 }
-                remainingQuery = remainingQuery.replace(toMatcher.group(), "").trim();
+                return true;
             }
-            
-            // Parse DATE operator
-            Matcher dateMatcher = DATE_PATTERN.matcher(remainingQuery);
-            while (dateMatcher.find()) {
-                String dateValue = dateMatcher.group(1);
-                DateRange dateRange = parseDateValue(dateValue);
-                if (dateRange != null) {
-                    criteria.dateRange = dateRange;
+            case "date": {
+                DateRange dateRange = parseDateValue(value);
+                if (dateRange == null) {
+                    return false;
                 }
-                remainingQuery = remainingQuery.replace(dateMatcher.group(), "").trim();
+                criteria.dateRange = dateRange;
+                return true;
             }
-            
-            // Parse STATUS operators
-            Matcher statusMatcher = STATUS_PATTERN.matcher(remainingQuery);
-            while (statusMatcher.find()) {
-                String statusValue = statusMatcher.group(1).toLowerCase();
-                switch (statusValue) {
-                    case "unread":
-                        criteria.isUnread = true;
-                        break;
-                    case "read":
-                        criteria.isUnread = false;
-                        break;
-                    case "sent":
-                        criteria.messageTypes.add("SENT");
-                        break;
-                    case "received":
-                        criteria.messageTypes.add("DELIVERED");
-                        criteria.messageTypes.add("PENDING");
-                        break;
-                    case "draft":
-                        criteria.messageTypes.add("DRAFT");
-                        break;
-                    case "failed":
-                        criteria.messageTypes.add("FAILED");
-                        break;
+            case "contact":
+                if (value.isEmpty()) {
+                    return false;
+                }
+                criteria.contactNames.add(value);
+                return true;
+            case "has":
+                if (!"attachment".equalsIgnoreCase(value)) {
+                    return false;
                 }
-                remainingQuery = remainingQuery.replace(statusMatcher.group(), "").trim();
-            }
-            
-            // Parse CONTACT operator
-            Matcher contactMatcher = CONTACT_PATTERN.matcher(remainingQuery);
-            while (contactMatcher.find()) {
-                String contactName = contactMatcher.group(1);
-                criteria.contactNames.add(contactName);
-                remainingQuery = remainingQuery.replace(contactMatcher.group(), "").trim();
-            }
-            
-            // Parse HAS operator
-            if (HAS_ATTACHMENT_PATTERN.matcher(remainingQuery).find()) {
                 criteria.hasAttachment = true;
-                remainingQuery = remainingQuery.replaceAll(HAS_ATTACHMENT_PATTERN.pattern(), "").trim();
-            }
-            
-            // Parse TYPE operator
-            Matcher typeMatcher = MESSAGE_TYPE_PATTERN.matcher(remainingQuery);
-            while (typeMatcher.find()) {
-                String typeValue = typeMatcher.group(1).toLowerCase();
-                criteria.messageTypes.add(typeValue.toUpperCase());
-                remainingQuery = remainingQuery.replace(typeMatcher.group(), "").trim();
-            }
-            
-            // Remaining text is the general search query
-            criteria.textQuery = remainingQuery.trim();
-            
-            // Resolve contact names to phone numbers
-            if (!criteria.contactNames.isEmpty()) {
-                resolveContactNames(criteria);
+                return true;
+            case "type":
+                if ("sms".equalsIgnoreCase(value)) {
+                    criteria.mms = false;
+                    return true;
+                }
+                if ("mms".equalsIgnoreCase(value)) {
+                    criteria.mms = true;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean applyStatus(String word, SearchCriteria criteria) {
+        switch (word) {
+            case "unread":
+                criteria.isUnread = true;
+                return true;
+            case "read":
+                criteria.isUnread = false;
+                return true;
+            case "sent":
+                criteria.messageTypes.add("SENT");
+                return true;
+            case "received":
+                criteria.messageTypes.add("DELIVERED");
+                criteria.messageTypes.add("PENDING");
+                return true;
+            case "draft":
+                criteria.messageTypes.add("DRAFT");
+                return true;
+            case "failed":
+                criteria.messageTypes.add("FAILED");
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean isPhoneOperator(String token) {
+        String lower = token.toLowerCase(Locale.ROOT);
+        return lower.startsWith("from:") || lower.startsWith("to:");
+    }
+    
+    /**
+     * Number of tokens after a from:/to: token that continue an unquoted number.
+     */
+    private static int countPhoneFragments(String token, List<String> tokens, int index) {
+        String value = token.substring(token.indexOf(':') + 1);
+        if (value.startsWith("\"") || !PHONE_FRAGMENT.matcher(value).matches()) {
+            return 0;
+        }
+        int count = 0;
+        while (index + count + 1 < tokens.size()
+            && PHONE_FRAGMENT.matcher(tokens.get(index + count + 1)).matches()
+            && !tokens.get(index + count + 1).startsWith("+")) {
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Split on whitespace, keeping double-quoted runs (including key:"two words") together.
+     */
+    static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                current.append(c);
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (current.length() > 0) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                }
+            } else {
+                current.append(c);
             }
-            
-            Log.d(TAG, "Parsed search query: " + criteria);
-            return criteria;
-        }).subscribeOn(Schedulers.io());
+        }
+        if (current.length() > 0) {
+            tokens.add(current.toString());
+        }
+        return tokens;
+    }
+    
+    private static String unquote(String value) {
+        return value.replace("\"", "").trim();
     }
     
     /**
@@ -228,7 +299,11 @@ public class AdvancedSearchParser {
             default:
                 // Try to parse as YYYY-MM-DD
                 try {
-                    java.util.Date date = dateFormat.parse(dateValue);
+                    java.util.Date date;
+                    // SimpleDateFormat is not thread-safe and parse() may run on any thread
+                    synchronized (dateFormat) {
+                        date = dateFormat.parse(dateValue);
+                    }
                     if (date != null) {
                         cal.setTime(date);
                         cal.set(Calendar.HOUR_OF_DAY, 0);
@@ -270,7 +345,8 @@ public class AdvancedSearchParser {
     }
     
     /**
-     * Check if SMS message matches search criteria
+     * Check if SMS message matches search criteria. For querying the database, compile the
+     * criteria with SearchQueryCompiler instead of filtering loaded rows.
      */
     public boolean matchesCriteria(SmsEntity message, SearchCriteria criteria) {
         // Check text query
@@ -335,6 +411,14 @@ public class AdvancedSearchParser {
             }
         }
         
+        // Check SMS vs MMS
+        if (criteria.mms != null) {
+            boolean isMms = message.isMms != null && message.isMms;
+            if (isMms != criteria.mms) {
+                return false;
+            }
+        }
+        
         // Check attachment (simplified - would need MMS support for full implementation)
         if (criteria.hasAttachment != null && criteria.hasAttachment) {
             // For SMS, this would always be false
@@ -357,12 +441,13 @@ public class AdvancedSearchParser {
         public DateRange dateRange;
         public Boolean isUnread;
         public Boolean hasAttachment;
+        public Boolean mms;
         
         @Override
         public String toString() {
-            return String.format("SearchCriteria{text='%s', from=%s, to=%s, contacts=%s, types=%s, date=%s, unread=%s, attachment=%s}",
+            return String.format("SearchCriteria{text='%s', from=%s, to=%s, contacts=%s, types=%s, date=%s, unread=%s, attachment=%s, mms=%s}",
                 textQuery, fromPhoneNumbers, toPhoneNumbers, contactNames, messageTypes, 
-                dateRange, isUnread, hasAttachment);
+                dateRange, isUnread, hasAttachment, mms);
         }
     }
     
@@ -0,0 +1,273 @@
+package com.afriserve.smsmanager.data.search;
+
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Ranked queries over the full-text indexes. Conversations and campaigns live in the unified
+ * search_index table (see AppDatabase.createSearchIndexTable), whose rowid encodes the source
+ * row as {@code id * KIND_SPAN + kind}. Messages are only indexed once, in sms_fts, so each
+ * message write maintains a single index.
+ *
+ * search_index uses FTS5 when the device's SQLite has it and is ranked with bm25(). On FTS4
+ * (always for sms_fts) the same BM25 formula is computed from matchinfo(); SQLite cannot order
+ * by it, so only the newest MAX_FTS4_CANDIDATES matches are scored and a bounded heap keeps
+ * the best ones.
+ */
+public class SearchIndex {
+
+    private static final String TAG = "SearchIndex";
+
+    public static final String TABLE = "search_index";
+    public static final int KIND_SPAN = 4;
+    public static final int KIND_CONVERSATION = 1;
+    public static final int KIND_MESSAGE = 2;
+    public static final int KIND_CAMPAIGN = 3;
+
+    // Column weights for (title, body): a name or number hit outranks a body hit
+    private static final double[] WEIGHTS = {2.0, 1.0};
+    private static final int MAX_TERMS = 8;
+    // Newest matches scored per FTS4 query; older ones fall outside the ranking
+    private static final int MAX_FTS4_CANDIDATES = 2000;
+
+    private static final Comparator<Hit> BEST_FIRST = (a, b) -> a.score != b.score
+        ? Double.compare(b.score, a.score)
+        : Long.compare(b.refId, a.refId);
+
+    /**
+     * One ranked match. Higher scores are better.
+     */
+    public static final class Hit {
+        public final int kind;
+        public final long refId;
+        public final double score;
+
+        Hit(int kind, long refId, double score) {
+            this.kind = kind;
+            this.refId = refId;
+            this.score = score;
+        }
+    }
+
+    private final RoomDatabase database;
+    private volatile Boolean fts5;
+
+    public SearchIndex(RoomDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Best matches of one kind for as-you-type input. Every term is prefix-matched, and all
+     * terms must match. Returns an empty list if the input has no searchable terms. Pass a
+     * CancellationSignal to abort a query that a newer keystroke has superseded.
+     */
+    public List<Hit> search(String input, int kind, int limit, @Nullable CancellationSignal signal) {
+        if (kind == KIND_MESSAGE) {
+            // sms_fts indexes numbers as written; "0712" lookups go through conversation search
+            String match = toMatchQuery(input, false, false);
+            if (match == null || limit <= 0) {
+                return Collections.emptyList();
+            }
+            return searchFts4(SmsFtsIndexBuilder.FTS_TABLE, null, match, kind, limit, signal);
+        }
+        String match = toMatchQuery(input, isFts5());
+        if (match == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (isFts5()) {
+            return searchFts5(match, kind, limit, signal);
+        }
+        return searchFts4(TABLE, "rowid % " + KIND_SPAN + " = " + kind, match, kind, limit, signal);
+    }
+
+    /**
+     * Ids of the best matches, best first.
+     */
+    public List<Long> searchIds(String input, int kind, int limit, @Nullable CancellationSignal signal) {
+        List<Hit> hits = search(input, kind, limit, signal);
+        List<Long> ids = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            ids.add(hit.refId);
+        }
+        return ids;
+    }
+
+    private List<Hit> searchFts5(String match, int kind, int limit, @Nullable CancellationSignal signal) {
+        SimpleSQLiteQuery query = new SimpleSQLiteQuery(
+            "SELECT rowid, bm25(" + TABLE + ", " + WEIGHTS[0] + ", " + WEIGHTS[1] + ") AS score " +
+                "FROM " + TABLE + " WHERE " + TABLE + " MATCH ? AND rowid % " + KIND_SPAN + " = ? " +
+                "ORDER BY score LIMIT ?",
+            new Object[]{match, kind, limit});
+        List<Hit> hits = new ArrayList<>(Math.min(limit, 64));
+        try (Cursor cursor = database.query(query, signal)) {
+            while (cursor.moveToNext()) {
+                // bm25() is negative, lower is better
+                hits.add(new Hit(kind, cursor.getLong(0) / KIND_SPAN, -cursor.getDouble(1)));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * FTS4 has no ranking function SQLite can order by, so the newest matches are read in rowid
+     * order, which FTS4 serves straight from the doclists, and scored here. The heap holds the
+     * worst kept hit at its head, so memory stays at limit hits however many rows match.
+     */
+    private List<Hit> searchFts4(String table, @Nullable String rowFilter, String match, int kind,
+                                 int limit, @Nullable CancellationSignal signal) {
+        SimpleSQLiteQuery query = new SimpleSQLiteQuery(
+            "SELECT rowid, matchinfo(" + table + ", 'pcnalx') FROM " + table +
+                " WHERE " + table + " MATCH ?" + (rowFilter != null ? " AND " + rowFilter : "") +
+                " ORDER BY rowid DESC LIMIT " + MAX_FTS4_CANDIDATES,
+            new Object[]{match});
+        long idDivisor = TABLE.equals(table) ? KIND_SPAN : 1;
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.min(limit, 64) + 1, BEST_FIRST.reversed());
+        try (Cursor cursor = database.query(query, signal)) {
+            while (cursor.moveToNext()) {
+                Hit hit = new Hit(kind, cursor.getLong(0) / idDivisor, bm25(cursor.getBlob(1), WEIGHTS));
+                if (best.size() < limit) {
+                    best.add(hit);
+                } else if (BEST_FIRST.compare(hit, best.peek()) < 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        Collections.sort(hits, BEST_FIRST);
+        return hits;
+    }
+
+    private boolean isFts5() {
+        Boolean cached = fts5;
+        if (cached != null) {
+            return cached;
+        }
+        boolean result = false;
+        try (Cursor cursor = database.query(new SimpleSQLiteQuery(
+            "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", new Object[]{TABLE}))) {
+            if (cursor.moveToFirst()) {
+                String sql = cursor.getString(0);
+                result = sql != null && sql.toLowerCase(java.util.Locale.ROOT).contains("fts5");
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to inspect search index", e);
+        }
+        fts5 = result;
+        return result;
+    }
+
+    /**
+     * Turn free text into a MATCH expression with every term prefix-matched and implicitly ANDed.
+     * Punctuation is dropped, so user input cannot inject FTS operators. Numbers typed with a
+     * trunk prefix ("0712") are matched against the indexed subscriber digits ("712...").
+     */
+    @Nullable
+    static String toMatchQuery(@Nullable String input, boolean fts5) {
+        return toMatchQuery(input, fts5, true);
+    }
+
+    /**
+     * As above; tables that index numbers only as written (sms_fts) keep leading zeros.
+     */
+    @Nullable
+    static String toMatchQuery(@Nullable String input, boolean fts5, boolean stripTrunkZeros) {
+        if (input == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        int terms = 0;
+        int length = input.length();
+        int i = 0;
+        while (i < length && terms < MAX_TERMS) {
+            while (i < length && !Character.isLetterOrDigit(input.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            boolean digits = true;
+            while (i < length && Character.isLetterOrDigit(input.charAt(i))) {
+                digits &= Character.isDigit(input.charAt(i));
+                i++;
+            }
+            if (start == i) {
+                break;
+            }
+            String term = input.substring(start, i);
+            if (digits && stripTrunkZeros) {
+                int nonZero = 0;
+                while (nonZero < term.length() - 1 && term.charAt(nonZero) == '0') {
+                    nonZero++;
+                }
+                term = term.substring(nonZero);
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            // FTS5 takes the star outside the quoted string, FTS4 inside
+            match.append('"').append(term).append(fts5 ? "\"*" : "*\"");
+            terms++;
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * Okapi BM25 over an FTS4 matchinfo(..., 'pcnalx') blob, summed over phrases and weighted per
+     * column. Mirrors FTS5's bm25() with k1 = 1.2 and b = 0.75, but positive: higher is better.
+     */
+    static double bm25(byte[] matchinfo, double[] weights) {
+        if (matchinfo == null || matchinfo.length < 12) {
+            return 0.0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        long rows = buffer.getInt(8) & 0xFFFFFFFFL;
+        int avgOffset = 3;
+        int lengthOffset = avgOffset + columns;
+        int hitsOffset = lengthOffset + columns;
+        if (matchinfo.length < (hitsOffset + 3 * phrases * columns) * 4) {
+            return 0.0;
+        }
+
+        final double k1 = 1.2;
+        final double b = 0.75;
+        double score = 0.0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                double weight = column < weights.length ? weights[column] : 1.0;
+                if (weight == 0.0) {
+                    continue;
+                }
+                int x = hitsOffset + 3 * (column + phrase * columns);
+                long termFrequency = buffer.getInt(x * 4) & 0xFFFFFFFFL;
+                if (termFrequency == 0) {
+                    continue;
+                }
+                long docsWithTerm = buffer.getInt((x + 2) * 4) & 0xFFFFFFFFL;
+                double idf = Math.log((rows - docsWithTerm + 0.5) / (docsWithTerm + 0.5));
+                if (idf <= 0.0) {
+                    idf = 1e-6;
+                }
+                double docLength = buffer.getInt((lengthOffset + column) * 4) & 0xFFFFFFFFL;
+                double avgLength = Math.max(1.0, buffer.getInt((avgOffset + column) * 4) & 0xFFFFFFFFL);
+                double numerator = termFrequency * (k1 + 1.0);
+                double denominator = termFrequency + k1 * (1.0 - b + b * docLength / avgLength);
+                score += weight * idf * numerator / denominator;
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,152 @@
+package com.afriserve.smsmanager.data.search;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiles parsed SearchCriteria into one parameterized WHERE clause over sms_entities, so every
+ * operator is evaluated by SQLite and rows that do not match are never loaded.
+ *
+ * Text goes through the sms_fts index, phone operators become IN-lists on the indexed
+ * phoneNumber column, and dates become a createdAt range. Values are always bound as arguments.
+ */
+public final class SearchQueryCompiler {
+
+    // Mirrors SmsEntity.isUnread() for rows whose isRead flag was never set
+    private static final String UNREAD_STATUSES = "('PENDING', 'SENT', 'RECEIVED')";
+
+    // Kenyan subscriber numbers are nine digits after the country code or trunk zero
+    private static final String COUNTRY_CODE = "254";
+    private static final int NATIONAL_DIGITS = 9;
+
+    /**
+     * A compiled filter: a WHERE condition, or null for no filter, plus its bind arguments.
+     */
+    public static final class Plan {
+        @Nullable public final String where;
+        public final List<Object> args;
+
+        Plan(@Nullable String where, List<Object> args) {
+            this.where = where;
+            this.args = Collections.unmodifiableList(args);
+        }
+
+        @Override
+        public String toString() {
+            return "Plan{where=" + where + ", args=" + args + "}";
+        }
+    }
+
+    private SearchQueryCompiler() {
+    }
+
+    public static Plan compile(AdvancedSearchParser.SearchCriteria criteria) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+
+        String match = SearchIndex.toMatchQuery(criteria.textQuery, false, false);
+        if (match != null) {
+            conditions.add("id IN (SELECT docid FROM sms_fts WHERE sms_fts MATCH ?)");
+            args.add(match);
+        }
+
+        addPhoneCondition(criteria.fromPhoneNumbers, conditions, args);
+        addPhoneCondition(criteria.toPhoneNumbers, conditions, args);
+
+        if (criteria.dateRange != null) {
+            conditions.add("createdAt >= ? AND createdAt < ?");
+            args.add(criteria.dateRange.startTime);
+            args.add(criteria.dateRange.endTime);
+        }
+
+        if (criteria.isUnread != null) {
+            conditions.add(criteria.isUnread
+                ? "(isRead = 0 OR (isRead IS NULL AND status IN " + UNREAD_STATUSES + "))"
+                : "(isRead = 1 OR (isRead IS NULL AND IFNULL(status, '') NOT IN " + UNREAD_STATUSES + "))");
+        }
+
+        if (!criteria.messageTypes.isEmpty()) {
+            Set<String> statuses = new LinkedHashSet<>(criteria.messageTypes);
+            conditions.add("status IN " + placeholders(statuses.size()));
+            args.addAll(statuses);
+        }
+
+        if (criteria.mms != null) {
+            conditions.add(criteria.mms ? "isMms = 1" : "IFNULL(isMms, 0) = 0");
+        }
+
+        if (criteria.hasAttachment != null) {
+            conditions.add(criteria.hasAttachment
+                ? "attachmentCount > 0"
+                : "IFNULL(attachmentCount, 0) = 0");
+        }
+
+        if (conditions.isEmpty()) {
+            return new Plan(null, args);
+        }
+        StringBuilder where = new StringBuilder();
+        for (String condition : conditions) {
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append('(').append(condition).append(')');
+        }
+        return new Plan(where.toString(), args);
+    }
+
+    private static void addPhoneCondition(List<String> numbers, List<String> conditions, List<Object> args) {
+        if (numbers.isEmpty()) {
+            return;
+        }
+        Set<String> variants = new LinkedHashSet<>();
+        for (String number : numbers) {
+            variants.addAll(phoneVariants(number));
+        }
+        conditions.add("phoneNumber IN " + placeholders(variants.size()));
+        args.addAll(variants);
+    }
+
+    /**
+     * Spellings a stored number may have: as typed, with and without "+", and for Kenyan
+     * numbers the international and trunk-zero forms. Equality on each keeps the phoneNumber
+     * index usable, unlike suffix matching.
+     */
+    static List<String> phoneVariants(String number) {
+        Set<String> variants = new LinkedHashSet<>();
+        variants.add(number);
+        String digits = number.replaceAll("[^0-9]", "");
+        if (digits.isEmpty()) {
+            return new ArrayList<>(variants);
+        }
+        variants.add(digits);
+        variants.add("+" + digits);
+
+        String national = null;
+        if (digits.length() == NATIONAL_DIGITS) {
+            national = digits;
+        } else if (digits.length() == NATIONAL_DIGITS + 1 && digits.startsWith("0")) {
+            national = digits.substring(1);
+        } else if (digits.length() == NATIONAL_DIGITS + COUNTRY_CODE.length() && digits.startsWith(COUNTRY_CODE)) {
+            national = digits.substring(COUNTRY_CODE.length());
+        }
+        if (national != null) {
+            variants.add("0" + national);
+            variants.add(COUNTRY_CODE + national);
+            variants.add("+" + COUNTRY_CODE + national);
+        }
+        return new ArrayList<>(variants);
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+}
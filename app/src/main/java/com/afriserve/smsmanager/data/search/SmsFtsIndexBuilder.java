@@ -0,0 +1,302 @@
+package com.afriserve.smsmanager.data.search;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rebuilds the sms_fts message index without taking search offline.
+ *
+ * Messages are streamed from sms_entities in id order, one chunk per transaction, into a shadow
+ * FTS table. The last indexed id is checkpointed in the same transaction, so a rebuild that is
+ * interrupted (process death, failed sync) resumes where it stopped. While the rebuild runs,
+ * triggers mirror changes to already-indexed rows into the shadow table; rows past the
+ * checkpoint are picked up by later chunks. Once the shadow table has caught up it replaces
+ * sms_fts in a single transaction.
+ */
+public class SmsFtsIndexBuilder {
+
+    private static final String TAG = "SmsFtsIndexBuilder";
+
+    public static final String FTS_TABLE = "sms_fts";
+    private static final String SHADOW_TABLE = "sms_fts_shadow";
+    private static final String CHECKPOINT_TABLE = "sms_fts_checkpoint";
+    private static final String CONTENT_TABLE = "sms_entities";
+
+    /** Module and arguments of sms_fts, as declared by SmsFtsEntity. */
+    public static final String FTS_DEFINITION =
+        "FTS4(`phoneNumber` TEXT, `message` TEXT, content='" + CONTENT_TABLE + "')";
+
+    // Named as Room generates them for SmsFtsEntity
+    private static final String[] CONTENT_SYNC_TRIGGERS = {
+        "room_fts_content_sync_sms_fts_BEFORE_UPDATE",
+        "room_fts_content_sync_sms_fts_BEFORE_DELETE",
+        "room_fts_content_sync_sms_fts_AFTER_UPDATE",
+        "room_fts_content_sync_sms_fts_AFTER_INSERT"
+    };
+    // Installed by schema versions before 10; they used the FTS5-only 'delete' command
+    private static final String[] LEGACY_SYNC_TRIGGERS = {"sms_fts_ai", "sms_fts_ad", "sms_fts_au"};
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final String CHECKPOINT_ID =
+        "(SELECT lastId FROM `" + CHECKPOINT_TABLE + "` WHERE id = 1)";
+
+    /**
+     * Receives progress after each committed chunk. Called on the rebuilding thread.
+     */
+    public interface ProgressListener {
+        void onProgress(long indexed, long total);
+    }
+
+    /**
+     * Outcome of a completed rebuild.
+     */
+    public static final class Result {
+        public final long indexed;
+        public final long lastId;
+        public final boolean resumed;
+
+        Result(long indexed, long lastId, boolean resumed) {
+            this.indexed = indexed;
+            this.lastId = lastId;
+            this.resumed = resumed;
+        }
+    }
+
+    private final RoomDatabase database;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public SmsFtsIndexBuilder(RoomDatabase database) {
+        this.database = database;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Build a fresh index and swap it in, resuming an interrupted rebuild if one is pending.
+     * Returns null if another rebuild is already running.
+     */
+    public Result rebuild(ProgressListener listener) {
+        if (!running.compareAndSet(false, true)) {
+            Log.d(TAG, "Rebuild already running");
+            return null;
+        }
+        try {
+            SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+            boolean resumed = hasCheckpoint(db) && tableExists(db, SHADOW_TABLE);
+            if (!resumed) {
+                database.runInTransaction(() -> startShadow(db));
+            } else {
+                Log.d(TAG, "Resuming rebuild from id " + readCheckpoint(db)[0]);
+            }
+
+            long[] checkpoint = readCheckpoint(db);
+            listener.onProgress(checkpoint[1], checkpoint[2]);
+            while (true) {
+                long[] next = database.runInTransaction(() -> indexChunk(db));
+                if (next == null) {
+                    break;
+                }
+                checkpoint = next;
+                listener.onProgress(checkpoint[1], Math.max(checkpoint[1], checkpoint[2]));
+            }
+
+            // Merge the per-chunk segments before the table goes live
+            db.execSQL("INSERT INTO `" + SHADOW_TABLE + "`(`" + SHADOW_TABLE + "`) VALUES('optimize')");
+
+            long[] finalCheckpoint = database.runInTransaction(() -> swap(db));
+            Log.d(TAG, "Rebuilt " + FTS_TABLE + " with " + finalCheckpoint[1] + " messages");
+            return new Result(finalCheckpoint[1], finalCheckpoint[0], resumed);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Triggers that keep an external-content FTS4 table in step with sms_entities, in the form
+     * Room generates for {@code @Fts4(contentEntity = ...)}. Old terms must be removed BEFORE the
+     * content row changes, because FTS4 reads them back from the content table.
+     */
+    public static void createContentSyncTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_sms_fts_BEFORE_UPDATE " +
+                "BEFORE UPDATE ON `sms_entities` BEGIN DELETE FROM `sms_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_sms_fts_BEFORE_DELETE " +
+                "BEFORE DELETE ON `sms_entities` BEGIN DELETE FROM `sms_fts` WHERE `docid`=OLD.`rowid`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_sms_fts_AFTER_UPDATE " +
+                "AFTER UPDATE ON `sms_entities` BEGIN INSERT INTO `sms_fts`(`docid`, `phoneNumber`, `message`) " +
+                "VALUES (NEW.`rowid`, NEW.`phoneNumber`, NEW.`message`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_sms_fts_AFTER_INSERT " +
+                "AFTER INSERT ON `sms_entities` BEGIN INSERT INTO `sms_fts`(`docid`, `phoneNumber`, `message`) " +
+                "VALUES (NEW.`rowid`, NEW.`phoneNumber`, NEW.`message`); END");
+    }
+
+    /**
+     * Drop the triggers that keep sms_fts in sync, current and legacy, by name. The shadow
+     * table's mirror triggers belong to an unfinished rebuild and are left alone.
+     */
+    public static void dropContentSyncTriggers(SupportSQLiteDatabase db) {
+        for (String name : CONTENT_SYNC_TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS `" + name + "`");
+        }
+        for (String name : LEGACY_SYNC_TRIGGERS) {
+            db.execSQL("DROP TRIGGER IF EXISTS `" + name + "`");
+        }
+    }
+
+    /**
+     * Whether sms_fts exists with FTS_DEFINITION. A swap renames the shadow table, which
+     * rewrites the name in sqlite_master, and Room quotes names with backticks, so only the
+     * part after USING is compared, ignoring whitespace and quotes.
+     */
+    public static boolean hasCurrentDefinition(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query(
+            "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", new Object[]{FTS_TABLE})) {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) {
+                return false;
+            }
+            String sql = cursor.getString(0);
+            int using = sql.toUpperCase(Locale.ROOT).indexOf(" USING ");
+            return using >= 0 && normalize(sql.substring(using + 7)).equals(normalize(FTS_DEFINITION));
+        }
+    }
+
+    private static String normalize(String definition) {
+        return definition.replaceAll("[\\s`'\"]", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static void startShadow(SupportSQLiteDatabase db) {
+        dropShadowTriggers(db);
+        db.execSQL("DROP TABLE IF EXISTS `" + SHADOW_TABLE + "`");
+        db.execSQL("CREATE VIRTUAL TABLE `" + SHADOW_TABLE + "` USING " + FTS_DEFINITION);
+        db.execSQL("CREATE TABLE IF NOT EXISTS `" + CHECKPOINT_TABLE + "` (" +
+                "`id` INTEGER PRIMARY KEY NOT NULL, `lastId` INTEGER NOT NULL, " +
+                "`indexed` INTEGER NOT NULL, `total` INTEGER NOT NULL)");
+
+        long total = 0;
+        try (Cursor cursor = db.query("SELECT COUNT(*) FROM `" + CONTENT_TABLE + "`")) {
+            if (cursor.moveToFirst()) {
+                total = cursor.getLong(0);
+            }
+        }
+        db.execSQL("INSERT OR REPLACE INTO `" + CHECKPOINT_TABLE + "` (id, lastId, indexed, total) " +
+                "VALUES (1, 0, 0, ?)", new Object[]{total});
+
+        // Rows at or below the checkpoint are already in the shadow table; keep them current
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_shadow_bu` BEFORE UPDATE ON `" + CONTENT_TABLE + "` " +
+                "WHEN OLD.`id` <= " + CHECKPOINT_ID + " " +
+                "BEGIN DELETE FROM `" + SHADOW_TABLE + "` WHERE `docid` = OLD.`id`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_shadow_bd` BEFORE DELETE ON `" + CONTENT_TABLE + "` " +
+                "WHEN OLD.`id` <= " + CHECKPOINT_ID + " " +
+                "BEGIN DELETE FROM `" + SHADOW_TABLE + "` WHERE `docid` = OLD.`id`; END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_shadow_au` AFTER UPDATE ON `" + CONTENT_TABLE + "` " +
+                "WHEN NEW.`id` <= " + CHECKPOINT_ID + " " +
+                "BEGIN INSERT INTO `" + SHADOW_TABLE + "`(`docid`, `phoneNumber`, `message`) " +
+                "VALUES (NEW.`id`, NEW.`phoneNumber`, NEW.`message`); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `sms_fts_shadow_ai` AFTER INSERT ON `" + CONTENT_TABLE + "` " +
+                "WHEN NEW.`id` <= " + CHECKPOINT_ID + " " +
+                "BEGIN INSERT INTO `" + SHADOW_TABLE + "`(`docid`, `phoneNumber`, `message`) " +
+                "VALUES (NEW.`id`, NEW.`phoneNumber`, NEW.`message`); END");
+    }
+
+    /**
+     * Index the next chunk past the checkpoint and advance it. Returns the new checkpoint, or
+     * null once every row is indexed.
+     */
+    private static long[] indexChunk(SupportSQLiteDatabase db) {
+        long[] checkpoint = readCheckpoint(db);
+        long lastId = checkpoint[0];
+        long chunkEnd;
+        long count;
+        try (Cursor cursor = db.query(
+            "SELECT MAX(id), COUNT(*) FROM (SELECT id FROM `" + CONTENT_TABLE + "` " +
+                "WHERE id > ? ORDER BY id LIMIT " + CHUNK_SIZE + ")",
+            new Object[]{lastId})) {
+            if (!cursor.moveToFirst() || cursor.getLong(1) == 0) {
+                return null;
+            }
+            chunkEnd = cursor.getLong(0);
+            count = cursor.getLong(1);
+        }
+
+        db.execSQL("INSERT INTO `" + SHADOW_TABLE + "`(`docid`, `phoneNumber`, `message`) " +
+                "SELECT id, phoneNumber, message FROM `" + CONTENT_TABLE + "` WHERE id > ? AND id <= ?",
+                new Object[]{lastId, chunkEnd});
+        db.execSQL("UPDATE `" + CHECKPOINT_TABLE + "` SET lastId = ?, indexed = indexed + ? WHERE id = 1",
+                new Object[]{chunkEnd, count});
+        return new long[]{chunkEnd, checkpoint[1] + count, checkpoint[2]};
+    }
+
+    /**
+     * Replace sms_fts with the shadow table. Rows written since the last chunk are indexed
+     * first, inside the same transaction, so the swapped-in table is complete.
+     */
+    private static long[] swap(SupportSQLiteDatabase db) {
+        long[] checkpoint = readCheckpoint(db);
+        long[] next;
+        while ((next = indexChunk(db)) != null) {
+            checkpoint = next;
+        }
+
+        // The sync triggers name sms_fts and would block the rename, so they are recreated
+        dropContentSyncTriggers(db);
+        db.execSQL("DROP TABLE IF EXISTS `" + FTS_TABLE + "`");
+        db.execSQL("ALTER TABLE `" + SHADOW_TABLE + "` RENAME TO `" + FTS_TABLE + "`");
+        createContentSyncTriggers(db);
+        // The mirror triggers read the checkpoint table; left behind, every write would fail
+        dropShadowTriggers(db);
+        db.execSQL("DROP TABLE IF EXISTS `" + CHECKPOINT_TABLE + "`");
+        return checkpoint;
+    }
+
+    /**
+     * Drop mirror triggers left behind by a swap that did not remove them. Without the
+     * checkpoint table no rebuild is pending, and the triggers would fail every write.
+     */
+    public static void dropOrphanedShadowTriggers(SupportSQLiteDatabase db) {
+        if (!tableExists(db, CHECKPOINT_TABLE)) {
+            dropShadowTriggers(db);
+        }
+    }
+
+    private static void dropShadowTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_fts_shadow_bu`");
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_fts_shadow_bd`");
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_fts_shadow_au`");
+        db.execSQL("DROP TRIGGER IF EXISTS `sms_fts_shadow_ai`");
+    }
+
+    private static boolean hasCheckpoint(SupportSQLiteDatabase db) {
+        if (!tableExists(db, CHECKPOINT_TABLE)) {
+            return false;
+        }
+        try (Cursor cursor = db.query("SELECT 1 FROM `" + CHECKPOINT_TABLE + "` WHERE id = 1")) {
+            return cursor.moveToFirst();
+        }
+    }
+
+    /** {lastId, indexed, total} */
+    private static long[] readCheckpoint(SupportSQLiteDatabase db) {
+        try (Cursor cursor = db.query(
+            "SELECT lastId, indexed, total FROM `" + CHECKPOINT_TABLE + "` WHERE id = 1")) {
+            if (cursor.moveToFirst()) {
+                return new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)};
+            }
+        }
+        return new long[]{0L, 0L, 0L};
+    }
+
+    private static boolean tableExists(SupportSQLiteDatabase db, String table) {
+        try (Cursor cursor = db.query(
+            "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?", new Object[]{table})) {
+            return cursor.moveToFirst();
+        }
+    }
+}
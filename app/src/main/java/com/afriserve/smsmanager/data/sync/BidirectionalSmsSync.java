@@ -18,6 +18,7 @@ import com.afriserve.smsmanager.data.entity.SmsEntity;
 import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
 import com.afriserve.smsmanager.sms.DefaultSmsAppManager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -235,6 +236,54 @@ public class BidirectionalSmsSync {
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Sync a batch of freshly sent messages to the ContentProvider.
+     * Works on the given entities instead of re-reading each row, and links the provider
+     * ids back with one transactional update that leaves delivery status untouched.
+     */
+    public Completable syncSentMessagesToContentProvider(@NonNull List<SmsEntity> messages) {
+        return Completable.fromAction(() -> {
+            if (!isBidirectionalSyncAvailable()) {
+                return;
+            }
+
+            List<SmsEntity> linked = new ArrayList<>();
+            for (SmsEntity message : messages) {
+                if (message.id <= 0 || message.deviceSmsId != null || !isOutgoingStatus(message.status)) {
+                    continue;
+                }
+                try {
+                    ProviderMatch match = findProviderMatch(message, Telephony.Sms.Sent.CONTENT_URI);
+                    if (match != null) {
+                        message.deviceSmsId = match.deviceSmsId;
+                        if (match.threadId != null) {
+                            message.threadId = match.threadId;
+                        }
+                        linked.add(message);
+                        continue;
+                    }
+
+                    Long deviceSmsId = addSentMessageToContentProvider(message);
+                    if (deviceSmsId != null) {
+                        message.deviceSmsId = deviceSmsId;
+                        Long threadId = resolveThreadIdFromProvider(deviceSmsId);
+                        if (threadId != null) {
+                            message.threadId = threadId;
+                        }
+                        linked.add(message);
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to sync sent message to ContentProvider", e);
+                }
+            }
+
+            if (!linked.isEmpty()) {
+                smsDao.attachDeviceSmsIds(linked);
+                Log.d(TAG, "Synced " + linked.size() + " sent messages to ContentProvider");
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
     private boolean isOutgoingStatus(@Nullable String status) {
         return "PENDING".equals(status)
                 || "PENDING_RETRY".equals(status)
@@ -22,6 +22,8 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 /**
  * Incremental index manager for granular search index updates
  * Implements rate limiting and batch processing for efficient index maintenance
+ * Only applies deltas: tasks wait while a full rebuild runs, and tasks queued before
+ * the rebuild was swapped in are dropped because the rebuild already covered them
  */
 @Singleton
 public class IncrementalIndexManager {
@@ -149,7 +151,7 @@ public class IncrementalIndexManager {
      */
     public void flush() {
         Log.d(TAG, "Force flushing index queue");
-        while (!taskQueue.isEmpty()) {
+        while (!taskQueue.isEmpty() && !searchRepository.isIndexRebuilding()) {
             processBatch();
         }
     }
@@ -207,12 +209,23 @@ public class IncrementalIndexManager {
         List<IndexTask> batch = new ArrayList<>();
         
         try {
-            // Collect batch of tasks
-            for (int i = 0; i < BATCH_SIZE && !taskQueue.isEmpty(); i++) {
+            // A full rebuild is about to replace the live index; hold tasks until it is swapped in
+            if (searchRepository.isIndexRebuilding()) {
+                return;
+            }
+            
+            // Collect batch of tasks, skipping changes the last rebuild already indexed
+            long rebuiltAt = searchRepository.getLastIndexRebuildAt();
+            while (batch.size() < BATCH_SIZE && !taskQueue.isEmpty()) {
                 IndexTask task = taskQueue.poll();
-                if (task != null) {
-                    batch.add(task);
+                if (task == null) {
+                    break;
+                }
+                if (task.timestamp < rebuiltAt) {
+                    processedCount.incrementAndGet();
+                    continue;
                 }
+                batch.add(task);
             }
             
             if (batch.isEmpty()) {
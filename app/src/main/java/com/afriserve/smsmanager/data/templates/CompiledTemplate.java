@@ -0,0 +1,411 @@
+package com.afriserve.smsmanager.data.templates;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.utils.SmsSegmentCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable render plan for a message template.
+ * A template is parsed once into literal segments, variable slots, function calls and
+ * conditionals; rendering walks the plan into a per-thread StringBuilder and never touches a
+ * regex. Plans are cached per template text, so personalising a campaign compiles its
+ * template once and renders it for every recipient.
+ */
+public final class CompiledTemplate {
+
+    private static final int MAX_CACHED_PLANS = 128;
+    private static final int MAX_RETAINED_BUFFER = 8 * 1024;
+
+    private static final Map<String, CompiledTemplate> PLACEHOLDER_PLANS = new ConcurrentHashMap<>();
+    private static final Map<String, CompiledTemplate> EXTENDED_PLANS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<StringBuilder> BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /**
+     * Supplies values while a plan renders.
+     */
+    public interface Resolver {
+        /**
+         * @return the value for the variable, or null to keep the placeholder as written
+         */
+        @Nullable
+        String variable(@NonNull String name);
+
+        /**
+         * @param name lower-cased function name
+         * @param args unquoted, trimmed arguments; shared by every render, do not modify
+         * @return the function result, or null to keep the call as written
+         */
+        @Nullable
+        default String function(@NonNull String name, @NonNull String[] args) {
+            return null;
+        }
+    }
+
+    private final Segment[] segments;
+    private final int literalLength;
+
+    private CompiledTemplate(@NonNull List<Segment> segments) {
+        this.segments = segments.toArray(new Segment[0]);
+        int length = 0;
+        for (Segment segment : this.segments) {
+            if (segment instanceof Literal) {
+                length += ((Literal) segment).text.length();
+            }
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Plan for templates that only use {key} placeholders, as in bulk campaign messages.
+     */
+    @NonNull
+    public static CompiledTemplate placeholders(@NonNull String template) {
+        return cached(PLACEHOLDER_PLANS, template, false);
+    }
+
+    /**
+     * Plan for templates that also use {{function(args)}} calls and
+     * {?if condition}...{?else}...{?endif} blocks, as handled by {@link TemplateEngine}.
+     */
+    @NonNull
+    public static CompiledTemplate extended(@NonNull String template) {
+        return cached(EXTENDED_PLANS, template, true);
+    }
+
+    private static CompiledTemplate cached(Map<String, CompiledTemplate> cache, String template,
+                                           boolean extended) {
+        CompiledTemplate plan = cache.get(template);
+        if (plan == null) {
+            plan = new CompiledTemplate(new Parser(template, extended).parse(0, template.length()));
+            if (cache.size() >= MAX_CACHED_PLANS) {
+                // Templates change rarely; dropping the lot is cheaper than tracking recency
+                cache.clear();
+            }
+            cache.put(template, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Render the plan with the given values.
+     */
+    @NonNull
+    public String render(@NonNull Resolver resolver) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        out.ensureCapacity(literalLength + 32);
+        appendAll(segments, out, resolver);
+        String result = out.toString();
+        if (out.capacity() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Feed what {@link #render} would produce into counter without building the string, so part
+     * counts for a whole campaign can be taken from the plan and each recipient's values.
+     * The counter is not reset first.
+     */
+    @NonNull
+    public SmsSegmentCounter measure(@NonNull Resolver resolver, @NonNull SmsSegmentCounter counter) {
+        measureAll(segments, counter, resolver);
+        return counter;
+    }
+
+    /**
+     * Names of the variable slots in template order, including those inside conditionals.
+     */
+    @NonNull
+    public List<String> variableNames() {
+        List<String> names = new ArrayList<>();
+        collectVariables(segments, names);
+        return names;
+    }
+
+    private static void appendAll(Segment[] segments, StringBuilder out, Resolver resolver) {
+        for (Segment segment : segments) {
+            segment.append(out, resolver);
+        }
+    }
+
+    private static void measureAll(Segment[] segments, SmsSegmentCounter counter, Resolver resolver) {
+        for (Segment segment : segments) {
+            segment.measure(counter, resolver);
+        }
+    }
+
+    private static void collectVariables(Segment[] segments, List<String> names) {
+        for (Segment segment : segments) {
+            if (segment instanceof Variable) {
+                names.add(((Variable) segment).name);
+            } else if (segment instanceof Conditional) {
+                Conditional conditional = (Conditional) segment;
+                collectVariables(conditional.whenTrue, names);
+                collectVariables(conditional.whenFalse, names);
+            }
+        }
+    }
+
+    private abstract static class Segment {
+        abstract void append(StringBuilder out, Resolver resolver);
+
+        abstract void measure(SmsSegmentCounter counter, Resolver resolver);
+    }
+
+    private static final class Literal extends Segment {
+        final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void append(StringBuilder out, Resolver resolver) {
+            out.append(text);
+        }
+
+        @Override
+        void measure(SmsSegmentCounter counter, Resolver resolver) {
+            counter.append(text);
+        }
+    }
+
+    private static final class Variable extends Segment {
+        final String name;
+        final String raw;
+
+        Variable(String name, String raw) {
+            this.name = name;
+            this.raw = raw;
+        }
+
+        @Override
+        void append(StringBuilder out, Resolver resolver) {
+            String value = resolver.variable(name);
+            out.append(value != null ? value : raw);
+        }
+
+        @Override
+        void measure(SmsSegmentCounter counter, Resolver resolver) {
+            String value = resolver.variable(name);
+            counter.append(value != null ? value : raw);
+        }
+    }
+
+    private static final class Function extends Segment {
+        final String name;
+        final String[] args;
+        final String raw;
+
+        Function(String name, String[] args, String raw) {
+            this.name = name;
+            this.args = args;
+            this.raw = raw;
+        }
+
+        @Override
+        void append(StringBuilder out, Resolver resolver) {
+            String value = resolver.function(name, args);
+            out.append(value != null ? value : raw);
+        }
+
+        @Override
+        void measure(SmsSegmentCounter counter, Resolver resolver) {
+            String value = resolver.function(name, args);
+            counter.append(value != null ? value : raw);
+        }
+    }
+
+    private static final class Conditional extends Segment {
+        final String variable;
+        @Nullable
+        final String expected;
+        final Segment[] whenTrue;
+        final Segment[] whenFalse;
+
+        Conditional(String variable, @Nullable String expected, List<Segment> whenTrue,
+                    List<Segment> whenFalse) {
+            this.variable = variable;
+            this.expected = expected;
+            this.whenTrue = whenTrue.toArray(new Segment[0]);
+            this.whenFalse = whenFalse.toArray(new Segment[0]);
+        }
+
+        @Override
+        void append(StringBuilder out, Resolver resolver) {
+            appendAll(test(resolver) ? whenTrue : whenFalse, out, resolver);
+        }
+
+        @Override
+        void measure(SmsSegmentCounter counter, Resolver resolver) {
+            measureAll(test(resolver) ? whenTrue : whenFalse, counter, resolver);
+        }
+
+        private boolean test(Resolver resolver) {
+            String value = resolver.variable(variable);
+            if (expected != null) {
+                return expected.equals(value != null ? value : "{" + variable + "}");
+            }
+            return value != null && !value.isEmpty() && !value.equals("{" + variable + "}");
+        }
+    }
+
+    /**
+     * Single forward pass over the template. Placeholder-only templates treat the innermost
+     * {...} pair as a slot; extended templates follow the TemplateEngine grammar.
+     */
+    private static final class Parser {
+        private static final String IF = "{?if";
+        private static final String ELSE = "{?else}";
+        private static final String ENDIF = "{?endif}";
+
+        private final String template;
+        private final boolean extended;
+
+        Parser(String template, boolean extended) {
+            this.template = template;
+            this.extended = extended;
+        }
+
+        List<Segment> parse(int from, int to) {
+            List<Segment> segments = new ArrayList<>();
+            int literalStart = from;
+            int i = from;
+            while (i < to) {
+                int open = template.indexOf('{', i);
+                if (open < 0 || open >= to) {
+                    break;
+                }
+                int end = extended ? parseExtended(open, to, segments, literalStart)
+                        : parsePlaceholder(open, to, segments, literalStart);
+                if (end < 0) {
+                    i = open + 1;
+                } else {
+                    literalStart = end;
+                    i = end;
+                }
+            }
+            addLiteral(segments, literalStart, to);
+            return segments;
+        }
+
+        private int parsePlaceholder(int open, int to, List<Segment> segments, int literalStart) {
+            int close = open + 1;
+            while (close < to) {
+                char c = template.charAt(close);
+                if (c == '}') {
+                    break;
+                }
+                if (c == '{') {
+                    return -1;
+                }
+                close++;
+            }
+            if (close >= to || close == open + 1) {
+                return -1;
+            }
+            addLiteral(segments, literalStart, open);
+            segments.add(new Variable(template.substring(open + 1, close),
+                    template.substring(open, close + 1)));
+            return close + 1;
+        }
+
+        private int parseExtended(int open, int to, List<Segment> segments, int literalStart) {
+            if (template.startsWith(IF, open)) {
+                int end = parseConditional(open, to, segments, literalStart);
+                if (end >= 0) {
+                    return end;
+                }
+            }
+            if (open + 1 < to && template.charAt(open + 1) == '{') {
+                int close = template.indexOf('}', open + 2);
+                if (close > open + 2 && close + 1 < to && template.charAt(close + 1) == '}') {
+                    addLiteral(segments, literalStart, open);
+                    segments.add(function(template.substring(open + 2, close).trim(),
+                            template.substring(open, close + 2)));
+                    return close + 2;
+                }
+            }
+            int close = template.indexOf('}', open + 1);
+            if (close <= open + 1 || close >= to) {
+                return -1;
+            }
+            addLiteral(segments, literalStart, open);
+            segments.add(new Variable(template.substring(open + 1, close).trim(),
+                    template.substring(open, close + 1)));
+            return close + 1;
+        }
+
+        private int parseConditional(int open, int to, List<Segment> segments, int literalStart) {
+            int conditionStart = open + IF.length();
+            if (conditionStart >= to || !Character.isWhitespace(template.charAt(conditionStart))) {
+                return -1;
+            }
+            int conditionEnd = template.indexOf('}', conditionStart);
+            if (conditionEnd < 0 || conditionEnd >= to) {
+                return -1;
+            }
+            String condition = template.substring(conditionStart, conditionEnd).trim();
+            if (condition.isEmpty()) {
+                return -1;
+            }
+            // Branch bodies may not contain '?', so the first one must open {?else} / {?endif}
+            int elseStart = template.indexOf('?', conditionEnd) - 1;
+            if (elseStart < conditionEnd || !template.startsWith(ELSE, elseStart)) {
+                return -1;
+            }
+            int bodyStart = elseStart + ELSE.length();
+            int endifStart = template.indexOf('?', bodyStart) - 1;
+            if (endifStart < bodyStart || !template.startsWith(ENDIF, endifStart)
+                    || endifStart + ENDIF.length() > to) {
+                return -1;
+            }
+            addLiteral(segments, literalStart, open);
+            String variable = condition;
+            String expected = null;
+            String[] parts = condition.split("==", -1);
+            if (parts.length == 2) {
+                variable = parts[0].trim();
+                expected = unquote(parts[1].trim());
+            }
+            segments.add(new Conditional(variable, expected,
+                    parse(conditionEnd + 1, elseStart), parse(bodyStart, endifStart)));
+            return endifStart + ENDIF.length();
+        }
+
+        private static Segment function(String call, String raw) {
+            int paren = call.indexOf('(');
+            if (paren < 0 || !call.endsWith(")")) {
+                return new Literal(raw);
+            }
+            String name = call.substring(0, paren).trim().toLowerCase();
+            String argsText = call.substring(paren + 1, call.length() - 1).trim();
+            String[] args = argsText.isEmpty() ? new String[0] : argsText.split(",");
+            for (int i = 0; i < args.length; i++) {
+                args[i] = unquote(args[i].trim());
+            }
+            return new Function(name, args, raw);
+        }
+
+        private static String unquote(String value) {
+            int start = value.startsWith("\"") ? 1 : 0;
+            int end = value.length() > start && value.endsWith("\"") ? value.length() - 1 : value.length();
+            return value.substring(start, end);
+        }
+
+        private void addLiteral(List<Segment> segments, int from, int to) {
+            if (to > from) {
+                segments.add(new Literal(template.substring(from, to)));
+            }
+        }
+    }
+}
@@ -3,6 +3,10 @@ package com.afriserve.smsmanager.data.templates;
 import android.util.Log;
 import android.util.Patterns;
 
+import androidx.annotation.NonNull;
+
+import com.afriserve.smsmanager.data.utils.SmsSegmentCounter;
+
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -30,9 +34,6 @@ public class TemplateEngine {
     // Pattern for functions {{functionName(args)}}
     private static final Pattern FUNCTION_PATTERN = Pattern.compile("\\{\\{([^}]+)\\}\\}");
     
-    // Pattern for conditional blocks {?if condition}...{?else}...{?endif}
-    private static final Pattern CONDITIONAL_PATTERN = Pattern.compile("\\{\\?if\\s+([^}]+)\\}([^\\?]*)\\{\\?else\\}([^\\?]*)\\{\\?endif\\}");
-    
     // Built-in functions
     private final Map<String, TemplateFunction> functions;
     
@@ -51,18 +52,17 @@ public class TemplateEngine {
         }
         
         try {
-            String result = template;
-            
-            // Process conditionals first
-            result = processConditionals(result, data);
-            
-            // Process functions
-            result = processFunctions(result, data);
-            
-            // Process variables
-            result = processVariables(result, data);
-            
-            return result;
+            return CompiledTemplate.extended(template).render(new CompiledTemplate.Resolver() {
+                @Override
+                public String variable(@NonNull String name) {
+                    return getVariableValue(name, data);
+                }
+
+                @Override
+                public String function(@NonNull String name, @NonNull String[] args) {
+                    return executeFunction(name, args, data);
+                }
+            });
             
         } catch (Exception e) {
             Log.e(TAG, "Error processing template", e);
@@ -123,8 +123,9 @@ public class TemplateEngine {
         
         // Check for SMS length limits
         String processed = processTemplate(template, new HashMap<>());
-        if (processed.length() > 160) {
-            warnings.add("Processed message exceeds 160 characters (" + processed.length() + "). May be split into multiple SMS.");
+        int parts = SmsSegmentCounter.countParts(processed);
+        if (parts > 1) {
+            warnings.add("Processed message is " + processed.length() + " characters and will be sent as " + parts + " SMS.");
         }
         
         return new TemplateValidationResult(errors.isEmpty(), errors, warnings);
@@ -148,60 +149,6 @@ public class TemplateEngine {
         );
     }
     
-    /**
-     * Process template variables
-     */
-    private String processVariables(String template, Map<String, String> data) {
-        Matcher matcher = VARIABLE_PATTERN.matcher(template);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String variableName = matcher.group(1).trim();
-            String value = getVariableValue(variableName, data);
-            matcher.appendReplacement(result, Matcher.quoteReplacement(value));
-        }
-        
-        matcher.appendTail(result);
-        return result.toString();
-    }
-    
-    /**
-     * Process template functions
-     */
-    private String processFunctions(String template, Map<String, String> data) {
-        Matcher matcher = FUNCTION_PATTERN.matcher(template);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String functionCall = matcher.group(1).trim();
-            String value = processFunction(functionCall, data);
-            matcher.appendReplacement(result, Matcher.quoteReplacement(value));
-        }
-        
-        matcher.appendTail(result);
-        return result.toString();
-    }
-    
-    /**
-     * Process conditional blocks
-     */
-    private String processConditionals(String template, Map<String, String> data) {
-        Matcher matcher = CONDITIONAL_PATTERN.matcher(template);
-        StringBuffer result = new StringBuffer();
-        
-        while (matcher.find()) {
-            String condition = matcher.group(1).trim();
-            String ifContent = matcher.group(2);
-            String elseContent = matcher.group(3);
-            
-            String content = evaluateCondition(condition, data) ? ifContent : elseContent;
-            matcher.appendReplacement(result, Matcher.quoteReplacement(content));
-        }
-        
-        matcher.appendTail(result);
-        return result.toString();
-    }
-    
     /**
      * Get variable value with fallback
      */
@@ -232,57 +179,22 @@ public class TemplateEngine {
     }
     
     /**
-     * Process function call
+     * Execute a compiled function call; null keeps the call as written
      */
-    private String processFunction(String functionCall, Map<String, String> data) {
-        int parenIndex = functionCall.indexOf('(');
-        if (parenIndex == -1 || !functionCall.endsWith(")")) {
-            return "{{" + functionCall + "}}"; // Return original if invalid
-        }
-        
-        String functionName = functionCall.substring(0, parenIndex).trim();
-        String argsString = functionCall.substring(parenIndex + 1, functionCall.length() - 1).trim();
-        
-        TemplateFunction function = functions.get(functionName.toLowerCase());
+    private String executeFunction(String functionName, String[] args, Map<String, String> data) {
+        TemplateFunction function = functions.get(functionName);
         if (function == null) {
-            return "{{" + functionCall + "}}"; // Return original if function not found
-        }
-        
-        String[] args = argsString.isEmpty() ? new String[0] : argsString.split(",");
-        for (int i = 0; i < args.length; i++) {
-            args[i] = args[i].trim().replaceAll("^\"|\"$", ""); // Remove quotes
+            return null;
         }
         
         try {
             return function.execute(args, data);
         } catch (Exception e) {
             Log.e(TAG, "Error executing function: " + functionName, e);
-            return "{{" + functionCall + "}}";
+            return null;
         }
     }
     
-    /**
-     * Evaluate condition
-     */
-    private boolean evaluateCondition(String condition, Map<String, String> data) {
-        condition = condition.trim();
-        
-        // Simple equality check: variable == "value"
-        if (condition.contains("==")) {
-            String[] parts = condition.split("==");
-            if (parts.length == 2) {
-                String variable = parts[0].trim();
-                String expectedValue = parts[1].trim().replaceAll("^\"|\"$", "");
-                String actualValue = getVariableValue(variable, data);
-                return expectedValue.equals(actualValue);
-            }
-        }
-        
-        // Check if variable exists and is not empty
-        String value = getVariableValue(condition, data);
-        return value != null && !value.isEmpty() && !value.equals("{" + condition + "}");
-    }
-    
     /**
      * Initialize built-in functions
      */
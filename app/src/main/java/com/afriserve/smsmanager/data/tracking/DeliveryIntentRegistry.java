@@ -0,0 +1,194 @@
+package com.afriserve.smsmanager.data.tracking;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.data.dao.DeliveryIntentDao;
+import com.afriserve.smsmanager.data.entity.DeliveryIntentEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request-code allocator and lookup for delivery PendingIntents.
+ *
+ * Codes are handed out from blocks whose upper bound is committed to SharedPreferences before the
+ * first code of the block is used, so a restarted process never reissues a code that an
+ * outstanding PendingIntent from the previous process still holds. Reusing one would let
+ * FLAG_UPDATE_CURRENT rewrite that intent's extras and attribute its report to the new message.
+ * The code-to-message mapping itself is written to delivery_intents by the tracker before the
+ * intents are handed to SmsManager; answered intents are removed by the status queue.
+ *
+ * Multipart messages get one sent and one delivered intent per part. The registry doubles as
+ * the part aggregator: a message is complete for a kind once none of its parts of that kind
+ * is outstanding.
+ */
+final class DeliveryIntentRegistry {
+
+    private static final String PREFS_NAME = "delivery_intent_registry";
+    private static final String KEY_BLOCK_END = "request_code_block_end";
+    static final int FIRST_REQUEST_CODE = 1000;
+    static final int BLOCK_SIZE = 1024;
+
+    // Delivery reports stop arriving once the SMSC validity period has passed
+    static final long INTENT_TTL_MS = TimeUnit.DAYS.toMillis(7);
+
+    private final SharedPreferences prefs;
+    private final Map<Integer, DeliveryIntentEntity> pending = new ConcurrentHashMap<>();
+    // Outstanding request codes per message, guarded by this
+    private final Map<Long, Set<Integer>> bySms = new HashMap<>();
+
+    // Guarded by this
+    private int nextCode;
+    private int blockEnd;
+
+    DeliveryIntentRegistry(@NonNull Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Allocate a request code that no outstanding intent holds.
+     */
+    synchronized int nextRequestCode() {
+        while (true) {
+            if (nextCode >= blockEnd) {
+                reserveBlock();
+            }
+            int code = nextCode++;
+            if (!pending.containsKey(code)) {
+                return code;
+            }
+        }
+    }
+
+    private void reserveBlock() {
+        int start = prefs.getInt(KEY_BLOCK_END, FIRST_REQUEST_CODE);
+        if (start < FIRST_REQUEST_CODE || start > Integer.MAX_VALUE - BLOCK_SIZE) {
+            start = FIRST_REQUEST_CODE;
+        }
+        // commit(), not apply(): the bound must be on disk before any code from it is handed out
+        prefs.edit().putInt(KEY_BLOCK_END, start + BLOCK_SIZE).commit();
+        nextCode = start;
+        blockEnd = start + BLOCK_SIZE;
+    }
+
+    @NonNull
+    DeliveryIntentEntity register(int requestCode, long smsId, @NonNull String kind, int partIndex, int partCount) {
+        DeliveryIntentEntity intent = new DeliveryIntentEntity(requestCode, smsId, kind, System.currentTimeMillis());
+        intent.partIndex = partIndex;
+        intent.partCount = partCount;
+        add(intent);
+        return intent;
+    }
+
+    /**
+     * The outstanding intent for a request code, or null if it was answered, released or expired.
+     */
+    @Nullable
+    DeliveryIntentEntity get(int requestCode) {
+        return pending.get(requestCode);
+    }
+
+    /**
+     * Message id a request code was issued for, or null if it is not outstanding.
+     */
+    @Nullable
+    Long resolve(int requestCode) {
+        DeliveryIntentEntity intent = pending.get(requestCode);
+        return intent != null ? intent.smsId : null;
+    }
+
+    synchronized void release(int requestCode) {
+        DeliveryIntentEntity intent = pending.remove(requestCode);
+        if (intent == null) {
+            return;
+        }
+        Set<Integer> codes = bySms.get(intent.smsId);
+        if (codes != null) {
+            codes.remove(requestCode);
+            if (codes.isEmpty()) {
+                bySms.remove(intent.smsId);
+            }
+        }
+    }
+
+    /**
+     * Whether any part of a message still awaits a callback of the given kind.
+     */
+    synchronized boolean hasOutstanding(long smsId, @NonNull String kind) {
+        Set<Integer> codes = bySms.get(smsId);
+        if (codes == null) {
+            return false;
+        }
+        for (int code : codes) {
+            DeliveryIntentEntity intent = pending.get(code);
+            if (intent != null && kind.equals(intent.kind)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Release every outstanding intent of a message of the given kind, or of any kind when kind
+     * is null, e.g. once one failed part has settled the whole message.
+     *
+     * @return the released request codes
+     */
+    @NonNull
+    synchronized List<Integer> releaseAll(long smsId, @Nullable String kind) {
+        List<Integer> released = new ArrayList<>();
+        Set<Integer> codes = bySms.get(smsId);
+        if (codes == null) {
+            return released;
+        }
+        for (int code : new ArrayList<>(codes)) {
+            DeliveryIntentEntity intent = pending.get(code);
+            if (intent != null && (kind == null || kind.equals(intent.kind))) {
+                release(code);
+                released.add(code);
+            }
+        }
+        return released;
+    }
+
+    private synchronized boolean add(DeliveryIntentEntity intent) {
+        if (pending.putIfAbsent(intent.requestCode, intent) != null) {
+            return false;
+        }
+        Set<Integer> codes = bySms.get(intent.smsId);
+        if (codes == null) {
+            codes = new HashSet<>();
+            bySms.put(intent.smsId, codes);
+        }
+        codes.add(intent.requestCode);
+        return true;
+    }
+
+    /**
+     * Reload intents persisted by an earlier process, dropping expired ones. Runs on a
+     * background thread. Parts whose rows are gone already reported success, so per-part
+     * aggregation picks up where the earlier process stopped.
+     *
+     * @return the number of messages still awaiting a sent callback
+     */
+    int restore(@NonNull DeliveryIntentDao dao) {
+        dao.deleteOlderThan(System.currentTimeMillis() - INTENT_TTL_MS);
+        Set<Long> awaitingSent = new HashSet<>();
+        for (DeliveryIntentEntity intent : dao.getAllSync()) {
+            if (add(intent) && DeliveryIntentEntity.KIND_SENT.equals(intent.kind)) {
+                awaitingSent.add(intent.smsId);
+            }
+        }
+        return awaitingSent.size();
+    }
+}
@@ -0,0 +1,308 @@
+package com.afriserve.smsmanager.data.tracking;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.afriserve.smsmanager.AppDatabase;
+import com.afriserve.smsmanager.data.dao.CampaignDao;
+import com.afriserve.smsmanager.data.dao.DeliveryIntentDao;
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for the delivery tracker.
+ * Sent/delivered outcomes are collected for a short window and written in one Room
+ * transaction: the affected rows are read once, status transitions are applied, answered
+ * intents leave the registry and campaign counters move by their aggregated deltas.
+ * A batch whose transaction fails is put back ahead of newer work and retried with backoff.
+ *
+ * Callers that must not let go of their work before it is on disk, such as a broadcast held
+ * with goAsync(), pass a callback to afterCommit(); it runs once the batch holding everything
+ * queued so far has committed.
+ */
+final class DeliveryStatusQueue {
+
+    private static final String TAG = "DeliveryStatusQueue";
+    static final long DEFAULT_WINDOW_MS = 200L;
+    static final int MAX_BATCH = 200;
+    static final long MAX_RETRY_DELAY_MS = 30_000L;
+
+    /**
+     * One sent or delivered broadcast.
+     */
+    static final class StatusUpdate {
+        final long smsId;
+        final int requestCode;
+        final boolean delivery;
+        final boolean success;
+        final int resultCode;
+        final String resultLabel;
+        final long timestamp;
+
+        StatusUpdate(long smsId, int requestCode, boolean delivery, boolean success, int resultCode,
+                     @NonNull String resultLabel, long timestamp) {
+            this.smsId = smsId;
+            this.requestCode = requestCode;
+            this.delivery = delivery;
+            this.success = success;
+            this.resultCode = resultCode;
+            this.resultLabel = resultLabel;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private final AppDatabase database;
+    private final SmsDao smsDao;
+    private final CampaignDao campaignDao;
+    private final DeliveryIntentDao deliveryIntentDao;
+    private final long windowMs;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private List<StatusUpdate> pendingUpdates = new ArrayList<>();
+    private List<Integer> pendingReleases = new ArrayList<>();
+    private List<Runnable> pendingCallbacks = new ArrayList<>();
+    private boolean scheduled;
+    private int failedFlushes;
+
+    DeliveryStatusQueue(AppDatabase database, SmsDao smsDao, CampaignDao campaignDao,
+                        DeliveryIntentDao deliveryIntentDao, long windowMs) {
+        this.database = database;
+        this.smsDao = smsDao;
+        this.campaignDao = campaignDao;
+        this.deliveryIntentDao = deliveryIntentDao;
+        this.windowMs = windowMs;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "delivery-status-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    void submit(@NonNull StatusUpdate update) {
+        synchronized (lock) {
+            pendingUpdates.add(update);
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * Drop a registered intent whose broadcast will never come, e.g. the delivery intent of a
+     * message that failed to send.
+     */
+    void release(int requestCode) {
+        synchronized (lock) {
+            pendingReleases.add(requestCode);
+            scheduleLocked();
+        }
+    }
+
+    /**
+     * Run callback once everything queued so far has been committed. While the database is
+     * failing and flushes are backing off it runs at once instead: the work stays queued for
+     * the retry, but a held broadcast cannot wait that long.
+     */
+    void afterCommit(@NonNull Runnable callback) {
+        synchronized (lock) {
+            if (failedFlushes == 0) {
+                pendingCallbacks.add(callback);
+                if (pendingUpdates.isEmpty() && pendingReleases.isEmpty()) {
+                    // Nothing to batch; only wait for a flush that may already be running
+                    executor.execute(this::flush);
+                } else {
+                    scheduleLocked();
+                }
+                return;
+            }
+        }
+        runCallbacks(Collections.singletonList(callback));
+    }
+
+    /**
+     * Run a task on the flush thread, after anything already queued there.
+     */
+    void execute(@NonNull Runnable task) {
+        executor.execute(task);
+    }
+
+    private void scheduleLocked() {
+        if (failedFlushes > 0) {
+            // A retry is already scheduled; don't hammer a failing database
+            return;
+        }
+        if (pendingUpdates.size() + pendingReleases.size() >= MAX_BATCH) {
+            executor.execute(this::flush);
+        } else if (!scheduled) {
+            scheduled = true;
+            executor.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        List<StatusUpdate> updates;
+        List<Integer> releases;
+        List<Runnable> callbacks;
+        synchronized (lock) {
+            scheduled = false;
+            updates = pendingUpdates;
+            releases = pendingReleases;
+            callbacks = pendingCallbacks;
+            pendingUpdates = new ArrayList<>();
+            pendingReleases = new ArrayList<>();
+            pendingCallbacks = new ArrayList<>();
+        }
+        if (updates.isEmpty() && releases.isEmpty()) {
+            // Whatever the callbacks waited for was committed by an earlier flush
+            runCallbacks(callbacks);
+            return;
+        }
+
+        try {
+            database.runInTransaction(() -> writeBatch(updates, releases));
+            Log.d(TAG, "Flushed " + updates.size() + " status updates, " + releases.size() + " releases");
+        } catch (Exception e) {
+            long delay;
+            synchronized (lock) {
+                requeueLocked(updates, releases);
+                failedFlushes++;
+                delay = Math.min(MAX_RETRY_DELAY_MS, Math.max(windowMs, 100L) << Math.min(failedFlushes, 16));
+            }
+            Log.e(TAG, "Failed to flush " + updates.size() + " delivery status updates, retrying in "
+                    + delay + "ms", e);
+            executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+            // See afterCommit: the batch is kept for the retry, the callers are let go
+            runCallbacks(callbacks);
+            return;
+        }
+        runCallbacks(callbacks);
+
+        synchronized (lock) {
+            if (failedFlushes > 0) {
+                failedFlushes = 0;
+                // Work that arrived while backing off was left for the retry
+                if (!pendingUpdates.isEmpty() || !pendingReleases.isEmpty() || !pendingCallbacks.isEmpty()) {
+                    scheduleLocked();
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a failed batch back ahead of anything queued since, so it is written first.
+     * The transaction rolled back as a whole, so nothing in it was applied.
+     */
+    private void requeueLocked(List<StatusUpdate> updates, List<Integer> releases) {
+        updates.addAll(pendingUpdates);
+        releases.addAll(pendingReleases);
+        pendingUpdates = updates;
+        pendingReleases = releases;
+    }
+
+    private static void runCallbacks(List<Runnable> callbacks) {
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (Exception e) {
+                Log.w(TAG, "Commit callback failed", e);
+            }
+        }
+    }
+
+    private void writeBatch(List<StatusUpdate> updates, List<Integer> releases) {
+        List<Integer> answered = new ArrayList<>(releases);
+        if (updates.isEmpty()) {
+            if (!answered.isEmpty()) {
+                deliveryIntentDao.deleteByRequestCodes(answered);
+            }
+            return;
+        }
+
+        Set<Long> ids = new LinkedHashSet<>();
+        for (StatusUpdate update : updates) {
+            ids.add(update.smsId);
+            if (update.requestCode > 0) {
+                answered.add(update.requestCode);
+            }
+        }
+        Map<Long, SmsEntity> rows = new HashMap<>();
+        for (SmsEntity sms : smsDao.getSmsByIdsSync(new ArrayList<>(ids))) {
+            rows.put(sms.id, sms);
+        }
+
+        // campaignId -> {delivered, failed}
+        Map<Long, int[]> campaignDeltas = new HashMap<>();
+        for (StatusUpdate update : updates) {
+            SmsEntity sms = rows.get(update.smsId);
+            if (sms == null) {
+                continue;
+            }
+            String previous = sms.status;
+            if (update.delivery) {
+                applyDelivered(sms, update);
+                if (update.success && !"DELIVERED".equals(previous)) {
+                    campaignDelta(campaignDeltas, sms.campaignId)[0]++;
+                }
+            } else if (applySent(sms, update) && !update.success && !"FAILED".equals(previous)) {
+                campaignDelta(campaignDeltas, sms.campaignId)[1]++;
+            }
+        }
+
+        if (!answered.isEmpty()) {
+            deliveryIntentDao.deleteByRequestCodes(answered);
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, int[]> entry : campaignDeltas.entrySet()) {
+            campaignDao.applyDeliveryDeltas(entry.getKey(), entry.getValue()[0], entry.getValue()[1], now);
+        }
+    }
+
+    /**
+     * Apply a sent outcome unless a delivery report already settled the message.
+     */
+    private boolean applySent(SmsEntity sms, StatusUpdate update) {
+        if ("DELIVERED".equals(sms.status) || "DELIVERY_FAILED".equals(sms.status)) {
+            return false;
+        }
+        sms.status = update.success ? "SENT" : "FAILED";
+        sms.sentAt = update.timestamp;
+        sms.errorCode = update.success ? null : "SEND_ERROR_" + update.resultCode;
+        sms.errorMessage = update.success ? null : "Send failed: " + update.resultLabel;
+        smsDao.updateStatusWithSentAt(sms.id, sms.status, update.timestamp, sms.errorCode, sms.errorMessage);
+        return true;
+    }
+
+    private void applyDelivered(SmsEntity sms, StatusUpdate update) {
+        sms.status = update.success ? "DELIVERED" : "DELIVERY_FAILED";
+        sms.deliveredAt = update.timestamp;
+        sms.errorCode = update.success ? null : "DELIVERY_ERROR_" + update.resultCode;
+        sms.errorMessage = update.success ? null : "Delivery failed: " + update.resultLabel;
+        smsDao.updateStatusWithDeliveredAt(sms.id, sms.status, update.timestamp, sms.errorCode, sms.errorMessage);
+    }
+
+    private static int[] campaignDelta(Map<Long, int[]> deltas, @Nullable Long campaignId) {
+        if (campaignId == null || campaignId <= 0) {
+            return new int[2];
+        }
+        int[] delta = deltas.get(campaignId);
+        if (delta == null) {
+            delta = new int[2];
+            deltas.put(campaignId, delta);
+        }
+        return delta;
+    }
+}
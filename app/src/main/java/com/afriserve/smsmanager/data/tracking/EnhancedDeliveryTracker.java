@@ -1,24 +1,29 @@
 package com.afriserve.smsmanager.data.tracking;
 
 import android.app.PendingIntent;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.Looper;
 import android.telephony.SmsManager;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.content.ContextCompat;
+import com.afriserve.smsmanager.AppDatabase;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.dao.CampaignDao;
+import com.afriserve.smsmanager.data.dao.DeliveryIntentDao;
+import com.afriserve.smsmanager.data.entity.DeliveryIntentEntity;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
 import com.afriserve.smsmanager.data.queue.SmsQueueManager;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
@@ -27,7 +32,11 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 
 /**
  * Enhanced Delivery Tracker with comprehensive SMS delivery tracking
- * Handles sent, delivered, and failed events with automatic retry logic
+ * Handles sent, delivered, and failed events with automatic retry logic.
+ * Outstanding intents are kept in a persistent registry so reports stay attributable across
+ * process restarts, and status changes are written in batches by DeliveryStatusQueue.
+ * Sent and delivered broadcasts arrive through the manifest-declared SmsDeliveryReceiver, which
+ * also starts the process when it died while messages were in flight.
  */
 @Singleton
 public class EnhancedDeliveryTracker {
@@ -41,129 +50,239 @@ public class EnhancedDeliveryTracker {
     private static final String EXTRA_SMS_ID = "sms_id";
     private static final String EXTRA_RETRY_COUNT = "retry_count";
     private static final String EXTRA_TIMESTAMP = "timestamp";
+    private static final String EXTRA_REQUEST_CODE = "request_code";
+    private static final String EXTRA_DELIVERED_REQUEST_CODE = "delivered_request_code";
+    private static final String EXTRA_PART_INDEX = "part_index";
+    private static final String EXTRA_PART_COUNT = "part_count";
 
     private final Context context;
     private final SmsDao smsDao;
     private final Provider<SmsQueueManager> queueManagerProvider;
     private final CampaignDao campaignDao;
+    private final DeliveryIntentDao deliveryIntentDao;
     private final Handler mainHandler;
-    private final AtomicInteger requestCodeGenerator = new AtomicInteger(1000);
 
-    // Tracking maps for pending intents
-    private final Map<Integer, Long> pendingSentIntents = new ConcurrentHashMap<>();
-    private final Map<Integer, Long> pendingDeliveredIntents = new ConcurrentHashMap<>();
+    // Outstanding intents and the batched writer for their outcomes
+    private final DeliveryIntentRegistry registry;
+    private final DeliveryStatusQueue statusQueue;
 
     // Delivery statistics
     private final AtomicInteger sentCount = new AtomicInteger(0);
     private final AtomicInteger deliveredCount = new AtomicInteger(0);
     private final AtomicInteger failedCount = new AtomicInteger(0);
     private final AtomicInteger pendingCount = new AtomicInteger(0);
+    private final AtomicLong deliveryLatencyTotalMs = new AtomicLong(0);
+    private final AtomicInteger deliveryLatencySamples = new AtomicInteger(0);
+
+    // Carriers without delivery reports never answer a delivered intent, so part send times are
+    // dropped oldest first past this many, or once as old as the registry's intent TTL
+    private static final int MAX_PART_SENT_AT = 4096;
+
+    // When each part's sent callback arrived, keyed by that part's delivered request code
+    private final Map<Integer, Long> partSentAt = Collections.synchronizedMap(
+            new LinkedHashMap<Integer, Long>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+                    return size() > MAX_PART_SENT_AT
+                            || eldest.getValue() < System.currentTimeMillis() - DeliveryIntentRegistry.INTENT_TTL_MS;
+                }
+            });
 
-    // Broadcast receivers
-    private final BroadcastReceiver sentReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            handleSmsSent(intent);
-        }
-    };
-
-    private final BroadcastReceiver deliveredReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            handleSmsDelivered(intent);
-        }
-    };
-
-    private boolean isRegistered = false;
+    // Released once restore() has run; until then a missing registry entry is not proof that
+    // a part was already settled
+    private final CountDownLatch restored = new CountDownLatch(1);
 
     @Inject
-    public EnhancedDeliveryTracker(@dagger.hilt.android.qualifiers.ApplicationContext Context context, SmsDao smsDao,
+    public EnhancedDeliveryTracker(@dagger.hilt.android.qualifiers.ApplicationContext Context context,
+            AppDatabase database, SmsDao smsDao,
             CampaignDao campaignDao,
+            DeliveryIntentDao deliveryIntentDao,
             Provider<SmsQueueManager> queueManagerProvider) {
         this.context = context;
         this.smsDao = smsDao;
         this.campaignDao = campaignDao;
+        this.deliveryIntentDao = deliveryIntentDao;
         this.queueManagerProvider = queueManagerProvider;
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.registry = new DeliveryIntentRegistry(context);
+        this.statusQueue = new DeliveryStatusQueue(database, smsDao, campaignDao, deliveryIntentDao,
+                DeliveryStatusQueue.DEFAULT_WINDOW_MS);
 
-        registerReceivers();
+        // Runs on the flush thread ahead of any write from this process
+        statusQueue.execute(() -> {
+            try {
+                int awaitingSent = registry.restore(deliveryIntentDao);
+                pendingCount.addAndGet(awaitingSent);
+                Log.d(TAG, "Restored delivery intents, " + awaitingSent + " awaiting sent callback");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to restore delivery intents", e);
+            } finally {
+                restored.countDown();
+            }
+        });
     }
 
     /**
-     * Create delivery tracking intents for SMS
+     * Whether intent is a sent or delivered callback issued by createDeliveryIntents.
      */
-    @NonNull
-    public DeliveryIntents createDeliveryIntents(@NonNull String smsId) {
-        int requestCode = requestCodeGenerator.incrementAndGet();
+    public static boolean isTrackerIntent(@Nullable Intent intent) {
+        return intent != null && intent.hasExtra(EXTRA_REQUEST_CODE)
+                && (SMS_SENT_ACTION.equals(intent.getAction()) || SMS_DELIVERED_ACTION.equals(intent.getAction()));
+    }
 
-        // Create sent intent
-        Intent sentIntent = new Intent(SMS_SENT_ACTION);
-        sentIntent.setPackage(context.getPackageName());
-        sentIntent.putExtra(EXTRA_SMS_ID, smsId);
-        sentIntent.putExtra(EXTRA_TIMESTAMP, System.currentTimeMillis());
+    /**
+     * Handle a sent or delivered callback with the result code of its broadcast. Callbacks that
+     * arrive while the registry is still being restored are queued behind the restore on the
+     * status queue's thread. onHandled runs once the status change the callback caused has been
+     * committed, so a receiver can hold its broadcast until then.
+     */
+    public void onStatusBroadcast(@NonNull Intent intent, int resultCode, @Nullable Runnable onHandled) {
+        if (restored.getCount() == 0) {
+            dispatchStatusBroadcast(intent, resultCode, onHandled);
+        } else {
+            statusQueue.execute(() -> dispatchStatusBroadcast(intent, resultCode, onHandled));
+        }
+    }
 
-        PendingIntent sentPendingIntent = PendingIntent.getBroadcast(
-                context, requestCode, sentIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    private void dispatchStatusBroadcast(@NonNull Intent intent, int resultCode, @Nullable Runnable onHandled) {
+        try {
+            if (SMS_SENT_ACTION.equals(intent.getAction())) {
+                handleSmsSent(intent, resultCode);
+            } else if (SMS_DELIVERED_ACTION.equals(intent.getAction())) {
+                handleSmsDelivered(intent, resultCode);
+            }
+        } finally {
+            if (onHandled != null) {
+                statusQueue.afterCommit(onHandled);
+            }
+        }
+    }
 
-        // Create delivered intent
-        Intent deliveredIntent = new Intent(SMS_DELIVERED_ACTION);
-        deliveredIntent.setPackage(context.getPackageName());
-        deliveredIntent.putExtra(EXTRA_SMS_ID, smsId);
-        deliveredIntent.putExtra(EXTRA_TIMESTAMP, System.currentTimeMillis());
+    /**
+     * Create delivery tracking intents for SMS
+     */
+    @NonNull
+    public DeliveryIntents createDeliveryIntents(@NonNull String smsId) {
+        return createDeliveryIntents(smsId, 1);
+    }
 
-        int deliveredRequestCode = requestCodeGenerator.incrementAndGet();
-        PendingIntent deliveredPendingIntent = PendingIntent.getBroadcast(
-                context, deliveredRequestCode, deliveredIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    /**
+     * Create one sent and one delivered intent per part of a message. The message is marked SENT
+     * or DELIVERED once every part has reported; the first failed part fails the whole message.
+     * The registry rows are written before returning, so call off the main thread.
+     */
+    @NonNull
+    public DeliveryIntents createDeliveryIntents(@NonNull String smsId, int partCount) {
+        long id = Long.parseLong(smsId);
+        int parts = Math.max(1, partCount);
+        long now = System.currentTimeMillis();
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts);
+        ArrayList<PendingIntent> deliveredIntents = new ArrayList<>(parts);
+        List<DeliveryIntentEntity> registrations = new ArrayList<>(parts * 2);
+
+        for (int part = 0; part < parts; part++) {
+            int requestCode = registry.nextRequestCode();
+            int deliveredRequestCode = registry.nextRequestCode();
+
+            // Create sent intent
+            Intent sentIntent = new Intent(SMS_SENT_ACTION);
+            sentIntent.setPackage(context.getPackageName());
+            sentIntent.putExtra(EXTRA_SMS_ID, smsId);
+            sentIntent.putExtra(EXTRA_REQUEST_CODE, requestCode);
+            sentIntent.putExtra(EXTRA_DELIVERED_REQUEST_CODE, deliveredRequestCode);
+            sentIntent.putExtra(EXTRA_PART_INDEX, part);
+            sentIntent.putExtra(EXTRA_PART_COUNT, parts);
+            sentIntent.putExtra(EXTRA_TIMESTAMP, now);
+
+            sentIntents.add(PendingIntent.getBroadcast(
+                    context, requestCode, sentIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+
+            // Create delivered intent
+            Intent deliveredIntent = new Intent(SMS_DELIVERED_ACTION);
+            deliveredIntent.setPackage(context.getPackageName());
+            deliveredIntent.putExtra(EXTRA_SMS_ID, smsId);
+            deliveredIntent.putExtra(EXTRA_REQUEST_CODE, deliveredRequestCode);
+            deliveredIntent.putExtra(EXTRA_PART_INDEX, part);
+            deliveredIntent.putExtra(EXTRA_PART_COUNT, parts);
+            deliveredIntent.putExtra(EXTRA_TIMESTAMP, now);
+
+            deliveredIntents.add(PendingIntent.getBroadcast(
+                    context, deliveredRequestCode, deliveredIntent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+
+            // Track pending intents
+            registrations.add(registry.register(requestCode, id, DeliveryIntentEntity.KIND_SENT, part, parts));
+            registrations.add(registry.register(deliveredRequestCode, id, DeliveryIntentEntity.KIND_DELIVERED, part, parts));
+        }
 
-        // Track pending intents
-        pendingSentIntents.put(requestCode, Long.parseLong(smsId));
-        pendingDeliveredIntents.put(deliveredRequestCode, Long.parseLong(smsId));
+        try {
+            // On disk before SmsManager holds the intents: a callback that reaches a restarted
+            // process must find its entry, or the message's remaining parts would be ignored
+            deliveryIntentDao.insertAll(registrations);
+        } catch (RuntimeException e) {
+            for (DeliveryIntentEntity registration : registrations) {
+                registry.release(registration.requestCode);
+            }
+            throw e;
+        }
 
         pendingCount.incrementAndGet();
 
-        Log.d(TAG, "Created delivery intents for SMS ID: " + smsId);
+        Log.d(TAG, "Created delivery intents for SMS ID: " + smsId + " (" + parts + " parts)");
 
-        return new DeliveryIntents(sentPendingIntent, deliveredPendingIntent);
+        return new DeliveryIntents(sentIntents, deliveredIntents);
     }
 
     /**
      * Handle SMS sent event
      */
-    private void handleSmsSent(@NonNull Intent intent) {
+    private void handleSmsSent(@NonNull Intent intent, int resultCode) {
         try {
-            String smsIdStr = intent.getStringExtra(EXTRA_SMS_ID);
+            int requestCode = intent.getIntExtra(EXTRA_REQUEST_CODE, -1);
+            int partCount = intent.getIntExtra(EXTRA_PART_COUNT, 1);
             long timestamp = intent.getLongExtra(EXTRA_TIMESTAMP, 0);
+            Long smsId = resolveSmsId(intent, requestCode);
 
-            if (smsIdStr == null) {
+            if (smsId == null) {
                 Log.w(TAG, "Received sent intent without SMS ID");
                 return;
             }
+            if (partCount > 1 && registry.get(requestCode) == null) {
+                // The message was already settled by another part, or the intent expired
+                Log.d(TAG, "Ignoring sent callback for settled SMS ID: " + smsId);
+                return;
+            }
 
-            long smsId = Long.parseLong(smsIdStr);
-            // Result code from SmsManager callback - assume success if intent received
-            int resultCode = android.app.Activity.RESULT_OK;
-
-            Log.d(TAG, "SMS sent event - ID: " + smsId + ", Result: " + getResultCodeString(resultCode));
+            Log.d(TAG, "SMS sent event - ID: " + smsId + ", part " + (intent.getIntExtra(EXTRA_PART_INDEX, 0) + 1)
+                    + "/" + partCount + ", Result: " + getResultCodeString(resultCode));
 
-            // Update SMS entity based on result
-            updateSmsSentStatus(smsId, resultCode, timestamp);
+            boolean success = resultCode == android.app.Activity.RESULT_OK;
+            registry.release(requestCode);
 
-            // Update statistics
-            if (resultCode == android.app.Activity.RESULT_OK) {
+            if (success) {
+                int deliveredRequestCode = intent.getIntExtra(EXTRA_DELIVERED_REQUEST_CODE, -1);
+                if (deliveredRequestCode > 0) {
+                    partSentAt.put(deliveredRequestCode, System.currentTimeMillis());
+                }
+                if (registry.hasOutstanding(smsId, DeliveryIntentEntity.KIND_SENT)) {
+                    // Other parts are still in flight
+                    statusQueue.release(requestCode);
+                    return;
+                }
                 sentCount.incrementAndGet();
             } else {
                 failedCount.incrementAndGet();
+                // A message with a failed part never arrives whole, so no part will get a delivery report
+                releaseRemaining(smsId, null);
                 // Enqueue for retry if sending failed
                 enqueueForRetry(smsId, "Send failed: " + getResultCodeString(resultCode));
             }
 
+            statusQueue.submit(new DeliveryStatusQueue.StatusUpdate(smsId, requestCode, false, success,
+                    resultCode, getResultCodeString(resultCode), timestamp));
             pendingCount.decrementAndGet();
 
-            // Clean up tracking
-            cleanupPendingIntents(smsId);
-
         } catch (Exception e) {
             Log.e(TAG, "Error handling SMS sent event", e);
         }
@@ -172,35 +291,50 @@ public class EnhancedDeliveryTracker {
     /**
      * Handle SMS delivered event
      */
-    private void handleSmsDelivered(@NonNull Intent intent) {
+    private void handleSmsDelivered(@NonNull Intent intent, int resultCode) {
         try {
-            String smsIdStr = intent.getStringExtra(EXTRA_SMS_ID);
+            int requestCode = intent.getIntExtra(EXTRA_REQUEST_CODE, -1);
+            int partCount = intent.getIntExtra(EXTRA_PART_COUNT, 1);
             long timestamp = intent.getLongExtra(EXTRA_TIMESTAMP, 0);
+            Long smsId = resolveSmsId(intent, requestCode);
 
-            if (smsIdStr == null) {
+            if (smsId == null) {
                 Log.w(TAG, "Received delivered intent without SMS ID");
                 return;
             }
+            if (partCount > 1 && registry.get(requestCode) == null) {
+                Log.d(TAG, "Ignoring delivery report for settled SMS ID: " + smsId);
+                return;
+            }
 
-            long smsId = Long.parseLong(smsIdStr);
-            // Result code from delivery callback - assume success if intent received
-            int resultCode = android.app.Activity.RESULT_OK;
-
-            Log.d(TAG, "SMS delivered event - ID: " + smsId + ", Result: " + getResultCodeString(resultCode));
+            Log.d(TAG, "SMS delivered event - ID: " + smsId + ", part " + (intent.getIntExtra(EXTRA_PART_INDEX, 0) + 1)
+                    + "/" + partCount + ", Result: " + getResultCodeString(resultCode));
 
-            // Update SMS entity
-            updateSmsDeliveredStatus(smsId, resultCode, timestamp);
+            boolean success = resultCode == android.app.Activity.RESULT_OK;
+            registry.release(requestCode);
+            Long sentAt = partSentAt.remove(requestCode);
 
-            // Update statistics
-            if (resultCode == android.app.Activity.RESULT_OK) {
+            if (success) {
+                // Latency is per part: each part is routed and acknowledged separately
+                long now = System.currentTimeMillis();
+                long since = sentAt != null ? sentAt : timestamp;
+                if (since > 0 && now >= since) {
+                    deliveryLatencyTotalMs.addAndGet(now - since);
+                    deliveryLatencySamples.incrementAndGet();
+                }
+                if (registry.hasOutstanding(smsId, DeliveryIntentEntity.KIND_DELIVERED)) {
+                    statusQueue.release(requestCode);
+                    return;
+                }
                 deliveredCount.incrementAndGet();
             } else {
                 // Delivery failed but SMS was sent - no retry needed for delivery failure
                 Log.w(TAG, "SMS delivery failed for ID: " + smsId);
+                releaseRemaining(smsId, DeliveryIntentEntity.KIND_DELIVERED);
             }
 
-            // Clean up tracking
-            pendingDeliveredIntents.entrySet().removeIf(entry -> entry.getValue().equals(smsId));
+            statusQueue.submit(new DeliveryStatusQueue.StatusUpdate(smsId, requestCode, true, success,
+                    resultCode, getResultCodeString(resultCode), timestamp));
 
         } catch (Exception e) {
             Log.e(TAG, "Error handling SMS delivered event", e);
@@ -208,87 +342,28 @@ public class EnhancedDeliveryTracker {
     }
 
     /**
-     * Update SMS entity after send attempt
+     * Drop the outstanding intents of a settled message so later part callbacks are ignored.
      */
-    private void updateSmsSentStatus(long smsId, int resultCode, long timestamp) {
-        Completable.fromAction(() -> {
-            try {
-                SmsEntity smsEntity = smsDao.getSmsById(smsId).blockingGet();
-                if (smsEntity != null) {
-                    String previousStatus = smsEntity.status;
-                    Long campaignId = smsEntity.campaignId;
-                    smsEntity.sentAt = timestamp;
-
-                    if (resultCode == android.app.Activity.RESULT_OK) {
-                        smsEntity.status = "SENT";
-                        smsEntity.errorMessage = null;
-                        smsEntity.errorCode = null;
-                    } else {
-                        smsEntity.status = "FAILED";
-                        smsEntity.errorMessage = "Send failed: " + getResultCodeString(resultCode);
-                        smsEntity.errorCode = "SEND_ERROR_" + resultCode;
-                    }
-
-                    smsDao.updateSms(smsEntity).blockingAwait();
-                    if (campaignId != null && campaignId > 0 && resultCode != android.app.Activity.RESULT_OK
-                            && (previousStatus == null || !"FAILED".equals(previousStatus))) {
-                        try {
-                            campaignDao.incrementFailedCount(campaignId).blockingAwait();
-                        } catch (Exception e) {
-                            Log.w(TAG, "Failed to update campaign failed count", e);
-                        }
-                    }
-                    Log.d(TAG, "Updated SMS sent status: " + smsId + " -> " + smsEntity.status);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error updating SMS sent status", e);
-            }
-        }).subscribeOn(Schedulers.io())
-                .subscribe(
-                        () -> Log.d(TAG, "SMS sent status updated successfully"),
-                        error -> Log.e(TAG, "Failed to update SMS sent status", error));
+    private void releaseRemaining(long smsId, @Nullable String kind) {
+        List<Integer> released = registry.releaseAll(smsId, kind);
+        for (int code : released) {
+            partSentAt.remove(code);
+            statusQueue.release(code);
+        }
     }
 
     /**
-     * Update SMS entity after delivery attempt
+     * Message a broadcast belongs to: the registry entry for its request code, falling back to
+     * the id carried in the intent for intents issued before the registry existed.
      */
-    private void updateSmsDeliveredStatus(long smsId, int resultCode, long timestamp) {
-        Completable.fromAction(() -> {
-            try {
-                SmsEntity smsEntity = smsDao.getSmsById(smsId).blockingGet();
-                if (smsEntity != null) {
-                    String previousStatus = smsEntity.status;
-                    Long campaignId = smsEntity.campaignId;
-                    smsEntity.deliveredAt = timestamp;
-
-                    if (resultCode == android.app.Activity.RESULT_OK) {
-                        smsEntity.status = "DELIVERED";
-                        smsEntity.errorMessage = null;
-                        smsEntity.errorCode = null;
-                    } else {
-                        smsEntity.status = "DELIVERY_FAILED";
-                        smsEntity.errorMessage = "Delivery failed: " + getResultCodeString(resultCode);
-                        smsEntity.errorCode = "DELIVERY_ERROR_" + resultCode;
-                    }
-
-                    smsDao.updateSms(smsEntity).blockingAwait();
-                    if (campaignId != null && campaignId > 0 && resultCode == android.app.Activity.RESULT_OK
-                            && (previousStatus == null || !"DELIVERED".equals(previousStatus))) {
-                        try {
-                            campaignDao.incrementDeliveredCount(campaignId).blockingAwait();
-                        } catch (Exception e) {
-                            Log.w(TAG, "Failed to update campaign delivered count", e);
-                        }
-                    }
-                    Log.d(TAG, "Updated SMS delivery status: " + smsId + " -> " + smsEntity.status);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error updating SMS delivery status", e);
-            }
-        }).subscribeOn(Schedulers.io())
-                .subscribe(
-                        () -> Log.d(TAG, "SMS delivery status updated successfully"),
-                        error -> Log.e(TAG, "Failed to update SMS delivery status", error));
+    @Nullable
+    private Long resolveSmsId(@NonNull Intent intent, int requestCode) {
+        Long smsId = requestCode > 0 ? registry.resolve(requestCode) : null;
+        if (smsId != null) {
+            return smsId;
+        }
+        String smsIdStr = intent.getStringExtra(EXTRA_SMS_ID);
+        return smsIdStr != null ? Long.parseLong(smsIdStr) : null;
     }
 
     /**
@@ -327,13 +402,6 @@ public class EnhancedDeliveryTracker {
         }
     }
 
-    /**
-     * Clean up pending intents tracking
-     */
-    private void cleanupPendingIntents(long smsId) {
-        pendingSentIntents.entrySet().removeIf(entry -> entry.getValue().equals(smsId));
-    }
-
     /**
      * Get result code string for logging
      */
@@ -364,11 +432,13 @@ public class EnhancedDeliveryTracker {
      */
     @NonNull
     public DeliveryStatistics getDeliveryStatistics() {
+        int latencySamples = deliveryLatencySamples.get();
         return new DeliveryStatistics(
                 sentCount.get(),
                 deliveredCount.get(),
                 failedCount.get(),
-                pendingCount.get());
+                pendingCount.get(),
+                latencySamples > 0 ? deliveryLatencyTotalMs.get() / latencySamples : 0);
     }
 
     /**
@@ -379,57 +449,36 @@ public class EnhancedDeliveryTracker {
         deliveredCount.set(0);
         failedCount.set(0);
         pendingCount.set(0);
+        deliveryLatencyTotalMs.set(0);
+        deliveryLatencySamples.set(0);
         Log.d(TAG, "Delivery statistics reset");
     }
 
-    /**
-     * Register broadcast receivers
-     */
-    private void registerReceivers() {
-        if (isRegistered) {
-            return;
-        }
-
-        try {
-            IntentFilter sentFilter = new IntentFilter(SMS_SENT_ACTION);
-            IntentFilter deliveredFilter = new IntentFilter(SMS_DELIVERED_ACTION);
-
-            ContextCompat.registerReceiver(context, sentReceiver, sentFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
-            ContextCompat.registerReceiver(context, deliveredReceiver, deliveredFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
-
-            isRegistered = true;
-            Log.d(TAG, "Delivery tracking receivers registered");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to register delivery receivers", e);
-        }
-    }
-
-    /**
-     * Unregister broadcast receivers
-     */
-    public void unregisterReceivers() {
-        if (isRegistered) {
-            try {
-                context.unregisterReceiver(sentReceiver);
-                context.unregisterReceiver(deliveredReceiver);
-                isRegistered = false;
-                Log.d(TAG, "Delivery tracking receivers unregistered");
-            } catch (IllegalArgumentException e) {
-                Log.w(TAG, "Receivers already unregistered", e);
-            }
-        }
-    }
-
     /**
      * Data class for delivery intents
      */
     public static class DeliveryIntents {
         public final PendingIntent sentIntent;
         public final PendingIntent deliveredIntent;
+        // One intent per part, in part order, for sendMultipartTextMessage
+        public final ArrayList<PendingIntent> sentIntents;
+        public final ArrayList<PendingIntent> deliveredIntents;
 
         public DeliveryIntents(@Nullable PendingIntent sentIntent, @Nullable PendingIntent deliveredIntent) {
             this.sentIntent = sentIntent;
             this.deliveredIntent = deliveredIntent;
+            this.sentIntents = new ArrayList<>(1);
+            this.deliveredIntents = new ArrayList<>(1);
+            sentIntents.add(sentIntent);
+            deliveredIntents.add(deliveredIntent);
+        }
+
+        public DeliveryIntents(@NonNull ArrayList<PendingIntent> sentIntents,
+                               @NonNull ArrayList<PendingIntent> deliveredIntents) {
+            this.sentIntent = sentIntents.isEmpty() ? null : sentIntents.get(0);
+            this.deliveredIntent = deliveredIntents.isEmpty() ? null : deliveredIntents.get(0);
+            this.sentIntents = sentIntents;
+            this.deliveredIntents = deliveredIntents;
         }
     }
 
@@ -441,12 +490,20 @@ public class EnhancedDeliveryTracker {
         public final int deliveredCount;
         public final int failedCount;
         public final int pendingCount;
+        // Mean time from a part's sent callback to its delivery report
+        public final long averageDeliveryLatencyMs;
 
         public DeliveryStatistics(int sentCount, int deliveredCount, int failedCount, int pendingCount) {
+            this(sentCount, deliveredCount, failedCount, pendingCount, 0);
+        }
+
+        public DeliveryStatistics(int sentCount, int deliveredCount, int failedCount, int pendingCount,
+                                  long averageDeliveryLatencyMs) {
             this.sentCount = sentCount;
             this.deliveredCount = deliveredCount;
             this.failedCount = failedCount;
             this.pendingCount = pendingCount;
+            this.averageDeliveryLatencyMs = averageDeliveryLatencyMs;
         }
 
         public double getDeliveryRate() {
@@ -462,5 +519,6 @@ public class EnhancedDeliveryTracker {
         public int getPendingCount() { return pendingCount; }
         public int getFailedCount() { return failedCount; }
         public int getSentCount() { return sentCount; }
+        public long getAverageDeliveryLatencyMs() { return averageDeliveryLatencyMs; }
     }
 }
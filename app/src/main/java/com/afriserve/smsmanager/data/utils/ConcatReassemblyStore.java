@@ -0,0 +1,472 @@
+package com.afriserve.smsmanager.data.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Pending parts of concatenated SMS, waiting for the rest of their message.
+ *
+ * Groups are spread over lock stripes by sender, so broadcasts from different senders do not
+ * contend. Every group expires a fixed time after its first part arrives, so creation order is
+ * expiry order: each stripe keeps its groups in an insertion-ordered map and expiry only ever
+ * looks at the eldest entries. Adding a part therefore costs O(parts of that message) and an
+ * expiry pass O(stripes + expired groups), however many groups are pending.
+ *
+ * The group and byte budgets are shared by all stripes, so one busy sender can use capacity
+ * that quiet stripes leave idle. Each stripe accounts for its own groups and bytes and the
+ * totals are kept in atomics. Going over budget evicts the eldest groups across all stripes
+ * early, emitted with whatever parts they have, as expiry does; eviction locks one stripe at a
+ * time.
+ *
+ * With a journal file, every part and every finished group is written as a CRC-checked record,
+ * so parts survive a process restart and are replayed on the next start. Records are encoded
+ * and queued under the stripe lock, which keeps each sender's records in order, and appended
+ * once the caller has released it, so file I/O never blocks a stripe. The journal is
+ * truncated whenever nothing is pending and rewritten from the live groups once it grows past
+ * {@link #JOURNAL_COMPACT_BYTES}.
+ */
+final class ConcatReassemblyStore {
+
+    private static final String TAG = "ConcatReassemblyStore";
+
+    private static final int STRIPES = 16;
+    // Rough per-part cost on top of the body: key, part record and map entry
+    private static final int PART_OVERHEAD_BYTES = 64;
+
+    static final long JOURNAL_COMPACT_BYTES = 64L * 1024;
+    private static final int MAX_RECORD_BYTES = 8 * 1024;
+    private static final byte OP_PART = 1;
+    private static final byte OP_DONE = 2;
+
+    private final long expiryMs;
+    private final int maxGroups;
+    private final long maxBytes;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger pendingGroups = new AtomicInteger();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    @Nullable
+    private final File journal;
+    private final Object journalLock = new Object();
+    // Framed records not yet appended, in the order their stripe locks were held
+    private final Queue<byte[]> journalQueue = new ConcurrentLinkedQueue<>();
+
+    ConcatReassemblyStore(long expiryMs, int maxGroups, long maxBytes, @Nullable File journal) {
+        this.expiryMs = expiryMs;
+        this.maxGroups = Math.max(1, maxGroups);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.journal = journal;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        if (journal != null) {
+            replayJournal(journal);
+        }
+    }
+
+    /**
+     * Add one part of a concatenated message. If it completes its message, or the store's
+     * budget forces older groups out, the resulting messages are added to out.
+     */
+    void add(@NonNull String address, int ref, int total, int seq, @Nullable String body,
+             long timestamp, long now, @NonNull List<MultipartSmsUtils.CompleteSmsMessage> out) {
+        if (seq < 1 || seq > total) {
+            return;
+        }
+        String text = body != null ? body : "";
+        Stripe stripe = stripeFor(address);
+        synchronized (stripe) {
+            Group group = putPart(stripe, address, ref, total, seq, text, timestamp, now);
+            appendRecord(OP_PART, group, seq, text, timestamp, now);
+            if (group.received == group.total) {
+                remove(stripe, group);
+                out.add(group.assemble(true));
+            }
+        }
+        evictOverBudget(out);
+        flushJournalQueue();
+    }
+
+    /**
+     * Emit every group whose first part arrived at least the expiry time before now.
+     */
+    void flushExpired(long now, @NonNull List<MultipartSmsUtils.CompleteSmsMessage> out) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                Iterator<Group> eldest = stripe.groups.values().iterator();
+                while (eldest.hasNext()) {
+                    Group group = eldest.next();
+                    if (now - group.firstReceivedAt < expiryMs) {
+                        break;
+                    }
+                    eldest.remove();
+                    release(stripe, group);
+                    out.add(group.assemble(group.received > 1));
+                }
+            }
+        }
+        flushJournalQueue();
+    }
+
+    /**
+     * Truncate the journal if nothing is pending, or rewrite it if it has grown too large.
+     * Call without holding any stripe lock.
+     */
+    void compactJournal() {
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            // A group is counted before its first record is queued, so nothing live is lost;
+            // records still queued are appended after the truncation
+            if (pendingGroups.get() == 0) {
+                if (journal.length() > 0) {
+                    truncateJournal();
+                }
+                return;
+            }
+            if (journal.length() < JOURNAL_COMPACT_BYTES) {
+                return;
+            }
+        }
+        rewriteJournal(0);
+    }
+
+    int pendingGroupCount() {
+        return pendingGroups.get();
+    }
+
+    private boolean overBudget() {
+        return pendingGroups.get() > maxGroups || pendingBytes.get() > maxBytes;
+    }
+
+    /**
+     * Emit the eldest groups across all stripes while the store is over budget. Stripes are
+     * locked one at a time, never nested, so the choice of eldest is a close approximation
+     * when other threads add parts meanwhile.
+     */
+    private void evictOverBudget(@NonNull List<MultipartSmsUtils.CompleteSmsMessage> out) {
+        while (overBudget()) {
+            Stripe victim = null;
+            long eldestAt = Long.MAX_VALUE;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    if (!stripe.groups.isEmpty()) {
+                        long firstReceivedAt = stripe.groups.values().iterator().next().firstReceivedAt;
+                        if (firstReceivedAt < eldestAt) {
+                            eldestAt = firstReceivedAt;
+                            victim = stripe;
+                        }
+                    }
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            synchronized (victim) {
+                if (victim.groups.isEmpty() || !overBudget()) {
+                    continue;
+                }
+                Group eldest = victim.groups.values().iterator().next();
+                Log.w(TAG, "Reassembly buffer full, emitting partial message from " + eldest.address);
+                remove(victim, eldest);
+                out.add(eldest.assemble(eldest.received > 1));
+            }
+        }
+    }
+
+    private Stripe stripeFor(String address) {
+        return stripes[(address.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private Group putPart(Stripe stripe, String address, int ref, int total, int seq, String body,
+                          long timestamp, long now) {
+        String key = address + "|" + ref + "|" + total;
+        Group group = stripe.groups.get(key);
+        if (group == null) {
+            group = new Group(key, address, ref, total, now, timestamp);
+            stripe.groups.put(key, group);
+            pendingGroups.incrementAndGet();
+        }
+        long delta = group.put(seq, body, timestamp);
+        group.bytes += delta;
+        stripe.bytes += delta;
+        pendingBytes.addAndGet(delta);
+        return group;
+    }
+
+    private void remove(Stripe stripe, Group group) {
+        stripe.groups.remove(group.key);
+        release(stripe, group);
+    }
+
+    private void release(Stripe stripe, Group group) {
+        stripe.bytes -= group.bytes;
+        pendingBytes.addAndGet(-group.bytes);
+        pendingGroups.decrementAndGet();
+        appendRecord(OP_DONE, group, 0, null, 0, 0);
+    }
+
+    // ==================== JOURNAL ====================
+
+    /**
+     * Queue a record; called with the group's stripe lock held, so a sender's records are
+     * queued in the order its parts were applied. Written by the next flushJournalQueue().
+     */
+    private void appendRecord(byte op, Group group, int seq, @Nullable String body, long timestamp,
+                              long receivedAt) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journalQueue.add(encodeRecord(op, group, seq, body, timestamp, receivedAt));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to encode reassembly journal record", e);
+        }
+    }
+
+    /**
+     * Append every queued record in one write. Call without holding any stripe lock.
+     */
+    private void flushJournalQueue() {
+        if (journal == null || journalQueue.isEmpty()) {
+            return;
+        }
+        synchronized (journalLock) {
+            if (journalQueue.isEmpty()) {
+                // Another caller wrote them
+                return;
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(journal, true)))) {
+                byte[] record;
+                while ((record = journalQueue.poll()) != null) {
+                    out.write(record);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to append to reassembly journal", e);
+            }
+        }
+    }
+
+    /**
+     * One framed record: length, payload, CRC of the payload.
+     */
+    private static byte[] encodeRecord(byte op, Group group, int seq, @Nullable String body,
+                                       long timestamp, long receivedAt) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64 + (body != null ? 2 * body.length() : 0));
+        DataOutputStream record = new DataOutputStream(payload);
+        record.writeByte(op);
+        record.writeUTF(group.address);
+        record.writeInt(group.ref);
+        record.writeInt(group.total);
+        if (op == OP_PART) {
+            record.writeInt(seq);
+            record.writeLong(timestamp);
+            record.writeLong(receivedAt);
+            record.writeUTF(body != null ? body : "");
+        }
+        record.flush();
+        byte[] bytes = payload.toByteArray();
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(bytes.length + 8);
+        DataOutputStream frame = new DataOutputStream(framed);
+        frame.writeInt(bytes.length);
+        frame.write(bytes);
+        frame.writeInt(crc(bytes));
+        frame.flush();
+        return framed.toByteArray();
+    }
+
+    private void replayJournal(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (in.readInt() != crc(bytes)) {
+                    break;
+                }
+                applyRecord(new DataInputStream(new ByteArrayInputStream(bytes)));
+                records++;
+            }
+        } catch (EOFException e) {
+            // Torn tail from a crash mid-append; everything before it is intact
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read reassembly journal", e);
+        }
+        if (records > 0) {
+            Log.d(TAG, "Replayed " + records + " journal records, " + pendingGroups.get() + " groups pending");
+        }
+        // Drop finished groups and any torn tail
+        rewriteJournal(0);
+    }
+
+    private void applyRecord(DataInputStream record) throws IOException {
+        byte op = record.readByte();
+        String address = record.readUTF();
+        int ref = record.readInt();
+        int total = record.readInt();
+        Stripe stripe = stripeFor(address);
+        if (op == OP_PART) {
+            int seq = record.readInt();
+            long timestamp = record.readLong();
+            long receivedAt = record.readLong();
+            String body = record.readUTF();
+            if (seq >= 1 && seq <= total) {
+                putPart(stripe, address, ref, total, seq, body, timestamp, receivedAt);
+            }
+        } else if (op == OP_DONE) {
+            Group group = stripe.groups.remove(address + "|" + ref + "|" + total);
+            if (group != null) {
+                stripe.bytes -= group.bytes;
+                pendingBytes.addAndGet(-group.bytes);
+                pendingGroups.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Replace the journal with one PART record per live part. Takes every stripe lock in
+     * order, then the journal lock, so the snapshot is consistent. Records still queued were
+     * queued under those stripe locks, so the snapshot already reflects them and they are dropped.
+     */
+    private void rewriteJournal(int stripe) {
+        if (stripe < STRIPES) {
+            synchronized (stripes[stripe]) {
+                rewriteJournal(stripe + 1);
+            }
+            return;
+        }
+        if (journal == null) {
+            return;
+        }
+        synchronized (journalLock) {
+            journalQueue.clear();
+            File temp = new File(journal.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                for (Stripe s : stripes) {
+                    for (Group group : s.groups.values()) {
+                        for (int seq = 1; seq <= group.total; seq++) {
+                            String body = group.bodies[seq - 1];
+                            if (body != null) {
+                                out.write(encodeRecord(OP_PART, group, seq, body, group.timestamps[seq - 1],
+                                        group.firstReceivedAt));
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to compact reassembly journal", e);
+                temp.delete();
+                return;
+            }
+            if (!temp.renameTo(journal)) {
+                Log.w(TAG, "Failed to replace reassembly journal");
+                temp.delete();
+            }
+        }
+    }
+
+    private void truncateJournal() {
+        try (FileOutputStream ignored = new FileOutputStream(journal, false)) {
+            // Opening without append truncates
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to truncate reassembly journal", e);
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static final class Stripe {
+        // Insertion order is expiry order, eldest first
+        final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+        long bytes;
+    }
+
+    private static final class Group {
+        final String key;
+        final String address;
+        final int ref;
+        final int total;
+        final long firstReceivedAt;
+        final long firstTimestamp;
+        final String[] bodies;
+        final long[] timestamps;
+        int received;
+        long bytes;
+
+        Group(String key, String address, int ref, int total, long receivedAt, long timestamp) {
+            this.key = key;
+            this.address = address;
+            this.ref = ref;
+            this.total = total;
+            this.firstReceivedAt = receivedAt;
+            this.firstTimestamp = timestamp;
+            this.bodies = new String[total];
+            this.timestamps = new long[total];
+        }
+
+        /**
+         * Store a part, replacing a redelivered copy; returns the change in accounted bytes
+         */
+        long put(int seq, String body, long timestamp) {
+            String previous = bodies[seq - 1];
+            bodies[seq - 1] = body;
+            timestamps[seq - 1] = timestamp;
+            if (previous == null) {
+                received++;
+                return PART_OVERHEAD_BYTES + 2L * body.length();
+            }
+            return 2L * (body.length() - previous.length());
+        }
+
+        MultipartSmsUtils.CompleteSmsMessage assemble(boolean wasMultipart) {
+            StringBuilder body = new StringBuilder();
+            for (String part : bodies) {
+                if (part != null) {
+                    body.append(part);
+                }
+            }
+            MultipartSmsUtils.CompleteSmsMessage cm = new MultipartSmsUtils.CompleteSmsMessage();
+            cm.address = address;
+            cm.body = body.toString();
+            cm.timestamp = firstTimestamp;
+            cm.wasMultipart = wasMultipart;
+            return cm;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.afriserve.smsmanager.data.utils;
+
+/**
+ * Duplicate detection for received SMS.
+ *
+ * A message is identified by a 64-bit key hashed from the sender's canonical number, the body
+ * and its timestamp in whole seconds. Redeliveries of the same PDU carry the same service
+ * centre timestamp, so the bucket only absorbs millisecond jitter. The key is stored in
+ * sms_entities.dedupeKey under a unique index, so receivers check one index entry and never scan
+ * the sender's history; the most recent keys are also kept in a fixed ring so a redelivery seen
+ * moments ago is dropped without touching the database.
+ */
+public final class IncomingSmsDedupe {
+
+    public static final long BUCKET_MS = 1000;
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final IncomingSmsDedupe SHARED = new IncomingSmsDedupe(DEFAULT_CAPACITY);
+
+    private final long[] recent;
+    private int next;
+
+    public IncomingSmsDedupe(int capacity) {
+        this.recent = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * Ring shared by the incoming SMS receivers of this process
+     */
+    public static IncomingSmsDedupe shared() {
+        return SHARED;
+    }
+
+    /**
+     * Duplicate-detection key for a received message; never 0
+     */
+    public static long keyOf(String address, String body, long timestamp) {
+        long hash = FNV_OFFSET;
+        long phoneKey = PhoneCanonicalizer.canonicalKey(address);
+        if (phoneKey != PhoneCanonicalizer.NO_KEY) {
+            hash = (hash ^ phoneKey) * FNV_PRIME;
+        } else {
+            // Alphanumeric senders such as "MPESA" have no canonical key
+            hash = mix(hash, address);
+        }
+        hash = (hash ^ 0xFF) * FNV_PRIME;
+        hash = mix(hash, body);
+        hash = (hash ^ Math.floorDiv(timestamp, BUCKET_MS)) * FNV_PRIME;
+        hash = finish(hash);
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Whether key was remembered recently. Scans the fixed-size ring, so the cost does not
+     * depend on how many messages have been received.
+     */
+    public synchronized boolean isRecent(long key) {
+        for (long seen : recent) {
+            if (seen == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remember key, evicting the oldest one once the ring is full
+     */
+    public synchronized void remember(long key) {
+        recent[next] = key;
+        next = (next + 1) % recent.length;
+    }
+
+    private static long mix(long hash, String text) {
+        if (text == null) {
+            return hash;
+        }
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // splitmix64 finaliser, so keys differing only in the last bytes spread over the whole index
+    private static long finish(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
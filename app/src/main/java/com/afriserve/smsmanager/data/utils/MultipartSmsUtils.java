@@ -1,13 +1,16 @@
 package com.afriserve.smsmanager.data.utils;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import android.content.Context;
 import android.telephony.SmsMessage;
 
+import androidx.annotation.Nullable;
+
 /**
  * Helper utilities for working with multipart (concatenated) SMS messages.
  * Small, safe implementations intended to satisfy compile-time usage
@@ -20,8 +23,11 @@ public final class MultipartSmsUtils {
     }
 
     private static final long CACHE_EXPIRY_MS = 2 * 60 * 1000L;
+    private static final int MAX_PENDING_GROUPS = 256;
+    private static final long MAX_PENDING_BYTES = 256L * 1024;
+    private static final String REASSEMBLY_JOURNAL = "concat_parts.journal";
 
-    private static final Map<String, ConcatGroup> multipartCache = new HashMap<>();
+    private static volatile ConcatReassemblyStore reassemblyStore;
 
     public static boolean isMultipartMessage(String body) {
         return body != null && body.length() > 160;
@@ -53,7 +59,7 @@ public final class MultipartSmsUtils {
     public static int getEstimatedPartCount(String body) {
         if (body == null || body.isEmpty())
             return 0;
-        return (body.length() + 152) / 153;
+        return SmsSegmentCounter.countParts(body);
     }
 
     /**
@@ -78,39 +84,13 @@ public final class MultipartSmsUtils {
         }
     }
 
-    private static final class ConcatPart {
-        final int seq;
-        final String body;
-        final long timestamp;
-        final long receivedAt;
-
-        ConcatPart(int seq, String body, long timestamp, long receivedAt) {
-            this.seq = seq;
-            this.body = body;
-            this.timestamp = timestamp;
-            this.receivedAt = receivedAt;
-        }
-    }
-
-    private static final class ConcatGroup {
-        final String address;
-        final int totalParts;
-        final Map<Integer, ConcatPart> parts = new HashMap<>();
-        long firstReceivedAt;
-        long firstTimestamp;
-
-        ConcatGroup(String address, int totalParts, long receivedAt, long timestamp) {
-            this.address = address;
-            this.totalParts = totalParts;
-            this.firstReceivedAt = receivedAt;
-            this.firstTimestamp = timestamp;
-        }
-    }
-
     /**
-     * Reassemble incoming SmsMessages into CompleteSmsMessage list
+     * Reassemble incoming SmsMessages into CompleteSmsMessage list.
+     * Parts of messages that are still incomplete are kept, journaled under the app's files
+     * directory when context is given, and returned once the rest arrives or they expire.
      */
-    public static List<CompleteSmsMessage> processIncomingMessages(SmsMessage[] messages) {
+    public static List<CompleteSmsMessage> processIncomingMessages(@Nullable Context context,
+                                                                   SmsMessage[] messages) {
         List<CompleteSmsMessage> result = new ArrayList<>();
         if (messages == null || messages.length == 0) {
             return result;
@@ -118,30 +98,59 @@ public final class MultipartSmsUtils {
 
         long now = System.currentTimeMillis();
         List<SmsMessage> nonConcat = new ArrayList<>();
+        ConcatReassemblyStore store = reassemblyStore(context);
 
-        synchronized (multipartCache) {
-            for (SmsMessage sms : messages) {
-                if (sms == null) {
-                    continue;
-                }
-                ConcatInfo info = extractConcatInfo(sms);
-                if (info != null && info.total > 1) {
-                    cacheConcatPart(sms, info, now);
-                } else {
-                    nonConcat.add(sms);
-                }
+        for (SmsMessage sms : messages) {
+            if (sms == null) {
+                continue;
+            }
+            ConcatInfo info = extractConcatInfo(sms);
+            if (info != null && info.total > 1) {
+                store.add(senderOf(sms), info.ref, info.total, info.seq, sms.getMessageBody(),
+                        sms.getTimestampMillis(), now, result);
+            } else {
+                nonConcat.add(sms);
             }
-
-            flushCompletedConcatGroups(result, now);
-            flushExpiredConcatGroups(result, now);
         }
 
+        store.flushExpired(now, result);
+        store.compactJournal();
+
         // Fallback grouping for non-concatenated messages in this broadcast.
         result.addAll(groupBySender(nonConcat));
 
         return result;
     }
 
+    /**
+     * The process-wide store; the first caller decides whether it is journaled
+     */
+    private static ConcatReassemblyStore reassemblyStore(@Nullable Context context) {
+        ConcatReassemblyStore store = reassemblyStore;
+        if (store == null) {
+            synchronized (MultipartSmsUtils.class) {
+                store = reassemblyStore;
+                if (store == null) {
+                    File journal = context != null
+                            ? new File(context.getApplicationContext().getFilesDir(), REASSEMBLY_JOURNAL)
+                            : null;
+                    store = new ConcatReassemblyStore(CACHE_EXPIRY_MS, MAX_PENDING_GROUPS,
+                            MAX_PENDING_BYTES, journal);
+                    reassemblyStore = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    private static String senderOf(SmsMessage sms) {
+        String address = sms.getDisplayOriginatingAddress();
+        if (address == null || address.trim().isEmpty()) {
+            address = sms.getOriginatingAddress();
+        }
+        return address != null ? address : "";
+    }
+
     private static List<CompleteSmsMessage> groupBySender(List<SmsMessage> messages) {
         List<CompleteSmsMessage> result = new ArrayList<>();
         if (messages == null || messages.isEmpty()) {
@@ -153,14 +162,7 @@ public final class MultipartSmsUtils {
             if (sms == null) {
                 continue;
             }
-            String address = sms.getDisplayOriginatingAddress();
-            if (address == null || address.trim().isEmpty()) {
-                address = sms.getOriginatingAddress();
-            }
-            if (address == null) {
-                address = "";
-            }
-            bySender.computeIfAbsent(address, k -> new ArrayList<>()).add(sms);
+            bySender.computeIfAbsent(senderOf(sms), k -> new ArrayList<>()).add(sms);
         }
 
         for (Map.Entry<String, List<SmsMessage>> entry : bySender.entrySet()) {
@@ -198,78 +200,6 @@ public final class MultipartSmsUtils {
         return result;
     }
 
-    private static void cacheConcatPart(SmsMessage sms, ConcatInfo info, long now) {
-        String address = sms.getDisplayOriginatingAddress();
-        if (address == null || address.trim().isEmpty()) {
-            address = sms.getOriginatingAddress();
-        }
-        if (address == null) {
-            address = "";
-        }
-        String key = address + "|" + info.ref + "|" + info.total;
-
-        ConcatGroup group = multipartCache.get(key);
-        if (group == null) {
-            group = new ConcatGroup(address, info.total, now, sms.getTimestampMillis());
-            multipartCache.put(key, group);
-        }
-
-        group.firstReceivedAt = Math.min(group.firstReceivedAt, now);
-        if (group.firstTimestamp == 0) {
-            group.firstTimestamp = sms.getTimestampMillis();
-        }
-
-        String body = sms.getMessageBody();
-        if (body == null) {
-            body = "";
-        }
-        group.parts.put(info.seq, new ConcatPart(info.seq, body, sms.getTimestampMillis(), now));
-    }
-
-    private static void flushCompletedConcatGroups(List<CompleteSmsMessage> out, long now) {
-        List<String> completedKeys = new ArrayList<>();
-        for (Map.Entry<String, ConcatGroup> entry : multipartCache.entrySet()) {
-            ConcatGroup group = entry.getValue();
-            if (group.parts.size() >= group.totalParts) {
-                out.add(concatGroup(group, true));
-                completedKeys.add(entry.getKey());
-            }
-        }
-        for (String key : completedKeys) {
-            multipartCache.remove(key);
-        }
-    }
-
-    private static void flushExpiredConcatGroups(List<CompleteSmsMessage> out, long now) {
-        List<String> expiredKeys = new ArrayList<>();
-        for (Map.Entry<String, ConcatGroup> entry : multipartCache.entrySet()) {
-            ConcatGroup group = entry.getValue();
-            if (now - group.firstReceivedAt >= CACHE_EXPIRY_MS) {
-                out.add(concatGroup(group, group.parts.size() > 1));
-                expiredKeys.add(entry.getKey());
-            }
-        }
-        for (String key : expiredKeys) {
-            multipartCache.remove(key);
-        }
-    }
-
-    private static CompleteSmsMessage concatGroup(ConcatGroup group, boolean wasMultipart) {
-        StringBuilder body = new StringBuilder();
-        for (int i = 1; i <= group.totalParts; i++) {
-            ConcatPart part = group.parts.get(i);
-            if (part != null && part.body != null) {
-                body.append(part.body);
-            }
-        }
-        CompleteSmsMessage cm = new CompleteSmsMessage();
-        cm.address = group.address;
-        cm.body = body.toString();
-        cm.timestamp = group.firstTimestamp;
-        cm.wasMultipart = wasMultipart;
-        return cm;
-    }
-
     private static ConcatInfo extractConcatInfo(SmsMessage sms) {
         try {
             byte[] pdu = sms.getPdu();
@@ -0,0 +1,181 @@
+package com.afriserve.smsmanager.data.utils;
+
+/**
+ * The one place phone numbers are canonicalized.
+ *
+ * A number is parsed in a single character scan, with no regex and no intermediate strings, into
+ * a packed long key. Two spellings of the same number ("0712 345 678", "+254712345678",
+ * "00254712345678") produce the same key, so keys can be compared, hashed and stored in
+ * primitive collections or indexed columns directly. {@link #toE164} turns a key back into text.
+ *
+ * Rules, with Kenya (+254, 9 national digits) as the default country:
+ * a leading '+' or "00" marks an international number; a trunk '0' followed by a full national
+ * number, or a bare full national number, gets the default country code; a bare number already
+ * carrying the default country code is international; 11 digits starting with 1, or 10 digits
+ * starting with 2-9, are NANP. Anything else that is all digits (short codes) is kept as dialled,
+ * without a '+'. Letters, a misplaced '+', or more than 15 significant digits give NO_KEY.
+ *
+ * Key layout: bit 55 = '+', bits 50-54 = digit count, bits 0-49 = digits.
+ */
+public final class PhoneCanonicalizer {
+
+    /** Returned when a number cannot be canonicalized. */
+    public static final long NO_KEY = -1L;
+
+    public static final int DEFAULT_COUNTRY_CODE = 254;
+    public static final int DEFAULT_NATIONAL_LENGTH = 9;
+
+    private static final int MAX_DIGITS = 15;
+    private static final int DIGIT_COUNT_SHIFT = 50;
+    private static final long PLUS_FLAG = 1L << 55;
+    private static final long VALUE_MASK = (1L << DIGIT_COUNT_SHIFT) - 1;
+    private static final long DIGIT_COUNT_MASK = 0x1F;
+
+    private static final long[] POW10 = new long[MAX_DIGITS + 3];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    public static long canonicalKey(CharSequence number) {
+        return canonicalKey(number, DEFAULT_COUNTRY_CODE, DEFAULT_NATIONAL_LENGTH);
+    }
+
+    /**
+     * Canonical key for a number, reading national numbers as belonging to countryCode, whose
+     * national significant numbers are nationalLength digits long.
+     */
+    public static long canonicalKey(CharSequence number, int countryCode, int nationalLength) {
+        if (number == null) {
+            return NO_KEY;
+        }
+        boolean plus = false;
+        int digits = 0;
+        int leadingZeros = 0;
+        long value = 0;
+        char firstDigit = 0;
+        for (int i = 0, n = number.length(); i < n; i++) {
+            char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits == MAX_DIGITS + 2) {
+                    return NO_KEY;
+                }
+                if (digits == 0) {
+                    firstDigit = c;
+                }
+                if (c == '0' && value == 0) {
+                    leadingZeros++;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+            } else if (c == '+') {
+                if (plus || digits > 0) {
+                    return NO_KEY;
+                }
+                plus = true;
+            } else if (!isSeparator(c)) {
+                return NO_KEY;
+            }
+        }
+        if (digits == 0) {
+            return NO_KEY;
+        }
+
+        if (!plus && leadingZeros >= 2) {
+            // 00 international dialling prefix
+            plus = true;
+            digits -= 2;
+            leadingZeros -= 2;
+        }
+        if (plus) {
+            if (digits == 0 || leadingZeros > 0) {
+                return NO_KEY; // country codes never start with 0
+            }
+        } else {
+            int countryDigits = digitCount(countryCode);
+            if (digits == nationalLength + 1 && firstDigit == '0' && leadingZeros == 1) {
+                value += countryCode * POW10[nationalLength];
+                digits = countryDigits + nationalLength;
+                plus = true;
+            } else if (digits == nationalLength && firstDigit != '0') {
+                value += countryCode * POW10[nationalLength];
+                digits = countryDigits + nationalLength;
+                plus = true;
+            } else if (digits == countryDigits + nationalLength && value / POW10[nationalLength] == countryCode) {
+                plus = true;
+            } else if (digits == 11 && firstDigit == '1') {
+                plus = true;
+            } else if (digits == 10 && firstDigit >= '2') {
+                value += POW10[10];
+                digits = 11;
+                plus = true;
+            }
+        }
+        if (digits > MAX_DIGITS) {
+            return NO_KEY;
+        }
+        return (plus ? PLUS_FLAG : 0L) | ((long) digits << DIGIT_COUNT_SHIFT) | (value & VALUE_MASK);
+    }
+
+    /**
+     * Canonical text for a number, e.g. "+254712345678", or null if it cannot be canonicalized.
+     */
+    public static String toE164(CharSequence number) {
+        long key = canonicalKey(number);
+        return key != NO_KEY ? toE164(key) : null;
+    }
+
+    /**
+     * Canonical text for a key produced by {@link #canonicalKey}
+     */
+    public static String toE164(long key) {
+        if (key == NO_KEY) {
+            return null;
+        }
+        boolean plus = (key & PLUS_FLAG) != 0;
+        int digits = (int) ((key >>> DIGIT_COUNT_SHIFT) & DIGIT_COUNT_MASK);
+        long value = key & VALUE_MASK;
+        char[] out = new char[digits + (plus ? 1 : 0)];
+        for (int i = out.length - 1; i >= out.length - digits; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        if (plus) {
+            out[0] = '+';
+        }
+        return new String(out);
+    }
+
+    /**
+     * Whether a key is a full international number rather than a short code
+     */
+    public static boolean isInternational(long key) {
+        return key != NO_KEY && (key & PLUS_FLAG) != 0;
+    }
+
+    public static boolean isSameNumber(CharSequence a, CharSequence b) {
+        long key = canonicalKey(a);
+        return key != NO_KEY && key == canonicalKey(b);
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '-' || c == '.' || c == '(' || c == ')' || c == '/'
+                || c == '\t' || c == '\u00A0';
+    }
+
+    private static int digitCount(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private PhoneCanonicalizer() {
+        throw new AssertionError("PhoneCanonicalizer is a utility class and should not be instantiated");
+    }
+}
@@ -10,29 +10,21 @@ public final class PhoneNumberUtils {
     private static final String TAG = "PhoneNumberUtils";
     
     // Common phone number patterns
-    private static final String PHONE_NUMBER_PATTERN = "[^0-9+]";
     private static final String INTERNATIONAL_PREFIX = "+";
     private static final String COUNTRY_CODE_US = "1";
     
+    /**
+     * Canonical form of a number (see {@link PhoneCanonicalizer}), or null for alphanumeric
+     * senders and anything shorter than 3 digits.
+     */
     public static String normalizePhoneNumber(String phoneNumber) {
-        if (phoneNumber == null || phoneNumber.trim().isEmpty()) {
+        long key = PhoneCanonicalizer.canonicalKey(phoneNumber);
+        if (key == PhoneCanonicalizer.NO_KEY) {
             return null;
         }
-        String cleaned = phoneNumber.trim().replaceAll("[\\s\\-\\(\\)\\.]", "");
-        String normalized = cleaned.replaceAll(PHONE_NUMBER_PATTERN, "");
-        if (normalized.isEmpty()) {
-            return null;
-        }
-        if (cleaned.startsWith(INTERNATIONAL_PREFIX) && !normalized.startsWith(INTERNATIONAL_PREFIX)) {
-            normalized = INTERNATIONAL_PREFIX + normalized;
-        }
-        if (!normalized.startsWith(INTERNATIONAL_PREFIX)) {
-            normalized = normalized.replaceAll("^0+", "");
-        }
-        if (normalized.replaceAll("[^0-9]", "").length() < 3) {
-            return null;
-        }
-        return normalized;
+        String normalized = PhoneCanonicalizer.toE164(key);
+        int digits = normalized.length() - (normalized.startsWith(INTERNATIONAL_PREFIX) ? 1 : 0);
+        return digits >= 3 ? normalized : null;
     }
 
     public static String formatForDisplay(String normalizedNumber) {
@@ -73,6 +65,9 @@ public final class PhoneNumberUtils {
     }
 
     public static boolean areSameNumber(String phone1, String phone2) {
+        if (PhoneCanonicalizer.isSameNumber(phone1, phone2)) {
+            return true;
+        }
         String norm1 = normalizePhoneNumber(phone1);
         String norm2 = normalizePhoneNumber(phone2);
         if (norm1 == null || norm2 == null) {
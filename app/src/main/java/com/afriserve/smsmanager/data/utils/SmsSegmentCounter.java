@@ -0,0 +1,211 @@
+package com.afriserve.smsmanager.data.utils;
+
+/**
+ * Exact SMS part count for text fed in one or more pieces.
+ *
+ * Every character is looked up in the GSM 03.38 basic and extension tables as it arrives, and
+ * both GSM-7 and UCS-2 packings are tracked side by side, so text can be appended piece by
+ * piece (template literals, then field values) without building the message. One character
+ * outside the GSM-7 tables switches the whole message to UCS-2. As on the handset, an
+ * extension character's escape pair and a UTF-16 surrogate pair are never split across parts.
+ *
+ * Instances are mutable and reusable; nothing is allocated per character or per message.
+ */
+public final class SmsSegmentCounter {
+
+    public static final int GSM7_SINGLE_PART = 160;
+    public static final int GSM7_MULTI_PART = 153;
+    public static final int UCS2_SINGLE_PART = 70;
+    public static final int UCS2_MULTI_PART = 67;
+
+    public static final String ENCODING_GSM7 = "GSM-7";
+    public static final String ENCODING_UCS2 = "UCS-2";
+
+    private static final byte NOT_GSM = 0;
+    private static final byte GSM_BASIC = 1;
+    private static final byte GSM_EXTENSION = 2;
+    private static final char EURO = '\u20AC';
+
+    private static final String BASIC_TABLE =
+            "@\u00A3$\u00A5\u00E8\u00E9\u00F9\u00EC\u00F2\u00C7\n\u00D8\u00F8\r\u00C5\u00E5"
+            + "\u0394_\u03A6\u0393\u039B\u03A9\u03A0\u03A8\u03A3\u0398\u039E\u00C6\u00E6\u00DF\u00C9"
+            + " !\"#\u00A4%&'()*+,-./0123456789:;<=>?"
+            + "\u00A1ABCDEFGHIJKLMNOPQRSTUVWXYZ\u00C4\u00D6\u00D1\u00DC\u00A7"
+            + "\u00BFabcdefghijklmnopqrstuvwxyz\u00E4\u00F6\u00F1\u00FC\u00E0";
+    private static final String EXTENSION_TABLE = "\f^{}\\[~]|" + EURO;
+
+    // Septet cost per char; every table char except the euro sign sorts at or below capital omega
+    private static final byte[] GSM_CLASS = new byte['\u03A9' + 1];
+
+    static {
+        for (int i = 0; i < BASIC_TABLE.length(); i++) {
+            GSM_CLASS[BASIC_TABLE.charAt(i)] = GSM_BASIC;
+        }
+        for (int i = 0; i < EXTENSION_TABLE.length(); i++) {
+            char c = EXTENSION_TABLE.charAt(i);
+            if (c < GSM_CLASS.length) {
+                GSM_CLASS[c] = GSM_EXTENSION;
+            }
+        }
+    }
+
+    private static final ThreadLocal<SmsSegmentCounter> SHARED =
+            ThreadLocal.withInitial(SmsSegmentCounter::new);
+
+    private int septets;
+    private int gsmParts;
+    private int gsmFill;
+    private int codeUnits;
+    private int ucsParts;
+    private int ucsFill;
+    private int firstNonGsm;
+    private char pendingHighSurrogate;
+
+    public SmsSegmentCounter() {
+        reset();
+    }
+
+    /**
+     * Part count of a finished message
+     */
+    public static int countParts(CharSequence text) {
+        SmsSegmentCounter counter = SHARED.get();
+        counter.reset();
+        counter.append(text);
+        return counter.getParts();
+    }
+
+    /**
+     * Whether a character can be sent in a GSM-7 message
+     */
+    public static boolean isGsm7(char c) {
+        return septetCost(c) > 0;
+    }
+
+    public SmsSegmentCounter reset() {
+        septets = 0;
+        gsmParts = 1;
+        gsmFill = 0;
+        codeUnits = 0;
+        ucsParts = 1;
+        ucsFill = 0;
+        firstNonGsm = -1;
+        pendingHighSurrogate = 0;
+        return this;
+    }
+
+    public SmsSegmentCounter append(CharSequence text) {
+        if (text != null) {
+            append(text, 0, text.length());
+        }
+        return this;
+    }
+
+    public SmsSegmentCounter append(CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    public SmsSegmentCounter append(char c) {
+        int cost = septetCost(c);
+        if (cost == 0) {
+            if (firstNonGsm < 0) {
+                firstNonGsm = c;
+            }
+            // Only the UCS-2 packing matters from here on
+        } else if (firstNonGsm < 0) {
+            septets += cost;
+            if (gsmFill + cost > GSM7_MULTI_PART) {
+                gsmParts++;
+                gsmFill = cost;
+            } else {
+                gsmFill += cost;
+            }
+        }
+
+        codeUnits++;
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+            return this;
+        }
+        int units = 1;
+        if (pendingHighSurrogate != 0) {
+            if (Character.isLowSurrogate(c)) {
+                units = 2;
+            } else {
+                addUcsUnits(1); // unpaired high surrogate
+            }
+            pendingHighSurrogate = 0;
+        }
+        addUcsUnits(units);
+        return this;
+    }
+
+    private void addUcsUnits(int units) {
+        if (ucsFill + units > UCS2_MULTI_PART) {
+            ucsParts++;
+            ucsFill = units;
+        } else {
+            ucsFill += units;
+        }
+    }
+
+    public boolean isGsm7() {
+        return firstNonGsm < 0;
+    }
+
+    public String getEncoding() {
+        return isGsm7() ? ENCODING_GSM7 : ENCODING_UCS2;
+    }
+
+    /**
+     * First character that forced UCS-2, or -1 while the text is GSM-7
+     */
+    public int getFirstNonGsmChar() {
+        return firstNonGsm;
+    }
+
+    /**
+     * UTF-16 length of the text so far
+     */
+    public int getLength() {
+        return codeUnits;
+    }
+
+    /**
+     * Septets (GSM-7) or UTF-16 code units (UCS-2) the text occupies on the air
+     */
+    public int getEncodedLength() {
+        return isGsm7() ? septets : codeUnits;
+    }
+
+    public int getParts() {
+        if (isGsm7()) {
+            return septets <= GSM7_SINGLE_PART ? 1 : gsmParts;
+        }
+        int ucsLength = pendingHighSurrogate != 0 ? ucsFill + 1 : ucsFill;
+        if (codeUnits <= UCS2_SINGLE_PART) {
+            return 1;
+        }
+        return ucsLength > UCS2_MULTI_PART ? ucsParts + 1 : ucsParts;
+    }
+
+    /**
+     * Characters still free in the last part before another part is needed
+     */
+    public int getRemainingInPart() {
+        if (isGsm7()) {
+            return septets <= GSM7_SINGLE_PART ? GSM7_SINGLE_PART - septets : GSM7_MULTI_PART - gsmFill;
+        }
+        return codeUnits <= UCS2_SINGLE_PART ? UCS2_SINGLE_PART - codeUnits : UCS2_MULTI_PART - ucsFill;
+    }
+
+    private static int septetCost(char c) {
+        if (c < GSM_CLASS.length) {
+            return GSM_CLASS[c];
+        }
+        return c == EURO ? GSM_EXTENSION : NOT_GSM;
+    }
+}
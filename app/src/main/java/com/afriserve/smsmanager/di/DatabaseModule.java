@@ -88,4 +88,9 @@ public class DatabaseModule {
     public static com.afriserve.smsmanager.data.dao.SyncStatusDao provideSyncStatusDao(AppDatabase database) {
         return database.syncStatusDao();
     }
+
+    @Provides
+    public static com.afriserve.smsmanager.data.dao.DeliveryIntentDao provideDeliveryIntentDao(AppDatabase database) {
+        return database.deliveryIntentDao();
+    }
 }
@@ -15,10 +15,18 @@ import android.telephony.SmsMessage;
 import android.util.Log;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.data.utils.IncomingSmsDedupe;
 import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
 import com.afriserve.smsmanager.data.utils.MultipartSmsUtils;
 import com.afriserve.smsmanager.notifications.SmsNotificationService;
 import com.afriserve.smsmanager.data.blocks.BlockListManager;
+import com.afriserve.smsmanager.data.repository.ConversationRepository;
+import dagger.hilt.EntryPoint;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.EntryPointAccessors;
+import dagger.hilt.components.SingletonComponent;
+import io.reactivex.rxjava3.core.Completable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,6 +40,7 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
     
     private static final String TAG = "SmsDeliverReceiver";
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final IncomingSmsDedupe recentKeys = IncomingSmsDedupe.shared();
     
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -59,7 +68,7 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                 
                 // Process messages and handle multipart concatenation
                 List<MultipartSmsUtils.CompleteSmsMessage> completeMessages = 
-                    MultipartSmsUtils.processIncomingMessages(messages);
+                    MultipartSmsUtils.processIncomingMessages(context, messages);
                 
                 // Get database instance
                 com.afriserve.smsmanager.AppDatabase database = 
@@ -78,13 +87,11 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                         contactResolver
                     );
 
-                com.afriserve.smsmanager.data.repository.ConversationRepository conversationRepository =
-                    new com.afriserve.smsmanager.data.repository.ConversationRepository(
-                        database.conversationDao(),
-                        smsDao,
-                        contactResolver,
-                        context
-                    );
+                // The app-wide repository, so its update buffer coalesces across broadcasts
+                ConversationRepository conversationRepository = EntryPointAccessors
+                    .fromApplication(context.getApplicationContext(), IncomingSmsEntryPoint.class)
+                    .conversationRepository();
+                List<Completable> conversationUpdates = new ArrayList<>();
                 
                 // Process each complete message
                 for (MultipartSmsUtils.CompleteSmsMessage completeMessage : completeMessages) {
@@ -102,35 +109,17 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                     
                     Log.d(TAG, "Processing complete SMS from: " + address + 
                           " (multipart: " + completeMessage.wasMultipart + ")");
-                    
-                    Long deviceSmsId = insertIntoTelephonyInbox(context, address, body, timestamp);
-                    Long threadId = null;
-                    if (deviceSmsId != null) {
-                        threadId = resolveThreadId(context, deviceSmsId);
-                        try {
-                            smsDao.getSmsByDeviceSmsId(deviceSmsId).blockingGet();
-                            Log.d(TAG, "Skipping duplicate message by deviceSmsId: " + deviceSmsId);
-                            continue;
-                        } catch (Exception ignored) {
-                            // Not found, proceed
-                        }
-                    }
 
-                    // Check if message already exists to avoid duplicates
+                    // Check the dedupe key before touching the provider, so a redelivery is not
+                    // written to the system inbox twice either
+                    long dedupeKey = IncomingSmsDedupe.keyOf(normalizedAddress, body, timestamp);
+                    if (recentKeys.isRecent(dedupeKey)) {
+                        Log.d(TAG, "Skipping recently seen message from: " + address);
+                        continue;
+                    }
                     try {
-                        java.util.List<SmsEntity> existingMessages = 
-                            smsDao.getMessagesByPhoneNumber(normalizedAddress).blockingGet();
-                        
-                        boolean isDuplicate = false;
-                        for (SmsEntity existing : existingMessages) {
-                            if (Math.abs(existing.createdAt - timestamp) < 1000 && // Within 1 second
-                                existing.message.equals(body)) {
-                                isDuplicate = true;
-                                break;
-                            }
-                        }
-                        
-                        if (isDuplicate) {
+                        if (smsDao.existsByDedupeKeySync(dedupeKey)) {
+                            recentKeys.remember(dedupeKey);
                             Log.d(TAG, "Skipping duplicate message from: " + address);
                             continue;
                         }
@@ -138,6 +127,12 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                         Log.w(TAG, "Error checking for duplicates", e);
                     }
                     
+                    Long deviceSmsId = insertIntoTelephonyInbox(context, address, body, timestamp);
+                    Long threadId = null;
+                    if (deviceSmsId != null) {
+                        threadId = resolveThreadId(context, deviceSmsId);
+                    }
+
                     // Create SMS entity
                     SmsEntity smsEntity = new SmsEntity();
                     smsEntity.deviceSmsId = deviceSmsId;
@@ -148,22 +143,28 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                     smsEntity.message = body != null ? body : "";
                     smsEntity.status = "RECEIVED"; // Mark as received
                     smsEntity.createdAt = timestamp;
+                    smsEntity.dedupeKey = dedupeKey;
                     
-                    // Insert into Room database
+                    // Insert into Room database. Messages already received are dropped; a row the
+                    // provider sync imported first is claimed, so it still gets a notification
                     try {
-                        Long result = smsDao.insertSms(smsEntity).blockingGet();
+                        long result = smsDao.insertIncomingSmsSync(smsEntity);
+                        recentKeys.remember(dedupeKey);
+                        if (result <= 0) {
+                            Log.d(TAG, "Skipping duplicate message from: " + address);
+                            continue;
+                        }
                         Log.d(TAG, "Inserted SMS from: " + address + " with ID: " + result);
 
                         if (normalizedAddress != null && !normalizedAddress.trim().isEmpty()) {
-                            try {
-                                conversationRepository.updateConversationFromMessage(smsEntity).blockingAwait();
-                            } catch (Exception e) {
-                                Log.w(TAG, "Failed to update conversation for incoming SMS", e);
-                            }
+                            // Written behind; awaited once for the whole broadcast, after the
+                            // notifications. The repository logs failures.
+                            conversationUpdates.add(
+                                conversationRepository.updateConversationFromMessage(smsEntity).onErrorComplete());
                         }
                         
                         // Show notification for new message
-                        if (result != null && result > 0) {
+                        if (result > 0) {
                             notificationService.showIncomingSmsNotification(
                                 address, 
                                 body,
@@ -176,6 +177,9 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
                         Log.e(TAG, "Error inserting SMS into database", e);
                     }
                 }
+
+                // Hold the broadcast until the buffered conversation writes have committed
+                Completable.merge(conversationUpdates).blockingAwait();
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error processing incoming SMS", e);
@@ -256,4 +260,10 @@ public class SmsDeliverReceiver extends BroadcastReceiver {
             return false;
         }
     }
+
+    @EntryPoint
+    @InstallIn(SingletonComponent.class)
+    public interface IncomingSmsEntryPoint {
+        ConversationRepository conversationRepository();
+    }
 }
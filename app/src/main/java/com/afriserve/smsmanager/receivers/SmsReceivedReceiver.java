@@ -15,10 +15,18 @@ import android.telephony.SmsMessage;
 import android.util.Log;
 import com.afriserve.smsmanager.data.dao.SmsDao;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
+import com.afriserve.smsmanager.data.utils.IncomingSmsDedupe;
 import com.afriserve.smsmanager.data.utils.PhoneNumberUtils;
 import com.afriserve.smsmanager.data.utils.MultipartSmsUtils;
 import com.afriserve.smsmanager.notifications.SmsNotificationService;
 import com.afriserve.smsmanager.data.blocks.BlockListManager;
+import com.afriserve.smsmanager.data.repository.ConversationRepository;
+import dagger.hilt.EntryPoint;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.EntryPointAccessors;
+import dagger.hilt.components.SingletonComponent;
+import io.reactivex.rxjava3.core.Completable;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -32,6 +40,7 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
     
     private static final String TAG = "SmsReceivedReceiver";
     private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final IncomingSmsDedupe recentKeys = IncomingSmsDedupe.shared();
     
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -61,7 +70,7 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                 
                 // Process messages and handle multipart concatenation
                 List<MultipartSmsUtils.CompleteSmsMessage> completeMessages = 
-                    MultipartSmsUtils.processIncomingMessages(messages);
+                    MultipartSmsUtils.processIncomingMessages(context, messages);
                 
                 // Get database instance
                 com.afriserve.smsmanager.AppDatabase database = 
@@ -80,13 +89,11 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                         contactResolver
                     );
 
-                com.afriserve.smsmanager.data.repository.ConversationRepository conversationRepository =
-                    new com.afriserve.smsmanager.data.repository.ConversationRepository(
-                        database.conversationDao(),
-                        smsDao,
-                        contactResolver,
-                        context
-                    );
+                // The app-wide repository, so its update buffer coalesces across broadcasts
+                ConversationRepository conversationRepository = EntryPointAccessors
+                    .fromApplication(context.getApplicationContext(), IncomingSmsEntryPoint.class)
+                    .conversationRepository();
+                List<Completable> conversationUpdates = new ArrayList<>();
                 
                 // Process each complete message
                 for (MultipartSmsUtils.CompleteSmsMessage completeMessage : completeMessages) {
@@ -104,6 +111,21 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                     
                     Log.d(TAG, "Processing complete SMS from: " + address + 
                           " (multipart: " + completeMessage.wasMultipart + ") (fallback)");
+
+                    long dedupeKey = IncomingSmsDedupe.keyOf(normalizedAddress, body, timestamp);
+                    if (recentKeys.isRecent(dedupeKey)) {
+                        Log.d(TAG, "Skipping recently seen message from: " + address + " (fallback)");
+                        continue;
+                    }
+                    try {
+                        if (smsDao.existsByDedupeKeySync(dedupeKey)) {
+                            recentKeys.remember(dedupeKey);
+                            Log.d(TAG, "Skipping duplicate message from: " + address + " (fallback)");
+                            continue;
+                        }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Error checking for duplicates (fallback)", e);
+                    }
                     
                     ProviderMatch providerMatch = findProviderMatch(context, normalizedAddress, body, timestamp);
                     Long deviceSmsId = providerMatch != null ? providerMatch.deviceSmsId : null;
@@ -116,16 +138,6 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                         }
                     }
 
-                    if (deviceSmsId != null) {
-                        try {
-                            smsDao.getSmsByDeviceSmsId(deviceSmsId).blockingGet();
-                            Log.d(TAG, "Skipping duplicate message by deviceSmsId: " + deviceSmsId + " (fallback)");
-                            continue;
-                        } catch (Exception ignored) {
-                            // Not found, proceed
-                        }
-                    }
-
                     // Create SMS entity
                     SmsEntity smsEntity = new SmsEntity();
                     smsEntity.deviceSmsId = deviceSmsId;
@@ -136,22 +148,28 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                     smsEntity.message = body != null ? body : "";
                     smsEntity.status = "RECEIVED"; // Mark as received
                     smsEntity.createdAt = timestamp;
+                    smsEntity.dedupeKey = dedupeKey;
                     
-                    // Insert into Room database
+                    // Insert into Room database. Messages already received are dropped; a row the
+                    // provider sync imported first is claimed, so it still gets a notification
                     try {
-                        Long result = smsDao.insertSms(smsEntity).blockingGet();
+                        long result = smsDao.insertIncomingSmsSync(smsEntity);
+                        recentKeys.remember(dedupeKey);
+                        if (result <= 0) {
+                            Log.d(TAG, "Skipping duplicate message from: " + address + " (fallback)");
+                            continue;
+                        }
                         Log.d(TAG, "Inserted SMS from: " + address + " with ID: " + result + " (fallback)");
 
                         if (normalizedAddress != null && !normalizedAddress.trim().isEmpty()) {
-                            try {
-                                conversationRepository.updateConversationFromMessage(smsEntity).blockingAwait();
-                            } catch (Exception e) {
-                                Log.w(TAG, "Failed to update conversation for incoming SMS (fallback)", e);
-                            }
+                            // Written behind; awaited once for the whole broadcast, after the
+                            // notifications. The repository logs failures.
+                            conversationUpdates.add(
+                                conversationRepository.updateConversationFromMessage(smsEntity).onErrorComplete());
                         }
                         
                         // Show notification for new message
-                        if (result != null && result > 0) {
+                        if (result > 0) {
                             notificationService.showIncomingSmsNotification(
                                 address, 
                                 body,
@@ -164,6 +182,9 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
                         Log.e(TAG, "Error inserting SMS into database (fallback)", e);
                     }
                 }
+
+                // Hold the broadcast until the buffered conversation writes have committed
+                Completable.merge(conversationUpdates).blockingAwait();
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error processing incoming SMS (fallback)", e);
@@ -330,4 +351,10 @@ public class SmsReceivedReceiver extends BroadcastReceiver {
             this.threadId = threadId;
         }
     }
+
+    @EntryPoint
+    @InstallIn(SingletonComponent.class)
+    public interface IncomingSmsEntryPoint {
+        ConversationRepository conversationRepository();
+    }
 }
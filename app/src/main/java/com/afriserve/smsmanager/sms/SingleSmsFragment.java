@@ -29,6 +29,7 @@ import androidx.lifecycle.ViewModelProvider;
 import com.afriserve.smsmanager.R;
 import com.afriserve.smsmanager.databinding.FragmentSmsSendBinding;
 import com.afriserve.smsmanager.billing.SubscriptionHelper;
+import com.afriserve.smsmanager.data.utils.SmsSegmentCounter;
 import com.afriserve.smsmanager.ui.contacts.ContactSearchDialog;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import dagger.hilt.android.AndroidEntryPoint;
@@ -53,6 +54,7 @@ public class SingleSmsFragment extends Fragment {
     private SingleSmsViewModel viewModel;
     private ActivityResultLauncher<Intent> contactPickerLauncher;
     private TextWatcher messageTextWatcher;
+    private final SmsSegmentCounter segmentCounter = new SmsSegmentCounter();
     private ExecutorService subscriptionExecutor;
     private PendingContactAction pendingContactAction = PendingContactAction.NONE;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
@@ -127,13 +129,16 @@ public class SingleSmsFragment extends Fragment {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                int length = s.length();
-                binding.txtCharCount.setText(length + " / 160 characters");
+                segmentCounter.reset().append(s);
+                int length = segmentCounter.getEncodedLength();
+                int limit = segmentCounter.isGsm7()
+                        ? SmsSegmentCounter.GSM7_SINGLE_PART : SmsSegmentCounter.UCS2_SINGLE_PART;
+                binding.txtCharCount.setText(length + " / " + limit + " characters");
 
                 // Show warning if message is long
-                if (length > 160) {
-                    int parts = (int) Math.ceil(length / 153.0);
-                    binding.txtCharCount.setText(length + " / 160 characters (" + parts + " SMS)");
+                int parts = segmentCounter.getParts();
+                if (parts > 1) {
+                    binding.txtCharCount.setText(length + " / " + limit + " characters (" + parts + " SMS)");
                     binding.txtCharCount.setTextColor(
                             ContextCompat.getColor(requireContext(), android.R.color.holo_orange_dark));
                 } else {
@@ -13,6 +13,8 @@ import androidx.paging.PagingConfig;
 import androidx.paging.PagingLiveData;
 import com.afriserve.smsmanager.data.entity.SmsEntity;
 import com.afriserve.smsmanager.data.entity.ConversationEntity;
+import com.afriserve.smsmanager.data.paging.KeysetPagingSource;
+import com.afriserve.smsmanager.data.paging.RankedPagingSource;
 import com.afriserve.smsmanager.data.repository.SmsRepository;
 import com.afriserve.smsmanager.data.repository.ConversationRepository;
 import com.afriserve.smsmanager.data.repository.SmsSearchRepository;
@@ -23,7 +25,9 @@ import com.afriserve.smsmanager.data.repository.SyncResult;
 import dagger.hilt.android.lifecycle.HiltViewModel;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.subjects.PublishSubject;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 
 @HiltViewModel
@@ -63,6 +67,11 @@ public class SimpleInboxViewModel extends ViewModel {
     private SortType currentSort = SortType.NEWEST;
     private String currentSearchQuery = "";
     
+    // Keystrokes are debounced before they reach the search index
+    private static final long SEARCH_DEBOUNCE_MS = 300L;
+    private final PublishSubject<String> searchQueries = PublishSubject.create();
+    private RankedPagingSource<ConversationEntity> currentSearchSource;
+    
     // Current messages LiveData observer (to prevent memory leaks)
     private LiveData<PagingData<ConversationEntity>> currentMessagesLiveData;
     private Observer<PagingData<ConversationEntity>> messagesObserver;
@@ -97,6 +106,16 @@ public class SimpleInboxViewModel extends ViewModel {
         // Setup messages using Kotlin helper for Paging 3
         updateMessagesSource();
         
+        disposables.add(
+            searchQueries
+                .debounce(SEARCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                    this::applySearchQuery,
+                    error -> Log.e("SimpleInboxViewModel", "Search query stream failed", error)
+                )
+        );
+        
         // Setup statistics - use conversation counts instead of message counts
         this.unreadCount = conversationRepository.getUnreadConversationsCount();
         this.totalCount = conversationRepository.getTotalConversationsCount();
@@ -297,10 +316,14 @@ public class SimpleInboxViewModel extends ViewModel {
     }
     
     public void search(String query) {
-        if (query == null) {
-            query = "";
+        searchQueries.onNext(query != null ? query.trim() : "");
+    }
+    
+    private void applySearchQuery(String query) {
+        if (query.equals(currentSearchQuery)) {
+            return;
         }
-        currentSearchQuery = query.trim();
+        currentSearchQuery = query;
         updateMessagesSource();
         
         // Trigger search suggestions if query is substantial
@@ -322,6 +345,8 @@ public class SimpleInboxViewModel extends ViewModel {
     }
     
     public void clearSearch() {
+        // Applied immediately; the queued empty query then matches and is dropped
+        searchQueries.onNext("");
         currentSearchQuery = "";
         updateMessagesSource();
     }
@@ -348,18 +373,40 @@ public class SimpleInboxViewModel extends ViewModel {
         // IMPORTANT: The pagingSourceFactory MUST return a NEW instance each time
         // Do NOT create a single PagingSource instance and reuse it
         PagingConfig pagingConfig = new PagingConfig(20, 5, false);
-        Pager<Integer, ConversationEntity> pager = new Pager<>(pagingConfig, () -> {
-            Log.d("SimpleInboxViewModel", "Creating new PagingSource...");
-            return conversationRepository.getConversationsPaged(
-                currentFilter.name(),
-                currentSearchQuery,
-                currentSort.name()
-            );
-        });
+        
+        // A superseded search may still be running its ranking query
+        if (currentSearchSource != null) {
+            currentSearchSource.cancelPendingLoad();
+            currentSearchSource = null;
+        }
+        
+        LiveData<PagingData<ConversationEntity>> pagingLiveData;
+        if (currentSearchQuery.isEmpty()) {
+            Pager<KeysetPagingSource.Key, ConversationEntity> pager = new Pager<>(pagingConfig, () -> {
+                Log.d("SimpleInboxViewModel", "Creating new PagingSource...");
+                return conversationRepository.getConversationsPaged(
+                    currentFilter.name(),
+                    currentSort.name()
+                );
+            });
+            pagingLiveData = PagingLiveData.getLiveData(pager);
+        } else {
+            // Ranked by relevance; the sort order applies to browsing only
+            String query = currentSearchQuery;
+            String filter = currentFilter.name();
+            Pager<Integer, ConversationEntity> pager = new Pager<>(pagingConfig, () -> {
+                Log.d("SimpleInboxViewModel", "Creating new search PagingSource...");
+                RankedPagingSource<ConversationEntity> source =
+                    conversationRepository.searchConversations(query, filter);
+                currentSearchSource = source;
+                return source;
+            });
+            pagingLiveData = PagingLiveData.getLiveData(pager);
+        }
         
         // Use PagingLiveData to convert Pager to LiveData for Java compatibility
         currentMessagesLiveData = PagingLiveData.cachedIn(
-            PagingLiveData.getLiveData(pager),
+            pagingLiveData,
             ViewModelKt.getViewModelScope(this)
         );
         Log.d("SimpleInboxViewModel", "Created LiveData from Pager");
@@ -15,11 +15,16 @@ import com.afriserve.smsmanager.BulkSmsService
 import com.afriserve.smsmanager.R
 import com.afriserve.smsmanager.data.dao.ScheduledCampaignDao
 import com.afriserve.smsmanager.data.persistence.UploadPersistenceService
+import com.afriserve.smsmanager.data.pipeline.CampaignControl
 import dagger.assisted.Assisted
 import dagger.assisted.AssistedInject
 import androidx.hilt.work.HiltWorker
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.awaitCancellation
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.withContext
+import java.util.concurrent.atomic.AtomicBoolean
 
 @HiltWorker
 class BulkSmsSendingWorker @AssistedInject constructor(
@@ -27,7 +32,8 @@ class BulkSmsSendingWorker @AssistedInject constructor(
     @Assisted workerParams: WorkerParameters,
     private val bulkSmsService: BulkSmsService,
     private val uploadPersistence: UploadPersistenceService,
-    private val scheduledCampaignDao: ScheduledCampaignDao
+    private val scheduledCampaignDao: ScheduledCampaignDao,
+    private val campaignControl: CampaignControl
 ) : CoroutineWorker(appContext, workerParams) {
 
     companion object {
@@ -99,19 +105,37 @@ class BulkSmsSendingWorker @AssistedInject constructor(
             }
         }
 
-        val result = bulkSmsService.sendBulkSmsSession(session) { processed, total ->
-            val percent = if (total > 0) (processed * 100 / total) else 0
-            val progressData = Data.Builder()
-                .putInt(PROGRESS_TOTAL, total)
-                .putInt(PROGRESS_PROCESSED, processed)
-                .putInt(PROGRESS_PERCENT, percent)
-                .putInt(PROGRESS_SENT, session.sentCount)
-                .putInt(PROGRESS_FAILED, session.failedCount)
-                .putInt(PROGRESS_SKIPPED, session.skippedCount)
-                .putString(PROGRESS_STATUS, "sending")
-                .build()
-            setProgressAsync(progressData)
-            updateProgressNotification(processed, total)
+        val finished = AtomicBoolean(false)
+        val result = coroutineScope {
+            // When WorkManager stops this worker, halt the send loop; the session stays resumable.
+            val stopWatcher = launch {
+                try {
+                    awaitCancellation()
+                } finally {
+                    if (!finished.get()) {
+                        campaignControl.suspend(sessionId)
+                    }
+                }
+            }
+            try {
+                bulkSmsService.sendBulkSmsSession(session) { processed, total ->
+                    val percent = if (total > 0) (processed * 100 / total) else 0
+                    val progressData = Data.Builder()
+                        .putInt(PROGRESS_TOTAL, total)
+                        .putInt(PROGRESS_PROCESSED, processed)
+                        .putInt(PROGRESS_PERCENT, percent)
+                        .putInt(PROGRESS_SENT, session.sentCount)
+                        .putInt(PROGRESS_FAILED, session.failedCount)
+                        .putInt(PROGRESS_SKIPPED, session.skippedCount)
+                        .putString(PROGRESS_STATUS, "sending")
+                        .build()
+                    setProgressAsync(progressData)
+                    updateProgressNotification(processed, total)
+                }
+            } finally {
+                finished.set(true)
+                stopWatcher.cancel()
+            }
         }
 
         // Update scheduled campaign status
@@ -7,11 +7,17 @@ import android.util.Log;
 import androidx.work.Data;
 import androidx.work.OneTimeWorkRequest;
 import androidx.work.WorkManager;
+import com.afriserve.smsmanager.data.tracking.EnhancedDeliveryTracker;
 import com.afriserve.smsmanager.workers.SmsDeliveryWorker;
+import dagger.hilt.EntryPoint;
+import dagger.hilt.InstallIn;
+import dagger.hilt.android.EntryPointAccessors;
+import dagger.hilt.components.SingletonComponent;
 
 /**
  * BroadcastReceiver for SMS delivery tracking
- * Delegates to WorkManager for reliable processing
+ * Callbacks issued by EnhancedDeliveryTracker go back to the tracker, which resolves them by
+ * request code; the rest are delegated to WorkManager for reliable processing
  */
 public class SmsDeliveryReceiver extends BroadcastReceiver {
     
@@ -20,6 +26,20 @@ public class SmsDeliveryReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(Context context, Intent intent) {
         try {
+            if (EnhancedDeliveryTracker.isTrackerIntent(intent)) {
+                // Carries sms_id as a String; the tracker's intent registry is authoritative.
+                // Read the result code first: it is no longer available once goAsync() is called
+                int resultCode = getResultCode();
+                EnhancedDeliveryTracker tracker = EntryPointAccessors
+                    .fromApplication(context.getApplicationContext(), DeliveryReceiverEntryPoint.class)
+                    .deliveryTracker();
+                // Keep the process alive until the status change is committed; after a restart
+                // that includes restoring the tracker's registry
+                PendingResult pendingResult = goAsync();
+                tracker.onStatusBroadcast(intent, resultCode, pendingResult::finish);
+                return;
+            }
+
             String action = intent.getAction();
             long smsId = intent.getLongExtra("sms_id", -1);
             
@@ -70,4 +90,10 @@ public class SmsDeliveryReceiver extends BroadcastReceiver {
             Log.e(TAG, "Error processing SMS delivery broadcast", e);
         }
     }
+
+    @EntryPoint
+    @InstallIn(SingletonComponent.class)
+    public interface DeliveryReceiverEntryPoint {
+        EnhancedDeliveryTracker deliveryTracker();
+    }
 }
@@ -0,0 +1,99 @@
+package com.afriserve.smsmanager.data.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EnhancedLruCacheTest {
+
+    @Test
+    public void notFoundEntries_areDistinctFromMisses() {
+        EnhancedLruCache<String, String> cache = new EnhancedLruCache<>(10);
+        cache.put("a", "Alice");
+        cache.putNotFound("b", 60_000L);
+
+        assertEquals("Alice", cache.get("a"));
+        assertNull(cache.get("b", "missing"));
+        assertEquals("missing", cache.get("c", "missing"));
+
+        Map<String, String> found = cache.getAll(Arrays.asList("a", "b", "c"));
+        assertEquals(2, found.size());
+        assertTrue(found.containsKey("b"));
+        assertFalse(found.containsKey("c"));
+
+        EnhancedLruCache.Stats stats = cache.stats();
+        assertEquals(4, stats.hitCount);
+        assertEquals(2, stats.missCount);
+    }
+
+    @Test
+    public void expiredEntries_areDropped() throws InterruptedException {
+        EnhancedLruCache<String, String> cache = new EnhancedLruCache<>(10);
+        cache.put("a", "Alice", 1L);
+        Thread.sleep(5);
+
+        assertEquals("gone", cache.get("a", "gone"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.stats().expirationCount);
+    }
+
+    @Test
+    public void capacity_isBoundedAndRecentlyReadEntriesSurvive() {
+        // Small enough for a single segment, so the clock order is deterministic
+        EnhancedLruCache<Integer, Integer> cache = new EnhancedLruCache<>(16);
+        for (int i = 0; i < 16; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < 16; i += 2) {
+            cache.get(i);
+        }
+        for (int i = 16; i < 24; i++) {
+            cache.put(i, i);
+        }
+
+        assertEquals(16, cache.size());
+        assertEquals(8, cache.stats().evictionCount);
+        for (int i = 0; i < 16; i += 2) {
+            assertEquals(i, (int) cache.get(i, -1));
+        }
+    }
+
+    @Test
+    public void concurrentAccess_keepsSizeWithinCapacity() throws InterruptedException {
+        EnhancedLruCache<Integer, Integer> cache = new EnhancedLruCache<>(128);
+        AtomicInteger mismatches = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 1000;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    int key = offset + (i % 500);
+                    Integer value = cache.get(key);
+                    if (value != null && value != key) {
+                        mismatches.incrementAndGet();
+                    }
+                    cache.put(key, key);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, mismatches.get());
+        assertTrue(cache.size() <= 128);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullKey_isRejectedOnPut() {
+        new EnhancedLruCache<String, String>(10).put(null, "value");
+    }
+}
@@ -0,0 +1,137 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CarrierRateLimitTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private final CarrierPrefixTrie trie = CarrierPrefixTrie.defaults();
+
+    @Test
+    public void trie_routesKenyanNumbersInEveryForm() {
+        assertEquals("SAFARICOM", trie.lookup("+254712345678"));
+        assertEquals("SAFARICOM", trie.lookup("0712345678"));
+        assertEquals("SAFARICOM", trie.lookup("712 345 678"));
+        assertEquals("SAFARICOM", trie.lookup("00254110345678"));
+        assertEquals("AIRTEL_KE", trie.lookup("254733123456"));
+        assertEquals("AIRTEL_KE", trie.lookup("0100123456"));
+        assertEquals("TELKOM_KE", trie.lookup("+254-770-123456"));
+        assertEquals(CarrierPrefixTrie.UNKNOWN, trie.lookup("+254747123456"));
+    }
+
+    @Test
+    public void trie_keepsOtherCountriesAndRejectsGarbage() {
+        assertEquals("VERIZON", trie.lookup("+12125551234"));
+        assertEquals("O2", trie.lookup("+447812345678"));
+        assertEquals("AIRTEL", trie.lookup("+919812345678"));
+        assertEquals(CarrierPrefixTrie.UNKNOWN, trie.lookup("+33612345678"));
+        assertEquals(CarrierPrefixTrie.UNKNOWN, trie.lookup("not a number"));
+        assertEquals(CarrierPrefixTrie.UNKNOWN, trie.lookup(null));
+    }
+
+    @Test
+    public void limiter_allowsBurstThenSpacesSends() {
+        GcraRateLimiter limiter = new GcraRateLimiter("SAFARICOM", 60, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.delay(T0));
+            limiter.acquire(T0);
+        }
+        assertTrue(limiter.isLimited(T0));
+        assertEquals(1000, limiter.delay(T0));
+        assertEquals(0, limiter.delay(T0 + 1000));
+        assertEquals(3, limiter.backlog(T0));
+    }
+
+    @Test
+    public void limiter_reserveSchedulesBatchWithoutOvershooting() {
+        GcraRateLimiter limiter = new GcraRateLimiter("AIRTEL_KE", 60, 2);
+
+        long base = limiter.reserve(5, T0);
+        long[] expected = {T0, T0, T0 + 1000, T0 + 2000, T0 + 3000};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], Math.max(T0, base + i * limiter.getIntervalMs()));
+        }
+        // The next caller queues behind the whole batch
+        assertEquals(4000, limiter.delay(T0));
+
+        assertTrue(limiter.release(limiter.endOf(base, 5), 3, T0));
+        assertEquals(1000, limiter.delay(T0));
+    }
+
+    @Test
+    public void limiter_releaseNeverRewindsPastNow() {
+        GcraRateLimiter limiter = new GcraRateLimiter("TELKOM_KE", 60, 1);
+        long base = limiter.reserve(2, T0);
+        limiter.release(limiter.endOf(base, 2), 5, T0 + 500);
+
+        assertFalse(limiter.isLimited(T0 + 500));
+        assertEquals(0, limiter.backlog(T0 + 500));
+    }
+
+    @Test
+    public void limiter_releaseKeepsSlotsOnceReservedAgain() {
+        GcraRateLimiter limiter = new GcraRateLimiter("SAFARICOM", 60, 1);
+        long first = limiter.reserve(3, T0);
+        limiter.reserve(2, T0);
+        assertEquals(5000, limiter.delay(T0));
+
+        // Rewinding now would hand the second reservation's slots out again
+        assertFalse(limiter.release(limiter.endOf(first, 3), 2, T0));
+        assertEquals(5000, limiter.delay(T0));
+    }
+
+    @Test
+    public void limiter_limitChangeKeepsCountedSends() {
+        GcraRateLimiter previous = new GcraRateLimiter("TELKOM_KE", 60, 3);
+        for (int i = 0; i < 3; i++) {
+            previous.acquire(T0);
+        }
+
+        GcraRateLimiter raised = new GcraRateLimiter("TELKOM_KE", 120, 3);
+        raised.continueFrom(previous, T0);
+
+        // Three sends still counted at the new 500ms interval, so no fresh burst
+        assertEquals(3, raised.backlog(T0));
+        assertEquals(500, raised.delay(T0));
+        assertEquals(0, raised.delay(T0 + 500));
+    }
+
+    @Test
+    public void limiter_concurrentSendersGetDistinctSlots() throws Exception {
+        GcraRateLimiter limiter = new GcraRateLimiter("SAFARICOM", 600, 1);
+        int threads = 8;
+        int perThread = 250;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger errors = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        limiter.acquire(T0);
+                    }
+                } catch (InterruptedException e) {
+                    errors.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+
+        assertEquals(0, errors.get());
+        // Every acquire moved the arrival time by exactly one interval
+        assertEquals(threads * perThread * limiter.getIntervalMs(), limiter.delay(T0));
+    }
+}
@@ -0,0 +1,75 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import androidx.arch.core.executor.testing.InstantTaskExecutorRule;
+
+import com.afriserve.smsmanager.data.dao.OptOutDao;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.reactivex.rxjava3.core.Single;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ComplianceManagerTest {
+
+    private static final String OPTED_OUT = "+254712345678";
+
+    @Rule
+    public InstantTaskExecutorRule instantExecutorRule = new InstantTaskExecutorRule();
+
+    @Test
+    public void failedReload_keepsPreviousOptOuts() {
+        OptOutDao dao = Mockito.mock(OptOutDao.class);
+        when(dao.getOptOutCount()).thenReturn(Single.just(1));
+        when(dao.getAllActiveOptOutNumbers()).thenReturn(
+                Single.just(Collections.singletonList(OPTED_OUT)),
+                Single.error(new IllegalStateException("database closed")));
+        ComplianceManager manager = new ComplianceManager(dao);
+        manager.refreshSnapshot().blockingAwait();
+
+        try {
+            manager.refreshSnapshot().blockingAwait();
+            fail("refresh should report the failed read");
+        } catch (RuntimeException expected) {
+            // Previous snapshot stays in use
+        }
+
+        ComplianceManager.ComplianceResult result = manager.checkCompliance(OPTED_OUT, "EMERGENCY").blockingGet();
+        assertFalse(result.isCompliant());
+        assertEquals(ComplianceManager.ComplianceViolation.OPTED_OUT, result.getViolationType());
+    }
+
+    @Test
+    public void failedFirstLoad_refusesToScreen() {
+        OptOutDao dao = Mockito.mock(OptOutDao.class);
+        when(dao.getOptOutCount()).thenReturn(Single.just(1));
+        when(dao.getAllActiveOptOutNumbers()).thenReturn(
+                Single.error(new IllegalStateException("database closed")),
+                Single.just(Collections.singletonList(OPTED_OUT)));
+        ComplianceManager manager = new ComplianceManager(dao);
+
+        try {
+            manager.checkComplianceBatch(Collections.singletonList(OPTED_OUT), "EMERGENCY").blockingGet();
+            fail("screening without an opt-out list must fail");
+        } catch (RuntimeException expected) {
+            // Nothing was cached, so the next check reads the list again
+        }
+
+        List<ComplianceManager.ComplianceResult> results =
+                manager.checkComplianceBatch(Collections.singletonList(OPTED_OUT), "EMERGENCY").blockingGet();
+        assertFalse(results.get(0).isCompliant());
+    }
+}
@@ -0,0 +1,63 @@
+package com.afriserve.smsmanager.data.compliance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ComplianceSnapshotTest {
+
+    @Test
+    public void phoneKey_matchesNormalizationRules() {
+        assertEquals(ComplianceSnapshot.phoneKey("+12025551234"), ComplianceSnapshot.phoneKey("(202) 555-1234"));
+        assertEquals(ComplianceSnapshot.phoneKey("+12025551234"), ComplianceSnapshot.phoneKey("12025551234"));
+        assertEquals(ComplianceSnapshot.phoneKey("+254712345678"), ComplianceSnapshot.phoneKey("254712345678"));
+        assertEquals(ComplianceSnapshot.phoneKey("+254712345678"), ComplianceSnapshot.phoneKey("0712 345 678"));
+        assertEquals(ComplianceSnapshot.NO_KEY, ComplianceSnapshot.phoneKey("12+34"));
+        assertEquals(ComplianceSnapshot.NO_KEY, ComplianceSnapshot.phoneKey("+1234567890123456"));
+    }
+
+    @Test
+    public void lookups_findEveryListedNumberAndNoOthers() {
+        List<String> optOuts = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            optOuts.add(String.format("+2547%08d", i * 2));
+        }
+        ComplianceSnapshot snapshot = ComplianceSnapshot.build(optOuts,
+                Collections.singletonList("+12025551234"), Collections.emptyList());
+
+        for (int i = 0; i < 40000; i++) {
+            assertEquals(i % 2 == 0, snapshot.isOptedOut(String.format("+2547%08d", i)));
+        }
+        assertTrue(snapshot.isInDnd(ComplianceSnapshot.phoneKey("202-555-1234")));
+        assertFalse(snapshot.isInNdnc(ComplianceSnapshot.phoneKey("202-555-1234")));
+    }
+
+    @Test
+    public void optOutChanges_areAppliedIncrementally() {
+        ComplianceSnapshot snapshot = ComplianceSnapshot.empty();
+
+        snapshot.addOptOut("+254700000001");
+        assertTrue(snapshot.isOptedOut("+254700000001"));
+        assertEquals(1, snapshot.getOptOutCount());
+
+        snapshot.removeOptOut("+254700000001");
+        assertFalse(snapshot.isOptedOut("+254700000001"));
+        assertEquals(0, snapshot.getOptOutCount());
+    }
+
+    @Test
+    public void isValidFormat_followsExistingPatterns() {
+        assertTrue(ComplianceSnapshot.isValidFormat("+254712345678"));
+        assertTrue(ComplianceSnapshot.isValidFormat("0712345678"));
+        assertTrue(ComplianceSnapshot.isValidFormat("07123456789"));
+        assertFalse(ComplianceSnapshot.isValidFormat("+0712345678"));
+        assertFalse(ComplianceSnapshot.isValidFormat("712345"));
+        assertFalse(ComplianceSnapshot.isValidFormat("   "));
+    }
+}
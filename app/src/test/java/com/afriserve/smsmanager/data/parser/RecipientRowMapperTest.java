@@ -0,0 +1,79 @@
+package com.afriserve.smsmanager.data.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.afriserve.smsmanager.models.Recipient;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RecipientRowMapperTest {
+
+    @Test
+    public void onRow_mapsAliasedColumnsAndPlaceholderFields() throws Exception {
+        List<Recipient> recipients = new ArrayList<>();
+        RecipientRowMapper mapper = new RecipientRowMapper(recipients::add);
+
+        mapper.onHeaders(new String[] {"Full Name", "Phone No", "Arrears Amount", "Due Date"});
+        mapper.onRow(new String[] {"Wanjiku", "0712 345 678", "Ksh 1,200.50", "2026-11-01"});
+
+        assertEquals("Full Name", mapper.getMapping().name);
+        assertEquals(1, recipients.size());
+        Recipient recipient = recipients.get(0);
+        assertEquals("Wanjiku", recipient.getName());
+        assertEquals("+254712345678", recipient.getPhone());
+        assertEquals(1200.5, recipient.getAmount(), 0.0001);
+        assertEquals("2026-11-01", recipient.getFields().get("due_date"));
+    }
+
+    @Test
+    public void onRow_dropsInvalidAndDuplicateNumbers() throws Exception {
+        List<Recipient> recipients = new ArrayList<>();
+        RecipientRowMapper mapper = new RecipientRowMapper(recipients::add);
+
+        mapper.onHeaders(new String[] {"Name", "Phone", "Amount"});
+        mapper.onRow(new String[] {"A", "0712345678", ""});
+        mapper.onRow(new String[] {"B", "+254 712 345 678", "10"});
+        mapper.onRow(new String[] {"C", "", "10"});
+        mapper.onRow(new String[] {"D", "0722000111", "abc"});
+
+        ExcelParser.ImportSummary summary = mapper.summary();
+        assertEquals(4, summary.totalRows);
+        assertEquals(2, summary.importedRows);
+        assertEquals(1, summary.invalidRows);
+        assertEquals(1, summary.duplicateRows);
+        assertNull(recipients.get(0).getAmount());
+        assertNull(recipients.get(1).getAmount());
+    }
+
+    @Test
+    public void streamCsv_deliversCleanedRowsWithoutBlankLines() throws Exception {
+        String csv = "\uFEFFName;Phone\nAmina;0712345678\n;\nBaraka;1.2E3\n";
+        List<String> seen = new ArrayList<>();
+
+        int delivered = CsvParser.streamCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                new RowListener() {
+                    @Override
+                    public void onHeaders(String[] headers) {
+                        seen.add(String.join("|", headers));
+                    }
+
+                    @Override
+                    public boolean onRow(String[] values) {
+                        seen.add(String.join("|", values));
+                        return true;
+                    }
+                });
+
+        assertEquals(2, delivered);
+        assertEquals("Name|Phone", seen.get(0));
+        assertEquals("Amina|0712345678", seen.get(1));
+        assertEquals("Baraka|1200", seen.get(2));
+    }
+}
@@ -0,0 +1,59 @@
+package com.afriserve.smsmanager.data.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.afriserve.smsmanager.models.Recipient;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RecipientOverlayListTest {
+
+    @Test
+    public void edits_matchTheSameEditsOnACopy() {
+        List<Recipient> base = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            base.add(new Recipient("R" + i, "+2547000000" + (i < 10 ? "0" + i : i)));
+        }
+        List<Recipient> expected = new ArrayList<>(base);
+        RecipientOverlayList overlay = RecipientOverlayList.over(Collections.unmodifiableList(base));
+
+        int[] removals = {0, 10, 10, 46, 3, 20, 43};
+        for (int index : removals) {
+            assertEquals(expected.remove(index), overlay.remove(index));
+        }
+        Recipient added = new Recipient("New", "+254711111111");
+        expected.add(added);
+        overlay.add(added);
+        Recipient replacement = new Recipient("Edited", "+254722222222");
+        expected.set(5, replacement);
+        overlay.set(5, replacement);
+        expected.remove(expected.size() - 1);
+        overlay.remove(overlay.size() - 1);
+
+        assertEquals(expected.size(), overlay.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), overlay.get(i));
+        }
+        assertEquals(50, base.size());
+    }
+
+    @Test
+    public void unwrap_returnsBaseUntilEdited() {
+        List<Recipient> base = new ArrayList<>();
+        base.add(new Recipient("A", "+254700000001"));
+        RecipientOverlayList overlay = RecipientOverlayList.over(base);
+
+        assertSame(overlay, RecipientOverlayList.over(overlay));
+        assertSame(base, RecipientOverlayList.unwrap(overlay));
+        overlay.add(new Recipient("B", "+254700000002"));
+        assertSame(overlay, RecipientOverlayList.unwrap(overlay));
+        assertTrue(overlay.remove(base.get(0)));
+        assertEquals("B", overlay.get(0).getName());
+    }
+}
@@ -0,0 +1,52 @@
+package com.afriserve.smsmanager.data.pipeline;
+
+import static org.junit.Assert.assertEquals;
+
+import com.afriserve.smsmanager.data.persistence.UploadPersistenceService.SimLaneProgress;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class SimLanePlannerTest {
+
+    @Test
+    public void split_coversRangeWithBalancedContiguousLanes() {
+        List<SimLaneProgress> lanes = SimLanePlanner.split(3, 10, Arrays.asList(0, 1));
+
+        assertEquals(2, lanes.size());
+        assertEquals(0, lanes.get(0).simSlot);
+        assertEquals(3, lanes.get(0).startIndex);
+        assertEquals(7, lanes.get(0).endIndex);
+        assertEquals(1, lanes.get(1).simSlot);
+        assertEquals(7, lanes.get(1).startIndex);
+        assertEquals(10, lanes.get(1).endIndex);
+        assertEquals(3, SimLanePlanner.processedIndex(lanes));
+    }
+
+    @Test
+    public void reassign_movesUnfinishedLanesOffMissingSims() {
+        List<SimLaneProgress> lanes = SimLanePlanner.split(0, 10, Arrays.asList(0, 1));
+        lanes.get(0).nextIndex = 5;
+
+        SimLanePlanner.reassign(lanes, Collections.singletonList(0));
+
+        assertEquals(0, lanes.get(1).simSlot);
+        Map<Integer, List<SimLaneProgress>> work = SimLanePlanner.bySimSlot(lanes);
+        assertEquals(1, work.size());
+        assertEquals(1, work.get(0).size());
+        assertEquals(5, work.get(0).get(0).startIndex);
+    }
+
+    @Test
+    public void processedIndex_sumsProgressAcrossLanes() {
+        List<SimLaneProgress> lanes = SimLanePlanner.split(0, 100, Arrays.asList(0, 1));
+        lanes.get(0).nextIndex = 20;
+        lanes.get(1).nextIndex = 60;
+
+        assertEquals(30, SimLanePlanner.processedIndex(lanes));
+    }
+}
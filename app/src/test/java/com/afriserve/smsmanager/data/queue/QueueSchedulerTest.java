@@ -0,0 +1,104 @@
+package com.afriserve.smsmanager.data.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.afriserve.smsmanager.data.entity.SmsQueueEntity;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class QueueSchedulerTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    public void wheel_firesEntriesOnceTheirTickHasPassed() {
+        RetryTimerWheel wheel = new RetryTimerWheel(1000, 8, T0);
+        wheel.schedule(1, T0 + 2500);
+        wheel.schedule(2, T0 + 1200);
+
+        assertTrue(wheel.advance(T0 + 999).isEmpty());
+        assertEquals(Collections.singletonList(2L), wheel.advance(T0 + 1999));
+        assertEquals(Collections.singletonList(1L), wheel.advance(T0 + 3000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void wheel_keepsEntriesBeyondOneRevolution() {
+        RetryTimerWheel wheel = new RetryTimerWheel(1000, 8, T0);
+        wheel.schedule(1, T0 + 3000);
+        wheel.schedule(2, T0 + 11_000); // same slot, next revolution
+
+        assertEquals(Collections.singletonList(1L), wheel.advance(T0 + 5000));
+        assertTrue(wheel.advance(T0 + 10_000).isEmpty());
+        assertEquals(Collections.singletonList(2L), wheel.advance(T0 + 11_000));
+    }
+
+    @Test
+    public void wheel_catchesUpAfterLongGapInDeadlineOrder() {
+        RetryTimerWheel wheel = new RetryTimerWheel(1000, 8, T0);
+        wheel.schedule(1, T0 + 30_000);
+        wheel.schedule(2, T0 + 4000);
+        wheel.schedule(3, T0 - 5000); // already due
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), wheel.advance(T0 + 60_000));
+    }
+
+    @Test
+    public void wheel_rescheduleAndCancelReplaceEarlierEntries() {
+        RetryTimerWheel wheel = new RetryTimerWheel(1000, 8, T0);
+        wheel.schedule(1, T0 + 1000);
+        wheel.schedule(1, T0 + 5000);
+        wheel.schedule(2, T0 + 1000);
+        wheel.cancel(2);
+
+        assertTrue(wheel.advance(T0 + 2000).isEmpty());
+        assertFalse(wheel.contains(2));
+        assertEquals(Collections.singletonList(1L), wheel.advance(T0 + 5000));
+    }
+
+    @Test
+    public void poll_servesTransactionalFirstWithoutStarvingMarketing() {
+        QueueScheduler scheduler = new QueueScheduler(T0);
+        for (long id = 1; id <= 3; id++) {
+            scheduler.schedule(item(id, SmsQueueEntity.PRIORITY_MARKETING), T0);
+        }
+        for (long id = 10; id <= 15; id++) {
+            scheduler.schedule(item(id, SmsQueueEntity.PRIORITY_TRANSACTIONAL), T0);
+        }
+
+        long[] order = new long[9];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = scheduler.poll(T0 + 1000).id;
+        }
+
+        long[] expected = {10, 11, 12, 13, 1, 14, 15, 2, 3};
+        assertEquals(Arrays.toString(expected), Arrays.toString(order));
+        assertNull(scheduler.poll(T0 + 1000));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void poll_holdsItemsUntilDueAndDropsRemovedOnes() {
+        QueueScheduler scheduler = new QueueScheduler(T0);
+        scheduler.schedule(item(1, SmsQueueEntity.PRIORITY_MARKETING), T0 + 5000);
+        scheduler.schedule(item(2, SmsQueueEntity.PRIORITY_MARKETING), T0 + 5000);
+        scheduler.remove(2);
+
+        assertNull(scheduler.poll(T0 + 4000));
+        assertEquals(1, scheduler.poll(T0 + 5000).id);
+        assertNull(scheduler.poll(T0 + 5000));
+    }
+
+    private static SmsQueueEntity item(long id, int priority) {
+        SmsQueueEntity item = new SmsQueueEntity();
+        item.id = id;
+        item.priority = priority;
+        return item;
+    }
+}
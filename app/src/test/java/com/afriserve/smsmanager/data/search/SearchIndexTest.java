@@ -0,0 +1,61 @@
+package com.afriserve.smsmanager.data.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class SearchIndexTest {
+
+    private static final double[] WEIGHTS = {2.0, 1.0};
+
+    @Test
+    public void matchQuery_prefixesEveryTermAndDropsOperators() {
+        assertEquals("\"Jane\"* \"doe\"*", SearchIndex.toMatchQuery(" Jane  doe ", true));
+        // Quoted, so OR is just another term rather than an operator
+        assertEquals("\"jane*\" \"OR*\" \"doe*\"", SearchIndex.toMatchQuery("jane\" OR doe", false));
+        assertNull(SearchIndex.toMatchQuery("  -*\"() ", true));
+        assertNull(SearchIndex.toMatchQuery(null, true));
+    }
+
+    @Test
+    public void matchQuery_stripsTrunkPrefixFromNumbers() {
+        assertEquals("\"712345\"*", SearchIndex.toMatchQuery("0712345", true));
+        assertEquals("\"254712\"*", SearchIndex.toMatchQuery("+254712", true));
+        assertEquals("\"0\"*", SearchIndex.toMatchQuery("000", true));
+    }
+
+    @Test
+    public void bm25_prefersTitleHitsAndShorterDocuments() {
+        // 100 rows, average lengths (title 3, body 20), one phrase in 10 docs per column
+        double titleHit = SearchIndex.bm25(matchinfo(100, 3, 20, 3, 20, 1, 0), WEIGHTS);
+        double bodyHit = SearchIndex.bm25(matchinfo(100, 3, 20, 3, 20, 0, 1), WEIGHTS);
+        double longBodyHit = SearchIndex.bm25(matchinfo(100, 3, 20, 3, 80, 0, 1), WEIGHTS);
+
+        assertTrue(titleHit > bodyHit);
+        assertTrue(bodyHit > longBodyHit);
+        assertTrue(longBodyHit > 0.0);
+        assertEquals(0.0, SearchIndex.bm25(new byte[4], WEIGHTS), 0.0);
+    }
+
+    /** matchinfo 'pcnalx' blob for one phrase over (title, body). */
+    private static byte[] matchinfo(int rows, int avgTitle, int avgBody, int titleLength, int bodyLength,
+                                    int titleHits, int bodyHits) {
+        int[] values = {
+            1, 2, rows,
+            avgTitle, avgBody,
+            titleLength, bodyLength,
+            titleHits, 10, 10,
+            bodyHits, 10, 10
+        };
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(ByteOrder.nativeOrder());
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,59 @@
+package com.afriserve.smsmanager.data.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class SearchQueryCompilerTest {
+
+    @Test
+    public void emptyCriteria_hasNoFilter() {
+        SearchQueryCompiler.Plan plan = SearchQueryCompiler.compile(new AdvancedSearchParser.SearchCriteria());
+        assertNull(plan.where);
+        assertTrue(plan.args.isEmpty());
+    }
+
+    @Test
+    public void operators_compileToBoundConditions() {
+        AdvancedSearchParser.SearchCriteria criteria = new AdvancedSearchParser.SearchCriteria();
+        criteria.textQuery = "mpesa 0712";
+        criteria.fromPhoneNumbers.add("712345678");
+        criteria.dateRange = new AdvancedSearchParser.DateRange(100L, 200L);
+        criteria.isUnread = true;
+        criteria.messageTypes.addAll(Arrays.asList("SENT", "SENT", "FAILED"));
+
+        SearchQueryCompiler.Plan plan = SearchQueryCompiler.compile(criteria);
+
+        assertEquals("(id IN (SELECT docid FROM sms_fts WHERE sms_fts MATCH ?))"
+                + " AND (phoneNumber IN (?, ?, ?, ?, ?))"
+                + " AND (createdAt >= ? AND createdAt < ?)"
+                + " AND ((isRead = 0 OR (isRead IS NULL AND status IN ('PENDING', 'SENT', 'RECEIVED'))))"
+                + " AND (status IN (?, ?))",
+            plan.where);
+        assertEquals("\"mpesa*\" \"0712*\"", plan.args.get(0));
+        assertEquals(100L, plan.args.get(6));
+        assertEquals(200L, plan.args.get(7));
+        assertEquals(Arrays.asList("SENT", "FAILED"), plan.args.subList(8, 10));
+    }
+
+    @Test
+    public void phoneVariants_coverKenyanSpellings() {
+        List<String> variants = SearchQueryCompiler.phoneVariants("+254712345678");
+        assertTrue(variants.containsAll(Arrays.asList(
+            "+254712345678", "254712345678", "0712345678")));
+
+        List<String> foreign = SearchQueryCompiler.phoneVariants("+14155550100");
+        assertEquals(Arrays.asList("+14155550100", "14155550100"), foreign);
+    }
+
+    @Test
+    public void tokenize_keepsQuotedRunsTogether() {
+        assertEquals(Arrays.asList("contact:\"Jane Doe\"", "hello", "\"two words\""),
+            AdvancedSearchParser.tokenize("  contact:\"Jane Doe\" hello  \"two words\" "));
+    }
+}
@@ -0,0 +1,68 @@
+package com.afriserve.smsmanager.data.search;
+
+import static org.junit.Assert.assertEquals;
+
+import android.database.Cursor;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.afriserve.smsmanager.AppDatabase;
+import com.afriserve.smsmanager.data.dao.SmsDao;
+import com.afriserve.smsmanager.data.entity.SmsEntity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SmsFtsIndexBuilderTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private AppDatabase database;
+
+    @Before
+    public void setUp() {
+        database = Room.inMemoryDatabaseBuilder(ApplicationProvider.getApplicationContext(), AppDatabase.class)
+                .allowMainThreadQueries()
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    @Test
+    public void rebuild_leavesMessagesWritableAndIndexed() {
+        SmsDao dao = database.smsDao();
+        dao.insertSms(new SmsEntity("+254712345678", "before rebuild", "SENT", T0)).blockingGet();
+
+        SmsFtsIndexBuilder.Result result = new SmsFtsIndexBuilder(database).rebuild((indexed, total) -> { });
+        assertEquals(1, result.indexed);
+
+        // Writes after the swap must not touch the dropped checkpoint table
+        long id = dao.insertSms(new SmsEntity("+254700000000", "after rebuild", "SENT", T0 + 1)).blockingGet();
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        db.execSQL("UPDATE sms_entities SET message = 'edited later' WHERE id = ?", new Object[]{id});
+        db.execSQL("DELETE FROM sms_entities WHERE message = 'before rebuild'");
+
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM sms_fts WHERE sms_fts MATCH 'edited'"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM sms_fts WHERE sms_fts MATCH 'before'"));
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM sqlite_master " +
+                "WHERE type = 'trigger' AND name LIKE 'sms_fts_shadow%'"));
+    }
+
+    private static long count(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.afriserve.smsmanager.data.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class CompiledTemplateTest {
+
+    @Test
+    public void placeholders_substituteKnownKeysAndKeepUnknownOnes() {
+        Map<String, String> values = new HashMap<>();
+        values.put("name", "Amina");
+        values.put("balance", "1,200");
+
+        String rendered = CompiledTemplate.placeholders("Hi {name}, balance {balance} due {date}. {{name}}")
+                .render(values::get);
+
+        assertEquals("Hi Amina, balance 1,200 due {date}. {Amina}", rendered);
+    }
+
+    @Test
+    public void placeholders_areCachedPerTemplate() {
+        CompiledTemplate first = CompiledTemplate.placeholders("Dear {name}");
+
+        assertSame(first, CompiledTemplate.placeholders("Dear {name}"));
+        assertEquals(Arrays.asList("name"), first.variableNames());
+    }
+
+    @Test
+    public void extended_rendersFunctionsAndConditionals() {
+        Map<String, String> values = new HashMap<>();
+        values.put("name", "otieno");
+        values.put("tier", "gold");
+        CompiledTemplate.Resolver resolver = new CompiledTemplate.Resolver() {
+            @Override
+            public String variable(String name) {
+                return values.get(name);
+            }
+
+            @Override
+            public String function(String name, String[] args) {
+                return "upper".equals(name) ? values.get(args[0]).toUpperCase() : null;
+            }
+        };
+
+        String rendered = CompiledTemplate.extended(
+                "{{upper(name)}}: {?if tier == \"gold\"}thanks {name}{?else}welcome{?endif} {{nope()}}")
+                .render(resolver);
+
+        assertEquals("OTIENO: thanks otieno {{nope()}}", rendered);
+    }
+}
@@ -0,0 +1,96 @@
+package com.afriserve.smsmanager.data.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ConcatReassemblyStoreTest {
+
+    private static final long EXPIRY_MS = 120_000;
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MultipartSmsUtils.CompleteSmsMessage> out = new ArrayList<>();
+
+    @Test
+    public void partsArrivingOutOfOrder_areJoinedInSequence() {
+        ConcatReassemblyStore store = new ConcatReassemblyStore(EXPIRY_MS, 256, 256 * 1024, null);
+
+        store.add("MPESA", 7, 3, 3, "three", T0, T0, out);
+        store.add("MPESA", 7, 3, 1, "one ", T0, T0, out);
+        store.add("MPESA", 7, 3, 1, "one ", T0, T0 + 5, out); // redelivered part
+        assertTrue(out.isEmpty());
+        store.add("MPESA", 7, 3, 2, "two ", T0, T0 + 10, out);
+
+        assertEquals(1, out.size());
+        assertEquals("one two three", out.get(0).body);
+        assertEquals("MPESA", out.get(0).address);
+        assertTrue(out.get(0).wasMultipart);
+        assertEquals(0, store.pendingGroupCount());
+    }
+
+    @Test
+    public void expiry_emitsOnlyGroupsPastTheirDeadline() {
+        ConcatReassemblyStore store = new ConcatReassemblyStore(EXPIRY_MS, 256, 256 * 1024, null);
+        store.add("+254712345678", 1, 2, 1, "old", T0, T0, out);
+        store.add("+254712345678", 2, 2, 1, "new", T0, T0 + 60_000, out);
+
+        store.flushExpired(T0 + EXPIRY_MS, out);
+
+        assertEquals(1, out.size());
+        assertEquals("old", out.get(0).body);
+        assertFalse(out.get(0).wasMultipart);
+        assertEquals(1, store.pendingGroupCount());
+    }
+
+    @Test
+    public void fullBudget_evictsEldestGroupAcrossSenders() {
+        ConcatReassemblyStore store = new ConcatReassemblyStore(EXPIRY_MS, 2, 256 * 1024, null);
+        store.add("SENDER", 1, 3, 1, "a", T0, T0, out);
+        store.add("SENDER", 1, 3, 2, "b", T0, T0, out);
+        store.add("SENDER", 2, 3, 1, "c", T0, T0 + 1, out);
+        // One sender may use the whole budget; the next group evicts its eldest
+        assertTrue(out.isEmpty());
+        store.add("OTHER", 1, 3, 1, "d", T0, T0 + 2, out);
+
+        assertEquals(1, out.size());
+        assertEquals("ab", out.get(0).body);
+        assertTrue(out.get(0).wasMultipart);
+        assertEquals(2, store.pendingGroupCount());
+    }
+
+    @Test
+    public void journal_keepsPartsAcrossRestart() throws Exception {
+        File journal = new File(folder.getRoot(), "concat.journal");
+        ConcatReassemblyStore first = new ConcatReassemblyStore(EXPIRY_MS, 256, 256 * 1024, journal);
+        first.add("+254712345678", 9, 2, 1, "Hello ", T0, T0, out);
+        first.add("+254700000000", 3, 2, 1, "Done ", T0, T0, out);
+        first.add("+254700000000", 3, 2, 2, "early", T0, T0, out);
+        assertEquals(1, out.size());
+        out.clear();
+
+        ConcatReassemblyStore restarted = new ConcatReassemblyStore(EXPIRY_MS, 256, 256 * 1024, journal);
+        assertEquals(1, restarted.pendingGroupCount());
+        restarted.add("+254712345678", 9, 2, 2, "world", T0, T0 + 1000, out);
+
+        assertEquals(1, out.size());
+        assertEquals("Hello world", out.get(0).body);
+        restarted.compactJournal();
+        assertEquals(0, journal.length());
+    }
+}
@@ -0,0 +1,46 @@
+package com.afriserve.smsmanager.data.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IncomingSmsDedupeTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    public void key_isStableAcrossNumberSpellingsAndMillisecondJitter() {
+        long key = IncomingSmsDedupe.keyOf("+254712345678", "Confirmed. Ksh100 received", T0);
+        assertEquals(key, IncomingSmsDedupe.keyOf("0712 345 678", "Confirmed. Ksh100 received", T0 + 999));
+        assertNotEquals(key, IncomingSmsDedupe.keyOf("+254712345678", "Confirmed. Ksh100 received", T0 + 1000));
+        assertNotEquals(key, IncomingSmsDedupe.keyOf("+254712345678", "Confirmed. Ksh200 received", T0));
+        assertNotEquals(key, IncomingSmsDedupe.keyOf("+254712345679", "Confirmed. Ksh100 received", T0));
+    }
+
+    @Test
+    public void key_handlesAlphanumericSendersAndMissingBody() {
+        long mpesa = IncomingSmsDedupe.keyOf("MPESA", "QK12 Confirmed", T0);
+        assertEquals(mpesa, IncomingSmsDedupe.keyOf("MPESA", "QK12 Confirmed", T0));
+        assertNotEquals(mpesa, IncomingSmsDedupe.keyOf("AIRTEL", "QK12 Confirmed", T0));
+        assertEquals(IncomingSmsDedupe.keyOf("MPESA", null, T0), IncomingSmsDedupe.keyOf("MPESA", "", T0));
+        assertNotEquals(0, IncomingSmsDedupe.keyOf(null, null, 0));
+    }
+
+    @Test
+    public void ring_forgetsOldestKeyOnceFull() {
+        IncomingSmsDedupe ring = new IncomingSmsDedupe(3);
+        ring.remember(1);
+        ring.remember(2);
+        ring.remember(3);
+        assertTrue(ring.isRecent(1));
+
+        ring.remember(4);
+        assertFalse(ring.isRecent(1));
+        assertTrue(ring.isRecent(2));
+        assertTrue(ring.isRecent(4));
+        assertFalse(ring.isRecent(5));
+    }
+}
@@ -0,0 +1,61 @@
+package com.afriserve.smsmanager.data.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PhoneCanonicalizerTest {
+
+    @Test
+    public void kenyanSpellings_shareOneKey() {
+        long key = PhoneCanonicalizer.canonicalKey("+254712345678");
+        String[] spellings = {
+                "254712345678", "0712345678", "0712 345 678", "712345678",
+                "00254712345678", "+254 (712) 345-678", "\u00A0+254.712.345.678 "
+        };
+        for (String spelling : spellings) {
+            assertEquals(spelling, key, PhoneCanonicalizer.canonicalKey(spelling));
+        }
+        assertEquals("+254712345678", PhoneCanonicalizer.toE164(key));
+        assertEquals("+254110345678", PhoneCanonicalizer.toE164("0110 345 678"));
+    }
+
+    @Test
+    public void otherCountries_followNanpAndInternationalRules() {
+        assertEquals("+12025551234", PhoneCanonicalizer.toE164("(202) 555-1234"));
+        assertEquals("+12025551234", PhoneCanonicalizer.toE164("12025551234"));
+        assertEquals("+447812345678", PhoneCanonicalizer.toE164("+44 7812 345678"));
+        assertEquals("+447812345678", PhoneCanonicalizer.toE164("00447812345678"));
+        assertEquals("+255712345678",
+                PhoneCanonicalizer.toE164(PhoneCanonicalizer.canonicalKey("0712345678", 255, 9)));
+    }
+
+    @Test
+    public void shortCodes_keepTheirDigits() {
+        long key = PhoneCanonicalizer.canonicalKey("0800");
+        assertFalse(PhoneCanonicalizer.isInternational(key));
+        assertEquals("0800", PhoneCanonicalizer.toE164(key));
+        assertEquals("22141", PhoneCanonicalizer.toE164("22141"));
+    }
+
+    @Test
+    public void malformedInput_hasNoKey() {
+        assertNull(PhoneCanonicalizer.toE164("MPESA"));
+        assertNull(PhoneCanonicalizer.toE164("12+34"));
+        assertNull(PhoneCanonicalizer.toE164("+0712345678"));
+        assertNull(PhoneCanonicalizer.toE164("+1234567890123456"));
+        assertNull(PhoneCanonicalizer.toE164(" - "));
+        assertNull(PhoneCanonicalizer.toE164((CharSequence) null));
+        assertEquals(PhoneCanonicalizer.NO_KEY, PhoneCanonicalizer.canonicalKey("0712345678x"));
+    }
+
+    @Test
+    public void isSameNumber_comparesCanonicalForms() {
+        assertTrue(PhoneCanonicalizer.isSameNumber("0712345678", "+254 712 345 678"));
+        assertFalse(PhoneCanonicalizer.isSameNumber("0712345678", "0712345679"));
+        assertFalse(PhoneCanonicalizer.isSameNumber("MPESA", "MPESA"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.afriserve.smsmanager.data.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SmsSegmentCounterTest {
+
+    private static String repeat(String text, int times) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            out.append(text);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void gsm7_usesSingleAndConcatenatedLimits() {
+        assertEquals(1, SmsSegmentCounter.countParts(repeat("a", 160)));
+        assertEquals(2, SmsSegmentCounter.countParts(repeat("a", 161)));
+        assertEquals(2, SmsSegmentCounter.countParts(repeat("a", 306)));
+        assertEquals(3, SmsSegmentCounter.countParts(repeat("a", 307)));
+        assertEquals(1, SmsSegmentCounter.countParts("Caf\u00E9 \u00A35 @ \u00C5lesund"));
+    }
+
+    @Test
+    public void extensionCharacters_costTwoSeptetsAndNeverSplit() {
+        SmsSegmentCounter counter = new SmsSegmentCounter().append(repeat("\u20AC", 80));
+        assertTrue(counter.isGsm7());
+        assertEquals(160, counter.getEncodedLength());
+        assertEquals(1, counter.getParts());
+
+        // 152 septets, then an escape pair that must move whole into the second part
+        counter.reset().append(repeat("a", 152)).append("[").append(repeat("a", 10));
+        assertEquals(164, counter.getEncodedLength());
+        assertEquals(2, counter.getParts());
+        counter.reset().append(repeat("a", 152)).append(repeat("{", 77));
+        assertEquals(306, counter.getEncodedLength());
+        assertEquals(3, counter.getParts());
+    }
+
+    @Test
+    public void nonGsmCharacter_switchesWholeMessageToUcs2() {
+        SmsSegmentCounter counter = new SmsSegmentCounter().append(repeat("a", 69)).append("\u0107");
+        assertFalse(counter.isGsm7());
+        assertEquals('\u0107', counter.getFirstNonGsmChar());
+        assertEquals(SmsSegmentCounter.ENCODING_UCS2, counter.getEncoding());
+        assertEquals(1, counter.getParts());
+        counter.append("a");
+        assertEquals(2, counter.getParts());
+        assertEquals(3, SmsSegmentCounter.countParts(repeat("\u0107", 135)));
+    }
+
+    @Test
+    public void surrogatePairs_areNotSplitAcrossParts() {
+        String emoji = "\uD83D\uDE00";
+        // 66 units then a pair: the pair no longer fits the first part of 67 and moves whole
+        assertEquals(2, SmsSegmentCounter.countParts(repeat("a", 66) + emoji + repeat("a", 65)));
+        assertEquals(3, SmsSegmentCounter.countParts(repeat("a", 66) + emoji + repeat("a", 66)));
+        assertEquals(1, SmsSegmentCounter.countParts(repeat(emoji, 35)));
+    }
+
+    @Test
+    public void appendingInPieces_matchesWholeText() {
+        String text = "Hi {name}, your balance is KES 1,200. Reply STOP \u20AC " + repeat("x", 140);
+        SmsSegmentCounter pieces = new SmsSegmentCounter();
+        for (int i = 0; i < text.length(); i += 7) {
+            pieces.append(text, i, Math.min(text.length(), i + 7));
+        }
+        assertEquals(SmsSegmentCounter.countParts(text), pieces.getParts());
+    }
+}